@@ -26,10 +26,11 @@ import org.vash.vate.net.jpountz.lz4.LZ4Utils;
 public class VTSystem
 {
   public static final int VT_MAJOR_VERSION = 1;
-  public static final int VT_MINOR_VERSION = 4;
-  public static final int VT_REVISION_VERSION = 2;
+  public static final int VT_MINOR_VERSION = 5;
+  public static final int VT_REVISION_VERSION = 0;
   
   public static final int VT_PACKET_HEADER_SIZE_BYTES = 24;
+  public static final int VT_PACKET_BATCHED_HEADER_SIZE_BYTES = 8;
   public static final int VT_PACKET_DATA_SIZE_BYTES = 1024 * 8;
   public static final int VT_PACKET_TOTAL_SIZE_BYTES = VT_PACKET_HEADER_SIZE_BYTES + 16 + Math.max(ZstdUtil.maxCompressedLength(VT_PACKET_DATA_SIZE_BYTES), LZ4Utils.maxCompressedLength(VT_PACKET_DATA_SIZE_BYTES));
   
@@ -40,6 +41,30 @@ public class VTSystem
   public static final int VT_COMPRESSION_BUFFER_SIZE_BYTES = 1024 * 64;
   public static final int VT_FILE_BUFFER_SIZE_BYTES = 1024 * 64;
   public static final int VT_REDUCED_BUFFER_SIZE_BYTES = 1024 * 16;
+  public static final int VT_CHANNEL_WINDOW_SIZE_BYTES = 1024 * 1024;
+  public static final int VT_BUFFER_POOL_RETAINED_SIZE_BYTES = 1024 * 1024 * 8;
+  public static final int VT_BUFFER_POOL_CHANNEL_SIZE_BYTES = 1024 * 256;
+  public static final int VT_CONNECTION_FLUSH_THRESHOLD_BYTES = 1024 * 32;
+  public static final int VT_CONNECTION_FLUSH_DELAY_NANOSECONDS = 500000;
+  public static final int VT_CHANNEL_SCHEDULER_INTERACTIVE_WEIGHT = 16;
+  public static final int VT_CHANNEL_SCHEDULER_NORMAL_WEIGHT = 4;
+  public static final int VT_CHANNEL_SCHEDULER_BULK_WEIGHT = 1;
+  public static final int VT_GRAPHICS_LINK_REFRESH_WINDOW_FRAMES = 3;
+  public static final int VT_GRAPHICS_LINK_PIPELINE_SEGMENTS = 4;
+  public static final int VT_GRAPHICS_LINK_PIPELINE_SEGMENT_SIZE_BYTES = 1024 * 256;
+  public static final int VT_GRAPHICS_LINK_TILE_CACHE_SLOTS = 512;
+  public static final int VT_GRAPHICS_LINK_ADAPTIVE_TARGET_LATENCY_MILLISECONDS = 250;
+  public static final int VT_GRAPHICS_LINK_PROGRESSIVE_MOTION_AREA_DIVISOR = 64;
+  public static final int VT_GRAPHICS_LINK_PROGRESSIVE_REFINEMENT_TILES = 32;
+  public static final int VT_GRAPHICS_LINK_PROGRESSIVE_REFINEMENT_IDLE_FRAMES = 2;
+  public static final int VT_GRAPHICS_LINK_INPUT_BATCH_MILLISECONDS = 16;
+  public static final int VT_GRAPHICS_LINK_HYBRID_MOTION_FRAMES = 3;
+  public static final int VT_GRAPHICS_LINK_HYBRID_PHOTO_COLORS = 96;
+  public static final int VT_GRAPHICS_LINK_RECORDING_KEYFRAME_MILLISECONDS = 10000;
+  public static final int VT_GRAPHICS_LINK_SHARED_CAPTURE_MINIMUM_AGE_MILLISECONDS = 16;
+  public static final int VT_GRAPHICS_LINK_SHARED_CAPTURE_WAIT_MILLISECONDS = 500;
+  public static final int VT_GRAPHICS_LINK_BROADCAST_BACKLOG_FRAMES = 64;
+  public static final int VT_GRAPHICS_LINK_BROADCAST_BACKLOG_BYTES = 1024 * 1024 * 32;
   
   public static final int VT_SECURITY_DIGEST_SIZE_BYTES = 64;
   public static final int VT_SECURITY_SEED_SIZE_BYTES = VT_SECURITY_DIGEST_SIZE_BYTES << 1;
@@ -59,6 +84,24 @@ public class VTSystem
   public static final int VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED = 1 << 2;
   public static final int VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_QUICK = 0 << 3;
   public static final int VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_HEAVY = 1 << 3;
+  public static final int VT_MULTIPLEXED_CHANNEL_TYPE_FLUSH_DEFERRED = 0 << 4;
+  public static final int VT_MULTIPLEXED_CHANNEL_TYPE_FLUSH_IMMEDIATE = 1 << 4;
+  public static final int VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_NORMAL = 0 << 5;
+  public static final int VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE = 1 << 5;
+  public static final int VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_BULK = 1 << 6;
+  
+  public static final int VT_CONNECTION_FEATURE_FLOW_CONTROL = 1;
+  public static final int VT_CONNECTION_FEATURE_LANES = 2;
+  public static final int VT_CONNECTION_FEATURE_ADAPTIVE_COMPRESSION = 4;
+  public static final int VT_CONNECTION_FEATURE_COMPRESSION_DICTIONARIES = 8;
+  public static final int VT_CONNECTION_FEATURE_BATCHED_INTEGRITY = 16;
+  public static final int VT_CONNECTION_FEATURE_AUTHENTICATED_FRAMES = 32;
+  public static final int VT_CONNECTION_FEATURES_SUPPORTED = VT_CONNECTION_FEATURE_FLOW_CONTROL | VT_CONNECTION_FEATURE_LANES | VT_CONNECTION_FEATURE_ADAPTIVE_COMPRESSION | VT_CONNECTION_FEATURE_COMPRESSION_DICTIONARIES | VT_CONNECTION_FEATURE_BATCHED_INTEGRITY | VT_CONNECTION_FEATURE_AUTHENTICATED_FRAMES;
+  public static final int VT_CONNECTION_LANES_NONE = 0;
+  public static final int VT_CONNECTION_LANES_CONNECT = 1;
+  public static final int VT_CONNECTION_LANES_ACCEPT = 2;
+  public static final int VT_CONNECTION_BULK_LANES = 2;
+  public static final int VT_CONNECTION_LANE_TIMEOUT_MILLISECONDS = 5000;
   
   public static final int VT_CHANNEL_TYPE_COMPRESSION_DISABLED = VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_DIRECT;
   public static final int VT_CHANNEL_TYPE_COMPRESSION_QUICK = VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_DIRECT | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_QUICK;
@@ -70,6 +113,8 @@ public class VTSystem
   public static final int VT_CONNECTION_ENCRYPTION_GRAIN = 3;
   public static final int VT_CONNECTION_ENCRYPTION_ZUC = 4;
   public static final int VT_CONNECTION_ENCRYPTION_LEA = 5;
+  public static final int VT_CONNECTION_ENCRYPTION_AES = 6;
+  public static final int VT_CONNECTION_ENCRYPTION_FRAME_SIZE_BYTES = 1024 * 64;
   
   public static final int VT_FILE_TRANSFER_STATUS_INEXISTENT = 0;
   public static final int VT_FILE_TRANSFER_STATUS_NORMAL = 1;
@@ -150,6 +195,13 @@ public class VTSystem
   public static final int VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_2097152 = 65;
   public static final int VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_16 = 66;
   public static final int VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_4 = 67;
+  public static final int VT_GRAPHICS_LINK_IMAGE_MOVE_AREA = 68;
+  public static final int VT_GRAPHICS_LINK_IMAGE_DRAW_TILES = 69;
+  public static final int VT_GRAPHICS_LINK_IMAGE_STORE_TILES = 70;
+  public static final int VT_GRAPHICS_LINK_IMAGE_ADAPTIVE_QUALITY_ON = 71;
+  public static final int VT_GRAPHICS_LINK_IMAGE_ADAPTIVE_QUALITY_OFF = 72;
+  public static final int VT_GRAPHICS_LINK_INPUT_EVENT_BATCH = 73;
+  public static final int VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_HYBRID = 74;
   
   public static final String VT_CONNECTION_PROXY_NONE_STRING = "NONE";
   public static final String VT_CONNECTION_PROXY_SOCKS_STRING = "SOCKS";
@@ -162,6 +214,7 @@ public class VTSystem
   public static final String VT_CONNECTION_ENCRYPTION_GRAIN_STRING = "GRAIN";
   public static final String VT_CONNECTION_ENCRYPTION_ZUC_STRING = "ZUC";
   public static final String VT_CONNECTION_ENCRYPTION_LEA_STRING = "LEA";
+  public static final String VT_CONNECTION_ENCRYPTION_AES_STRING = "AES";
   
   private static final DateFormat VT_ERA_DATEFORMAT;
   private static final Calendar VT_YEAR_CALENDAR;
@@ -68,6 +68,7 @@ public class VTClient implements Runnable
   private Collection<VTClientSessionListener> listeners = new ConcurrentLinkedQueue<VTClientSessionListener>();
   private int pingLimit = 0;
   private int pingInterval = 0;
+  private boolean connectionLanes = false;
   private int reconnectTimeout = 0;
   private Future<?> runThread;
   private VTTrafficMonitorService trafficMonitorService;
@@ -77,9 +78,10 @@ public class VTClient implements Runnable
   
   private static final String VT_CLIENT_SETTINGS_COMMENTS = 
   "Variable-Terminal client settings file, supports UTF-8\r\n" + 
+  "#vate.client.connection.lanes values: default disabled(D), enabled(E)\r\n" + 
   "#vate.client.connection.mode  values: default active(A), passive(P)\r\n" + 
   "#vate.client.proxy.type       values: DIRECT(D)/SOCKS(S)/HTTP(H)/PLUS(P)\r\n" + 
-  "#vate.client.encryption.type  values: SALSA(S)/HC(H)/GRAIN(G)/ZUC(Z)/LEA(L)\r\n" + 
+  "#vate.client.encryption.type  values: SALSA(S)/HC(H)/GRAIN(G)/ZUC(Z)/LEA(L)/AES(A)\r\n" + 
   "#vate.client.session.commands format: cmd1*;cmd2*;cmd3*;...\r\n";
   
   static
@@ -499,6 +501,7 @@ public class VTClient implements Runnable
       fileClientSettings.setProperty("vate.client.connection.port", hostPort != null ? String.valueOf(hostPort) : "");
       fileClientSettings.setProperty("vate.client.connection.host", hostAddress);
       fileClientSettings.setProperty("vate.client.connection.nat.port", natPort != null ? String.valueOf(natPort) : "");
+      fileClientSettings.setProperty("vate.client.connection.lanes", connectionLanes ? "Enabled" : "Disabled");
       fileClientSettings.setProperty("vate.client.proxy.type", proxyType);
       fileClientSettings.setProperty("vate.client.proxy.host", proxyAddress);
       fileClientSettings.setProperty("vate.client.proxy.port", proxyPort != null ? String.valueOf(proxyPort) : "");
@@ -771,6 +774,19 @@ public class VTClient implements Runnable
       }
     }
     
+    if (fileClientSettings.getProperty("vate.client.connection.lanes") != null)
+    {
+      found = true;
+      try
+      {
+        connectionLanes = fileClientSettings.getProperty("vate.client.connection.lanes").toUpperCase().startsWith("E");
+      }
+      catch (Throwable e)
+      {
+        
+      }
+    }
+    
     if (fileClientSettings.getProperty("vate.client.ping.limit") != null)
     {
       found = true;
@@ -1034,6 +1050,18 @@ public class VTClient implements Runnable
         }
       }
       
+      if (fileClientSettings.getProperty("vate.client.connection.lanes") != null)
+      {
+        try
+        {
+          connectionLanes = fileClientSettings.getProperty("vate.client.connection.lanes").toUpperCase().startsWith("E");
+        }
+        catch (Throwable e)
+        {
+          
+        }
+      }
+      
       if (fileClientSettings.getProperty("vate.client.ping.limit") != null)
       {
         try
@@ -1276,6 +1304,18 @@ public class VTClient implements Runnable
       }
     }
     
+    if (fileClientSettings.getProperty("vate.client.connection.lanes") != null)
+    {
+      try
+      {
+        connectionLanes = fileClientSettings.getProperty("vate.client.connection.lanes").toUpperCase().startsWith("E");
+      }
+      catch (Throwable e)
+      {
+        
+      }
+    }
+    
     if (fileClientSettings.getProperty("vate.client.ping.limit") != null)
     {
       try
@@ -1732,7 +1772,7 @@ public class VTClient implements Runnable
         }
         if (line.toUpperCase().startsWith("Y"))
         {
-          VTMainConsole.print("VT>Enter encryption type(SALSA(S)/HC(H)/GRAIN(G)/ZUC(Z)/LEA(L)):");
+          VTMainConsole.print("VT>Enter encryption type(SALSA(S)/HC(H)/GRAIN(G)/ZUC(Z)/LEA(L)/AES(A)):");
           line = VTMainConsole.readLine(false);
           if (line == null)
           {
@@ -1763,6 +1803,10 @@ public class VTClient implements Runnable
           {
             encryptionType = "LEA";
           }
+          if (line.toUpperCase().startsWith("A"))
+          {
+            encryptionType = "AES";
+          }
           VTMainConsole.print("VT>Enter encryption password:");
           line = VTMainConsole.readLine(false);
           if (line == null)
@@ -2050,6 +2094,11 @@ public class VTClient implements Runnable
           
         }
       }
+      if (parameterName.contains("-CL"))
+      {
+        parameterValue = parameters[++i];
+        connectionLanes = parameterValue.toUpperCase().startsWith("E");
+      }
       if (parameterName.contains("-PI"))
       {
         parameterValue = parameters[++i];
@@ -2325,6 +2374,16 @@ public class VTClient implements Runnable
     return pingInterval;
   }
   
+  public void setConnectionLanes(boolean connectionLanes)
+  {
+    this.connectionLanes = connectionLanes;
+  }
+  
+  public boolean isConnectionLanes()
+  {
+    return connectionLanes;
+  }
+  
   public void setReconnectTimeout(int timeout)
   {
     this.reconnectTimeout = timeout;
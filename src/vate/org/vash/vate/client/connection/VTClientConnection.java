@@ -15,6 +15,8 @@ import org.vash.vate.security.VTArrayComparator;
 import org.vash.vate.security.VTBlake3SecureRandom;
 import org.vash.vate.security.VTBlake3MessageDigest;
 import org.vash.vate.security.VTCryptographicEngine;
+import org.vash.vate.socket.lane.VTConnectionLanes;
+import org.vash.vate.stream.compress.VTCompressionDictionary;
 import org.vash.vate.stream.compress.VTCompressorSelector;
 import org.vash.vate.stream.endian.VTLittleEndianInputStream;
 import org.vash.vate.stream.endian.VTLittleEndianOutputStream;
@@ -41,6 +43,8 @@ public class VTClientConnection
   private static final byte[] VT_CLIENT_CHECK_STRING_ZUC = ("/VARIABLE-TERMINAL/CLIENT/ZUC/" + MAJOR_MINOR_VERSION).getBytes();
   private static final byte[] VT_SERVER_CHECK_STRING_LEA = ("/VARIABLE-TERMINAL/SERVER/LEA/" + MAJOR_MINOR_VERSION).getBytes();
   private static final byte[] VT_CLIENT_CHECK_STRING_LEA = ("/VARIABLE-TERMINAL/CLIENT/LEA/" + MAJOR_MINOR_VERSION).getBytes();
+  private static final byte[] VT_SERVER_CHECK_STRING_AES = ("/VARIABLE-TERMINAL/SERVER/AES/" + MAJOR_MINOR_VERSION).getBytes();
+  private static final byte[] VT_CLIENT_CHECK_STRING_AES = ("/VARIABLE-TERMINAL/CLIENT/AES/" + MAJOR_MINOR_VERSION).getBytes();
   
   private volatile boolean connected = false;
   private volatile boolean verified = false;
@@ -61,6 +65,8 @@ public class VTClientConnection
   private final VTBlake3MessageDigest blake3Digest;
   private SecureRandom secureRandom;
   private Socket connectionSocket;
+  private Socket[] laneSockets = new Socket[0];
+  private int lanesMode;
   private InputStream connectionSocketInputStream;
   private OutputStream connectionSocketOutputStream;
   private InputStream connectionInputStream;
@@ -225,6 +231,16 @@ public class VTClientConnection
     this.closed = false;
   }
   
+  public int getLanesMode()
+  {
+    return lanesMode;
+  }
+  
+  public void setLanesMode(int lanesMode)
+  {
+    this.lanesMode = lanesMode;
+  }
+  
   public InputStream getPingClientInputStream()
   {
     return pingClientInputStream;
@@ -388,6 +404,17 @@ public class VTClientConnection
         
       }
     }
+    for (Socket laneSocket : laneSockets)
+    {
+      try
+      {
+        laneSocket.close();
+      }
+      catch (Throwable e)
+      {
+        
+      }
+    }
     if (multiplexedConnectionOutputStream != null)
     {
       try
@@ -410,6 +437,50 @@ public class VTClientConnection
         
       }
     }
+    if (shellDataInputStream != null)
+    {
+      try
+      {
+        shellDataInputStream.close();
+      }
+      catch (Throwable t)
+      {
+        
+      }
+    }
+    if (shellDataOutputStream != null)
+    {
+      try
+      {
+        shellDataOutputStream.close();
+      }
+      catch (Throwable t)
+      {
+        
+      }
+    }
+    if (tunnelControlDataInputStream != null)
+    {
+      try
+      {
+        tunnelControlDataInputStream.close();
+      }
+      catch (Throwable t)
+      {
+        
+      }
+    }
+    if (tunnelControlDataOutputStream != null)
+    {
+      try
+      {
+        tunnelControlDataOutputStream.close();
+      }
+      catch (Throwable t)
+      {
+        
+      }
+    }
     if (authenticationReader != null)
     {
       try
@@ -540,6 +611,38 @@ public class VTClientConnection
     connectionOutputStream = new BufferedOutputStream(cryptoEngine.getEncryptedOutputStream(connectionSocketOutputStream, VTSystem.VT_CONNECTION_OUTPUT_BUFFER_SIZE_BYTES), VTSystem.VT_CONNECTION_OUTPUT_BUFFER_SIZE_BYTES);
   }
   
+  private int exchangeConnectionFeatures() throws IOException
+  {
+    VTLittleEndianOutputStream featuresWriter = new VTLittleEndianOutputStream(connectionOutputStream);
+    VTLittleEndianInputStream featuresReader = new VTLittleEndianInputStream(connectionInputStream);
+    int localFeatures = VTSystem.VT_CONNECTION_FEATURES_SUPPORTED;
+    if (!VTCompressionDictionary.isAvailable())
+    {
+      localFeatures &= ~VTSystem.VT_CONNECTION_FEATURE_COMPRESSION_DICTIONARIES;
+    }
+    if (lanesMode == VTSystem.VT_CONNECTION_LANES_NONE)
+    {
+      localFeatures &= ~VTSystem.VT_CONNECTION_FEATURE_LANES;
+    }
+    // only aead encrypted connections authenticate every frame so the multiplexer can skip its own integrity
+    if (encryptionType != VTSystem.VT_CONNECTION_ENCRYPTION_AES)
+    {
+      localFeatures &= ~VTSystem.VT_CONNECTION_FEATURE_AUTHENTICATED_FRAMES;
+    }
+    featuresWriter.writeInt(localFeatures);
+    featuresWriter.flush();
+    return featuresReader.readInt() & localFeatures;
+  }
+  
+  private boolean exchangeCompressionDictionaries() throws IOException
+  {
+    VTLittleEndianOutputStream dictionariesWriter = new VTLittleEndianOutputStream(connectionOutputStream);
+    VTLittleEndianInputStream dictionariesReader = new VTLittleEndianInputStream(connectionInputStream);
+    dictionariesWriter.writeLong(VTCompressionDictionary.checksum());
+    dictionariesWriter.flush();
+    return dictionariesReader.readLong() == VTCompressionDictionary.checksum();
+  }
+  
   private void setMultiplexedStreams() throws IOException
   {
     blake3Digest.reset();
@@ -577,28 +680,50 @@ public class VTClientConnection
     int inputChannel = 0;
     int outputChannel = 0;
     
-    multiplexedConnectionInputStream = new VTMultiplexingInputStream(connectionInputStream, false, VTSystem.VT_PACKET_DATA_SIZE_BYTES, VTSystem.VT_CHANNEL_BUFFER_SIZE_BYTES, inputFirstSeed, inputSecondSeed, executorService, false);
-    multiplexedConnectionOutputStream = new VTMultiplexingOutputStream(connectionOutputStream, false, VTSystem.VT_PACKET_DATA_SIZE_BYTES, VTSystem.VT_STANDARD_BUFFER_SIZE_BYTES, outputFirstSeed, outputSecondSeed, executorService);
+    int connectionFeatures = exchangeConnectionFeatures();
+    boolean compressionDictionaries = (connectionFeatures & VTSystem.VT_CONNECTION_FEATURE_COMPRESSION_DICTIONARIES) != 0 && exchangeCompressionDictionaries();
+    
+    OutputStream[] connectionOutputStreams = new OutputStream[] {connectionOutputStream};
+    InputStream[] connectionInputStreams = new InputStream[] {connectionInputStream};
+    VTConnectionLanes connectionLanes = new VTConnectionLanes(localNonce, remoteNonce, encryptionKey, firstAuthenticatedCredential, secondAuthenticatedCredential);
+    if ((connectionFeatures & VTSystem.VT_CONNECTION_FEATURE_LANES) != 0 && connectionLanes.exchangeConnectionLanes(connectionSocket, lanesMode, connectionInputStream, connectionOutputStream))
+    {
+      laneSockets = connectionLanes.getLaneSockets();
+      connectionOutputStreams = new OutputStream[laneSockets.length + 1];
+      connectionInputStreams = new InputStream[laneSockets.length + 1];
+      connectionOutputStreams[0] = connectionOutputStream;
+      connectionInputStreams[0] = connectionInputStream;
+      for (int i = 0; i < laneSockets.length; i++)
+      {
+        VTCryptographicEngine laneEngine = new VTCryptographicEngine();
+        laneEngine.initializeClientEngine(encryptionType, localNonce, remoteNonce, encryptionKey, firstAuthenticatedCredential, secondAuthenticatedCredential, connectionLanes.getLaneToken(i));
+        connectionInputStreams[i + 1] = new BufferedInputStream(laneEngine.getDecryptedInputStream(laneSockets[i].getInputStream(), VTSystem.VT_CONNECTION_INPUT_BUFFER_SIZE_BYTES), VTSystem.VT_CONNECTION_INPUT_BUFFER_SIZE_BYTES);
+        connectionOutputStreams[i + 1] = new BufferedOutputStream(laneEngine.getEncryptedOutputStream(laneSockets[i].getOutputStream(), VTSystem.VT_CONNECTION_OUTPUT_BUFFER_SIZE_BYTES), VTSystem.VT_CONNECTION_OUTPUT_BUFFER_SIZE_BYTES);
+      }
+    }
+    
+    multiplexedConnectionOutputStream = new VTMultiplexingOutputStream(connectionOutputStreams, false, VTSystem.VT_PACKET_DATA_SIZE_BYTES, VTSystem.VT_STANDARD_BUFFER_SIZE_BYTES, outputFirstSeed, outputSecondSeed, connectionFeatures, executorService);
+    multiplexedConnectionInputStream = new VTMultiplexingInputStream(connectionInputStreams, multiplexedConnectionOutputStream, false, VTSystem.VT_PACKET_DATA_SIZE_BYTES, VTSystem.VT_CHANNEL_BUFFER_SIZE_BYTES, inputFirstSeed, inputSecondSeed, connectionFeatures, executorService, false);
     
-    pingClientInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED, inputChannel++);
-    pingClientOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED, outputChannel++);
+    pingClientInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_FLUSH_IMMEDIATE | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE, inputChannel++);
+    pingClientOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_FLUSH_IMMEDIATE | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE, outputChannel++);
     
-    pingServerInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED, inputChannel++);
-    pingServerOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED, outputChannel++);
+    pingServerInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_FLUSH_IMMEDIATE | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE, inputChannel++);
+    pingServerOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_FLUSH_IMMEDIATE | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE, outputChannel++);
     
-    tunnelControlInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED, inputChannel++);
-    tunnelControlOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED, outputChannel++);
+    tunnelControlInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_FLUSH_IMMEDIATE | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE, inputChannel++);
+    tunnelControlOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_FLUSH_IMMEDIATE | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE, outputChannel++);
     
-    shellInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, inputChannel++);
-    shellOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, outputChannel++);
+    shellInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE, inputChannel++);
+    shellOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE, outputChannel++);
     
     fileTransferControlInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, inputChannel++);
     fileTransferControlOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, outputChannel++);
-    fileTransferDataInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, inputChannel++);
-    fileTransferDataOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, outputChannel++);
+    fileTransferDataInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_BULK, inputChannel++);
+    fileTransferDataOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_BULK, outputChannel++);
     
-    graphicsControlInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, inputChannel++);
-    graphicsControlOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, outputChannel++);
+    graphicsControlInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_FLUSH_IMMEDIATE | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE, inputChannel++);
+    graphicsControlOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_FLUSH_IMMEDIATE | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE, outputChannel++);
     graphicsDirectImageInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, inputChannel++);
     graphicsDirectImageOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, outputChannel++);
     graphicsFastImageInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, inputChannel++);
@@ -608,17 +733,28 @@ public class VTClientConnection
     graphicsClipboardInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, inputChannel++);
     graphicsClipboardOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, outputChannel++);
     
-    audioDataInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, inputChannel++);
-    audioDataOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED, outputChannel++);
+    audioDataInputStream = multiplexedConnectionInputStream.linkInputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE, inputChannel++);
+    audioDataOutputStream = multiplexedConnectionOutputStream.linkOutputStream(VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED | VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE, outputChannel++);
     
     availableInputChannel = inputChannel;
     availableOutputChannel = outputChannel;
     
-    tunnelControlDataInputStream = VTCompressorSelector.createBufferedLz4InputStream(tunnelControlInputStream);
-    tunnelControlDataOutputStream = VTCompressorSelector.createBufferedLz4OutputStream(tunnelControlOutputStream);
-    
-    shellDataInputStream = VTCompressorSelector.createBufferedLz4InputStream(shellInputStream);
-    shellDataOutputStream = VTCompressorSelector.createBufferedLz4OutputStream(shellOutputStream);
+    if (compressionDictionaries)
+    {
+      tunnelControlDataInputStream = VTCompressorSelector.createBufferedDictionaryZlibInputStream(tunnelControlInputStream, VTCompressionDictionary.TUNNEL);
+      tunnelControlDataOutputStream = VTCompressorSelector.createBufferedDictionaryZlibOutputStream(tunnelControlOutputStream, VTCompressionDictionary.TUNNEL);
+      
+      shellDataInputStream = VTCompressorSelector.createBufferedDictionaryZlibInputStream(shellInputStream, VTCompressionDictionary.TERMINAL);
+      shellDataOutputStream = VTCompressorSelector.createBufferedDictionaryZlibOutputStream(shellOutputStream, VTCompressionDictionary.TERMINAL);
+    }
+    else
+    {
+      tunnelControlDataInputStream = VTCompressorSelector.createBufferedLz4InputStream(tunnelControlInputStream);
+      tunnelControlDataOutputStream = VTCompressorSelector.createBufferedLz4OutputStream(tunnelControlOutputStream);
+      
+      shellDataInputStream = VTCompressorSelector.createBufferedLz4InputStream(shellInputStream);
+      shellDataOutputStream = VTCompressorSelector.createBufferedLz4OutputStream(shellOutputStream);
+    }
     
     resultReader = new VTLittleEndianInputStream(shellDataInputStream);
     commandWriter = new VTLittleEndianOutputStream(shellDataOutputStream);
@@ -698,6 +834,7 @@ public class VTClientConnection
 //    byte[] digestedServerRABBIT = computeSecurityDigest(localNonce, remoteNonce, encryptionKey, VT_SERVER_CHECK_STRING_RABBIT);
     byte[] digestedServerZUC = computeSecurityDigest(localNonce, remoteNonce, encryptionKey, VT_SERVER_CHECK_STRING_ZUC);
     byte[] digestedServerLEA = computeSecurityDigest(localNonce, remoteNonce, encryptionKey, VT_SERVER_CHECK_STRING_LEA);
+    byte[] digestedServerAES = computeSecurityDigest(localNonce, remoteNonce, encryptionKey, VT_SERVER_CHECK_STRING_AES);
     
     byte[] digestedServer = exchangeCheckString(localNonce, remoteNonce, encryptionKey, localCheckString);
     
@@ -736,6 +873,11 @@ public class VTClientConnection
       return VTSystem.VT_CONNECTION_ENCRYPTION_LEA;
     }
     
+    if (VTArrayComparator.arrayEquals(digestedServer, digestedServerAES))
+    {
+      return VTSystem.VT_CONNECTION_ENCRYPTION_AES;
+    }
+    
     return -1;
   }
   
@@ -794,6 +936,12 @@ public class VTClientConnection
         verified = true;
         return;
       }
+      if (remoteEncryptionType == VTSystem.VT_CONNECTION_ENCRYPTION_AES)
+      {
+        setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_AES);
+        verified = true;
+        return;
+      }
     }
     else if (encryptionType == VTSystem.VT_CONNECTION_ENCRYPTION_SALSA)
     {
@@ -855,6 +1003,16 @@ public class VTClientConnection
         return;
       }
     }
+    else if (encryptionType == VTSystem.VT_CONNECTION_ENCRYPTION_AES)
+    {
+      remoteEncryptionType = discoverRemoteEncryptionType(localNonce, remoteNonce, encryptionKey, VT_CLIENT_CHECK_STRING_AES);
+      if (remoteEncryptionType != -1)
+      {
+        setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_AES);
+        verified = true;
+        return;
+      }
+    }
     setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_NONE);
     return;
   }
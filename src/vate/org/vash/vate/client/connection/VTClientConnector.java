@@ -497,6 +497,20 @@ public class VTClientConnector implements Runnable
     return false;
   }
   
+  private boolean isDirectConnection()
+  {
+    if (proxy != null)
+    {
+      return false;
+    }
+    if (proxyType == null || proxyAddress == null || proxyPort == null)
+    {
+      return true;
+    }
+    String type = proxyType.toUpperCase();
+    return !(type.startsWith("G") || type.startsWith("D") || type.startsWith("H") || type.startsWith("S") || type.startsWith("P"));
+  }
+  
   public void resetSockets(VTClientConnection connection) throws IOException
   {
     if (proxy != null)
@@ -599,6 +613,7 @@ public class VTClientConnector implements Runnable
       //connection.getConnectionSocket().setSoLinger(true, 0);
       //connection.getConnectionSocket().setKeepAlive(true);
       connection.getConnectionSocket().setSoTimeout(client.getPingLimitMilliseconds());
+      connection.setLanesMode(client.isConnectionLanes() && (natPort == null || natPort <= 0) ? VTSystem.VT_CONNECTION_LANES_ACCEPT : VTSystem.VT_CONNECTION_LANES_NONE);
 //      connecting = false;
       if (encryptionType == null)
       {
@@ -628,6 +643,10 @@ public class VTClientConnector implements Runnable
       {
         connection.setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_LEA);
       }
+      else if (encryptionType.toUpperCase().startsWith("A"))
+      {
+        connection.setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_AES);
+      }
       else
       {
         connection.setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_NONE);
@@ -685,6 +704,7 @@ public class VTClientConnector implements Runnable
       //connection.getConnectionSocket().setSoLinger(true, 0);
       //connection.getConnectionSocket().setKeepAlive(true);
       connection.getConnectionSocket().setSoTimeout(client.getPingLimitMilliseconds());
+      connection.setLanesMode(client.isConnectionLanes() && isDirectConnection() ? VTSystem.VT_CONNECTION_LANES_CONNECT : VTSystem.VT_CONNECTION_LANES_NONE);
 //      connecting = false;
       if (encryptionType == null)
       {
@@ -714,6 +734,10 @@ public class VTClientConnector implements Runnable
       {
         connection.setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_LEA);
       }
+      else if (encryptionType.toUpperCase().startsWith("A"))
+      {
+        connection.setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_AES);
+      }
       else
       {
         connection.setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_NONE);
@@ -1255,7 +1279,7 @@ public class VTClientConnector implements Runnable
       }
       if (line.toUpperCase().startsWith("Y"))
       {
-        VTMainConsole.print("VT>Enter encryption type(SALSA(S)/HC(H)/GRAIN(G)/ZUC(Z)/LEA(L)):");
+        VTMainConsole.print("VT>Enter encryption type(SALSA(S)/HC(H)/GRAIN(G)/ZUC(Z)/LEA(L)/AES(A)):");
         line = VTMainConsole.readLine(false);
         if (line == null)
         {
@@ -1286,6 +1310,10 @@ public class VTClientConnector implements Runnable
         {
           encryptionType = "LEA";
         }
+        if (line.toUpperCase().startsWith("A"))
+        {
+          encryptionType = "AES";
+        }
         VTMainConsole.print("VT>Enter encryption password:");
         line = VTMainConsole.readLine(false);
         if (line == null)
@@ -28,6 +28,7 @@ public class VTClientRemoteConsoleCommandSelector<T> extends VTConsoleCommandSel
       standardCommandProcessorClasses.add(VTEXIT.class);
       standardCommandProcessorClasses.add(VTFILETRANSFER.class);
       standardCommandProcessorClasses.add(VTGRAPHICSLINK.class);
+      standardCommandProcessorClasses.add(VTGRAPHICSRECORD.class);
       standardCommandProcessorClasses.add(VTPING.class);
       standardCommandProcessorClasses.add(VTQUIT.class);
       standardCommandProcessorClasses.add(VTLIMIT.class);
@@ -100,7 +100,8 @@ public class VTClientRemoteGraphicalConsoleMenuBar extends VTGraphicalConsoleMen
     graphicsLinkMenu.add(new VTGraphicalConsoleMenuItem(console, "Toggle Graphics Link", "*VTGRAPHICSLINK\n"));
     graphicsLinkMenu.add(new VTGraphicalConsoleMenuItem(console, "View Graphics Link", "*VTGRAPHICSLINK V\n"));
     graphicsLinkMenu.add(new VTGraphicalConsoleMenuItem(console, "Control Graphics Link", "*VTGRAPHICSLINK C\n"));
-    graphicsLinkMenu.add(new VTGraphicalConsoleMenuItem(console, "Command Usage", "*VTHELP *VTGRAPHICSLINK\n"));
+    graphicsLinkMenu.add(new VTGraphicalConsoleMenuItem(console, "Record Graphics Link To File", "*VTGRAPHICSRECORD "));
+    graphicsLinkMenu.add(new VTGraphicalConsoleMenuItem(console, "Command Usages", "*VTHELP *VTGRAPHICSLINK\n*VTHELP *VTGRAPHICSRECORD\n"));
     
     pointerScreenCaptureMenu.add(new VTGraphicalConsoleMenuItem(console, "True-24-Bit Color Quality", "*VTSCREENSHOT CT "));
     pointerScreenCaptureMenu.add(new VTGraphicalConsoleMenuItem(console, "Ultra-21-Bit Color Quality", "*VTSCREENSHOT CU "));
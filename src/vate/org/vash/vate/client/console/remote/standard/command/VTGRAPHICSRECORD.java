@@ -0,0 +1,47 @@
+package org.vash.vate.client.console.remote.standard.command;
+
+import org.vash.vate.client.console.remote.standard.VTClientStandardRemoteConsoleCommandProcessor;
+import org.vash.vate.console.VTMainConsole;
+
+public class VTGRAPHICSRECORD extends VTClientStandardRemoteConsoleCommandProcessor
+{
+  public VTGRAPHICSRECORD()
+  {
+    this.setFullName("*VTGRAPHICSRECORD");
+    this.setAbbreviatedName("*VTGR");
+    this.setFullSyntax("*VTGRAPHICSRECORD [FILE]");
+    this.setAbbreviatedSyntax("*VTGR [FL]");
+  }
+  
+  public void execute(String command, String[] parsed) throws Exception
+  {
+    if (parsed.length >= 2)
+    {
+      String parameter = parsed[1];
+      boolean ok = session.getGraphicsClient().getRecorder().start(parameter);
+      if (ok)
+      {
+        VTMainConsole.print("\rVT>Enabled recording of remote graphics link to file: [" + parameter + "]\nVT>");
+      }
+      else
+      {
+        VTMainConsole.print("\rVT>Failed recording of remote graphics link to file: [" + parameter + "]\nVT>");
+      }
+    }
+    else
+    {
+      session.getGraphicsClient().getRecorder().stop();
+      VTMainConsole.print("\rVT>Disabled recording of remote graphics link\nVT>");
+    }
+  }
+  
+  public void close()
+  {
+    
+  }
+  
+  public boolean remote()
+  {
+    return false;
+  }
+}
@@ -428,6 +428,7 @@ public class VTClientConfigurationDialog extends Dialog
     //encryptionTypeChoice.add("RABBIT");
     encryptionTypeChoice.add("ZUC");
     encryptionTypeChoice.add("LEA");
+    encryptionTypeChoice.add("AES");
     encryptionTypeChoice.select("NONE");
     encryptionTypeChoice.addItemListener(new ItemListener()
     {
@@ -463,6 +464,10 @@ public class VTClientConfigurationDialog extends Dialog
           {
             setEncryptionType("LEA");
           }
+          else if (e.getItem().equals("AES"))
+          {
+            setEncryptionType("AES");
+          }
         }
       }
     });
@@ -1348,6 +1353,10 @@ public class VTClientConfigurationDialog extends Dialog
     {
       encryptionType.setParameter("LEA");
     }
+    else if (encryption.toUpperCase().startsWith("A"))
+    {
+      encryptionType.setParameter("AES");
+    }
     else
     {
       encryptionType.setParameter("NONE");
@@ -1,6 +1,7 @@
 package org.vash.vate.client.graphicslink;
 
 import org.vash.vate.client.session.VTClientSession;
+import org.vash.vate.graphics.record.VTGraphicsLinkRecorder;
 import org.vash.vate.task.VTTask;
 
 public class VTGraphicsLinkClient extends VTTask
@@ -45,6 +46,11 @@ public class VTGraphicsLinkClient extends VTTask
     sessionHandler.setReadOnly(readOnly);
   }
   
+  public VTGraphicsLinkRecorder getRecorder()
+  {
+    return sessionHandler.getRecorder();
+  }
+  
   public void task()
   {
     sessionHandler.run();
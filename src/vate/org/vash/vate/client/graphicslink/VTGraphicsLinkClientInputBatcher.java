@@ -0,0 +1,206 @@
+package org.vash.vate.client.graphicslink;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.vash.vate.VTSystem;
+import org.vash.vate.client.connection.VTClientConnection;
+import org.vash.vate.stream.array.VTByteArrayOutputStream;
+import org.vash.vate.stream.endian.VTLittleEndianOutputStream;
+
+public class VTGraphicsLinkClientInputBatcher implements Runnable
+{
+  private static final long BATCH_PERIOD_NANOSECONDS = VTSystem.VT_GRAPHICS_LINK_INPUT_BATCH_MILLISECONDS * 1000L * 1000L;
+  
+  private final VTByteArrayOutputStream eventBuffer = new VTByteArrayOutputStream();
+  private final VTLittleEndianOutputStream eventStream = new VTLittleEndianOutputStream(eventBuffer);
+  private final VTClientConnection connection;
+  private volatile boolean running;
+  private Future<?> batcherThread;
+  private int eventCount;
+  private boolean movePending;
+  private int moveX;
+  private int moveY;
+  private int lastX;
+  private int lastY;
+  private long lastFlushTime;
+  
+  public VTGraphicsLinkClientInputBatcher(VTClientConnection connection)
+  {
+    this.connection = connection;
+  }
+  
+  public void start(ExecutorService executorService)
+  {
+    synchronized (this)
+    {
+      // move deltas restart from the origin on both sides with every session
+      eventBuffer.reset();
+      eventCount = 0;
+      movePending = false;
+      lastX = 0;
+      lastY = 0;
+      lastFlushTime = System.nanoTime() - BATCH_PERIOD_NANOSECONDS;
+      running = true;
+      batcherThread = executorService.submit(this);
+    }
+  }
+  
+  public void stop()
+  {
+    synchronized (this)
+    {
+      running = false;
+      notify();
+    }
+    try
+    {
+      if (batcherThread != null)
+      {
+        batcherThread.get();
+      }
+    }
+    catch (Throwable e)
+    {
+      
+    }
+  }
+  
+  // consecutive moves keep only the latest position and at most one batch with a move is sent per period
+  public synchronized void mouseMove(int x, int y) throws IOException
+  {
+    moveX = x;
+    moveY = y;
+    if (movePending)
+    {
+      return;
+    }
+    movePending = true;
+    if (System.nanoTime() - lastFlushTime >= BATCH_PERIOD_NANOSECONDS)
+    {
+      flush();
+    }
+    else
+    {
+      notify();
+    }
+  }
+  
+  public synchronized void mousePress(int button) throws IOException
+  {
+    appendMove();
+    eventStream.write(VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_KEY_DOWN);
+    eventStream.writeVarInt(button);
+    eventCount++;
+    flush();
+  }
+  
+  public synchronized void mouseRelease(int button) throws IOException
+  {
+    appendMove();
+    eventStream.write(VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_KEY_UP);
+    eventStream.writeVarInt(button);
+    eventCount++;
+    flush();
+  }
+  
+  public synchronized void mouseWheel(int wheel) throws IOException
+  {
+    appendMove();
+    eventStream.write(VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_WHEEL);
+    eventStream.writeSignedVarInt(wheel);
+    eventCount++;
+    flush();
+  }
+  
+  public synchronized void keyPress(int keyCode, int keyModifiers, int keyLocation, char keyChar) throws IOException
+  {
+    appendMove();
+    eventStream.write(VTSystem.VT_GRAPHICS_LINK_KEYBOARD_INPUT_KEY_DOWN);
+    appendKey(keyCode, keyModifiers, keyLocation, keyChar);
+    flush();
+  }
+  
+  public synchronized void keyRelease(int keyCode, int keyModifiers, int keyLocation, char keyChar) throws IOException
+  {
+    appendMove();
+    eventStream.write(VTSystem.VT_GRAPHICS_LINK_KEYBOARD_INPUT_KEY_UP);
+    appendKey(keyCode, keyModifiers, keyLocation, keyChar);
+    flush();
+  }
+  
+  public synchronized void flush() throws IOException
+  {
+    appendMove();
+    if (eventCount == 0)
+    {
+      return;
+    }
+    VTLittleEndianOutputStream output = connection.getGraphicsControlDataOutputStream();
+    // the writer also sends control messages from other threads under this same lock
+    synchronized (output)
+    {
+      output.write(VTSystem.VT_GRAPHICS_LINK_INPUT_EVENT_BATCH);
+      output.writeVarInt(eventCount);
+      output.write(eventBuffer.buf(), 0, eventBuffer.count());
+      output.flush();
+    }
+    eventBuffer.reset();
+    eventCount = 0;
+    lastFlushTime = System.nanoTime();
+  }
+  
+  private void appendMove() throws IOException
+  {
+    if (!movePending)
+    {
+      return;
+    }
+    eventStream.write(VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_MOVE);
+    eventStream.writeSignedVarInt(moveX - lastX);
+    eventStream.writeSignedVarInt(moveY - lastY);
+    lastX = moveX;
+    lastY = moveY;
+    movePending = false;
+    eventCount++;
+  }
+  
+  private void appendKey(int keyCode, int keyModifiers, int keyLocation, char keyChar) throws IOException
+  {
+    eventStream.writeVarInt(keyCode);
+    eventStream.writeVarInt(keyModifiers);
+    eventStream.writeVarInt(keyLocation);
+    eventStream.writeVarInt(keyChar);
+    eventCount++;
+  }
+  
+  public void run()
+  {
+    try
+    {
+      synchronized (this)
+      {
+        while (running)
+        {
+          if (!movePending)
+          {
+            wait();
+            continue;
+          }
+          long remaining = lastFlushTime + BATCH_PERIOD_NANOSECONDS - System.nanoTime();
+          if (remaining > 0)
+          {
+            wait(remaining / 1000000L, (int) (remaining % 1000000L));
+            continue;
+          }
+          flush();
+        }
+      }
+    }
+    catch (Throwable e)
+    {
+      
+    }
+  }
+}
@@ -17,7 +17,13 @@ import org.vash.vate.com.sixlegs.png.iio.*;
 import org.vash.vate.console.VTMainConsole;
 import org.vash.vate.graphics.codec.VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII;
 import static org.vash.vate.graphics.codec.VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII.CUSTOM_CODEC_PADDING_SIZE;
+import org.vash.vate.graphics.image.VTImageDataTileCache;
+import org.vash.vate.graphics.image.VTImageDataUtils;
 import org.vash.vate.graphics.image.VTImageIO;
+import org.vash.vate.graphics.image.VTRectangle;
+import org.vash.vate.graphics.record.VTGraphicsLinkRecorder;
+import org.vash.vate.graphics.record.VTGraphicsLinkRecorderInputStream;
+import org.vash.vate.stream.endian.VTLittleEndianInputStream;
 import org.vash.vate.stream.limit.VTSizedInputStream;
 
 public class VTGraphicsLinkClientReader implements Runnable
@@ -32,12 +38,17 @@ public class VTGraphicsLinkClientReader implements Runnable
   private int[] lastImageBufferInt;
   // private int[] previousImageBufferInt;
   private BufferedImage currentImageDataBuffer;
+  private int currentImagePadding;
+  private int currentImageType;
+  private int currentImageColors;
+  private final VTRectangle moveArea = new VTRectangle(0, 0, 1, 1);
   private Graphics2D currentImageGraphics;
   private BufferedImage nextImageDataBuffer;
   private VTGraphicsLinkClientSession session;
   private VTClientConnection connection;
   private VTGraphicsLinkClientWriter writer;
   private VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII vtCustomCodec;
+  private VTImageDataTileCache tileCache;
   private ImageReader currentImageReader;
   private ImageReader pngImageReader;
   private ImageReader jpgImageReader;
@@ -46,6 +57,8 @@ public class VTGraphicsLinkClientReader implements Runnable
   private VTSizedInputStream limitedInputStream;
   private DataBuffer recyclableCurrentDataBuffer;
   private DataBuffer recyclableNextDataBuffer;
+  private DataBuffer recyclableLossyDataBuffer;
+  private final VTGraphicsLinkRecorder recorder = new VTGraphicsLinkRecorder();
   
   private class VTIncrementalIIOReadUpdateListener implements IIOReadUpdateListener
   {
@@ -185,6 +198,7 @@ public class VTGraphicsLinkClientReader implements Runnable
     
     recyclableCurrentDataBuffer = null;
     recyclableNextDataBuffer = null;
+    recyclableLossyDataBuffer = null;
     
     vtCustomCodec = null;
   }
@@ -214,6 +228,36 @@ public class VTGraphicsLinkClientReader implements Runnable
     this.writer = writer;
   }
   
+  public VTGraphicsLinkRecorder getRecorder()
+  {
+    return recorder;
+  }
+  
+  // the recorder sees the streams after transport decompression, where each message can be decoded from the last refresh frame
+  private void attachRecorder()
+  {
+    connection.getGraphicsControlDataInputStream().setInputStream(recorder.createInputStream(connection.getGraphicsControlDataInputStream().getInputStream(), VTGraphicsLinkRecorder.CHANNEL_CONTROL));
+    connection.getGraphicsDirectImageDataInputStream().setInputStream(recorder.createInputStream(connection.getGraphicsDirectImageDataInputStream().getInputStream(), VTGraphicsLinkRecorder.CHANNEL_DIRECT));
+    connection.getGraphicsHeavyImageDataInputStream().setInputStream(recorder.createInputStream(connection.getGraphicsHeavyImageDataInputStream().getInputStream(), VTGraphicsLinkRecorder.CHANNEL_HEAVY));
+    connection.getGraphicsFastImageDataInputStream().setInputStream(recorder.createInputStream(connection.getGraphicsFastImageDataInputStream().getInputStream(), VTGraphicsLinkRecorder.CHANNEL_FAST));
+  }
+  
+  private void detachRecorder()
+  {
+    detachRecorder(connection.getGraphicsControlDataInputStream());
+    detachRecorder(connection.getGraphicsDirectImageDataInputStream());
+    detachRecorder(connection.getGraphicsHeavyImageDataInputStream());
+    detachRecorder(connection.getGraphicsFastImageDataInputStream());
+  }
+  
+  private static void detachRecorder(VTLittleEndianInputStream stream)
+  {
+    if (stream.getInputStream() instanceof VTGraphicsLinkRecorderInputStream)
+    {
+      stream.setInputStream(((VTGraphicsLinkRecorderInputStream) stream.getInputStream()).getInputStream());
+    }
+  }
+  
   public void run()
   {
     synchronized (this)
@@ -238,12 +282,14 @@ public class VTGraphicsLinkClientReader implements Runnable
       }
       else
       {
-        vtCustomCodec = new VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII();
+        vtCustomCodec = new VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII(session.getSession().getExecutorService());
+        tileCache = new VTImageDataTileCache(VTSystem.VT_GRAPHICS_LINK_TILE_CACHE_SLOTS);
         pngImageReader = new PngImageReader(new PngImageReaderSpi());
         jpgImageReader = ImageIO.getImageReadersByFormatName("jpeg").next();
         limitedInputStream = new VTSizedInputStream(connection.getGraphicsDirectImageDataInputStream());
         pngImageReader.addIIOReadUpdateListener(incrementalImageReader);
         jpgImageReader.addIIOReadUpdateListener(incrementalImageReader);
+        attachRecorder();
         VTMainConsole.print("\rVT>Remote graphics link started!\nVT>");
       }
     }
@@ -256,6 +302,10 @@ public class VTGraphicsLinkClientReader implements Runnable
     {
       try
       {
+        if (recorder.isRecording() && recorder.mark())
+        {
+          recorder.snapshot(currentImageDataBuffer, currentImageType, currentImageColors, currentImagePadding, tileCache);
+        }
         switch (connection.getGraphicsControlDataInputStream().read())
         {
           case VTSystem.VT_GRAPHICS_LINK_IMAGE_STANDARD_REFRESH_FRAME:
@@ -300,6 +350,9 @@ public class VTGraphicsLinkClientReader implements Runnable
             int height = connection.getGraphicsControlDataInputStream().readInt();
             
             currentImageDataBuffer = VTImageIO.createImage(0, 0, width, height, type, colors, recyclableCurrentDataBuffer);
+            currentImagePadding = 0;
+            currentImageType = type;
+            currentImageColors = colors;
             recyclableCurrentDataBuffer = currentImageDataBuffer.getRaster().getDataBuffer();
             currentImageGraphics = currentImageDataBuffer.createGraphics();
             currentImageGraphics.setRenderingHints(VTSystem.VT_GRAPHICS_RENDERING_HINTS);
@@ -331,6 +384,7 @@ public class VTGraphicsLinkClientReader implements Runnable
               imageReadParam.setDestination(nextImageDataBuffer);
               currentImageReader.setInput(imageInputStream, true, false);
               nextImageDataBuffer = currentImageReader.read(0, imageReadParam);
+              writer.damageRemoteGraphics(blockX, blockY, blockWidth, blockHeight);
             }
             if (imageInputStream != null)
             {
@@ -357,7 +411,8 @@ public class VTGraphicsLinkClientReader implements Runnable
           {
             imageInputStream = ImageIO.createImageInputStream(limitedInputStream);
             writer.requestInterfaceRefresh();
-            if (connection.getGraphicsControlDataInputStream().read() == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG)
+            int format = connection.getGraphicsControlDataInputStream().read();
+            if (format == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG)
             {
               currentImageReader = jpgImageReader;
             }
@@ -371,7 +426,13 @@ public class VTGraphicsLinkClientReader implements Runnable
             }
             int type = connection.getGraphicsControlDataInputStream().readInt();
             int colors = connection.getGraphicsControlDataInputStream().readInt();
-            int blockCount = connection.getGraphicsControlDataInputStream().readInt();
+            // hybrid frames send their jpg blocks before the png blocks
+            int lossyBlockCount = 0;
+            if (format == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_HYBRID)
+            {
+              lossyBlockCount = connection.getGraphicsControlDataInputStream().readInt();
+            }
+            int blockCount = lossyBlockCount + connection.getGraphicsControlDataInputStream().readInt();
             int blockMaxWidth = connection.getGraphicsControlDataInputStream().readInt();
             int blockMaxHeight = connection.getGraphicsControlDataInputStream().readInt();
             nextImageDataBuffer = VTImageIO.createImage(0, 0, blockMaxWidth, blockMaxHeight, (currentImageReader == jpgImageReader ? (colors > 16 ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_BYTE_GRAY) : type), colors, recyclableNextDataBuffer);
@@ -384,14 +445,24 @@ public class VTGraphicsLinkClientReader implements Runnable
               int blockY = connection.getGraphicsDirectImageDataInputStream().readInt();
               int blockWidth = connection.getGraphicsDirectImageDataInputStream().readInt();
               int blockHeight = connection.getGraphicsDirectImageDataInputStream().readInt();
-              nextImageDataBuffer = VTImageIO.createImage(0, 0, blockWidth, blockHeight, (currentImageReader == jpgImageReader ? (colors > 16 ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_BYTE_GRAY) : type), colors, recyclableNextDataBuffer);
+              ImageReader blockImageReader = i < lossyBlockCount ? jpgImageReader : currentImageReader;
+              if (blockImageReader != currentImageReader)
+              {
+                nextImageDataBuffer = VTImageIO.createImage(0, 0, blockWidth, blockHeight, (colors > 16 ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_BYTE_GRAY), colors, recyclableLossyDataBuffer);
+                recyclableLossyDataBuffer = nextImageDataBuffer.getRaster().getDataBuffer();
+              }
+              else
+              {
+                nextImageDataBuffer = VTImageIO.createImage(0, 0, blockWidth, blockHeight, (currentImageReader == jpgImageReader ? (colors > 16 ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_BYTE_GRAY) : type), colors, recyclableNextDataBuffer);
+              }
               limitedInputStream.size(blockSize);
               incrementalImageReader.setOffsetX(blockX);
               incrementalImageReader.setOffsetY(blockY);
-              ImageReadParam imageReadParam = currentImageReader.getDefaultReadParam();
+              ImageReadParam imageReadParam = blockImageReader.getDefaultReadParam();
               imageReadParam.setDestination(nextImageDataBuffer);
-              currentImageReader.setInput(imageInputStream, true, false);
-              nextImageDataBuffer = currentImageReader.read(0, imageReadParam);
+              blockImageReader.setInput(imageInputStream, true, false);
+              nextImageDataBuffer = blockImageReader.read(0, imageReadParam);
+              writer.damageRemoteGraphics(blockX, blockY, blockWidth, blockHeight);
             }
             if (imageInputStream != null)
             {
@@ -445,6 +516,9 @@ public class VTGraphicsLinkClientReader implements Runnable
             int width = connection.getGraphicsControlDataInputStream().readInt();
             int height = connection.getGraphicsControlDataInputStream().readInt();
             currentImageDataBuffer = VTImageIO.createImage(CUSTOM_CODEC_PADDING_SIZE, CUSTOM_CODEC_PADDING_SIZE, width, height, type, colors, recyclableCurrentDataBuffer);
+            currentImagePadding = CUSTOM_CODEC_PADDING_SIZE;
+            currentImageType = type;
+            currentImageColors = colors;
             recyclableCurrentDataBuffer = currentImageDataBuffer.getRaster().getDataBuffer();
             
             switch (type)
@@ -578,9 +652,104 @@ public class VTGraphicsLinkClientReader implements Runnable
                 vtCustomCodec.decodeFrame24(connection.getGraphicsFastImageDataInputStream(), null, lastImageBufferInt, currentImageDataBuffer.getWidth(), currentImageDataBuffer.getHeight());
               }
             }
+            VTRectangle decodedArea = vtCustomCodec.getDecodedArea();
+            writer.damageRemoteGraphics(decodedArea.x - currentImagePadding, decodedArea.y - currentImagePadding, decodedArea.width, decodedArea.height);
             writer.differenceRemoteGraphics(currentImageDataBuffer);
             break;
           }
+          case VTSystem.VT_GRAPHICS_LINK_IMAGE_MOVE_AREA:
+          {
+            moveArea.x = connection.getGraphicsControlDataInputStream().readInt();
+            moveArea.y = connection.getGraphicsControlDataInputStream().readInt();
+            moveArea.width = connection.getGraphicsControlDataInputStream().readInt();
+            moveArea.height = connection.getGraphicsControlDataInputStream().readInt();
+            int moveX = connection.getGraphicsControlDataInputStream().readInt();
+            int moveY = connection.getGraphicsControlDataInputStream().readInt();
+            if (currentImageDataBuffer != null)
+            {
+              int width = currentImageDataBuffer.getWidth() + currentImagePadding;
+              int height = currentImageDataBuffer.getHeight() + currentImagePadding;
+              DataBuffer dataBuffer = currentImageDataBuffer.getRaster().getDataBuffer();
+              if (dataBuffer.getDataType() == DataBuffer.TYPE_BYTE)
+              {
+                VTImageDataUtils.moveArea(((DataBufferByte) dataBuffer).getData(), 0, width, height, moveArea, moveX, moveY);
+              }
+              else if (dataBuffer.getDataType() == DataBuffer.TYPE_USHORT)
+              {
+                VTImageDataUtils.moveArea(((DataBufferUShort) dataBuffer).getData(), 0, width, height, moveArea, moveX, moveY);
+              }
+              else if (dataBuffer.getDataType() == DataBuffer.TYPE_INT)
+              {
+                VTImageDataUtils.moveArea(((DataBufferInt) dataBuffer).getData(), 0, width, height, moveArea, moveX, moveY);
+              }
+              writer.damageRemoteGraphics(moveArea.x + moveX - currentImagePadding, moveArea.y + moveY - currentImagePadding, moveArea.width, moveArea.height);
+              writer.differenceRemoteGraphics(currentImageDataBuffer);
+            }
+            break;
+          }
+          case VTSystem.VT_GRAPHICS_LINK_IMAGE_DRAW_TILES:
+          {
+            int count = connection.getGraphicsControlDataInputStream().readInt();
+            for (int i = 0; i < count; i++)
+            {
+              int slot = connection.getGraphicsControlDataInputStream().readInt();
+              int tileX = connection.getGraphicsControlDataInputStream().readInt();
+              int tileY = connection.getGraphicsControlDataInputStream().readInt();
+              if (currentImageDataBuffer != null)
+              {
+                int width = currentImageDataBuffer.getWidth() + currentImagePadding;
+                int height = currentImageDataBuffer.getHeight() + currentImagePadding;
+                DataBuffer dataBuffer = currentImageDataBuffer.getRaster().getDataBuffer();
+                if (dataBuffer.getDataType() == DataBuffer.TYPE_BYTE)
+                {
+                  tileCache.drawTile(slot, ((DataBufferByte) dataBuffer).getData(), 0, width, height, tileX, tileY);
+                }
+                else if (dataBuffer.getDataType() == DataBuffer.TYPE_USHORT)
+                {
+                  tileCache.drawTile(slot, ((DataBufferUShort) dataBuffer).getData(), 0, width, height, tileX, tileY);
+                }
+                else if (dataBuffer.getDataType() == DataBuffer.TYPE_INT)
+                {
+                  tileCache.drawTile(slot, ((DataBufferInt) dataBuffer).getData(), 0, width, height, tileX, tileY);
+                }
+                writer.damageRemoteGraphics(tileX - currentImagePadding, tileY - currentImagePadding, VTImageDataTileCache.TILE_SIZE, VTImageDataTileCache.TILE_SIZE);
+              }
+            }
+            if (currentImageDataBuffer != null)
+            {
+              writer.differenceRemoteGraphics(currentImageDataBuffer);
+            }
+            break;
+          }
+          case VTSystem.VT_GRAPHICS_LINK_IMAGE_STORE_TILES:
+          {
+            int count = connection.getGraphicsControlDataInputStream().readInt();
+            for (int i = 0; i < count; i++)
+            {
+              int slot = connection.getGraphicsControlDataInputStream().readInt();
+              int tileX = connection.getGraphicsControlDataInputStream().readInt();
+              int tileY = connection.getGraphicsControlDataInputStream().readInt();
+              if (currentImageDataBuffer != null)
+              {
+                int width = currentImageDataBuffer.getWidth() + currentImagePadding;
+                int height = currentImageDataBuffer.getHeight() + currentImagePadding;
+                DataBuffer dataBuffer = currentImageDataBuffer.getRaster().getDataBuffer();
+                if (dataBuffer.getDataType() == DataBuffer.TYPE_BYTE)
+                {
+                  tileCache.storeTile(slot, ((DataBufferByte) dataBuffer).getData(), 0, width, height, tileX, tileY);
+                }
+                else if (dataBuffer.getDataType() == DataBuffer.TYPE_USHORT)
+                {
+                  tileCache.storeTile(slot, ((DataBufferUShort) dataBuffer).getData(), 0, width, height, tileX, tileY);
+                }
+                else if (dataBuffer.getDataType() == DataBuffer.TYPE_INT)
+                {
+                  tileCache.storeTile(slot, ((DataBufferInt) dataBuffer).getData(), 0, width, height, tileX, tileY);
+                }
+              }
+            }
+            break;
+          }
           case VTSystem.VT_GRAPHICS_LINK_SESSION_FINISHED:
           {
             stopped = true;
@@ -619,6 +788,8 @@ public class VTGraphicsLinkClientReader implements Runnable
         break;
       }
     }
+    recorder.mark();
+    detachRecorder();
     synchronized (session)
     {
       session.notify();
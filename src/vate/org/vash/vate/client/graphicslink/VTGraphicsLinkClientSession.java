@@ -6,6 +6,7 @@ import java.util.concurrent.Future;
 import org.vash.vate.VTSystem;
 import org.vash.vate.client.session.VTClientSession;
 import org.vash.vate.console.VTMainConsole;
+import org.vash.vate.graphics.record.VTGraphicsLinkRecorder;
 import org.vash.vate.reflection.VTReflectionUtils;
 
 public class VTGraphicsLinkClientSession
@@ -147,6 +148,11 @@ public class VTGraphicsLinkClientSession
     writer.setReadOnly(readOnly);
   }
   
+  public VTGraphicsLinkRecorder getRecorder()
+  {
+    return reader.getRecorder();
+  }
+  
   public void waitSession()
   {
     synchronized (this)
@@ -1,5 +1,7 @@
 package org.vash.vate.client.graphicslink;
 
+import org.vash.vate.graphics.record.VTGraphicsLinkRecorder;
+
 public class VTGraphicsLinkClientSessionHandler implements Runnable
 {
   private VTGraphicsLinkClientSession session;
@@ -39,6 +41,11 @@ public class VTGraphicsLinkClientSessionHandler implements Runnable
     session.setReadOnly(readOnly);
   }
   
+  public VTGraphicsLinkRecorder getRecorder()
+  {
+    return session.getRecorder();
+  }
+  
   public void run()
   {
     try
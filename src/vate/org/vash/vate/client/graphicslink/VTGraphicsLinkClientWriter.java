@@ -46,6 +46,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
   public static final int TERMINAL_STATE_IGNORE = 2;
   private volatile boolean stopped;
   private volatile boolean needRefresh;
+  private int refreshAcknowledgements;
   private boolean hasRefresh;
   private boolean hasDifference;
   private boolean open;
@@ -54,6 +55,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
   private boolean refreshInterrupted;
   private boolean synchronousRefresh;
   private boolean drawPointer;
+  private boolean adaptiveQuality;
   private boolean suppressLocalKeyCombinations;
   private boolean ignoreLocalKeyCombinations;
   private boolean hideScrollBars;
@@ -85,6 +87,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
   private VTGraphicsLinkClientRemoteInterfaceKeyListener keyListener;
   private VTGraphicsLinkClientRemoteInterfaceMouseListener mouseListener;
   private VTGraphicsLinkClientRemoteInterfaceMouseMoveListener mouseMotionListener;
+  private VTGraphicsLinkClientInputBatcher inputBatcher;
   private VTGraphicsLinkClientRemoteInterfaceMouseWheelListener mouseWheelListener;
   private VTGraphicsLinkClientRemoteInterfaceRefresher graphicsRefresher;
   private VTAWTControlProvider selfControlProvider;
@@ -118,7 +121,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
       }
     }
   }
-  
+
 //  private class VTGraphicsLinkClientScrollbarsToggler implements Runnable
 //  {
 //    public void run()
@@ -283,6 +286,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
     this.mouseListener = new VTGraphicsLinkClientRemoteInterfaceMouseListener(this);
     this.mouseMotionListener = new VTGraphicsLinkClientRemoteInterfaceMouseMoveListener(this);
     this.mouseWheelListener = new VTGraphicsLinkClientRemoteInterfaceMouseWheelListener(this);
+    this.inputBatcher = new VTGraphicsLinkClientInputBatcher(connection);
     this.graphicsRefresher = new VTGraphicsLinkClientRemoteInterfaceRefresher(this);
     this.colorQuality = VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_216;
     this.screenCaptureMode = VTSystem.VT_GRAPHICS_LINK_IMAGE_CAPTURE_MODE_SCALED_VIEWPORT;
@@ -291,6 +295,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
     this.terminalControlPolicy = TERMINAL_STATE_FOCUSED;
     this.synchronousRefresh = false;
     this.drawPointer = true;
+    this.adaptiveQuality = false;
     this.suppressLocalKeyCombinations = false;
     this.ignoreLocalKeyCombinations = false;
     this.refreshInterrupted = false;
@@ -333,12 +338,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_KEYBOARD_INPUT_KEY_DOWN);
-      connection.getGraphicsControlDataOutputStream().writeInt(keycode);
-      connection.getGraphicsControlDataOutputStream().writeInt(keymodifiers);
-      connection.getGraphicsControlDataOutputStream().writeInt(keylocation);
-      connection.getGraphicsControlDataOutputStream().writeChar(keychar);
-      connection.getGraphicsControlDataOutputStream().flush();
+      inputBatcher.keyPress(keycode, keymodifiers, keylocation, keychar);
     }
     catch (Throwable e)
     {
@@ -350,12 +350,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_KEYBOARD_INPUT_KEY_UP);
-      connection.getGraphicsControlDataOutputStream().writeInt(keycode);
-      connection.getGraphicsControlDataOutputStream().writeInt(keymodifiers);
-      connection.getGraphicsControlDataOutputStream().writeInt(keylocation);
-      connection.getGraphicsControlDataOutputStream().writeChar(keychar);
-      connection.getGraphicsControlDataOutputStream().flush();
+      inputBatcher.keyRelease(keycode, keymodifiers, keylocation, keychar);
     }
     catch (Throwable e)
     {
@@ -397,8 +392,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_CLIPBOARD_CLEAR_REQUEST);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_CLIPBOARD_CLEAR_REQUEST);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
     }
     catch (Throwable e)
     {
@@ -412,8 +410,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
     try
     {
       menuBar.sendLocalClipboardContents();
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_CLIPBOARD_TRANSFER_SEND_REQUEST);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_CLIPBOARD_TRANSFER_SEND_REQUEST);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
       session.getSession().getClipboardTransferTask().joinThread();
       session.getSession().getClipboardTransferTask().setSending(true);
       session.getSession().getClipboardTransferTask().startThread();
@@ -430,8 +431,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
     try
     {
       menuBar.receiveRemoteClipboardContents();
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_CLIPBOARD_TRANSFER_RECEIVE_REQUEST);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_CLIPBOARD_TRANSFER_RECEIVE_REQUEST);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
       session.getSession().getClipboardTransferTask().joinThread();
       session.getSession().getClipboardTransferTask().setSending(false);
       session.getSession().getClipboardTransferTask().startThread();
@@ -447,8 +451,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_CLIPBOARD_TRANSFER_CANCEL_REQUEST);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_CLIPBOARD_TRANSFER_CANCEL_REQUEST);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
       session.getSession().getConnection().closeClipboardStreams();
       session.getSession().getClipboardTransferTask().interruptThread();
       session.getSession().getClipboardTransferTask().joinThread();
@@ -478,6 +485,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
     initialHeight = 0;
     stopped = true;
     needRefresh = false;
+    refreshAcknowledgements = 0;
     hasRefresh = false;
     hasDifference = false;    
     terminalRefreshPolicy = TERMINAL_STATE_VISIBLE;
@@ -486,6 +494,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
     colorQuality = VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_216;
     synchronousRefresh = false;
     drawPointer = true;
+    adaptiveQuality = false;
     screenCaptureMode = VTSystem.VT_GRAPHICS_LINK_IMAGE_CAPTURE_MODE_SCALED_VIEWPORT;
     imageCoding = VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD;
     suppressLocalKeyCombinations = false;
@@ -514,7 +523,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
     }
     keyListener.clearAllPressedKeys();
   }
-  
+
 //  protected void finalize()
 //  {
 //    if (remoteInterface != null && remoteInterface.isAsynchronousRepainterRunning())
@@ -626,6 +635,16 @@ public class VTGraphicsLinkClientWriter implements Runnable
     this.drawPointer = drawPointer;
   }
   
+  public boolean isAdaptiveQuality()
+  {
+    return adaptiveQuality;
+  }
+  
+  public void setAdaptiveQuality(boolean adaptiveQuality)
+  {
+    this.adaptiveQuality = adaptiveQuality;
+  }
+  
   public int getScreenCaptureInterval()
   {
     return screenCaptureInterval;
@@ -679,8 +698,12 @@ public class VTGraphicsLinkClientWriter implements Runnable
       {
         // synchronizeAllRemoteLockingKeys();
         // System.out.println("releaseAllPressedKeys()");
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_ANY_INPUT_RELEASE_ALL_PRESSED_KEYS);
-        connection.getGraphicsControlDataOutputStream().flush();
+        inputBatcher.flush();
+        synchronized (connection.getGraphicsControlDataOutputStream())
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_ANY_INPUT_RELEASE_ALL_PRESSED_KEYS);
+          connection.getGraphicsControlDataOutputStream().flush();
+        }
       }
       catch (Throwable e)
       {
@@ -701,51 +724,32 @@ public class VTGraphicsLinkClientWriter implements Runnable
           case MouseEvent.MOUSE_MOVED:
           case MouseEvent.MOUSE_DRAGGED:
           {
-            connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_MOVE);
-            connection.getGraphicsControlDataOutputStream().writeInt(event.x);
-            connection.getGraphicsControlDataOutputStream().writeInt(event.y);
-            connection.getGraphicsControlDataOutputStream().flush();
+            inputBatcher.mouseMove(event.x, event.y);
             break;
           }
           case MouseEvent.MOUSE_PRESSED:
           {
-            connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_KEY_DOWN);
-            connection.getGraphicsControlDataOutputStream().writeInt(event.button);
-            connection.getGraphicsControlDataOutputStream().flush();
+            inputBatcher.mousePress(event.button);
             break;
           }
           case MouseEvent.MOUSE_RELEASED:
           {
-            connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_KEY_UP);
-            connection.getGraphicsControlDataOutputStream().writeInt(event.button);
-            connection.getGraphicsControlDataOutputStream().flush();
+            inputBatcher.mouseRelease(event.button);
             break;
           }
           case MouseWheelEvent.MOUSE_WHEEL:
           {
-            connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_WHEEL);
-            connection.getGraphicsControlDataOutputStream().writeInt(event.wheel);
-            connection.getGraphicsControlDataOutputStream().flush();
+            inputBatcher.mouseWheel(event.wheel);
             break;
           }
           case KeyEvent.KEY_PRESSED:
           {
-            connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_KEYBOARD_INPUT_KEY_DOWN);
-            connection.getGraphicsControlDataOutputStream().writeInt(event.keyCode);
-            connection.getGraphicsControlDataOutputStream().writeInt(event.keyModifiers);
-            connection.getGraphicsControlDataOutputStream().writeInt(event.keyLocation);
-            connection.getGraphicsControlDataOutputStream().writeChar(event.keyChar);
-            connection.getGraphicsControlDataOutputStream().flush();
+            inputBatcher.keyPress(event.keyCode, event.keyModifiers, event.keyLocation, event.keyChar);
             break;
           }
           case KeyEvent.KEY_RELEASED:
           {
-            connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_KEYBOARD_INPUT_KEY_UP);
-            connection.getGraphicsControlDataOutputStream().writeInt(event.keyCode);
-            connection.getGraphicsControlDataOutputStream().writeInt(event.keyModifiers);
-            connection.getGraphicsControlDataOutputStream().writeInt(event.keyLocation);
-            connection.getGraphicsControlDataOutputStream().writeChar(event.keyChar);
-            connection.getGraphicsControlDataOutputStream().flush();
+            inputBatcher.keyRelease(event.keyCode, event.keyModifiers, event.keyLocation, event.keyChar);
             break;
           }
         }
@@ -844,16 +848,20 @@ public class VTGraphicsLinkClientWriter implements Runnable
     {
       try
       {
-        if (toolkit.getLockingKeyState(keyCode))
+        inputBatcher.flush();
+        synchronized (connection.getGraphicsControlDataOutputStream())
         {
-          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_KEYBOARD_LOCK_KEY_STATE_ON);
-        }
-        else
-        {
-          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_KEYBOARD_LOCK_KEY_STATE_OFF);
+          if (toolkit.getLockingKeyState(keyCode))
+          {
+            connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_KEYBOARD_LOCK_KEY_STATE_ON);
+          }
+          else
+          {
+            connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_KEYBOARD_LOCK_KEY_STATE_OFF);
+          }
+          connection.getGraphicsControlDataOutputStream().writeInt(keyCode);
+          connection.getGraphicsControlDataOutputStream().flush();
         }
-        connection.getGraphicsControlDataOutputStream().writeInt(keyCode);
-        connection.getGraphicsControlDataOutputStream().flush();
       }
       catch (IOException e)
       {
@@ -872,57 +880,60 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_16777216)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_16777216);
-      }
-      else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_32768)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_32768);
-      }
-      else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_216)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_216);
-      }
-      else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_16)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_16);
-      }
-      else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_512)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_512);
-      }
-      else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_4096)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_4096);
-      }
-      else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_4)
+      synchronized (connection.getGraphicsControlDataOutputStream())
       {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_4);
-      }
-      else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_8)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_8);
-      }
-      else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_125)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_125);
-      }
-      else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_27)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_27);
-      }
-      else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_262144)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_262144);
-      }
-      else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_2097152)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_2097152);
-      }
-      else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_64)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_64);
+        if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_16777216)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_16777216);
+        }
+        else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_32768)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_32768);
+        }
+        else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_216)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_216);
+        }
+        else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_16)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_16);
+        }
+        else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_512)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_512);
+        }
+        else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_4096)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_4096);
+        }
+        else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_4)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_4);
+        }
+        else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_8)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_8);
+        }
+        else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_125)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_125);
+        }
+        else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_27)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_27);
+        }
+        else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_262144)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_262144);
+        }
+        else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_2097152)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_2097152);
+        }
+        else if (colorQuality == VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_64)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_COLOR_QUALITY_64);
+        }
       }
     }
     catch (IOException e)
@@ -941,21 +952,24 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      if (imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_PNG)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_PNG);
-      }
-      else if (imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG);
-      }
-      else if (imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD)
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD);
-      }
-      else
+      synchronized (connection.getGraphicsControlDataOutputStream())
       {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD);
+        if (imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_PNG)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_PNG);
+        }
+        else if (imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG);
+        }
+        else if (imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD);
+        }
+        else
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD);
+        }
       }
     }
     catch (IOException e)
@@ -974,8 +988,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_MODE_INTERRUPTED);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_MODE_INTERRUPTED);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
     }
     catch (IOException e)
     {
@@ -993,15 +1010,18 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      if (synchronousRefresh)
+      synchronized (connection.getGraphicsControlDataOutputStream())
       {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_MODE_SYNCHRONOUS);
-        connection.getGraphicsControlDataOutputStream().flush();
-      }
-      else
-      {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_MODE_ASYNCHRONOUS);
-        connection.getGraphicsControlDataOutputStream().flush();
+        if (synchronousRefresh)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_MODE_SYNCHRONOUS);
+          connection.getGraphicsControlDataOutputStream().flush();
+        }
+        else
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_MODE_ASYNCHRONOUS);
+          connection.getGraphicsControlDataOutputStream().flush();
+        }
       }
     }
     catch (IOException e)
@@ -1020,15 +1040,48 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      if (drawPointer)
+      synchronized (connection.getGraphicsControlDataOutputStream())
       {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_DRAW_POINTER_ON);
-        connection.getGraphicsControlDataOutputStream().flush();
+        if (drawPointer)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_DRAW_POINTER_ON);
+          connection.getGraphicsControlDataOutputStream().flush();
+        }
+        else
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_DRAW_POINTER_OFF);
+          connection.getGraphicsControlDataOutputStream().flush();
+        }
       }
-      else
+    }
+    catch (IOException e)
+    {
+      // e.printStackTrace();
+      stopped = true;
+      return;
+    }
+    catch (Throwable e)
+    {
+      return;
+    }
+  }
+  
+  public void synchronizeAdaptiveQuality()
+  {
+    try
+    {
+      synchronized (connection.getGraphicsControlDataOutputStream())
       {
-        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_DRAW_POINTER_OFF);
-        connection.getGraphicsControlDataOutputStream().flush();
+        if (adaptiveQuality)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ADAPTIVE_QUALITY_ON);
+          connection.getGraphicsControlDataOutputStream().flush();
+        }
+        else
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ADAPTIVE_QUALITY_OFF);
+          connection.getGraphicsControlDataOutputStream().flush();
+        }
       }
     }
     catch (IOException e)
@@ -1047,9 +1100,12 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_CAPTURE_INTERVAL_CHANGE);
-      connection.getGraphicsControlDataOutputStream().writeInt(screenCaptureInterval);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_CAPTURE_INTERVAL_CHANGE);
+        connection.getGraphicsControlDataOutputStream().writeInt(screenCaptureInterval);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
     }
     catch (IOException e)
     {
@@ -1070,12 +1126,15 @@ public class VTGraphicsLinkClientWriter implements Runnable
       // System.out.println("VT_GRAPHICS_LINK_GRAPHICS_CAPTURE_AREA_CHANGE:
       // " + captureArea.x + " " + captureArea.y + " " + captureArea.width
       // + " " + captureArea.height);
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_CAPTURE_AREA_CHANGE);
-      connection.getGraphicsControlDataOutputStream().writeInt(captureArea.x);
-      connection.getGraphicsControlDataOutputStream().writeInt(captureArea.y);
-      connection.getGraphicsControlDataOutputStream().writeInt(captureArea.width);
-      connection.getGraphicsControlDataOutputStream().writeInt(captureArea.height);
-      connection.getGraphicsControlDataOutputStream().writeDouble(captureScale);
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_CAPTURE_AREA_CHANGE);
+        connection.getGraphicsControlDataOutputStream().writeInt(captureArea.x);
+        connection.getGraphicsControlDataOutputStream().writeInt(captureArea.y);
+        connection.getGraphicsControlDataOutputStream().writeInt(captureArea.width);
+        connection.getGraphicsControlDataOutputStream().writeInt(captureArea.height);
+        connection.getGraphicsControlDataOutputStream().writeDouble(captureScale);
+      }
     }
     catch (IOException e)
     {
@@ -1093,8 +1152,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_SELECT_DEVICE_NEXT);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_SELECT_DEVICE_NEXT);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
     }
     catch (Throwable e)
     {
@@ -1108,8 +1170,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_SELECT_DEVICE_PREVIOUS);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_SELECT_DEVICE_PREVIOUS);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
     }
     catch (Throwable e)
     {
@@ -1123,8 +1188,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_SELECT_DEVICE_DEFAULT);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_SELECT_DEVICE_DEFAULT);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
     }
     catch (Throwable e)
     {
@@ -1138,8 +1206,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_SELECT_DEVICE_UNIFIED);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_SELECT_DEVICE_UNIFIED);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
     }
     catch (Throwable e)
     {
@@ -1153,8 +1224,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_CLEAR_REQUEST);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_CLEAR_REQUEST);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
     }
     catch (Throwable e)
     {
@@ -1166,10 +1240,22 @@ public class VTGraphicsLinkClientWriter implements Runnable
   
   public void requestRefresh()
   {
+    int acknowledgements;
+    synchronized (this)
+    {
+      acknowledgements = refreshAcknowledgements;
+      refreshAcknowledgements = 0;
+    }
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_REQUEST);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        for (int i = 0; i < acknowledgements; i++)
+        {
+          connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_REQUEST);
+        }
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
     }
     catch (Throwable e)
     {
@@ -1243,6 +1329,22 @@ public class VTGraphicsLinkClientWriter implements Runnable
     }
   }
   
+  public void toggleAdaptiveQuality()
+  {
+    if (adaptiveQuality)
+    {
+      adaptiveQuality = false;
+      menuBar.setAdaptiveQuality(false);
+      synchronizeAdaptiveQuality();
+    }
+    else
+    {
+      adaptiveQuality = true;
+      menuBar.setAdaptiveQuality(true);
+      synchronizeAdaptiveQuality();
+    }
+  }
+  
   public void toggleHideScrollBars()
   {
     Point scrollPosition = scrolled.getScrollPosition();
@@ -1277,8 +1379,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_DRAW_POINTER_INCREASE);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_DRAW_POINTER_INCREASE);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
     }
     catch (Throwable t)
     {
@@ -1290,8 +1395,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_DRAW_POINTER_DECREASE);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_DRAW_POINTER_DECREASE);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
     }
     catch (Throwable t)
     {
@@ -1303,8 +1411,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
   {
     try
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_DRAW_POINTER_NORMALIZE);
-      connection.getGraphicsControlDataOutputStream().flush();
+      synchronized (connection.getGraphicsControlDataOutputStream())
+      {
+        connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_DRAW_POINTER_NORMALIZE);
+        connection.getGraphicsControlDataOutputStream().flush();
+      }
     }
     catch (Throwable t)
     {
@@ -1538,6 +1649,11 @@ public class VTGraphicsLinkClientWriter implements Runnable
     scrolled.doLayout();
   }
   
+  public void damageRemoteGraphics(int x, int y, int width, int height)
+  {
+    remoteInterface.damageArea(x, y, width, height);
+  }
+  
   public void differenceRemoteGraphics(BufferedImage newImageData)
   {
     imageDataBuffer = newImageData;
@@ -1591,9 +1707,10 @@ public class VTGraphicsLinkClientWriter implements Runnable
   
   public void requestInterfaceRefresh()
   {
-    needRefresh = true;
     synchronized (this)
     {
+      refreshAcknowledgements++;
+      needRefresh = true;
       notify();
     }
   }
@@ -1635,7 +1752,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
         }
         remoteInterface.setImage(imageDataBuffer);
         // scrolled.setPreferredSize(scrolled.getSize());
-        remoteInterface.repaint();
+        remoteInterface.repaintDamagedArea();
         // remoteInterface.redraw();
       }
       else if (hasRefresh)
@@ -1645,6 +1762,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
           remoteInterface.interruptAsynchronousRepainter();
         }
         remoteInterface.setImage(imageDataBuffer);
+        remoteInterface.damageArea(0, 0, imageDataBuffer.getWidth(), imageDataBuffer.getHeight());
         // scrolled.setPreferredSize(scrolled.getSize());
         remoteInterface.repaint();
         scrolled.validate();
@@ -1781,6 +1899,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
       session.getSession().getClipboardTransferTask().setOutputStream(connection.getGraphicsClipboardDataOutputStream());
       keyListener.setInterrupted(false);
       keyListener.clearAllPressedKeys();
+      inputBatcher.start(session.getSession().getExecutorService());
       remoteInterface.addKeyListener(keyListener);
       // remoteInterface.addMouseListener(mouseListener);
       remoteInterface.addMouseMotionListener(mouseMotionListener);
@@ -1840,6 +1959,10 @@ public class VTGraphicsLinkClientWriter implements Runnable
         open = true;
         reader.notify();
       }
+      synchronized (this)
+      {
+        refreshAcknowledgements = VTSystem.VT_GRAPHICS_LINK_REFRESH_WINDOW_FRAMES;
+      }
       EventQueue.invokeLater(graphicsRefresher);
     }
     catch (Throwable e)
@@ -1881,6 +2004,7 @@ public class VTGraphicsLinkClientWriter implements Runnable
     {
       remoteInterface.stopAsynchronousRepainter();
     }
+    inputBatcher.stop();
     if (uploadMonitorPanel != null && session.getSession().getClient().getTrafficMonitorService() != null)
     {
       session.getSession().getClient().getTrafficMonitorService().removeUploadMonitorPanel(uploadMonitorPanel);
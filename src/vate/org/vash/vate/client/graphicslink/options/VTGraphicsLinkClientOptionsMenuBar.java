@@ -125,6 +125,11 @@ public class VTGraphicsLinkClientOptionsMenuBar extends MenuBar
     viewMenu.setDrawPointer(drawPointer);
   }
   
+  public void setAdaptiveQuality(boolean adaptiveQuality)
+  {
+    viewMenu.setAdaptiveQuality(adaptiveQuality);
+  }
+  
   public void setScreenCaptureInterval(int screenCaptureInterval)
   {
     viewMenu.setScreenCaptureInterval(screenCaptureInterval);
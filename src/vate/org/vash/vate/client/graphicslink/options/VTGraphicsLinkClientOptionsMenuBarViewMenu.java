@@ -10,6 +10,7 @@ import java.util.Map.Entry;
 
 import org.vash.vate.VTSystem;
 import org.vash.vate.client.graphicslink.VTGraphicsLinkClientWriter;
+import org.vash.vate.client.graphicslink.options.listener.VTGraphicsLinkClientOptionsMenuBarViewMenuAdaptiveQualityOptionsListener;
 import org.vash.vate.client.graphicslink.options.listener.VTGraphicsLinkClientOptionsMenuBarViewMenuClearInterfaceOptionListener;
 import org.vash.vate.client.graphicslink.options.listener.VTGraphicsLinkClientOptionsMenuBarViewMenuCloseTerminalOptionListener;
 import org.vash.vate.client.graphicslink.options.listener.VTGraphicsLinkClientOptionsMenuBarViewMenuColorOptionsListener;
@@ -34,6 +35,7 @@ public class VTGraphicsLinkClientOptionsMenuBarViewMenu extends Menu
 {
   private static final long serialVersionUID = 1L;
   private Menu colorQualityMenu;
+  private Menu qualityControlMenu;
   private Menu refreshModeMenu;
   private Menu drawPointerMenu;
   private Menu drawPointerSizeMenu;
@@ -79,6 +81,8 @@ public class VTGraphicsLinkClientOptionsMenuBarViewMenu extends Menu
   private CheckboxMenuItem synchronousRefreshOption;
   private CheckboxMenuItem showPointerOption;
   private CheckboxMenuItem hidePointerOption;
+  private CheckboxMenuItem manualQualityOption;
+  private CheckboxMenuItem adaptiveQualityOption;
   //private CheckboxMenuItem directCodingOption;
   //private CheckboxMenuItem dynamicCodingOption;
   //private CheckboxMenuItem mixedCodingOption;
@@ -106,6 +110,7 @@ public class VTGraphicsLinkClientOptionsMenuBarViewMenu extends Menu
     super("View");
     // this.writer = writer;
     this.colorQualityMenu = new Menu("Color Quality ");
+    this.qualityControlMenu = new Menu("Quality Control ");
     this.refreshModeMenu = new Menu("Refresh Mode ");
     this.drawPointerMenu = new Menu("Remote Pointer ");
     this.refreshIntervalMenu = new Menu("Refresh Interval ");
@@ -175,6 +180,10 @@ public class VTGraphicsLinkClientOptionsMenuBarViewMenu extends Menu
     this.showPointerOption.addItemListener(new VTGraphicsLinkClientOptionsMenuBarViewMenuDrawPointerOptionsListener(writer, showPointerOption));
     this.hidePointerOption = new CheckboxMenuItem("Hide", false);
     this.hidePointerOption.addItemListener(new VTGraphicsLinkClientOptionsMenuBarViewMenuDrawPointerOptionsListener(writer, hidePointerOption));
+    this.manualQualityOption = new CheckboxMenuItem("Manual", true);
+    this.manualQualityOption.addItemListener(new VTGraphicsLinkClientOptionsMenuBarViewMenuAdaptiveQualityOptionsListener(writer, manualQualityOption));
+    this.adaptiveQualityOption = new CheckboxMenuItem("Adaptive", false);
+    this.adaptiveQualityOption.addItemListener(new VTGraphicsLinkClientOptionsMenuBarViewMenuAdaptiveQualityOptionsListener(writer, adaptiveQualityOption));
     this.increasePointerOption = new MenuItem("Increase");
     this.increasePointerOption.addActionListener(new VTGraphicsLinkClientOptionsMenuBarViewMenuDrawPointerSizeOptionsListener(writer, 1));
     this.decreasePointerOption = new MenuItem("Decrease");
@@ -265,6 +274,8 @@ public class VTGraphicsLinkClientOptionsMenuBarViewMenu extends Menu
     this.refreshModeMenu.add(asynchronousRefreshOption);
     this.refreshModeMenu.add(synchronousRefreshOption);
     this.refreshModeMenu.add(interruptedRefreshOption);
+    this.qualityControlMenu.add(manualQualityOption);
+    this.qualityControlMenu.add(adaptiveQualityOption);
     this.drawPointerMenu.add(showPointerOption);
     this.drawPointerMenu.add(hidePointerOption);
     this.drawPointerMenu.add(drawPointerSizeMenu);
@@ -323,6 +334,7 @@ public class VTGraphicsLinkClientOptionsMenuBarViewMenu extends Menu
     this.add(refreshIntervalMenu);
     this.add(refreshClauseMenu);
     this.add(colorQualityMenu);
+    this.add(qualityControlMenu);
     this.add(captureModeMenu);
     this.add(imageFormatMenu);
     this.add(drawPointerMenu);
@@ -594,6 +606,20 @@ public class VTGraphicsLinkClientOptionsMenuBarViewMenu extends Menu
     }
   }
   
+  public void setAdaptiveQuality(boolean adaptiveQuality)
+  {
+    if (adaptiveQuality)
+    {
+      manualQualityOption.setState(false);
+      adaptiveQualityOption.setState(true);
+    }
+    else
+    {
+      manualQualityOption.setState(true);
+      adaptiveQualityOption.setState(false);
+    }
+  }
+  
   public void setScreenCaptureInterval(int screenCaptureInterval)
   {
     for (Entry<Integer, CheckboxMenuItem> captureIntervalOption : captureIntervalOptions.entrySet())
@@ -0,0 +1,31 @@
+package org.vash.vate.client.graphicslink.options.listener;
+
+import java.awt.CheckboxMenuItem;
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
+
+import org.vash.vate.client.graphicslink.VTGraphicsLinkClientWriter;
+
+public class VTGraphicsLinkClientOptionsMenuBarViewMenuAdaptiveQualityOptionsListener implements ItemListener
+{
+  private CheckboxMenuItem option;
+  private VTGraphicsLinkClientWriter writer;
+  
+  public VTGraphicsLinkClientOptionsMenuBarViewMenuAdaptiveQualityOptionsListener(VTGraphicsLinkClientWriter writer, CheckboxMenuItem option)
+  {
+    this.writer = writer;
+    this.option = option;
+  }
+  
+  public void itemStateChanged(ItemEvent e)
+  {
+    if (e.getStateChange() == ItemEvent.SELECTED)
+    {
+      writer.toggleAdaptiveQuality();
+    }
+    else
+    {
+      option.setState(true);
+    }
+  }
+}
\ No newline at end of file
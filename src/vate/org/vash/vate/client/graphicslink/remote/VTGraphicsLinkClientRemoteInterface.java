@@ -4,10 +4,12 @@ import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.ScrollPane;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.util.concurrent.ExecutorService;
 
 public class VTGraphicsLinkClientRemoteInterface extends Canvas
@@ -16,8 +18,15 @@ public class VTGraphicsLinkClientRemoteInterface extends Canvas
   private volatile boolean updating;
   //private boolean synchronousRefresh = false;
   private BufferedImage sourceImageDataBuffer;
+  private VolatileImage acceleratedImageDataBuffer;
   private ScrollPane scrolled;
   private VTGraphicsLinkClientRemoteInterfaceAsynchronousRepainter repainter;
+  // damaged areas still to be repainted and areas of the accelerated copy still to be updated
+  private final Object damageSynchronizer = new Object();
+  private final Rectangle damagedArea = new Rectangle();
+  private final Rectangle staleArea = new Rectangle();
+  private boolean damaged;
+  private boolean stale;
   
   public VTGraphicsLinkClientRemoteInterface(ExecutorService executorService)
   {
@@ -32,7 +41,11 @@ public class VTGraphicsLinkClientRemoteInterface extends Canvas
   
   public void dispose()
   {
-    
+    if (acceleratedImageDataBuffer != null)
+    {
+      acceleratedImageDataBuffer.flush();
+      acceleratedImageDataBuffer = null;
+    }
   }
   
   public void setImage(BufferedImage image)
@@ -45,6 +58,7 @@ public class VTGraphicsLinkClientRemoteInterface extends Canvas
         try
         {
           sourceImageDataBuffer = image;
+          damageArea(0, 0, image.getWidth(), image.getHeight());
           setSize(nextSize);
           setMaximumSize(nextSize);
           setMinimumSize(nextSize);
@@ -85,14 +99,36 @@ public class VTGraphicsLinkClientRemoteInterface extends Canvas
   
   public void paint(Graphics g)
   {
-    if (sourceImageDataBuffer != null)
+    BufferedImage image = sourceImageDataBuffer;
+    if (image != null)
     {
       Point local = scrolled.getScrollPosition();
       Dimension size = scrolled.getViewportSize();
       Rectangle area = new Rectangle(local.x, local.y, size.width, size.height);
+      Rectangle clip = g.getClipBounds();
+      if (clip != null)
+      {
+        area = area.intersection(clip);
+      }
+      if (area.isEmpty())
+      {
+        return;
+      }
       try
       {
-        g.drawImage(sourceImageDataBuffer, area.x, area.y, area.x + area.width, area.y + area.height, area.x, area.y, area.x + area.width, area.y + area.height, null);
+        for (int i = 0; i < 2; i++)
+        {
+          if (!updateAcceleratedImage(image))
+          {
+            break;
+          }
+          g.drawImage(acceleratedImageDataBuffer, area.x, area.y, area.x + area.width, area.y + area.height, area.x, area.y, area.x + area.width, area.y + area.height, null);
+          if (!acceleratedImageDataBuffer.contentsLost())
+          {
+            return;
+          }
+        }
+        g.drawImage(image, area.x, area.y, area.x + area.width, area.y + area.height, area.x, area.y, area.x + area.width, area.y + area.height, null);
       }
       catch (Throwable t)
       {
@@ -105,6 +141,114 @@ public class VTGraphicsLinkClientRemoteInterface extends Canvas
     }
   }
   
+  // the accelerated copy is only updated where the image changed since it was last drawn
+  private boolean updateAcceleratedImage(BufferedImage image)
+  {
+    if (acceleratedImageDataBuffer == null || acceleratedImageDataBuffer.getWidth() != image.getWidth() || acceleratedImageDataBuffer.getHeight() != image.getHeight() || acceleratedImageDataBuffer.validate(getGraphicsConfiguration()) == VolatileImage.IMAGE_INCOMPATIBLE)
+    {
+      if (acceleratedImageDataBuffer != null)
+      {
+        acceleratedImageDataBuffer.flush();
+      }
+      acceleratedImageDataBuffer = createVolatileImage(image.getWidth(), image.getHeight());
+      if (acceleratedImageDataBuffer == null)
+      {
+        return false;
+      }
+      acceleratedImageDataBuffer.validate(getGraphicsConfiguration());
+      staleImageArea(0, 0, image.getWidth(), image.getHeight());
+    }
+    else if (acceleratedImageDataBuffer.contentsLost())
+    {
+      staleImageArea(0, 0, image.getWidth(), image.getHeight());
+    }
+    Rectangle area = null;
+    synchronized (damageSynchronizer)
+    {
+      if (stale)
+      {
+        area = new Rectangle(staleArea);
+        stale = false;
+      }
+    }
+    if (area != null)
+    {
+      Graphics2D graphics = acceleratedImageDataBuffer.createGraphics();
+      try
+      {
+        graphics.drawImage(image, area.x, area.y, area.x + area.width, area.y + area.height, area.x, area.y, area.x + area.width, area.y + area.height, null);
+      }
+      finally
+      {
+        graphics.dispose();
+      }
+    }
+    return true;
+  }
+  
+  private void staleImageArea(int x, int y, int width, int height)
+  {
+    synchronized (damageSynchronizer)
+    {
+      if (stale)
+      {
+        staleArea.add(new Rectangle(x, y, width, height));
+      }
+      else
+      {
+        staleArea.setBounds(x, y, width, height);
+        stale = true;
+      }
+    }
+  }
+  
+  public void damageArea(int x, int y, int width, int height)
+  {
+    if (width <= 0 || height <= 0)
+    {
+      return;
+    }
+    synchronized (damageSynchronizer)
+    {
+      staleImageArea(x, y, width, height);
+      if (damaged)
+      {
+        damagedArea.add(new Rectangle(x, y, width, height));
+      }
+      else
+      {
+        damagedArea.setBounds(x, y, width, height);
+        damaged = true;
+      }
+    }
+    repainter.damaged();
+  }
+  
+  public boolean isDamaged()
+  {
+    synchronized (damageSynchronizer)
+    {
+      return damaged;
+    }
+  }
+  
+  public void repaintDamagedArea()
+  {
+    Rectangle area = null;
+    synchronized (damageSynchronizer)
+    {
+      if (damaged)
+      {
+        area = new Rectangle(damagedArea);
+        damaged = false;
+      }
+    }
+    if (area != null)
+    {
+      repaint(area.x, area.y, area.width, area.height);
+    }
+  }
+  
   public boolean isUpdating()
   {
     return updating;
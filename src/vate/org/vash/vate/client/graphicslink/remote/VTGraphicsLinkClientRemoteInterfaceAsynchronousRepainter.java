@@ -42,6 +42,14 @@ public class VTGraphicsLinkClientRemoteInterfaceAsynchronousRepainter implements
     }
   }
   
+  public void damaged()
+  {
+    synchronized (this)
+    {
+      notify();
+    }
+  }
+  
   public void resume()
   {
     interrupted = false;
@@ -95,23 +103,20 @@ public class VTGraphicsLinkClientRemoteInterfaceAsynchronousRepainter implements
     {
       while (remoteInterface.isUpdating())
       {
-        while (interrupted)
+        synchronized (this)
         {
-          synchronized (this)
+          while (remoteInterface.isUpdating() && (interrupted || !remoteInterface.isDamaged()))
           {
             wait();
           }
         }
-        if (!interrupted && remoteInterface.isVisible() && remoteInterface.isUpdating())
+        // damage reported while the last repaint was being posted is repainted together
+        if (!interrupted && remoteInterface.isUpdating())
         {
-          remoteInterface.repaint();
-          synchronized (this)
-          {
-            wait(125);
-          }
+          remoteInterface.repaintDamagedArea();
         }
       }
-      
+    
     }
     catch (Throwable e)
     {
@@ -211,6 +211,7 @@ public class VTClientSession
     clientWriter.setStopped(true);
     fileTransferClient.getHandler().getSession().getTransaction().setStopped(true);
     graphicsClient.setStopped(true);
+    graphicsClient.getRecorder().stop();
     pingServiceClient.setStopped(true);
     pingServiceServer.setStopped(true);
     pingServiceClient.ping();
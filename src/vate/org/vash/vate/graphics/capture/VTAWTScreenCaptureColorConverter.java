@@ -0,0 +1,232 @@
+package org.vash.vate.graphics.capture;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+final class VTAWTScreenCaptureColorConverter
+{
+  private static final int PARALLEL_MINIMUM_PIXELS = 256 * 256;
+  private static final int RGB888_XOR_MASK = 0x00FFFFFF;
+  
+  private final ExecutorService executorService;
+  private final VTAWTScreenCaptureColorConverterStripe[] stripes;
+  private final Future<?>[] futures;
+  
+  VTAWTScreenCaptureColorConverter(final ExecutorService executorService)
+  {
+    final int count = executorService != null ? Math.max(1, Runtime.getRuntime().availableProcessors()) : 1;
+    this.executorService = count > 1 ? executorService : null;
+    this.stripes = new VTAWTScreenCaptureColorConverterStripe[count];
+    this.futures = new Future<?>[count];
+    for (int i = 0; i < count; i++)
+    {
+      stripes[i] = new VTAWTScreenCaptureColorConverterStripe();
+    }
+  }
+  
+  // palette index = red * levels * levels + green * levels + blue
+  static final int[] createPaletteTable(final int levels)
+  {
+    final int[] table = new int[768];
+    for (int value = 0; value < 256; value++)
+    {
+      final int level = (value * levels) >> 8;
+      table[value] = level * levels * levels;
+      table[256 + value] = level * levels;
+      table[512 + value] = level;
+    }
+    return table;
+  }
+  
+  static final int[] createPackedTable(final int redMask, final int redShift, final int greenMask, final int greenShift, final int blueMask, final int blueShift)
+  {
+    final int[] table = new int[768];
+    for (int value = 0; value < 256; value++)
+    {
+      table[value] = ((value << 16) & redMask) >> redShift;
+      table[256 + value] = ((value << 8) & greenMask) >> greenShift;
+      table[512 + value] = (value & blueMask) >> blueShift;
+    }
+    return table;
+  }
+  
+  static final byte[] createGrayTable(final int mask, final int shift)
+  {
+    final byte[] table = new byte[256];
+    for (int value = 0; value < 256; value++)
+    {
+      table[value] = (byte) ((value & mask) >> shift);
+    }
+    return table;
+  }
+  
+  final void convert(final int[] source, final int width, final int height, final byte[] destination, final int offset, final int stride, final int[] table)
+  {
+    convert(source, width, height, destination, offset, stride, (Object) table);
+  }
+  
+  final void convert(final int[] source, final int width, final int height, final short[] destination, final int offset, final int stride, final int[] table)
+  {
+    convert(source, width, height, destination, offset, stride, (Object) table);
+  }
+  
+  // a null table only clears the alpha channel
+  final void convert(final int[] source, final int width, final int height, final int[] destination, final int offset, final int stride, final int[] table)
+  {
+    convert(source, width, height, destination, offset, stride, (Object) table);
+  }
+  
+  final void convert(final byte[] source, final int width, final int height, final byte[] destination, final int offset, final int stride, final byte[] table)
+  {
+    convert(source, width, height, destination, offset, stride, (Object) table);
+  }
+  
+  private final void convert(final Object source, final int width, final int height, final Object destination, final int offset, final int stride, final Object table)
+  {
+    if (width <= 0 || height <= 0)
+    {
+      return;
+    }
+    final int count = executorService == null || width * height < PARALLEL_MINIMUM_PIXELS ? 1 : Math.min(stripes.length, height);
+    for (int i = 0; i < count; i++)
+    {
+      final VTAWTScreenCaptureColorConverterStripe stripe = stripes[i];
+      stripe.source = source;
+      stripe.destination = destination;
+      stripe.table = table;
+      stripe.width = width;
+      stripe.offset = offset;
+      stripe.stride = stride;
+      stripe.firstRow = (height * i) / count;
+      stripe.lastRow = (height * (i + 1)) / count;
+    }
+    
+    for (int i = 1; i < count; i++)
+    {
+      try
+      {
+        futures[i] = executorService.submit(stripes[i]);
+      }
+      catch (Throwable t)
+      {
+        futures[i] = null;
+        stripes[i].call();
+      }
+    }
+    stripes[0].call();
+    for (int i = 1; i < count; i++)
+    {
+      if (futures[i] != null)
+      {
+        try
+        {
+          futures[i].get();
+        }
+        catch (Throwable t)
+        {
+          stripes[i].call();
+        }
+        futures[i] = null;
+      }
+    }
+    for (int i = 0; i < count; i++)
+    {
+      stripes[i].source = null;
+      stripes[i].destination = null;
+      stripes[i].table = null;
+    }
+  }
+  
+  private static final class VTAWTScreenCaptureColorConverterStripe implements Callable<Object>
+  {
+    private Object source;
+    private Object destination;
+    private Object table;
+    private int width;
+    private int offset;
+    private int stride;
+    private int firstRow;
+    private int lastRow;
+    
+    public final Object call()
+    {
+      int sourceIndex = firstRow * width;
+      int destinationIndex = offset + (firstRow * stride);
+      if (source instanceof byte[])
+      {
+        final byte[] pixels = (byte[]) source;
+        final byte[] converted = (byte[]) destination;
+        final byte[] levels = (byte[]) table;
+        for (int row = firstRow; row < lastRow; row++)
+        {
+          for (int j = 0; j < width; j++)
+          {
+            converted[destinationIndex + j] = levels[pixels[sourceIndex + j] & 0xFF];
+          }
+          sourceIndex += width;
+          destinationIndex += stride;
+        }
+        return null;
+      }
+      final int[] pixels = (int[]) source;
+      final int[] channels = (int[]) table;
+      if (destination instanceof byte[])
+      {
+        final byte[] converted = (byte[]) destination;
+        for (int row = firstRow; row < lastRow; row++)
+        {
+          for (int j = 0; j < width; j++)
+          {
+            final int pixel = pixels[sourceIndex + j];
+            converted[destinationIndex + j] = (byte) (channels[(pixel >> 16) & 0xFF] + channels[256 + ((pixel >> 8) & 0xFF)] + channels[512 + (pixel & 0xFF)]);
+          }
+          sourceIndex += width;
+          destinationIndex += stride;
+        }
+      }
+      else if (destination instanceof short[])
+      {
+        final short[] converted = (short[]) destination;
+        for (int row = firstRow; row < lastRow; row++)
+        {
+          for (int j = 0; j < width; j++)
+          {
+            final int pixel = pixels[sourceIndex + j];
+            converted[destinationIndex + j] = (short) (channels[(pixel >> 16) & 0xFF] | channels[256 + ((pixel >> 8) & 0xFF)] | channels[512 + (pixel & 0xFF)]);
+          }
+          sourceIndex += width;
+          destinationIndex += stride;
+        }
+      }
+      else if (channels != null)
+      {
+        final int[] converted = (int[]) destination;
+        for (int row = firstRow; row < lastRow; row++)
+        {
+          for (int j = 0; j < width; j++)
+          {
+            final int pixel = pixels[sourceIndex + j];
+            converted[destinationIndex + j] = channels[(pixel >> 16) & 0xFF] | channels[256 + ((pixel >> 8) & 0xFF)] | channels[512 + (pixel & 0xFF)];
+          }
+          sourceIndex += width;
+          destinationIndex += stride;
+        }
+      }
+      else
+      {
+        final int[] converted = (int[]) destination;
+        for (int row = firstRow; row < lastRow; row++)
+        {
+          for (int j = 0; j < width; j++)
+          {
+            converted[destinationIndex + j] = pixels[sourceIndex + j] & RGB888_XOR_MASK;
+          }
+          sourceIndex += width;
+          destinationIndex += stride;
+        }
+      }
+      return null;
+    }
+  }
+}
@@ -15,6 +15,9 @@ import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
 import java.awt.image.DataBufferUShort;
+import java.awt.image.DirectColorModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.concurrent.ExecutorService;
 //import java.awt.peer.RobotPeer;
 //import java.awt.image.WritableRaster;
 //import javax.swing.JLabel;
@@ -86,6 +89,19 @@ public final class VTAWTScreenCaptureProvider
   
   private static final int RGB888_XOR_MASK = 0x00FFFFFF;
   
+  private static final int[] RGB777_TABLE = VTAWTScreenCaptureColorConverter.createPackedTable(RGB777_RED_MASK, 3, RGB777_GREEN_MASK, 2, RGB777_BLUE_MASK, 1);
+  private static final int[] RGB666_TABLE = VTAWTScreenCaptureColorConverter.createPackedTable(RGB666_RED_MASK, 6, RGB666_GREEN_MASK, 4, RGB666_BLUE_MASK, 2);
+  private static final int[] RGB555_TABLE = VTAWTScreenCaptureColorConverter.createPackedTable(RGB555_RED_MASK, 9, RGB555_GREEN_MASK, 6, RGB555_BLUE_MASK, 3);
+  private static final int[] RGB444_TABLE = VTAWTScreenCaptureColorConverter.createPackedTable(RGB444_RED_MASK, 12, RGB444_GREEN_MASK, 8, RGB444_BLUE_MASK, 4);
+  private static final int[] RGB333_TABLE = VTAWTScreenCaptureColorConverter.createPackedTable(RGB333_RED_MASK, 15, RGB333_GREEN_MASK, 10, RGB333_BLUE_MASK, 5);
+  private static final int[] RGB222_TABLE = VTAWTScreenCaptureColorConverter.createPackedTable(RGB222_RED_MASK, 18, RGB222_GREEN_MASK, 12, RGB222_BLUE_MASK, 6);
+  private static final int[] RGB216_TABLE = VTAWTScreenCaptureColorConverter.createPaletteTable(6);
+  private static final int[] RGB125_TABLE = VTAWTScreenCaptureColorConverter.createPaletteTable(5);
+  private static final int[] RGB27_TABLE = VTAWTScreenCaptureColorConverter.createPaletteTable(3);
+  private static final byte[] GRAY16_TABLE = VTAWTScreenCaptureColorConverter.createGrayTable(0xF0, 4);
+  private static final byte[] GRAY8_TABLE = VTAWTScreenCaptureColorConverter.createGrayTable(0xE0, 5);
+  private static final byte[] GRAY4_TABLE = VTAWTScreenCaptureColorConverter.createGrayTable(0xC0, 6);
+  
   private int colorQuality;
   private boolean initialized4ScreenCapture;
   private boolean initialized8ScreenCapture;
@@ -108,8 +124,6 @@ public final class VTAWTScreenCaptureProvider
   private boolean keepRatio = false;
   private boolean forceScaleFactors = false;
   private int padding = 0;
-  private int i;
-  private int red, green, blue;
   private int screenCurrentWidth, screenCurrentHeight;
   private int screenCurrentX, screenCurrentY;
   private int scaledCurrentWidth, scaledCurrentHeight;
@@ -136,6 +150,9 @@ public final class VTAWTScreenCaptureProvider
   private VTDirectRobot directCaptureRobot;
   // private Toolkit toolkit;
   private final VTARGBPixelGrabber pixelGrabber;
+  private final VTAWTScreenCaptureColorConverter colorConverter;
+  private final VTAWTScreenCaptureScaler scaler;
+  private int[] grabbedPixelBufferInt;
   private DataBuffer recyclableSectionDataBufferTrue;
   private DataBuffer recyclableSectionDataBufferGrayscale;
   //private DataBuffer recyclableSectionDataBufferConverted;
@@ -323,8 +340,15 @@ public final class VTAWTScreenCaptureProvider
   }
   
   public VTAWTScreenCaptureProvider()
+  {
+    this(null);
+  }
+  
+  public VTAWTScreenCaptureProvider(final ExecutorService executorService)
   {
     pixelGrabber = new VTARGBPixelGrabber();
+    colorConverter = new VTAWTScreenCaptureColorConverter(executorService);
+    scaler = new VTAWTScreenCaptureScaler(executorService);
     if (VTReflectionUtils.isAWTHeadless())
     {
       return;
@@ -411,6 +435,40 @@ public final class VTAWTScreenCaptureProvider
     return null;
   }
   
+  // the settings that decide the pixels of a capture, so providers with the same settings capture the same frames
+  public final boolean hasSameSettings(final VTAWTScreenCaptureProvider provider)
+  {
+    if (graphicsDevice != provider.graphicsDevice)
+    {
+      if (graphicsDevice == null || provider.graphicsDevice == null || !graphicsDevice.getIDstring().equals(provider.graphicsDevice.getIDstring()))
+      {
+        return false;
+      }
+    }
+    return colorQuality == provider.colorQuality
+    && drawnCursorSize == provider.drawnCursorSize
+    && keepRatio == provider.keepRatio
+    && forceScaleFactors == provider.forceScaleFactors
+    && scaledWidth == provider.scaledWidth
+    && scaledHeight == provider.scaledHeight
+    && scaleFactorX == provider.scaleFactorX
+    && scaleFactorY == provider.scaleFactorY;
+  }
+  
+  // only for providers that have not captured yet, the capture robots are created for the copied device
+  public final void copySettings(final VTAWTScreenCaptureProvider provider)
+  {
+    graphicsDevice = provider.graphicsDevice;
+    colorQuality = provider.colorQuality;
+    drawnCursorSize = provider.drawnCursorSize;
+    keepRatio = provider.keepRatio;
+    forceScaleFactors = provider.forceScaleFactors;
+    scaledWidth = provider.scaledWidth;
+    scaledHeight = provider.scaledHeight;
+    scaleFactorX = provider.scaleFactorX;
+    scaleFactorY = provider.scaleFactorY;
+  }
+  
   public final Dimension getCurrentScaledSize()
   {
     if (isScaling())
@@ -2404,25 +2462,11 @@ public final class VTAWTScreenCaptureProvider
       return null;
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, true);
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
     sectionPixelBufferByte = ((DataBufferByte) screenCapture.getRaster().getDataBuffer()).getData();
     
     pixelBufferByte = ((DataBufferByte) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int startOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int currentWidth = 0;
-    int currentHeight = 0;
-    
-    for (i = 0; i < pixelDataLength; i++, currentWidth++)
-    {
-      if (currentWidth == captureArea.getWidth())
-      {
-        currentWidth = 0;
-        currentHeight += screenCurrentImage.getWidth() + padding;
-      }
-      
-      pixelBufferByte[startOffset + currentWidth + currentHeight] = (byte) ((sectionPixelBufferByte[i] & 0xC0) >> 6);
-    }
+    colorConverter.convert(sectionPixelBufferByte, captureArea.width, captureArea.height, pixelBufferByte, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, GRAY4_TABLE);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -2443,7 +2487,7 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
@@ -2465,25 +2509,11 @@ public final class VTAWTScreenCaptureProvider
       return null;
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, true);
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
     sectionPixelBufferByte = ((DataBufferByte) screenCapture.getRaster().getDataBuffer()).getData();
     
     pixelBufferByte = ((DataBufferByte) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int startOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int currentWidth = 0;
-    int currentHeight = 0;
-    
-    for (i = 0; i < pixelDataLength; i++, currentWidth++)
-    {
-      if (currentWidth == captureArea.getWidth())
-      {
-        currentWidth = 0;
-        currentHeight += screenCurrentImage.getWidth() + padding;
-      }
-      
-      pixelBufferByte[startOffset + currentWidth + currentHeight] = (byte) ((sectionPixelBufferByte[i] & 0xE0) >> 5);
-    }
+    colorConverter.convert(sectionPixelBufferByte, captureArea.width, captureArea.height, pixelBufferByte, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, GRAY8_TABLE);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -2504,7 +2534,7 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
@@ -2526,25 +2556,11 @@ public final class VTAWTScreenCaptureProvider
       return null;
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, true);
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
     sectionPixelBufferByte = ((DataBufferByte) screenCapture.getRaster().getDataBuffer()).getData();
     
     pixelBufferByte = ((DataBufferByte) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int startOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int currentWidth = 0;
-    int currentHeight = 0;
-    
-    for (i = 0; i < pixelDataLength; i++, currentWidth++)
-    {
-      if (currentWidth == captureArea.getWidth())
-      {
-        currentWidth = 0;
-        currentHeight += screenCurrentImage.getWidth() + padding;
-      }
-      
-      pixelBufferByte[startOffset + currentWidth + currentHeight] = (byte) ((sectionPixelBufferByte[i] & 0xF0) >> 4);
-    }
+    colorConverter.convert(sectionPixelBufferByte, captureArea.width, captureArea.height, pixelBufferByte, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, GRAY16_TABLE);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -2565,7 +2581,7 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
@@ -2588,45 +2604,11 @@ public final class VTAWTScreenCaptureProvider
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, false);
     
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
-    if (screenCapture.getType() == BufferedImage.TYPE_INT_RGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
-    {
-      sectionPixelBufferInt = ((DataBufferInt) screenCapture.getRaster().getDataBuffer()).getData();
-    }
-    else
-    {
-      pixelGrabber.setImage(screenCapture);
-      if (sectionPixelBufferInt != null && sectionPixelBufferInt.length >= pixelDataLength)
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels(sectionPixelBufferInt);
-      }
-      else
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels();
-      }
-      pixelGrabber.dispose();
-    }
+    sectionPixelBufferInt = grabPixels(screenCapture);
     
     pixelBufferByte = ((DataBufferByte) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int startOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int currentWidth = 0;
-    int currentHeight = 0;
-    
-    for (i = 0; i < pixelDataLength; i++, currentWidth++)
-    {
-      if (currentWidth == captureArea.getWidth())
-      {
-        currentWidth = 0;
-        currentHeight += screenCurrentImage.getWidth() + padding;
-      }
-      
-      red = (((((sectionPixelBufferInt[i] & RGB888_RED_MASK) >> 16) * 6) >> 8) * 36);
-      green = (((((sectionPixelBufferInt[i] & RGB888_GREEN_MASK) >> 8) * 6) >> 8) * 6);
-      blue = (((((sectionPixelBufferInt[i]) & RGB888_BLUE_MASK) * 6) >> 8));
-      
-      pixelBufferByte[startOffset + currentWidth + currentHeight] = (byte) (red + green + blue);
-    }
+    colorConverter.convert(sectionPixelBufferInt, captureArea.width, captureArea.height, pixelBufferByte, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, RGB216_TABLE);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -2647,7 +2629,7 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
@@ -2669,45 +2651,11 @@ public final class VTAWTScreenCaptureProvider
       return null;
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, false);
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
-    if (screenCapture.getType() == BufferedImage.TYPE_INT_RGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
-    {
-      sectionPixelBufferInt = ((DataBufferInt) screenCapture.getRaster().getDataBuffer()).getData();
-    }
-    else
-    {
-      pixelGrabber.setImage(screenCapture);
-      if (sectionPixelBufferInt != null && sectionPixelBufferInt.length >= pixelDataLength)
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels(sectionPixelBufferInt);
-      }
-      else
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels();
-      }
-      pixelGrabber.dispose();
-    }
+    sectionPixelBufferInt = grabPixels(screenCapture);
     
     pixelBufferByte = ((DataBufferByte) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int startOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int currentWidth = 0;
-    int currentHeight = 0;
-    
-    for (i = 0; i < pixelDataLength; i++, currentWidth++)
-    {
-      if (currentWidth == captureArea.getWidth())
-      {
-        currentWidth = 0;
-        currentHeight += screenCurrentImage.getWidth() + padding;
-      }
-      
-      red = ((sectionPixelBufferInt[i] & RGB222_RED_MASK) >> 18);
-      green = ((sectionPixelBufferInt[i] & RGB222_GREEN_MASK) >> 12);
-      blue = ((sectionPixelBufferInt[i] & RGB222_BLUE_MASK) >> 6);
-      
-      pixelBufferByte[startOffset + currentWidth + currentHeight] = (byte) (red + green + blue);
-    }
+    colorConverter.convert(sectionPixelBufferInt, captureArea.width, captureArea.height, pixelBufferByte, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, RGB222_TABLE);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -2728,7 +2676,7 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
@@ -2750,45 +2698,11 @@ public final class VTAWTScreenCaptureProvider
       return null;
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, false);
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
-    if (screenCapture.getType() == BufferedImage.TYPE_INT_RGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
-    {
-      sectionPixelBufferInt = ((DataBufferInt) screenCapture.getRaster().getDataBuffer()).getData();
-    }
-    else
-    {
-      pixelGrabber.setImage(screenCapture);
-      if (sectionPixelBufferInt != null && sectionPixelBufferInt.length >= pixelDataLength)
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels(sectionPixelBufferInt);
-      }
-      else
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels();
-      }
-      pixelGrabber.dispose();
-    }
+    sectionPixelBufferInt = grabPixels(screenCapture);
     
     pixelBufferShort = ((DataBufferUShort) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int startOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int currentWidth = 0;
-    int currentHeight = 0;
-    
-    for (i = 0; i < pixelDataLength; i++, currentWidth++)
-    {
-      if (currentWidth == captureArea.getWidth())
-      {
-        currentWidth = 0;
-        currentHeight += screenCurrentImage.getWidth() + padding;
-      }
-      
-      red = ((sectionPixelBufferInt[i] & RGB333_RED_MASK) >> 15);
-      green = ((sectionPixelBufferInt[i] & RGB333_GREEN_MASK) >> 10);
-      blue = ((sectionPixelBufferInt[i] & RGB333_BLUE_MASK) >> 5);
-      
-      pixelBufferShort[startOffset + currentWidth + currentHeight] = (short) (red | green | blue);
-    }
+    colorConverter.convert(sectionPixelBufferInt, captureArea.width, captureArea.height, pixelBufferShort, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, RGB333_TABLE);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -2809,7 +2723,7 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
@@ -2831,45 +2745,11 @@ public final class VTAWTScreenCaptureProvider
       return null;
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, false);
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
-    if (screenCapture.getType() == BufferedImage.TYPE_INT_RGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
-    {
-      sectionPixelBufferInt = ((DataBufferInt) screenCapture.getRaster().getDataBuffer()).getData();
-    }
-    else
-    {
-      pixelGrabber.setImage(screenCapture);
-      if (sectionPixelBufferInt != null && sectionPixelBufferInt.length >= pixelDataLength)
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels(sectionPixelBufferInt);
-      }
-      else
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels();
-      }
-      pixelGrabber.dispose();
-    }
+    sectionPixelBufferInt = grabPixels(screenCapture);
     
     pixelBufferShort = ((DataBufferUShort) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int startOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int currentWidth = 0;
-    int currentHeight = 0;
-    
-    for (i = 0; i < pixelDataLength; i++, currentWidth++)
-    {
-      if (currentWidth == captureArea.getWidth())
-      {
-        currentWidth = 0;
-        currentHeight += screenCurrentImage.getWidth() + padding;
-      }
-      
-      red = ((sectionPixelBufferInt[i] & RGB444_RED_MASK) >> 12);
-      green = ((sectionPixelBufferInt[i] & RGB444_GREEN_MASK) >> 8);
-      blue = ((sectionPixelBufferInt[i] & RGB444_BLUE_MASK) >> 4);
-      
-      pixelBufferShort[startOffset + currentWidth + currentHeight] = (short) (red | green | blue);
-    }
+    colorConverter.convert(sectionPixelBufferInt, captureArea.width, captureArea.height, pixelBufferShort, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, RGB444_TABLE);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -2890,7 +2770,7 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
@@ -2912,45 +2792,11 @@ public final class VTAWTScreenCaptureProvider
       return null;
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, false);
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
-    if (screenCapture.getType() == BufferedImage.TYPE_INT_RGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
-    {
-      sectionPixelBufferInt = ((DataBufferInt) screenCapture.getRaster().getDataBuffer()).getData();
-    }
-    else
-    {
-      pixelGrabber.setImage(screenCapture);
-      if (sectionPixelBufferInt != null && sectionPixelBufferInt.length >= pixelDataLength)
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels(sectionPixelBufferInt);
-      }
-      else
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels();
-      }
-      pixelGrabber.dispose();
-    }
+    sectionPixelBufferInt = grabPixels(screenCapture);
     
     pixelBufferShort = ((DataBufferUShort) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int startOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int currentWidth = 0;
-    int currentHeight = 0;
-    
-    for (i = 0; i < pixelDataLength; i++, currentWidth++)
-    {
-      if (currentWidth == captureArea.getWidth())
-      {
-        currentWidth = 0;
-        currentHeight += screenCurrentImage.getWidth() + padding;
-      }
-      
-      red = ((sectionPixelBufferInt[i] & RGB555_RED_MASK) >> 9);
-      green = ((sectionPixelBufferInt[i] & RGB555_GREEN_MASK) >> 6);
-      blue = ((sectionPixelBufferInt[i] & RGB555_BLUE_MASK) >> 3);
-      
-      pixelBufferShort[startOffset + currentWidth + currentHeight] = (short) (red | green | blue);
-    }
+    colorConverter.convert(sectionPixelBufferInt, captureArea.width, captureArea.height, pixelBufferShort, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, RGB555_TABLE);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -2971,7 +2817,7 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
@@ -2993,52 +2839,11 @@ public final class VTAWTScreenCaptureProvider
       return null;
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, false);
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
-    if (screenCapture.getType() == BufferedImage.TYPE_INT_RGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
-    {
-      sectionPixelBufferInt = ((DataBufferInt) screenCapture.getRaster().getDataBuffer()).getData();
-    }
-    else
-    {
-      pixelGrabber.setImage(screenCapture);
-      if (sectionPixelBufferInt != null && sectionPixelBufferInt.length >= pixelDataLength)
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels(sectionPixelBufferInt);
-      }
-      else
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels();
-      }
-      pixelGrabber.dispose();
-    }
-    
-    // clear alpha channel
-    int length = screenCapture.getWidth() * screenCapture.getHeight();
-    for (int i = 0; i < length; i++)
-    {
-      sectionPixelBufferInt[i] &= RGB888_XOR_MASK;
-    }
+    sectionPixelBufferInt = grabPixels(screenCapture);
     
     pixelBufferInt = ((DataBufferInt) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int startOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int currentWidth = 0;
-    int currentHeight = 0;
-    
-    for (i = 0; i < pixelDataLength; i++, currentWidth++)
-    {
-      if (currentWidth == captureArea.getWidth())
-      {
-        currentWidth = 0;
-        currentHeight += screenCurrentImage.getWidth() + padding;
-      }
-      
-      red = ((sectionPixelBufferInt[i] & RGB666_RED_MASK) >> 6);
-      green = ((sectionPixelBufferInt[i] & RGB666_GREEN_MASK) >> 4);
-      blue = ((sectionPixelBufferInt[i] & RGB666_BLUE_MASK) >> 2);
-      
-      pixelBufferInt[startOffset + currentWidth + currentHeight] = (red | green | blue);
-    }
+    colorConverter.convert(sectionPixelBufferInt, captureArea.width, captureArea.height, pixelBufferInt, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, RGB666_TABLE);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -3059,7 +2864,7 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
@@ -3081,52 +2886,11 @@ public final class VTAWTScreenCaptureProvider
       return null;
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, false);
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
-    if (screenCapture.getType() == BufferedImage.TYPE_INT_RGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
-    {
-      sectionPixelBufferInt = ((DataBufferInt) screenCapture.getRaster().getDataBuffer()).getData();
-    }
-    else
-    {
-      pixelGrabber.setImage(screenCapture);
-      if (sectionPixelBufferInt != null && sectionPixelBufferInt.length >= pixelDataLength)
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels(sectionPixelBufferInt);
-      }
-      else
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels();
-      }
-      pixelGrabber.dispose();
-    }
-    
-    // clear alpha channel
-    int length = screenCapture.getWidth() * screenCapture.getHeight();
-    for (int i = 0; i < length; i++)
-    {
-      sectionPixelBufferInt[i] &= RGB888_XOR_MASK;
-    }
+    sectionPixelBufferInt = grabPixels(screenCapture);
     
     pixelBufferInt = ((DataBufferInt) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int startOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int currentWidth = 0;
-    int currentHeight = 0;
-    
-    for (i = 0; i < pixelDataLength; i++, currentWidth++)
-    {
-      if (currentWidth == captureArea.getWidth())
-      {
-        currentWidth = 0;
-        currentHeight += screenCurrentImage.getWidth() + padding;
-      }
-      
-      red = ((sectionPixelBufferInt[i] & RGB777_RED_MASK) >> 3);
-      green = ((sectionPixelBufferInt[i] & RGB777_GREEN_MASK) >> 2);
-      blue = ((sectionPixelBufferInt[i] & RGB777_BLUE_MASK) >> 1);
-      
-      pixelBufferInt[startOffset + currentWidth + currentHeight] = (red | green | blue);
-    }
+    colorConverter.convert(sectionPixelBufferInt, captureArea.width, captureArea.height, pixelBufferInt, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, RGB777_TABLE);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -3147,7 +2911,7 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
@@ -3169,44 +2933,11 @@ public final class VTAWTScreenCaptureProvider
       return null;
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, false);
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
-    if (screenCapture.getType() == BufferedImage.TYPE_INT_RGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
-    {
-      sectionPixelBufferInt = ((DataBufferInt) screenCapture.getRaster().getDataBuffer()).getData();
-    }
-    else
-    {
-      pixelGrabber.setImage(screenCapture);
-      if (sectionPixelBufferInt != null && sectionPixelBufferInt.length >= pixelDataLength)
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels(sectionPixelBufferInt);
-      }
-      else
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels();
-      }
-      pixelGrabber.dispose();
-    }
-    
-    // clear alpha channel
-    int length = screenCapture.getWidth() * screenCapture.getHeight();
-    for (int i = 0; i < length; i++)
-    {
-      sectionPixelBufferInt[i] &= RGB888_XOR_MASK;
-    }
+    sectionPixelBufferInt = grabPixels(screenCapture);
     
     pixelBufferInt = ((DataBufferInt) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int destinationOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int destinationIndex = destinationOffset;
-    int sourceIndex = 0;
-    
-    for (int currentHeight = 0; currentHeight < captureArea.height; currentHeight++)
-    {
-      System.arraycopy(sectionPixelBufferInt, sourceIndex, pixelBufferInt, destinationIndex, captureArea.width);
-      sourceIndex += captureArea.width;
-      destinationIndex += screenCurrentImage.getWidth() + padding;
-    }
+    colorConverter.convert(sectionPixelBufferInt, captureArea.width, captureArea.height, pixelBufferInt, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, null);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -3227,7 +2958,7 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
@@ -3249,44 +2980,11 @@ public final class VTAWTScreenCaptureProvider
       return null;
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, false);
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
-    if (screenCapture.getType() == BufferedImage.TYPE_INT_RGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
-    {
-      sectionPixelBufferInt = ((DataBufferInt) screenCapture.getRaster().getDataBuffer()).getData();
-    }
-    else
-    {
-      pixelGrabber.setImage(screenCapture);
-      if (sectionPixelBufferInt != null && sectionPixelBufferInt.length >= pixelDataLength)
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels(sectionPixelBufferInt);
-      }
-      else
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels();
-      }
-      pixelGrabber.dispose();
-    }
+    sectionPixelBufferInt = grabPixels(screenCapture);
     
     pixelBufferByte = ((DataBufferByte) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int startOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int currentWidth = 0;
-    int currentHeight = 0;
-    for (i = 0; i < pixelDataLength; i++, currentWidth++)
-    {
-      if (currentWidth == captureArea.getWidth())
-      {
-        currentWidth = 0;
-        currentHeight += screenCurrentImage.getWidth() + padding;
-      }
-      
-      red = (((((sectionPixelBufferInt[i] & RGB888_RED_MASK) >> 16) * 5) >> 8) * 25);
-      green = (((((sectionPixelBufferInt[i] & RGB888_GREEN_MASK) >> 8) * 5) >> 8) * 5);
-      blue = (((((sectionPixelBufferInt[i]) & RGB888_BLUE_MASK) * 5) >> 8));
-      
-      pixelBufferByte[startOffset + currentWidth + currentHeight] = (byte) (red + green + blue);
-    }
+    colorConverter.convert(sectionPixelBufferInt, captureArea.width, captureArea.height, pixelBufferByte, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, RGB125_TABLE);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -3307,7 +3005,7 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
@@ -3329,44 +3027,11 @@ public final class VTAWTScreenCaptureProvider
       return null;
     }
     BufferedImage screenCapture = createScreenCapture(captureArea, false);
-    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
-    if (screenCapture.getType() == BufferedImage.TYPE_INT_RGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB || screenCapture.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
-    {
-      sectionPixelBufferInt = ((DataBufferInt) screenCapture.getRaster().getDataBuffer()).getData();
-    }
-    else
-    {
-      pixelGrabber.setImage(screenCapture);
-      if (sectionPixelBufferInt != null && sectionPixelBufferInt.length >= pixelDataLength)
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels(sectionPixelBufferInt);
-      }
-      else
-      {
-        sectionPixelBufferInt = pixelGrabber.getPixels();
-      }
-      pixelGrabber.dispose();
-    }
+    sectionPixelBufferInt = grabPixels(screenCapture);
     
     pixelBufferByte = ((DataBufferByte) screenCurrentImage.getRaster().getDataBuffer()).getData();
     
-    int startOffset = captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding);
-    int currentWidth = 0;
-    int currentHeight = 0;
-    for (i = 0; i < pixelDataLength; i++, currentWidth++)
-    {
-      if (currentWidth == captureArea.getWidth())
-      {
-        currentWidth = 0;
-        currentHeight += screenCurrentImage.getWidth() + padding;
-      }
-      
-      red = (((((sectionPixelBufferInt[i] & RGB888_RED_MASK) >> 16) * 3) >> 8) * 9);
-      green = (((((sectionPixelBufferInt[i] & RGB888_GREEN_MASK) >> 8) * 3) >> 8) * 3);
-      blue = (((((sectionPixelBufferInt[i]) & RGB888_BLUE_MASK) * 3) >> 8));
-      
-      pixelBufferByte[startOffset + currentWidth + currentHeight] = (byte) (red + green + blue);
-    }
+    colorConverter.convert(sectionPixelBufferInt, captureArea.width, captureArea.height, pixelBufferByte, captureArea.x + padding + (screenCurrentImage.getWidth() + padding) * (captureArea.y + padding), screenCurrentImage.getWidth() + padding, RGB27_TABLE);
     
     if (sectionCurrentImageTrue != screenCapture && screenCapture != sectionCurrentImageGrayscale)
     {
@@ -3387,11 +3052,84 @@ public final class VTAWTScreenCaptureProvider
     }
     else
     {
-      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      scaleScreenCapture(originalArea, captureArea);
       return scaledCurrentImage;
     }
   }
   
+  private final void scaleScreenCapture(final Rectangle originalArea, final Rectangle captureArea)
+  {
+    final Object source = getPixelData(screenCurrentImage.getRaster().getDataBuffer());
+    final Object destination = getPixelData(scaledCurrentImage.getRaster().getDataBuffer());
+    if (source == null || destination == null || source.getClass() != destination.getClass())
+    {
+      scaledCurrentImageGraphics.drawImage(screenCurrentImage, originalArea.x, originalArea.y, originalArea.x + originalArea.width, originalArea.y + originalArea.height, captureArea.x, captureArea.y, captureArea.x + captureArea.width, captureArea.y + captureArea.height, null);
+      return;
+    }
+    final int sourceStride = screenCurrentImage.getWidth() + padding;
+    final int destinationStride = scaledCurrentImage.getWidth() + padding;
+    scaler.scale(source, padding + (padding * sourceStride), sourceStride, captureArea.x, captureArea.y, captureArea.width, captureArea.height, destination, padding + (padding * destinationStride), destinationStride, originalArea.x, originalArea.y, originalArea.width, originalArea.height);
+  }
+  
+  private static final Object getPixelData(final DataBuffer dataBuffer)
+  {
+    if (dataBuffer instanceof DataBufferByte)
+    {
+      return ((DataBufferByte) dataBuffer).getData();
+    }
+    if (dataBuffer instanceof DataBufferUShort)
+    {
+      return ((DataBufferUShort) dataBuffer).getData();
+    }
+    if (dataBuffer instanceof DataBufferInt)
+    {
+      return ((DataBufferInt) dataBuffer).getData();
+    }
+    return null;
+  }
+  
+  private final int[] grabPixels(final BufferedImage screenCapture)
+  {
+    if (isPackedRGB(screenCapture))
+    {
+      return ((DataBufferInt) screenCapture.getRaster().getDataBuffer()).getData();
+    }
+    int pixelDataLength = (screenCapture.getWidth() * screenCapture.getHeight());
+    pixelGrabber.setImage(screenCapture);
+    if (grabbedPixelBufferInt != null && grabbedPixelBufferInt.length >= pixelDataLength)
+    {
+      grabbedPixelBufferInt = pixelGrabber.getPixels(grabbedPixelBufferInt);
+    }
+    else
+    {
+      grabbedPixelBufferInt = pixelGrabber.getPixels();
+    }
+    pixelGrabber.dispose();
+    return grabbedPixelBufferInt;
+  }
+  
+  private static final boolean isPackedRGB(final BufferedImage image)
+  {
+    if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB || image.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
+    {
+      return true;
+    }
+    // robots may hand back custom typed images that still hold plain rgb ints
+    if (!(image.getRaster().getDataBuffer() instanceof DataBufferInt) || !(image.getColorModel() instanceof DirectColorModel) || !(image.getSampleModel() instanceof SinglePixelPackedSampleModel))
+    {
+      return false;
+    }
+    DirectColorModel colorModel = (DirectColorModel) image.getColorModel();
+    SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) image.getSampleModel();
+    return colorModel.getRedMask() == RGB888_RED_MASK
+    && colorModel.getGreenMask() == RGB888_GREEN_MASK
+    && colorModel.getBlueMask() == RGB888_BLUE_MASK
+    && sampleModel.getScanlineStride() == image.getWidth()
+    && image.getRaster().getSampleModelTranslateX() == 0
+    && image.getRaster().getSampleModelTranslateY() == 0
+    && image.getRaster().getDataBuffer().getOffset() == 0;
+  }
+  
   private final BufferedImage createScreenCapture(final Rectangle captureArea, final boolean grayscale)
   {
     BufferedImage screenCapture;
@@ -0,0 +1,184 @@
+package org.vash.vate.graphics.capture;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+final class VTAWTScreenCaptureScaler
+{
+  private static final int PARALLEL_MINIMUM_PIXELS = 256 * 256;
+  
+  private final ExecutorService executorService;
+  private final VTAWTScreenCaptureScalerStripe[] stripes;
+  private final Future<?>[] futures;
+  private int[] columns = new int[0];
+  private int[] rows = new int[0];
+  private int columnsSourceX = -1;
+  private int columnsSourceWidth = -1;
+  private int columnsWidth = -1;
+  private int rowsSourceY = -1;
+  private int rowsSourceHeight = -1;
+  private int rowsHeight = -1;
+  
+  VTAWTScreenCaptureScaler(final ExecutorService executorService)
+  {
+    final int count = executorService != null ? Math.max(1, Runtime.getRuntime().availableProcessors()) : 1;
+    this.executorService = count > 1 ? executorService : null;
+    this.stripes = new VTAWTScreenCaptureScalerStripe[count];
+    this.futures = new Future<?>[count];
+    for (int i = 0; i < count; i++)
+    {
+      stripes[i] = new VTAWTScreenCaptureScalerStripe();
+    }
+  }
+  
+  // nearest neighbour sampling at the pixel centers, like drawImage with the capture rendering hints
+  private static final void sample(final int[] table, final int source, final int sourceLength, final int length)
+  {
+    for (int i = 0; i < length; i++)
+    {
+      table[i] = source + (int) (((2L * i + 1) * sourceLength) / (2L * length));
+    }
+  }
+  
+  final void scale(final Object source, final int sourceOffset, final int sourceStride, final int sourceX, final int sourceY, final int sourceWidth, final int sourceHeight, final Object destination, final int destinationOffset, final int destinationStride, final int x, final int y, final int width, final int height)
+  {
+    if (width <= 0 || height <= 0 || sourceWidth <= 0 || sourceHeight <= 0)
+    {
+      return;
+    }
+    if (columnsSourceX != sourceX || columnsSourceWidth != sourceWidth || columnsWidth != width)
+    {
+      if (columns.length < width)
+      {
+        columns = new int[width];
+      }
+      sample(columns, sourceX, sourceWidth, width);
+      columnsSourceX = sourceX;
+      columnsSourceWidth = sourceWidth;
+      columnsWidth = width;
+    }
+    if (rowsSourceY != sourceY || rowsSourceHeight != sourceHeight || rowsHeight != height)
+    {
+      if (rows.length < height)
+      {
+        rows = new int[height];
+      }
+      sample(rows, sourceY, sourceHeight, height);
+      rowsSourceY = sourceY;
+      rowsSourceHeight = sourceHeight;
+      rowsHeight = height;
+    }
+    final int count = executorService == null || width * height < PARALLEL_MINIMUM_PIXELS ? 1 : Math.min(stripes.length, height);
+    for (int i = 0; i < count; i++)
+    {
+      final VTAWTScreenCaptureScalerStripe stripe = stripes[i];
+      stripe.source = source;
+      stripe.destination = destination;
+      stripe.columns = columns;
+      stripe.rows = rows;
+      stripe.sourceOffset = sourceOffset;
+      stripe.sourceStride = sourceStride;
+      stripe.destinationOffset = destinationOffset + x + (y * destinationStride);
+      stripe.destinationStride = destinationStride;
+      stripe.width = width;
+      stripe.firstRow = (height * i) / count;
+      stripe.lastRow = (height * (i + 1)) / count;
+    }
+    
+    for (int i = 1; i < count; i++)
+    {
+      try
+      {
+        futures[i] = executorService.submit(stripes[i]);
+      }
+      catch (Throwable t)
+      {
+        futures[i] = null;
+        stripes[i].call();
+      }
+    }
+    stripes[0].call();
+    for (int i = 1; i < count; i++)
+    {
+      if (futures[i] != null)
+      {
+        try
+        {
+          futures[i].get();
+        }
+        catch (Throwable t)
+        {
+          stripes[i].call();
+        }
+        futures[i] = null;
+      }
+    }
+    for (int i = 0; i < count; i++)
+    {
+      stripes[i].source = null;
+      stripes[i].destination = null;
+    }
+  }
+  
+  private static final class VTAWTScreenCaptureScalerStripe implements Callable<Object>
+  {
+    private Object source;
+    private Object destination;
+    private int[] columns;
+    private int[] rows;
+    private int sourceOffset;
+    private int sourceStride;
+    private int destinationOffset;
+    private int destinationStride;
+    private int width;
+    private int firstRow;
+    private int lastRow;
+    
+    public final Object call()
+    {
+      int destinationIndex = destinationOffset + (firstRow * destinationStride);
+      for (int row = firstRow; row < lastRow; row++)
+      {
+        // enlarged rows repeat the row above them
+        if (row > firstRow && rows[row] == rows[row - 1])
+        {
+          System.arraycopy(destination, destinationIndex - destinationStride, destination, destinationIndex, width);
+        }
+        else
+        {
+          final int sourceIndex = sourceOffset + (rows[row] * sourceStride);
+          if (source instanceof int[])
+          {
+            final int[] pixels = (int[]) source;
+            final int[] scaled = (int[]) destination;
+            for (int j = 0; j < width; j++)
+            {
+              scaled[destinationIndex + j] = pixels[sourceIndex + columns[j]];
+            }
+          }
+          else if (source instanceof short[])
+          {
+            final short[] pixels = (short[]) source;
+            final short[] scaled = (short[]) destination;
+            for (int j = 0; j < width; j++)
+            {
+              scaled[destinationIndex + j] = pixels[sourceIndex + columns[j]];
+            }
+          }
+          else
+          {
+            final byte[] pixels = (byte[]) source;
+            final byte[] scaled = (byte[]) destination;
+            for (int j = 0; j < width; j++)
+            {
+              scaled[destinationIndex + j] = pixels[sourceIndex + columns[j]];
+            }
+          }
+        }
+        destinationIndex += destinationStride;
+      }
+      return null;
+    }
+  }
+}
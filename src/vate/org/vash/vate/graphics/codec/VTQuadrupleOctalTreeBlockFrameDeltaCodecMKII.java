@@ -4,11 +4,17 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Array;
 import java.util.BitSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.vash.vate.graphics.image.VTImageDataUtils;
 import org.vash.vate.graphics.image.VTRectangle;
 import org.vash.vate.stream.array.VTByteArrayInputStream;
+import org.vash.vate.stream.array.VTByteArrayOutputStream;
 import org.vash.vate.stream.endian.VTLittleEndianInputStream;
 import org.vash.vate.stream.endian.VTLittleEndianOutputStream;
 
@@ -94,12 +100,21 @@ public final class VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII
   private final BitSet blockBitSet = new BitSet(1024 * 8);
   private final BitSet pixelBitSet = new BitSet(1024 * 8192);
   private final VTRectangle transferArea = new VTRectangle(0, 0, 1, 1);
+  private final VTRectangle decodedArea = new VTRectangle(0, 0, 0, 0);
   private int m1;
   private int limitX;
   private int limitY;
   private int offset;
   public static final int CUSTOM_CODEC_PADDING_SIZE = 4;
-  
+  // horizontal slices encoded and decoded in parallel
+  private static final int CUSTOM_CODEC_SLICE_MINIMUM_HEIGHT = 128;
+  private static final int CUSTOM_CODEC_SLICE_MINIMUM_PIXELS = 256 * 256;
+  private static final int CUSTOM_CODEC_SLICE_MAXIMUM_COUNT = 64;
+  private final ExecutorService executorService;
+  private final int sliceLimit;
+  private VTQuadrupleOctalTreeBlockFrameDeltaCodecMKIISlice[] slices;
+  private Future<?>[] sliceFutures;
+
 //  private static final int MAGIC1 = 0x34384431;
 //  private static final int MAGIC2 = 0x34384432;
 //  private static final int MAGIC3 = 0x34384433;
@@ -115,6 +130,13 @@ public final class VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII
   
   public VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII()
   {
+    this(null);
+  }
+  
+  public VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII(final ExecutorService executorService)
+  {
+    this.executorService = executorService;
+    this.sliceLimit = executorService != null ? Math.min(CUSTOM_CODEC_SLICE_MAXIMUM_COUNT, Runtime.getRuntime().availableProcessors() * 2) : 1;
     this.block1DataBuffer = new ByteArrayOutputStream();
     this.block2DataBuffer = new ByteArrayOutputStream();
     this.block3DataBuffer = new ByteArrayOutputStream();
@@ -1974,7 +1996,7 @@ public final class VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII
     }
   }
   
-  public final void encodeFrame8(final OutputStream out, final byte[] oldPixelData, final byte[] newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight) throws IOException
+  private final void encodeArea8(final OutputStream out, final byte[] oldPixelData, final byte[] newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight) throws IOException
   {
     c1 = 0;
     c2 = 0;
@@ -2017,7 +2039,7 @@ public final class VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII
     //pixelBitSet.clear();
   }
   
-  public final void decodeFrame8(final InputStream in, final byte[] oldPixelData, final byte[] newPixelData, final int frameWidth, final int frameHeight) throws IOException
+  private final void decodeArea8(final InputStream in, final byte[] oldPixelData, final byte[] newPixelData, final int frameWidth, final int frameHeight) throws IOException
   {
     c1 = 0;
     c2 = 0;
@@ -2043,7 +2065,7 @@ public final class VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII
     //VTImageDataUtils.copyArea(newPixelData, oldPixelData, 0, width, height, transferArea);
   }
   
-  public final void encodeFrame15(final OutputStream out, final short[] oldPixelData, final short[] newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight) throws IOException
+  private final void encodeArea15(final OutputStream out, final short[] oldPixelData, final short[] newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight) throws IOException
   {
     c1 = 0;
     c2 = 0;
@@ -2085,7 +2107,7 @@ public final class VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII
     //pixelBitSet.clear();
   }
   
-  public final void decodeFrame15(final InputStream in, final short[] oldPixelData, final short[] newPixelData, final int frameWidth, final int frameHeight) throws IOException
+  private final void decodeArea15(final InputStream in, final short[] oldPixelData, final short[] newPixelData, final int frameWidth, final int frameHeight) throws IOException
   {
     c1 = 0;
     c2 = 0;
@@ -2111,7 +2133,7 @@ public final class VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII
     //VTImageDataUtils.copyArea(newPixelData, oldPixelData, 0, width, height, transferArea);
   }
   
-  public final void encodeFrame24(final OutputStream out, final int[] oldPixelData, final int[] newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight) throws IOException
+  private final void encodeArea24(final OutputStream out, final int[] oldPixelData, final int[] newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight) throws IOException
   {
     c1 = 0;
     c2 = 0;
@@ -2153,7 +2175,7 @@ public final class VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII
     //pixelBitSet.clear();
   }
   
-  public final void decodeFrame24(final InputStream in, final int[] oldPixelData, final int[] newPixelData, final int frameWidth, final int frameHeight) throws IOException
+  private final void decodeArea24(final InputStream in, final int[] oldPixelData, final int[] newPixelData, final int frameWidth, final int frameHeight) throws IOException
   {
     c1 = 0;
     c2 = 0;
@@ -2179,7 +2201,7 @@ public final class VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII
     //VTImageDataUtils.copyArea(newPixelData, oldPixelData, 0, width, height, transferArea);
   }
   
-  public final void encodeFrame30(final OutputStream out, final int[] oldPixelData, final int[] newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight) throws IOException
+  private final void encodeArea30(final OutputStream out, final int[] oldPixelData, final int[] newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight) throws IOException
   {
     c1 = 0;
     c2 = 0;
@@ -2221,7 +2243,7 @@ public final class VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII
     //pixelBitSet.clear();
   }
   
-  public final void decodeFrame30(final InputStream in, final int[] oldPixelData, final int[] newPixelData, final int frameWidth, final int frameHeight) throws IOException
+  private final void decodeArea30(final InputStream in, final int[] oldPixelData, final int[] newPixelData, final int frameWidth, final int frameHeight) throws IOException
   {
     c1 = 0;
     c2 = 0;
@@ -2246,4 +2268,369 @@ public final class VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII
     decodeBlock0Tree30(lin, newPixelData);
     //VTImageDataUtils.copyArea(newPixelData, oldPixelData, 0, width, height, transferArea);
   }
+  
+  public final void encodeFrame8(final OutputStream out, final byte[] oldPixelData, final byte[] newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight) throws IOException
+  {
+    encodeFrame(out, oldPixelData, newPixelData, frameWidth, frameHeight, areaX, areaY, areaWidth, areaHeight, 8);
+  }
+  
+  public final void decodeFrame8(final InputStream in, final byte[] oldPixelData, final byte[] newPixelData, final int frameWidth, final int frameHeight) throws IOException
+  {
+    decodeFrame(in, newPixelData, frameWidth, frameHeight, 8);
+  }
+  
+  public final void encodeFrame15(final OutputStream out, final short[] oldPixelData, final short[] newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight) throws IOException
+  {
+    encodeFrame(out, oldPixelData, newPixelData, frameWidth, frameHeight, areaX, areaY, areaWidth, areaHeight, 15);
+  }
+  
+  public final void decodeFrame15(final InputStream in, final short[] oldPixelData, final short[] newPixelData, final int frameWidth, final int frameHeight) throws IOException
+  {
+    decodeFrame(in, newPixelData, frameWidth, frameHeight, 15);
+  }
+  
+  public final void encodeFrame24(final OutputStream out, final int[] oldPixelData, final int[] newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight) throws IOException
+  {
+    encodeFrame(out, oldPixelData, newPixelData, frameWidth, frameHeight, areaX, areaY, areaWidth, areaHeight, 24);
+  }
+  
+  public final void decodeFrame24(final InputStream in, final int[] oldPixelData, final int[] newPixelData, final int frameWidth, final int frameHeight) throws IOException
+  {
+    decodeFrame(in, newPixelData, frameWidth, frameHeight, 24);
+  }
+  
+  public final void encodeFrame30(final OutputStream out, final int[] oldPixelData, final int[] newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight) throws IOException
+  {
+    encodeFrame(out, oldPixelData, newPixelData, frameWidth, frameHeight, areaX, areaY, areaWidth, areaHeight, 30);
+  }
+  
+  public final void decodeFrame30(final InputStream in, final int[] oldPixelData, final int[] newPixelData, final int frameWidth, final int frameHeight) throws IOException
+  {
+    decodeFrame(in, newPixelData, frameWidth, frameHeight, 30);
+  }
+  
+  // the area is split into horizontal slices of whole macroblock rows, each slice is an independent area stream
+  // the first scanline of a slice predicts from the previous frame values of the scanline above it
+  // so even slices run first and odd slices run after with that scanline temporarily restored
+  private final void encodeFrame(final OutputStream out, final Object oldPixelData, final Object newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight, final int depth) throws IOException
+  {
+    final int count = countSlices(areaWidth, areaHeight);
+    lout.setOutputStream(out);
+    lout.write(count);
+    if (count == 1)
+    {
+      encodeArea(this, out, oldPixelData, newPixelData, frameWidth, frameHeight, areaX, areaY, areaWidth, areaHeight, depth);
+      return;
+    }
+    prepareSlices(count, frameWidth + CUSTOM_CODEC_PADDING_SIZE, newPixelData);
+    final int rows = (areaHeight + 63) >> 6;
+    for (int i = 0; i < count; i++)
+    {
+      final VTQuadrupleOctalTreeBlockFrameDeltaCodecMKIISlice slice = slices[i];
+      final int start = ((rows * i) / count) << 6;
+      final int end = Math.min(areaHeight, ((rows * (i + 1)) / count) << 6);
+      slice.encoding = true;
+      slice.depth = depth;
+      slice.oldPixelData = oldPixelData;
+      slice.newPixelData = newPixelData;
+      slice.frameWidth = frameWidth;
+      slice.frameHeight = frameHeight;
+      slice.areaX = areaX;
+      slice.areaY = areaY + start;
+      slice.areaWidth = areaWidth;
+      slice.areaHeight = end - start;
+      if (i > 0)
+      {
+        System.arraycopy(oldPixelData, slice.rowOffset(), slice.oldRow, 0, slice.stride);
+        System.arraycopy(newPixelData, slice.rowOffset(), slice.newRow, 0, slice.stride);
+      }
+    }
+    runSlices(count, 0);
+    runSlices(count, 1);
+    for (int i = 0; i < count; i++)
+    {
+      final VTByteArrayOutputStream buffer = slices[i].output;
+      lout.writeInt(buffer.count());
+      lout.write(buffer.buf(), 0, buffer.count());
+      slices[i].oldPixelData = null;
+      slices[i].newPixelData = null;
+    }
+    lout.flush();
+  }
+  
+  // the area covered by the last decoded frame, in padded pixel coordinates
+  public final VTRectangle getDecodedArea()
+  {
+    return decodedArea;
+  }
+  
+  private final void includeDecodedArea(final int offset, final int limitX, final int limitY, final int stride)
+  {
+    final int x = offset % stride;
+    final int y = offset / stride;
+    final int height = limitY / stride;
+    if (decodedArea.width <= 0 || decodedArea.height <= 0)
+    {
+      decodedArea.x = x;
+      decodedArea.y = y;
+      decodedArea.width = limitX;
+      decodedArea.height = height;
+      return;
+    }
+    final int right = Math.max(decodedArea.x + decodedArea.width, x + limitX);
+    final int bottom = Math.max(decodedArea.y + decodedArea.height, y + height);
+    decodedArea.x = Math.min(decodedArea.x, x);
+    decodedArea.y = Math.min(decodedArea.y, y);
+    decodedArea.width = right - decodedArea.x;
+    decodedArea.height = bottom - decodedArea.y;
+  }
+  
+  private static final int readInt(final byte[] data, final int index)
+  {
+    return (data[index] & 0xFF) | ((data[index + 1] & 0xFF) << 8) | ((data[index + 2] & 0xFF) << 16) | ((data[index + 3] & 0xFF) << 24);
+  }
+  
+  private final void decodeFrame(final InputStream in, final Object newPixelData, final int frameWidth, final int frameHeight, final int depth) throws IOException
+  {
+    lin.setInputStream(in);
+    decodedArea.width = 0;
+    decodedArea.height = 0;
+    final int count = lin.readUnsignedByte();
+    if (count == 1)
+    {
+      decodeArea(this, in, newPixelData, frameWidth, frameHeight, depth);
+      includeDecodedArea(offset, limitX, limitY, frameWidth + CUSTOM_CODEC_PADDING_SIZE);
+      return;
+    }
+    if (count < 1 || count > CUSTOM_CODEC_SLICE_MAXIMUM_COUNT)
+    {
+      throw new IOException("Invalid frame slice count");
+    }
+    prepareSlices(count, frameWidth + CUSTOM_CODEC_PADDING_SIZE, newPixelData);
+    for (int i = 0; i < count; i++)
+    {
+      final VTQuadrupleOctalTreeBlockFrameDeltaCodecMKIISlice slice = slices[i];
+      final int length = lin.readInt();
+      if (length < 12)
+      {
+        throw new IOException("Invalid frame slice length");
+      }
+      byte[] data = slice.input.buf();
+      if (data.length < length)
+      {
+        data = new byte[length];
+      }
+      lin.readFully(data, 0, length);
+      slice.input.buf(data, 0, length);
+      slice.encoding = false;
+      slice.depth = depth;
+      slice.newPixelData = newPixelData;
+      slice.frameWidth = frameWidth;
+      slice.frameHeight = frameHeight;
+      slice.areaY = readInt(data, 0) / slice.stride;
+      includeDecodedArea(readInt(data, 0), readInt(data, 4), readInt(data, 8), slice.stride);
+      if (i > 0)
+      {
+        if (slice.areaY < 1 || slice.areaY <= slices[i - 1].areaY || slice.rowOffset() + slice.stride > Array.getLength(newPixelData))
+        {
+          throw new IOException("Invalid frame slice area");
+        }
+        System.arraycopy(newPixelData, slice.rowOffset(), slice.oldRow, 0, slice.stride);
+      }
+    }
+    runSlices(count, 0);
+    runSlices(count, 1);
+    for (int i = 0; i < count; i++)
+    {
+      slices[i].newPixelData = null;
+    }
+  }
+  
+  private final int countSlices(final int areaWidth, final int areaHeight)
+  {
+    if (sliceLimit <= 1 || areaWidth * areaHeight < CUSTOM_CODEC_SLICE_MINIMUM_PIXELS)
+    {
+      return 1;
+    }
+    return Math.max(1, Math.min(sliceLimit, areaHeight / CUSTOM_CODEC_SLICE_MINIMUM_HEIGHT));
+  }
+  
+  private final void prepareSlices(final int count, final int stride, final Object pixelData)
+  {
+    if (slices == null || slices.length < count)
+    {
+      final VTQuadrupleOctalTreeBlockFrameDeltaCodecMKIISlice[] created = new VTQuadrupleOctalTreeBlockFrameDeltaCodecMKIISlice[count];
+      for (int i = 0; i < count; i++)
+      {
+        created[i] = slices != null && i < slices.length ? slices[i] : new VTQuadrupleOctalTreeBlockFrameDeltaCodecMKIISlice();
+      }
+      slices = created;
+      sliceFutures = new Future<?>[count];
+    }
+    for (int i = 0; i < count; i++)
+    {
+      final VTQuadrupleOctalTreeBlockFrameDeltaCodecMKIISlice slice = slices[i];
+      if (slice.stride != stride || slice.oldRow == null || slice.oldRow.getClass() != pixelData.getClass())
+      {
+        slice.stride = stride;
+        slice.oldRow = Array.newInstance(pixelData.getClass().getComponentType(), stride);
+        slice.newRow = Array.newInstance(pixelData.getClass().getComponentType(), stride);
+      }
+    }
+  }
+  
+  private final void runSlices(final int count, final int parity) throws IOException
+  {
+    for (int i = parity; i < count; i += 2)
+    {
+      if (i > 0 && parity == 1)
+      {
+        final VTQuadrupleOctalTreeBlockFrameDeltaCodecMKIISlice slice = slices[i];
+        System.arraycopy(slice.newPixelData, slice.rowOffset(), slice.newRow, 0, slice.stride);
+        System.arraycopy(slice.oldRow, 0, slice.newPixelData, slice.rowOffset(), slice.stride);
+      }
+      else if (i > 0 && slices[i].encoding)
+      {
+        final VTQuadrupleOctalTreeBlockFrameDeltaCodecMKIISlice slice = slices[i];
+        System.arraycopy(slice.oldRow, 0, slice.newPixelData, slice.rowOffset(), slice.stride);
+      }
+    }
+    IOException failure = null;
+    for (int i = parity; i < count; i += 2)
+    {
+      sliceFutures[i] = null;
+      if (executorService != null && i + 2 < count)
+      {
+        try
+        {
+          sliceFutures[i] = executorService.submit(slices[i]);
+        }
+        catch (Throwable t)
+        {
+          
+        }
+      }
+      if (sliceFutures[i] == null)
+      {
+        try
+        {
+          slices[i].call();
+        }
+        catch (IOException e)
+        {
+          failure = e;
+        }
+      }
+    }
+    for (int i = parity; i < count; i += 2)
+    {
+      if (sliceFutures[i] != null)
+      {
+        try
+        {
+          sliceFutures[i].get();
+        }
+        catch (ExecutionException e)
+        {
+          failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(String.valueOf(e.getCause()));
+        }
+        catch (InterruptedException e)
+        {
+          failure = new IOException("Frame slice interrupted");
+        }
+        sliceFutures[i] = null;
+      }
+    }
+    for (int i = parity; i < count; i += 2)
+    {
+      if (i > 0 && (parity == 1 || slices[i].encoding))
+      {
+        final VTQuadrupleOctalTreeBlockFrameDeltaCodecMKIISlice slice = slices[i];
+        System.arraycopy(slice.newRow, 0, slice.newPixelData, slice.rowOffset(), slice.stride);
+      }
+    }
+    if (failure != null)
+    {
+      throw failure;
+    }
+  }
+  
+  private static final void encodeArea(final VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII codec, final OutputStream out, final Object oldPixelData, final Object newPixelData, final int frameWidth, final int frameHeight, final int areaX, final int areaY, final int areaWidth, final int areaHeight, final int depth) throws IOException
+  {
+    if (depth == 8)
+    {
+      codec.encodeArea8(out, (byte[]) oldPixelData, (byte[]) newPixelData, frameWidth, frameHeight, areaX, areaY, areaWidth, areaHeight);
+    }
+    else if (depth == 15)
+    {
+      codec.encodeArea15(out, (short[]) oldPixelData, (short[]) newPixelData, frameWidth, frameHeight, areaX, areaY, areaWidth, areaHeight);
+    }
+    else if (depth == 24)
+    {
+      codec.encodeArea24(out, (int[]) oldPixelData, (int[]) newPixelData, frameWidth, frameHeight, areaX, areaY, areaWidth, areaHeight);
+    }
+    else
+    {
+      codec.encodeArea30(out, (int[]) oldPixelData, (int[]) newPixelData, frameWidth, frameHeight, areaX, areaY, areaWidth, areaHeight);
+    }
+  }
+  
+  private static final void decodeArea(final VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII codec, final InputStream in, final Object newPixelData, final int frameWidth, final int frameHeight, final int depth) throws IOException
+  {
+    if (depth == 8)
+    {
+      codec.decodeArea8(in, null, (byte[]) newPixelData, frameWidth, frameHeight);
+    }
+    else if (depth == 15)
+    {
+      codec.decodeArea15(in, null, (short[]) newPixelData, frameWidth, frameHeight);
+    }
+    else if (depth == 24)
+    {
+      codec.decodeArea24(in, null, (int[]) newPixelData, frameWidth, frameHeight);
+    }
+    else
+    {
+      codec.decodeArea30(in, null, (int[]) newPixelData, frameWidth, frameHeight);
+    }
+  }
+  
+  private static final class VTQuadrupleOctalTreeBlockFrameDeltaCodecMKIISlice implements Callable<Object>
+  {
+    private final VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII codec = new VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII();
+    private final VTByteArrayOutputStream output = new VTByteArrayOutputStream();
+    private final VTByteArrayInputStream input = new VTByteArrayInputStream(new byte[0]);
+    private boolean encoding;
+    private int depth;
+    private Object oldPixelData;
+    private Object newPixelData;
+    private int frameWidth;
+    private int frameHeight;
+    private int areaX;
+    private int areaY;
+    private int areaWidth;
+    private int areaHeight;
+    private int stride;
+    private Object oldRow;
+    private Object newRow;
+    
+    private final int rowOffset()
+    {
+      return (areaY - 1) * stride;
+    }
+    
+    public final Object call() throws IOException
+    {
+      if (encoding)
+      {
+        output.reset();
+        encodeArea(codec, output, oldPixelData, newPixelData, frameWidth, frameHeight, areaX, areaY, areaWidth, areaHeight, depth);
+      }
+      else
+      {
+        decodeArea(codec, input, newPixelData, frameWidth, frameHeight, depth);
+      }
+      return null;
+    }
+  }
 }
\ No newline at end of file
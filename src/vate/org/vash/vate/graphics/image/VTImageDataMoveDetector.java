@@ -0,0 +1,339 @@
+package org.vash.vate.graphics.image;
+
+import java.util.Arrays;
+
+public final class VTImageDataMoveDetector
+{
+  private static final int MINIMUM_MOVE_LINES = 16;
+  private static final int MINIMUM_MOVED_LINES = 8;
+  private static final int MINIMUM_LINE_VOTES = 4;
+  private static final long LINE_HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+  
+  private long[] lastLines = new long[0];
+  private long[] previousLines = new long[0];
+  private long[] tableKeys = new long[0];
+  private int[] tableLines = new int[0];
+  private int[] votes = new int[0];
+  private int runStart;
+  private int runLength;
+  private int runMoved;
+  private int moveX;
+  private int moveY;
+  
+  public final int getMoveX()
+  {
+    return moveX;
+  }
+  
+  public final int getMoveY()
+  {
+    return moveY;
+  }
+  
+  public final boolean detectArea(final byte[] last, final byte[] previous, final int offset, final int width, final int height, final VTRectangle searchArea, final VTRectangle moveArea)
+  {
+    return detect(last, previous, offset, width, height, searchArea, moveArea);
+  }
+  
+  public final boolean detectArea(final short[] last, final short[] previous, final int offset, final int width, final int height, final VTRectangle searchArea, final VTRectangle moveArea)
+  {
+    return detect(last, previous, offset, width, height, searchArea, moveArea);
+  }
+  
+  public final boolean detectArea(final int[] last, final int[] previous, final int offset, final int width, final int height, final VTRectangle searchArea, final VTRectangle moveArea)
+  {
+    return detect(last, previous, offset, width, height, searchArea, moveArea);
+  }
+  
+  private final boolean detect(final Object last, final Object previous, final int offset, final int width, final int height, final VTRectangle searchArea, final VTRectangle moveArea)
+  {
+    moveX = 0;
+    moveY = 0;
+    if (width * height == 0 || searchArea.x < 0 || searchArea.y < 0)
+    {
+      return false;
+    }
+    
+    final int x = Math.min(searchArea.x, width - 1);
+    final int y = Math.min(searchArea.y, height - 1);
+    final int m = Math.min(searchArea.width, width - x);
+    final int n = Math.min(searchArea.height, height - y);
+    
+    long verticalSaved = 0;
+    int verticalShift = 0;
+    int verticalStart = 0;
+    int verticalLength = 0;
+    int verticalLeft = 0;
+    int verticalRight = 0;
+    if (n >= MINIMUM_MOVE_LINES && m > 0)
+    {
+      // rows are hashed over the middle half of the area so that scroll bars and borders do not spoil the match
+      final int left = x + (m / 4);
+      final int right = x + m - (m / 4);
+      verticalShift = findMove(last, previous, offset + left + (y * width), width, 1, n, right - left);
+      if (verticalShift != 0)
+      {
+        verticalStart = runStart;
+        verticalLength = runLength;
+        verticalLeft = left;
+        verticalRight = right;
+        final int lastIndex = offset + (y + verticalStart) * width;
+        final int previousIndex = offset + (y + verticalStart - verticalShift) * width;
+        while (verticalLeft > x && matches(last, previous, lastIndex + verticalLeft - 1, previousIndex + verticalLeft - 1, verticalLength, width))
+        {
+          verticalLeft--;
+        }
+        while (verticalRight < x + m && matches(last, previous, lastIndex + verticalRight, previousIndex + verticalRight, verticalLength, width))
+        {
+          verticalRight++;
+        }
+        verticalSaved = (long) runMoved * (verticalRight - verticalLeft);
+      }
+    }
+    
+    long horizontalSaved = 0;
+    int horizontalShift = 0;
+    int horizontalStart = 0;
+    int horizontalLength = 0;
+    int horizontalTop = 0;
+    int horizontalBottom = 0;
+    if (m >= MINIMUM_MOVE_LINES && n > 0)
+    {
+      final int top = y + (n / 4);
+      final int bottom = y + n - (n / 4);
+      horizontalShift = findMove(last, previous, offset + x + (top * width), 1, width, m, bottom - top);
+      if (horizontalShift != 0)
+      {
+        horizontalStart = runStart;
+        horizontalLength = runLength;
+        horizontalTop = top;
+        horizontalBottom = bottom;
+        final int lastIndex = offset + x + horizontalStart;
+        final int previousIndex = offset + x + horizontalStart - horizontalShift;
+        while (horizontalTop > y && matches(last, previous, lastIndex + (horizontalTop - 1) * width, previousIndex + (horizontalTop - 1) * width, horizontalLength, 1))
+        {
+          horizontalTop--;
+        }
+        while (horizontalBottom < y + n && matches(last, previous, lastIndex + horizontalBottom * width, previousIndex + horizontalBottom * width, horizontalLength, 1))
+        {
+          horizontalBottom++;
+        }
+        horizontalSaved = (long) runMoved * (horizontalBottom - horizontalTop);
+      }
+    }
+    
+    if (verticalSaved == 0 && horizontalSaved == 0)
+    {
+      return false;
+    }
+    
+    if (verticalSaved >= horizontalSaved)
+    {
+      moveArea.x = verticalLeft;
+      moveArea.y = y + verticalStart - verticalShift;
+      moveArea.width = verticalRight - verticalLeft;
+      moveArea.height = verticalLength;
+      moveY = verticalShift;
+    }
+    else
+    {
+      moveArea.x = x + horizontalStart - horizontalShift;
+      moveArea.y = horizontalTop;
+      moveArea.width = horizontalLength;
+      moveArea.height = horizontalBottom - horizontalTop;
+      moveX = horizontalShift;
+    }
+    return true;
+  }
+  
+  private final int findMove(final Object last, final Object previous, final int start, final int lineStep, final int pixelStep, final int lines, final int pixels)
+  {
+    if (lastLines.length < lines)
+    {
+      lastLines = new long[lines];
+      previousLines = new long[lines];
+      votes = new int[(lines * 2) + 1];
+    }
+    int capacity = 1;
+    while (capacity < lines * 2)
+    {
+      capacity <<= 1;
+    }
+    if (tableKeys.length < capacity)
+    {
+      tableKeys = new long[capacity];
+      tableLines = new int[capacity];
+    }
+    Arrays.fill(tableLines, 0, capacity, 0);
+    Arrays.fill(votes, 0, (lines * 2) + 1, 0);
+    
+    int index = start;
+    for (int i = 0; i < lines; i++)
+    {
+      lastLines[i] = hash(last, index, pixels, pixelStep);
+      previousLines[i] = hash(previous, index, pixels, pixelStep);
+      index += lineStep;
+    }
+    
+    // previous lines that repeat, like blank ones, cannot tell where a line came from
+    final int mask = capacity - 1;
+    for (int i = 0; i < lines; i++)
+    {
+      final long key = previousLines[i];
+      int slot = (int) (key ^ (key >>> 32)) & mask;
+      while (tableLines[slot] != 0 && tableKeys[slot] != key)
+      {
+        slot = (slot + 1) & mask;
+      }
+      if (tableLines[slot] == 0)
+      {
+        tableKeys[slot] = key;
+        tableLines[slot] = i + 1;
+      }
+      else
+      {
+        tableLines[slot] = -1;
+      }
+    }
+    
+    int bestShift = 0;
+    int bestVotes = MINIMUM_LINE_VOTES - 1;
+    for (int i = 0; i < lines; i++)
+    {
+      final long key = lastLines[i];
+      if (key == previousLines[i])
+      {
+        continue;
+      }
+      int slot = (int) (key ^ (key >>> 32)) & mask;
+      while (tableLines[slot] != 0 && tableKeys[slot] != key)
+      {
+        slot = (slot + 1) & mask;
+      }
+      if (tableLines[slot] > 0)
+      {
+        final int shift = i - (tableLines[slot] - 1);
+        if (++votes[shift + lines] > bestVotes)
+        {
+          bestVotes = votes[shift + lines];
+          bestShift = shift;
+        }
+      }
+    }
+    if (bestShift == 0)
+    {
+      return 0;
+    }
+    
+    runStart = 0;
+    runLength = 0;
+    runMoved = 0;
+    int currentStart = 0;
+    int currentLength = 0;
+    int currentMoved = 0;
+    final int first = Math.max(0, bestShift);
+    final int end = Math.min(lines, lines + bestShift);
+    for (int i = first; i < end; i++)
+    {
+      if (lastLines[i] == previousLines[i - bestShift])
+      {
+        if (currentLength == 0)
+        {
+          currentStart = i;
+        }
+        currentLength++;
+        if (lastLines[i] != previousLines[i])
+        {
+          currentMoved++;
+        }
+        if (currentMoved > runMoved)
+        {
+          runStart = currentStart;
+          runLength = currentLength;
+          runMoved = currentMoved;
+        }
+      }
+      else
+      {
+        currentLength = 0;
+        currentMoved = 0;
+      }
+    }
+    if (runLength < MINIMUM_MOVE_LINES || runMoved < MINIMUM_MOVED_LINES)
+    {
+      return 0;
+    }
+    return bestShift;
+  }
+  
+  private static final long hash(final Object data, int index, final int pixels, final int step)
+  {
+    long hash = pixels;
+    if (data instanceof int[])
+    {
+      final int[] values = (int[]) data;
+      for (int i = 0; i < pixels; i++, index += step)
+      {
+        hash = (hash ^ values[index]) * LINE_HASH_MULTIPLIER;
+      }
+    }
+    else if (data instanceof short[])
+    {
+      final short[] values = (short[]) data;
+      for (int i = 0; i < pixels; i++, index += step)
+      {
+        hash = (hash ^ values[index]) * LINE_HASH_MULTIPLIER;
+      }
+    }
+    else
+    {
+      final byte[] values = (byte[]) data;
+      for (int i = 0; i < pixels; i++, index += step)
+      {
+        hash = (hash ^ values[index]) * LINE_HASH_MULTIPLIER;
+      }
+    }
+    return hash ^ (hash >>> 29);
+  }
+  
+  private static final boolean matches(final Object last, final Object previous, int lastIndex, int previousIndex, final int pixels, final int step)
+  {
+    if (last instanceof int[])
+    {
+      final int[] lastValues = (int[]) last;
+      final int[] previousValues = (int[]) previous;
+      for (int i = 0; i < pixels; i++, lastIndex += step, previousIndex += step)
+      {
+        if (lastValues[lastIndex] != previousValues[previousIndex])
+        {
+          return false;
+        }
+      }
+    }
+    else if (last instanceof short[])
+    {
+      final short[] lastValues = (short[]) last;
+      final short[] previousValues = (short[]) previous;
+      for (int i = 0; i < pixels; i++, lastIndex += step, previousIndex += step)
+      {
+        if (lastValues[lastIndex] != previousValues[previousIndex])
+        {
+          return false;
+        }
+      }
+    }
+    else
+    {
+      final byte[] lastValues = (byte[]) last;
+      final byte[] previousValues = (byte[]) previous;
+      for (int i = 0; i < pixels; i++, lastIndex += step, previousIndex += step)
+      {
+        if (lastValues[lastIndex] != previousValues[previousIndex])
+        {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
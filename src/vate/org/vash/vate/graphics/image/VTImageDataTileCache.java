@@ -0,0 +1,145 @@
+package org.vash.vate.graphics.image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class VTImageDataTileCache
+{
+  public static final int TILE_SIZE = VTImageDataTileIndex.TILE_SIZE;
+  
+  private final int capacity;
+  private final LinkedHashMap<Long, Integer> slots;
+  private final Object[] tiles;
+  private int nextSlot;
+  
+  public VTImageDataTileCache(final int capacity)
+  {
+    this.capacity = capacity;
+    this.slots = new LinkedHashMap<Long, Integer>(capacity * 2, 0.75f, true);
+    this.tiles = new Object[capacity];
+  }
+  
+  public final void clear()
+  {
+    slots.clear();
+    nextSlot = 0;
+  }
+  
+  // sender side: the slots are chosen here and the receiver only follows them
+  public final int findTile(final long signature)
+  {
+    final Integer slot = slots.get(signature);
+    return slot != null ? slot.intValue() : -1;
+  }
+  
+  public final int assignTile(final long signature)
+  {
+    final Integer existing = slots.get(signature);
+    if (existing != null)
+    {
+      return existing.intValue();
+    }
+    final int slot;
+    if (nextSlot < capacity)
+    {
+      slot = nextSlot++;
+    }
+    else
+    {
+      final Iterator<Map.Entry<Long, Integer>> eldest = slots.entrySet().iterator();
+      slot = eldest.next().getValue().intValue();
+      eldest.remove();
+    }
+    slots.put(signature, slot);
+    return slot;
+  }
+  
+  // receiver side: the tile pixels are kept per slot
+  public final boolean storeTile(final int slot, final byte[] data, final int offset, final int width, final int height, final int x, final int y)
+  {
+    if (!validTile(slot, width, height, x, y))
+    {
+      return false;
+    }
+    if (!(tiles[slot] instanceof byte[]))
+    {
+      tiles[slot] = new byte[TILE_SIZE * TILE_SIZE];
+    }
+    transfer(data, offset + x + (y * width), width, tiles[slot], 0, TILE_SIZE);
+    return true;
+  }
+  
+  public final boolean storeTile(final int slot, final short[] data, final int offset, final int width, final int height, final int x, final int y)
+  {
+    if (!validTile(slot, width, height, x, y))
+    {
+      return false;
+    }
+    if (!(tiles[slot] instanceof short[]))
+    {
+      tiles[slot] = new short[TILE_SIZE * TILE_SIZE];
+    }
+    transfer(data, offset + x + (y * width), width, tiles[slot], 0, TILE_SIZE);
+    return true;
+  }
+  
+  public final boolean storeTile(final int slot, final int[] data, final int offset, final int width, final int height, final int x, final int y)
+  {
+    if (!validTile(slot, width, height, x, y))
+    {
+      return false;
+    }
+    if (!(tiles[slot] instanceof int[]))
+    {
+      tiles[slot] = new int[TILE_SIZE * TILE_SIZE];
+    }
+    transfer(data, offset + x + (y * width), width, tiles[slot], 0, TILE_SIZE);
+    return true;
+  }
+  
+  public final boolean drawTile(final int slot, final byte[] data, final int offset, final int width, final int height, final int x, final int y)
+  {
+    if (!validTile(slot, width, height, x, y) || !(tiles[slot] instanceof byte[]))
+    {
+      return false;
+    }
+    transfer(tiles[slot], 0, TILE_SIZE, data, offset + x + (y * width), width);
+    return true;
+  }
+  
+  public final boolean drawTile(final int slot, final short[] data, final int offset, final int width, final int height, final int x, final int y)
+  {
+    if (!validTile(slot, width, height, x, y) || !(tiles[slot] instanceof short[]))
+    {
+      return false;
+    }
+    transfer(tiles[slot], 0, TILE_SIZE, data, offset + x + (y * width), width);
+    return true;
+  }
+  
+  public final boolean drawTile(final int slot, final int[] data, final int offset, final int width, final int height, final int x, final int y)
+  {
+    if (!validTile(slot, width, height, x, y) || !(tiles[slot] instanceof int[]))
+    {
+      return false;
+    }
+    transfer(tiles[slot], 0, TILE_SIZE, data, offset + x + (y * width), width);
+    return true;
+  }
+  
+  private final boolean validTile(final int slot, final int width, final int height, final int x, final int y)
+  {
+    return slot >= 0 && slot < capacity && x >= 0 && y >= 0 && x + TILE_SIZE <= width && y + TILE_SIZE <= height;
+  }
+  
+  private static final void transfer(final Object source, int sourceIndex, final int sourceWidth, final Object destination, int destinationIndex, final int destinationWidth)
+  {
+    for (int i = 0; i < TILE_SIZE; i++)
+    {
+      System.arraycopy(source, sourceIndex, destination, destinationIndex, TILE_SIZE);
+      sourceIndex += sourceWidth;
+      destinationIndex += destinationWidth;
+    }
+  }
+}
@@ -0,0 +1,323 @@
+package org.vash.vate.graphics.image;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.vash.vate.org.infinispan.server.resp.commands.string.XXH3;
+
+public final class VTImageDataTileIndex
+{
+  public static final int TILE_SIZE = 64;
+  private static final int PARALLEL_MINIMUM_TILES = 64;
+  
+  private final ExecutorService executorService;
+  private final VTImageDataTileIndexBand[] bands;
+  private final Future<?>[] futures;
+  private long[] signatures = new long[0];
+  private boolean[] dirty = new boolean[0];
+  private boolean[] known = new boolean[0];
+  private int lastWidth = -1;
+  private int lastHeight = -1;
+  private int tilesX;
+  private int areaX;
+  private int areaY;
+  private int areaRight;
+  private int areaBottom;
+  
+  public VTImageDataTileIndex()
+  {
+    this(null);
+  }
+  
+  public VTImageDataTileIndex(final ExecutorService executorService)
+  {
+    final int count = executorService != null ? Math.max(1, Runtime.getRuntime().availableProcessors()) : 1;
+    this.executorService = count > 1 ? executorService : null;
+    this.bands = new VTImageDataTileIndexBand[count];
+    this.futures = new Future<?>[count];
+    for (int i = 0; i < count; i++)
+    {
+      bands[i] = new VTImageDataTileIndexBand();
+    }
+  }
+  
+  public final void reset()
+  {
+    Arrays.fill(known, false);
+  }
+  
+  public final long getSignature(final int tileX, final int tileY)
+  {
+    return signatures[tileX + tileY * tilesX];
+  }
+  
+  public final boolean isWholeTile(final int tileX, final int tileY)
+  {
+    return tileX * TILE_SIZE >= areaX && tileY * TILE_SIZE >= areaY && (tileX + 1) * TILE_SIZE <= areaRight && (tileY + 1) * TILE_SIZE <= areaBottom;
+  }
+  
+  public final boolean compareArea(final byte[] data, final int offset, final int width, final int height, final VTRectangle captureArea, final VTRectangle resultArea)
+  {
+    return compare(data, offset, width, height, captureArea, resultArea);
+  }
+  
+  public final boolean compareArea(final short[] data, final int offset, final int width, final int height, final VTRectangle captureArea, final VTRectangle resultArea)
+  {
+    return compare(data, offset, width, height, captureArea, resultArea);
+  }
+  
+  public final boolean compareArea(final int[] data, final int offset, final int width, final int height, final VTRectangle captureArea, final VTRectangle resultArea)
+  {
+    return compare(data, offset, width, height, captureArea, resultArea);
+  }
+  
+  private final boolean compare(final Object data, final int offset, final int width, final int height, final VTRectangle captureArea, final VTRectangle resultArea)
+  {
+    if (width * height == 0)
+    {
+      resultArea.x = 0;
+      resultArea.y = 0;
+      resultArea.width = 0;
+      resultArea.height = 0;
+      return true;
+    }
+    
+    final int x;
+    final int y;
+    final int m;
+    final int n;
+    
+    if (captureArea != null && captureArea.x >= 0 && captureArea.y >= 0)
+    {
+      x = Math.min(captureArea.x, width - 1);
+      y = Math.min(captureArea.y, height - 1);
+      m = Math.min(captureArea.width, width - x);
+      n = Math.min(captureArea.height, height - y);
+    }
+    else
+    {
+      x = 0;
+      y = 0;
+      m = width;
+      n = height;
+    }
+    
+    if (width != lastWidth || height != lastHeight)
+    {
+      lastWidth = width;
+      lastHeight = height;
+      tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+      final int tiles = tilesX * ((height + TILE_SIZE - 1) / TILE_SIZE);
+      if (signatures.length < tiles)
+      {
+        signatures = new long[tiles];
+        dirty = new boolean[tiles];
+        known = new boolean[tiles];
+      }
+      Arrays.fill(known, false);
+    }
+    
+    areaX = x;
+    areaY = y;
+    areaRight = x + Math.max(0, m);
+    areaBottom = y + Math.max(0, n);
+    
+    if (m <= 0 || n <= 0)
+    {
+      resultArea.x = x;
+      resultArea.y = y;
+      resultArea.width = 0;
+      resultArea.height = 0;
+      return false;
+    }
+    
+    final int firstTileX = x / TILE_SIZE;
+    final int firstTileY = y / TILE_SIZE;
+    final int lastTileX = (x + m - 1) / TILE_SIZE;
+    final int lastTileY = (y + n - 1) / TILE_SIZE;
+    final int rows = lastTileY - firstTileY + 1;
+    final int count = executorService == null || rows * (lastTileX - firstTileX + 1) < PARALLEL_MINIMUM_TILES ? 1 : Math.min(bands.length, rows);
+    
+    for (int i = 0; i < count; i++)
+    {
+      final VTImageDataTileIndexBand band = bands[i];
+      band.data = data;
+      band.offset = offset;
+      band.width = width;
+      band.areaX = x;
+      band.areaY = y;
+      band.areaRight = x + m;
+      band.areaBottom = y + n;
+      band.firstTileX = firstTileX;
+      band.lastTileX = lastTileX;
+      band.firstTileY = firstTileY + ((rows * i) / count);
+      band.lastTileY = firstTileY + ((rows * (i + 1)) / count) - 1;
+    }
+    
+    for (int i = 1; i < count; i++)
+    {
+      try
+      {
+        futures[i] = executorService.submit(bands[i]);
+      }
+      catch (Throwable t)
+      {
+        futures[i] = null;
+        bands[i].call();
+      }
+    }
+    bands[0].call();
+    for (int i = 1; i < count; i++)
+    {
+      if (futures[i] != null)
+      {
+        try
+        {
+          futures[i].get();
+        }
+        catch (Throwable t)
+        {
+          bands[i].call();
+        }
+        futures[i] = null;
+      }
+    }
+    for (int i = 0; i < count; i++)
+    {
+      bands[i].data = null;
+    }
+    
+    int mnx = lastTileX + 1;
+    int mny = lastTileY + 1;
+    int mxx = -1;
+    int mxy = -1;
+    
+    for (int tileY = firstTileY; tileY <= lastTileY; tileY++)
+    {
+      int tile = firstTileX + tileY * tilesX;
+      for (int tileX = firstTileX; tileX <= lastTileX; tileX++, tile++)
+      {
+        if (dirty[tile])
+        {
+          if (mnx > tileX)
+          {
+            mnx = tileX;
+          }
+          if (mny > tileY)
+          {
+            mny = tileY;
+          }
+          if (mxx < tileX)
+          {
+            mxx = tileX;
+          }
+          if (mxy < tileY)
+          {
+            mxy = tileY;
+          }
+        }
+      }
+    }
+    
+    if (mxx < 0)
+    {
+      resultArea.x = x + m;
+      resultArea.y = y + n;
+      resultArea.width = 0;
+      resultArea.height = 0;
+      return false;
+    }
+    
+    resultArea.x = Math.max(x, mnx * TILE_SIZE);
+    resultArea.y = Math.max(y, mny * TILE_SIZE);
+    resultArea.width = Math.min(x + m, (mxx + 1) * TILE_SIZE) - resultArea.x;
+    resultArea.height = Math.min(y + n, (mxy + 1) * TILE_SIZE) - resultArea.y;
+    return true;
+  }
+  
+  private final class VTImageDataTileIndexBand implements Callable<Object>
+  {
+    private final byte[] scratch = new byte[TILE_SIZE * TILE_SIZE * 4];
+    private Object data;
+    private int offset;
+    private int width;
+    private int areaX;
+    private int areaY;
+    private int areaRight;
+    private int areaBottom;
+    private int firstTileX;
+    private int lastTileX;
+    private int firstTileY;
+    private int lastTileY;
+    
+    public final Object call()
+    {
+      for (int tileY = firstTileY; tileY <= lastTileY; tileY++)
+      {
+        final int top = Math.max(areaY, tileY * TILE_SIZE);
+        final int bottom = Math.min(areaBottom, (tileY + 1) * TILE_SIZE);
+        int tile = firstTileX + tileY * tilesX;
+        for (int tileX = firstTileX; tileX <= lastTileX; tileX++, tile++)
+        {
+          final int left = Math.max(areaX, tileX * TILE_SIZE);
+          final int right = Math.min(areaRight, (tileX + 1) * TILE_SIZE);
+          final int length = pack(left, top, right - left, bottom - top);
+          final long signature = XXH3.hash64(scratch, length, ((long) (right - left) << 16) ^ (bottom - top));
+          dirty[tile] = !known[tile] || signatures[tile] != signature;
+          signatures[tile] = signature;
+          known[tile] = true;
+        }
+      }
+      return null;
+    }
+    
+    private final int pack(final int left, final int top, final int columns, final int rows)
+    {
+      int index = offset + left + (top * width);
+      int position = 0;
+      if (data instanceof int[])
+      {
+        final int[] pixels = (int[]) data;
+        for (int i = 0; i < rows; i++)
+        {
+          for (int j = 0; j < columns; j++)
+          {
+            final int pixel = pixels[index + j];
+            scratch[position++] = (byte) pixel;
+            scratch[position++] = (byte) (pixel >> 8);
+            scratch[position++] = (byte) (pixel >> 16);
+            scratch[position++] = (byte) (pixel >> 24);
+          }
+          index += width;
+        }
+      }
+      else if (data instanceof short[])
+      {
+        final short[] pixels = (short[]) data;
+        for (int i = 0; i < rows; i++)
+        {
+          for (int j = 0; j < columns; j++)
+          {
+            final short pixel = pixels[index + j];
+            scratch[position++] = (byte) pixel;
+            scratch[position++] = (byte) (pixel >> 8);
+          }
+          index += width;
+        }
+      }
+      else
+      {
+        final byte[] pixels = (byte[]) data;
+        for (int i = 0; i < rows; i++)
+        {
+          System.arraycopy(pixels, index, scratch, position, columns);
+          position += columns;
+          index += width;
+        }
+      }
+      return position;
+    }
+  }
+}
@@ -249,6 +249,54 @@ public final class VTImageDataUtils
     }
   }
   
+  public static final boolean moveArea(final byte[] data, final int offset, final int width, final int height, final VTRectangle sourceArea, final int moveX, final int moveY)
+  {
+    return move(data, offset, width, height, sourceArea, moveX, moveY);
+  }
+  
+  public static final boolean moveArea(final short[] data, final int offset, final int width, final int height, final VTRectangle sourceArea, final int moveX, final int moveY)
+  {
+    return move(data, offset, width, height, sourceArea, moveX, moveY);
+  }
+  
+  public static final boolean moveArea(final int[] data, final int offset, final int width, final int height, final VTRectangle sourceArea, final int moveX, final int moveY)
+  {
+    return move(data, offset, width, height, sourceArea, moveX, moveY);
+  }
+  
+  private static final boolean move(final Object data, final int offset, final int width, final int height, final VTRectangle sourceArea, final int moveX, final int moveY)
+  {
+    final int x = sourceArea.x;
+    final int y = sourceArea.y;
+    final int m = sourceArea.width;
+    final int n = sourceArea.height;
+    if (m <= 0 || n <= 0 || x < 0 || y < 0 || x + m > width || y + n > height
+    || x + moveX < 0 || y + moveY < 0 || x + moveX + m > width || y + moveY + n > height)
+    {
+      return false;
+    }
+    
+    final int shift = moveX + (moveY * width);
+    int index;
+    int step;
+    if (moveY > 0)
+    {
+      index = offset + x + ((y + n - 1) * width);
+      step = -width;
+    }
+    else
+    {
+      index = offset + x + (y * width);
+      step = width;
+    }
+    for (int i = 0; i < n; i++)
+    {
+      System.arraycopy(data, index, data, index + shift, m);
+      index += step;
+    }
+    return true;
+  }
+  
   public static final boolean compareArea(final byte[] array1, final byte[] array2, int offset, final int width, final int height, final VTRectangle captureArea)
   {
     if (width * height == 0)
@@ -0,0 +1,373 @@
+package org.vash.vate.graphics.record;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.vash.vate.VTSystem;
+import org.vash.vate.graphics.image.VTImageDataTileCache;
+import org.vash.vate.stream.array.VTByteArrayOutputStream;
+import org.vash.vate.stream.endian.VTLittleEndianOutputStream;
+
+public class VTGraphicsLinkRecorder
+{
+  public static final int CHANNEL_CONTROL = 0;
+  public static final int CHANNEL_DIRECT = 1;
+  public static final int CHANNEL_HEAVY = 2;
+  public static final int CHANNEL_FAST = 3;
+  public static final int CHANNEL_COUNT = 4;
+  
+  static final int RECORD_FRAME = 0;
+  static final int RECORD_KEYFRAME = 1;
+  static final int RECORD_INDEX = 2;
+  static final int RECORD_SNAPSHOT = 3;
+  static final int TILE_ELEMENTS = VTImageDataTileCache.TILE_SIZE * VTImageDataTileCache.TILE_SIZE;
+  static final byte[] HEADER_MAGIC = new byte[] { 'V', 'T', 'G', 'L', 'R', 'E', 'C', '1' };
+  static final byte[] INDEX_MAGIC = new byte[] { 'V', 'T', 'G', 'L', 'I', 'D', 'X', '1' };
+  
+  private final VTByteArrayOutputStream[] channels = new VTByteArrayOutputStream[CHANNEL_COUNT];
+  private final VTByteArrayOutputStream headerBuffer = new VTByteArrayOutputStream();
+  private final VTLittleEndianOutputStream headerStream = new VTLittleEndianOutputStream(headerBuffer);
+  private final VTByteArrayOutputStream indexBuffer = new VTByteArrayOutputStream();
+  private final VTLittleEndianOutputStream indexStream = new VTLittleEndianOutputStream(indexBuffer);
+  private final VTLittleEndianOutputStream snapshotStream;
+  private final Deflater snapshotDeflater = new Deflater(Deflater.BEST_SPEED);
+  private final byte[] elementBuffer = new byte[VTSystem.VT_STANDARD_BUFFER_SIZE_BYTES];
+  private final byte[] tileBytes = new byte[TILE_ELEMENTS];
+  private final short[] tileShorts = new short[TILE_ELEMENTS];
+  private final int[] tileInts = new int[TILE_ELEMENTS];
+  private final int[] tileSlots = new int[VTSystem.VT_GRAPHICS_LINK_TILE_CACHE_SLOTS];
+  private volatile boolean recording;
+  private OutputStream output;
+  private long offset;
+  private long startTime;
+  private long keyframeTime;
+  private int keyframeCount;
+  private long lastTime;
+  private boolean aligned;
+  private boolean started;
+  
+  public VTGraphicsLinkRecorder()
+  {
+    for (int i = 0; i < CHANNEL_COUNT; i++)
+    {
+      channels[i] = new VTByteArrayOutputStream();
+    }
+    snapshotStream = new VTLittleEndianOutputStream(channels[CHANNEL_CONTROL]);
+  }
+  
+  public synchronized boolean start(String file)
+  {
+    stop();
+    try
+    {
+      output = new BufferedOutputStream(new FileOutputStream(file), VTSystem.VT_STANDARD_BUFFER_SIZE_BYTES);
+      output.write(HEADER_MAGIC);
+    }
+    catch (Throwable t)
+    {
+      close();
+      return false;
+    }
+    offset = HEADER_MAGIC.length;
+    startTime = System.nanoTime() / (1000L * 1000L);
+    keyframeTime = startTime - VTSystem.VT_GRAPHICS_LINK_RECORDING_KEYFRAME_MILLISECONDS;
+    keyframeCount = 0;
+    lastTime = 0;
+    indexBuffer.reset();
+    aligned = false;
+    started = false;
+    recording = true;
+    return true;
+  }
+  
+  // the unfinished message is dropped and the keyframe index is appended to the end of the file
+  public synchronized void stop()
+  {
+    if (output == null)
+    {
+      return;
+    }
+    try
+    {
+      final long indexOffset = offset;
+      headerBuffer.reset();
+      headerStream.write(RECORD_INDEX);
+      headerStream.writeVarInt((int) lastTime);
+      headerStream.writeVarInt(keyframeCount);
+      output.write(headerBuffer.buf(), 0, headerBuffer.count());
+      output.write(indexBuffer.buf(), 0, indexBuffer.count());
+      headerBuffer.reset();
+      headerStream.writeLong(indexOffset);
+      headerStream.write(INDEX_MAGIC);
+      output.write(headerBuffer.buf(), 0, headerBuffer.count());
+    }
+    catch (Throwable t)
+    {
+      
+    }
+    close();
+  }
+  
+  public boolean isRecording()
+  {
+    return recording;
+  }
+  
+  private void close()
+  {
+    recording = false;
+    if (output != null)
+    {
+      try
+      {
+        output.close();
+      }
+      catch (Throwable t)
+      {
+        
+      }
+      output = null;
+    }
+    for (int i = 0; i < CHANNEL_COUNT; i++)
+    {
+      channels[i].reset();
+    }
+  }
+  
+  final void append(final int channel, final int data)
+  {
+    if (!recording)
+    {
+      return;
+    }
+    synchronized (this)
+    {
+      if (aligned)
+      {
+        channels[channel].write(data);
+      }
+    }
+  }
+  
+  final void append(final int channel, final byte[] data, final int off, final int len)
+  {
+    if (!recording)
+    {
+      return;
+    }
+    synchronized (this)
+    {
+      if (aligned)
+      {
+        channels[channel].write(data, off, len);
+      }
+    }
+  }
+  
+  // called between messages, each record holds one control message with the bytes it consumed from the image channels
+  // returns true when a keyframe is due, the caller then hands its decoded image to snapshot
+  public synchronized boolean mark()
+  {
+    if (output == null)
+    {
+      return false;
+    }
+    final long time = System.nanoTime() / (1000L * 1000L);
+    if (aligned && channels[CHANNEL_CONTROL].count() > 0)
+    {
+      final int type = channels[CHANNEL_CONTROL].buf()[0] & 0xFF;
+      final boolean keyframe = type == VTSystem.VT_GRAPHICS_LINK_IMAGE_STANDARD_REFRESH_FRAME || type == VTSystem.VT_GRAPHICS_LINK_IMAGE_CUSTOM_REFRESH_FRAME;
+      // messages before the first keyframe cannot be decoded on their own
+      if (keyframe || started)
+      {
+        try
+        {
+          writeRecord(keyframe ? RECORD_KEYFRAME : RECORD_FRAME, time - startTime);
+        }
+        catch (Throwable t)
+        {
+          close();
+          return false;
+        }
+        if (keyframe)
+        {
+          started = true;
+          keyframeTime = time;
+        }
+      }
+    }
+    for (int i = 0; i < CHANNEL_COUNT; i++)
+    {
+      channels[i].reset();
+    }
+    aligned = true;
+    return time - keyframeTime >= VTSystem.VT_GRAPHICS_LINK_RECORDING_KEYFRAME_MILLISECONDS;
+  }
+  
+  // keyframes are taken from the image and tile cache the client already decoded, so the live session is not asked for a refresh
+  // the pixels are written as they are held in memory, padding included, and compressed on their own
+  // returns false when there is no decoded image yet, the keyframe then stays due
+  public synchronized boolean snapshot(BufferedImage image, int type, int colors, int padding, VTImageDataTileCache tileCache)
+  {
+    if (output == null || image == null || tileCache == null)
+    {
+      return false;
+    }
+    final long time = System.nanoTime() / (1000L * 1000L);
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+    final DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+    final int dataType = dataBuffer.getDataType();
+    if (dataType != DataBuffer.TYPE_BYTE && dataType != DataBuffer.TYPE_USHORT && dataType != DataBuffer.TYPE_INT)
+    {
+      return false;
+    }
+    try
+    {
+      for (int i = 0; i < CHANNEL_COUNT; i++)
+      {
+        channels[i].reset();
+      }
+      final DeflaterOutputStream pixels = new DeflaterOutputStream(channels[CHANNEL_DIRECT], snapshotDeflater, VTSystem.VT_STANDARD_BUFFER_SIZE_BYTES);
+      final int elements = (width + padding) * (height + padding);
+      if (dataType == DataBuffer.TYPE_BYTE)
+      {
+        pixels.write(((DataBufferByte) dataBuffer).getData(), 0, elements);
+      }
+      else if (dataType == DataBuffer.TYPE_USHORT)
+      {
+        writeElements(pixels, ((DataBufferUShort) dataBuffer).getData(), elements, elementBuffer);
+      }
+      else
+      {
+        writeElements(pixels, ((DataBufferInt) dataBuffer).getData(), elements, elementBuffer);
+      }
+      // slots left empty or holding tiles of another pixel format are not kept
+      int tileCount = 0;
+      for (int slot = 0; slot < tileSlots.length; slot++)
+      {
+        if (dataType == DataBuffer.TYPE_BYTE && tileCache.drawTile(slot, tileBytes, 0, VTImageDataTileCache.TILE_SIZE, VTImageDataTileCache.TILE_SIZE, 0, 0))
+        {
+          pixels.write(tileBytes, 0, TILE_ELEMENTS);
+          tileSlots[tileCount++] = slot;
+        }
+        else if (dataType == DataBuffer.TYPE_USHORT && tileCache.drawTile(slot, tileShorts, 0, VTImageDataTileCache.TILE_SIZE, VTImageDataTileCache.TILE_SIZE, 0, 0))
+        {
+          writeElements(pixels, tileShorts, TILE_ELEMENTS, elementBuffer);
+          tileSlots[tileCount++] = slot;
+        }
+        else if (dataType == DataBuffer.TYPE_INT && tileCache.drawTile(slot, tileInts, 0, VTImageDataTileCache.TILE_SIZE, VTImageDataTileCache.TILE_SIZE, 0, 0))
+        {
+          writeElements(pixels, tileInts, TILE_ELEMENTS, elementBuffer);
+          tileSlots[tileCount++] = slot;
+        }
+      }
+      snapshotStream.writeInt(type);
+      snapshotStream.writeInt(colors);
+      snapshotStream.writeInt(width);
+      snapshotStream.writeInt(height);
+      snapshotStream.writeInt(padding);
+      snapshotStream.writeInt(dataType);
+      snapshotStream.writeInt(tileCount);
+      for (int i = 0; i < tileCount; i++)
+      {
+        snapshotStream.writeInt(tileSlots[i]);
+      }
+      pixels.finish();
+      writeRecord(RECORD_SNAPSHOT, time - startTime);
+    }
+    catch (Throwable t)
+    {
+      close();
+      return false;
+    }
+    finally
+    {
+      snapshotDeflater.reset();
+      for (int i = 0; i < CHANNEL_COUNT; i++)
+      {
+        channels[i].reset();
+      }
+    }
+    started = true;
+    keyframeTime = time;
+    return true;
+  }
+  
+  static void writeElements(OutputStream out, short[] data, int count, byte[] buffer) throws IOException
+  {
+    int position = 0;
+    while (position < count)
+    {
+      final int length = Math.min(count - position, buffer.length >> 1);
+      for (int i = 0, j = 0; i < length; i++, j += 2)
+      {
+        final short value = data[position + i];
+        buffer[j] = (byte) value;
+        buffer[j + 1] = (byte) (value >> 8);
+      }
+      out.write(buffer, 0, length << 1);
+      position += length;
+    }
+  }
+  
+  static void writeElements(OutputStream out, int[] data, int count, byte[] buffer) throws IOException
+  {
+    int position = 0;
+    while (position < count)
+    {
+      final int length = Math.min(count - position, buffer.length >> 2);
+      for (int i = 0, j = 0; i < length; i++, j += 4)
+      {
+        final int value = data[position + i];
+        buffer[j] = (byte) value;
+        buffer[j + 1] = (byte) (value >> 8);
+        buffer[j + 2] = (byte) (value >> 16);
+        buffer[j + 3] = (byte) (value >> 24);
+      }
+      out.write(buffer, 0, length << 2);
+      position += length;
+    }
+  }
+  
+  private void writeRecord(int type, long time) throws IOException
+  {
+    if (type != RECORD_FRAME)
+    {
+      indexStream.writeVarInt((int) time);
+      indexStream.writeLong(offset);
+      keyframeCount++;
+    }
+    lastTime = time;
+    headerBuffer.reset();
+    headerStream.write(type);
+    headerStream.writeVarInt((int) time);
+    for (int i = 0; i < CHANNEL_COUNT; i++)
+    {
+      headerStream.writeVarInt(channels[i].count());
+    }
+    output.write(headerBuffer.buf(), 0, headerBuffer.count());
+    offset += headerBuffer.count();
+    // the payloads are written as they were received, nothing is encoded again
+    for (int i = 0; i < CHANNEL_COUNT; i++)
+    {
+      output.write(channels[i].buf(), 0, channels[i].count());
+      offset += channels[i].count();
+    }
+  }
+  
+  public InputStream createInputStream(InputStream in, int channel)
+  {
+    return new VTGraphicsLinkRecorderInputStream(in, this, channel);
+  }
+}
@@ -0,0 +1,61 @@
+package org.vash.vate.graphics.record;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public final class VTGraphicsLinkRecorderInputStream extends InputStream
+{
+  private final InputStream in;
+  private final VTGraphicsLinkRecorder recorder;
+  private final int channel;
+  private final byte[] skipBuffer = new byte[512];
+  
+  VTGraphicsLinkRecorderInputStream(final InputStream in, final VTGraphicsLinkRecorder recorder, final int channel)
+  {
+    this.in = in;
+    this.recorder = recorder;
+    this.channel = channel;
+  }
+  
+  public final InputStream getInputStream()
+  {
+    return in;
+  }
+  
+  public final int read() throws IOException
+  {
+    final int data = in.read();
+    if (data >= 0)
+    {
+      recorder.append(channel, data);
+    }
+    return data;
+  }
+  
+  public final int read(final byte[] b, final int off, final int len) throws IOException
+  {
+    final int readed = in.read(b, off, len);
+    if (readed > 0)
+    {
+      recorder.append(channel, b, off, readed);
+    }
+    return readed;
+  }
+  
+  // skipped bytes are still part of the stream the player has to read
+  public final long skip(final long n) throws IOException
+  {
+    final int readed = read(skipBuffer, 0, (int) Math.min(n, skipBuffer.length));
+    return readed < 0 ? 0 : readed;
+  }
+  
+  public final int available() throws IOException
+  {
+    return in.available();
+  }
+  
+  public final void close() throws IOException
+  {
+    in.close();
+  }
+}
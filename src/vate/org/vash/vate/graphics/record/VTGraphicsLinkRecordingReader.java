@@ -0,0 +1,359 @@
+package org.vash.vate.graphics.record;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.InflaterInputStream;
+
+import org.vash.vate.graphics.image.VTImageDataTileCache;
+import org.vash.vate.graphics.image.VTImageIO;
+import org.vash.vate.stream.endian.VTLittleEndianInputStream;
+
+public class VTGraphicsLinkRecordingReader
+{
+  private final RandomAccessFile file;
+  private final VTLittleEndianInputStream input;
+  private final byte[][] channels = new byte[VTGraphicsLinkRecorder.CHANNEL_COUNT][0];
+  private final int[] lengths = new int[VTGraphicsLinkRecorder.CHANNEL_COUNT];
+  private long[] keyframeTimes = new long[16];
+  private long[] keyframeOffsets = new long[16];
+  private int keyframeCount;
+  private long duration;
+  private long recordsEnd;
+  private long position;
+  private long recordTime;
+  private boolean recordKeyframe;
+  private boolean recordSnapshot;
+  
+  public VTGraphicsLinkRecordingReader(String path) throws IOException
+  {
+    this.file = new RandomAccessFile(path, "r");
+    this.input = new VTLittleEndianInputStream(new VTRandomAccessFileInputStream(file));
+    try
+    {
+      final byte[] magic = new byte[VTGraphicsLinkRecorder.HEADER_MAGIC.length];
+      input.readFully(magic);
+      if (!Arrays.equals(magic, VTGraphicsLinkRecorder.HEADER_MAGIC))
+      {
+        throw new IOException("Invalid graphics link recording");
+      }
+      if (!readIndex())
+      {
+        rebuildIndex();
+      }
+    }
+    catch (IOException e)
+    {
+      file.close();
+      throw e;
+    }
+    position = VTGraphicsLinkRecorder.HEADER_MAGIC.length;
+  }
+  
+  private boolean readIndex() throws IOException
+  {
+    final int trailerSize = 8 + VTGraphicsLinkRecorder.INDEX_MAGIC.length;
+    if (file.length() < VTGraphicsLinkRecorder.HEADER_MAGIC.length + trailerSize)
+    {
+      return false;
+    }
+    file.seek(file.length() - trailerSize);
+    final long indexOffset = input.readLong();
+    final byte[] magic = new byte[VTGraphicsLinkRecorder.INDEX_MAGIC.length];
+    input.readFully(magic);
+    if (!Arrays.equals(magic, VTGraphicsLinkRecorder.INDEX_MAGIC) || indexOffset < VTGraphicsLinkRecorder.HEADER_MAGIC.length || indexOffset >= file.length())
+    {
+      return false;
+    }
+    file.seek(indexOffset);
+    if (input.read() != VTGraphicsLinkRecorder.RECORD_INDEX)
+    {
+      return false;
+    }
+    duration = input.readVarInt();
+    final int count = input.readVarInt();
+    for (int i = 0; i < count; i++)
+    {
+      final long time = input.readVarInt();
+      addKeyframe(time, input.readLong());
+    }
+    recordsEnd = indexOffset;
+    return true;
+  }
+  
+  // recordings that were not stopped have no index, it is rebuilt from the records that were completely written
+  private void rebuildIndex() throws IOException
+  {
+    keyframeCount = 0;
+    duration = 0;
+    recordsEnd = file.length();
+    position = VTGraphicsLinkRecorder.HEADER_MAGIC.length;
+    long offset = position;
+    while (readRecord())
+    {
+      if (recordKeyframe)
+      {
+        addKeyframe(recordTime, offset);
+      }
+      duration = recordTime;
+      offset = position;
+    }
+    recordsEnd = offset;
+  }
+  
+  private void addKeyframe(long time, long offset)
+  {
+    if (keyframeCount == keyframeTimes.length)
+    {
+      final long[] times = new long[keyframeCount * 2];
+      final long[] offsets = new long[keyframeCount * 2];
+      System.arraycopy(keyframeTimes, 0, times, 0, keyframeCount);
+      System.arraycopy(keyframeOffsets, 0, offsets, 0, keyframeCount);
+      keyframeTimes = times;
+      keyframeOffsets = offsets;
+    }
+    keyframeTimes[keyframeCount] = time;
+    keyframeOffsets[keyframeCount] = offset;
+    keyframeCount++;
+  }
+  
+  public int getKeyframeCount()
+  {
+    return keyframeCount;
+  }
+  
+  public long getKeyframeTime(int keyframe)
+  {
+    return keyframeTimes[keyframe];
+  }
+  
+  public long getDuration()
+  {
+    return duration;
+  }
+  
+  // positions the reader at the last keyframe at or before the time, records are then decoded in order from there
+  // returns the time of that keyframe or -1 when the recording has no keyframes
+  public long seek(long time)
+  {
+    if (keyframeCount == 0)
+    {
+      return -1;
+    }
+    int low = 0;
+    int high = keyframeCount - 1;
+    while (low < high)
+    {
+      final int middle = (low + high + 1) >>> 1;
+      if (keyframeTimes[middle] <= time)
+      {
+        low = middle;
+      }
+      else
+      {
+        high = middle - 1;
+      }
+    }
+    position = keyframeOffsets[low];
+    return keyframeTimes[low];
+  }
+  
+  // returns false at the end of the recording or at a record that was not completely written
+  public boolean readRecord() throws IOException
+  {
+    if (position >= recordsEnd)
+    {
+      return false;
+    }
+    file.seek(position);
+    try
+    {
+      final int type = input.read();
+      if (type != VTGraphicsLinkRecorder.RECORD_FRAME && type != VTGraphicsLinkRecorder.RECORD_KEYFRAME && type != VTGraphicsLinkRecorder.RECORD_SNAPSHOT)
+      {
+        return false;
+      }
+      final long time = input.readVarInt();
+      for (int i = 0; i < VTGraphicsLinkRecorder.CHANNEL_COUNT; i++)
+      {
+        lengths[i] = input.readVarInt();
+      }
+      if (file.length() - file.getFilePointer() < (long) lengths[0] + lengths[1] + lengths[2] + lengths[3])
+      {
+        return false;
+      }
+      for (int i = 0; i < VTGraphicsLinkRecorder.CHANNEL_COUNT; i++)
+      {
+        if (channels[i].length < lengths[i])
+        {
+          channels[i] = new byte[lengths[i]];
+        }
+        input.readFully(channels[i], 0, lengths[i]);
+      }
+      recordTime = time;
+      recordKeyframe = type != VTGraphicsLinkRecorder.RECORD_FRAME;
+      recordSnapshot = type == VTGraphicsLinkRecorder.RECORD_SNAPSHOT;
+      position = file.getFilePointer();
+      return true;
+    }
+    catch (IOException e)
+    {
+      return false;
+    }
+  }
+  
+  public long getRecordTime()
+  {
+    return recordTime;
+  }
+  
+  public boolean isRecordKeyframe()
+  {
+    return recordKeyframe;
+  }
+  
+  // snapshot keyframes hold the decoded image and tile cache instead of a control message
+  public boolean isRecordSnapshot()
+  {
+    return recordSnapshot;
+  }
+  
+  // restores the tile cache of a snapshot record and returns its image, decoding continues from them with the next record
+  // returns null when the current record is not a snapshot
+  public BufferedImage readSnapshot(VTImageDataTileCache tileCache) throws IOException
+  {
+    if (!recordSnapshot)
+    {
+      return null;
+    }
+    final VTLittleEndianInputStream header = new VTLittleEndianInputStream(createChannelInputStream(VTGraphicsLinkRecorder.CHANNEL_CONTROL));
+    final int type = header.readInt();
+    final int colors = header.readInt();
+    final int width = header.readInt();
+    final int height = header.readInt();
+    final int padding = header.readInt();
+    final int dataType = header.readInt();
+    final int tileCount = header.readInt();
+    final BufferedImage image = VTImageIO.createImage(padding, padding, width, height, type, colors, null);
+    final DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+    if (dataBuffer.getDataType() != dataType)
+    {
+      throw new IOException("Invalid graphics link snapshot");
+    }
+    final VTLittleEndianInputStream pixels = new VTLittleEndianInputStream(new InflaterInputStream(createChannelInputStream(VTGraphicsLinkRecorder.CHANNEL_DIRECT)));
+    final int elements = (width + padding) * (height + padding);
+    final byte[] buffer = new byte[VTGraphicsLinkRecorder.TILE_ELEMENTS * 4];
+    final byte[] tileBytes = new byte[VTGraphicsLinkRecorder.TILE_ELEMENTS];
+    final short[] tileShorts = new short[VTGraphicsLinkRecorder.TILE_ELEMENTS];
+    final int[] tileInts = new int[VTGraphicsLinkRecorder.TILE_ELEMENTS];
+    if (dataType == DataBuffer.TYPE_BYTE)
+    {
+      pixels.readFully(((DataBufferByte) dataBuffer).getData(), 0, elements);
+    }
+    else if (dataType == DataBuffer.TYPE_USHORT)
+    {
+      readElements(pixels, ((DataBufferUShort) dataBuffer).getData(), elements, buffer);
+    }
+    else
+    {
+      readElements(pixels, ((DataBufferInt) dataBuffer).getData(), elements, buffer);
+    }
+    for (int i = 0; i < tileCount; i++)
+    {
+      final int slot = header.readInt();
+      if (dataType == DataBuffer.TYPE_BYTE)
+      {
+        pixels.readFully(tileBytes, 0, VTGraphicsLinkRecorder.TILE_ELEMENTS);
+        tileCache.storeTile(slot, tileBytes, 0, VTImageDataTileCache.TILE_SIZE, VTImageDataTileCache.TILE_SIZE, 0, 0);
+      }
+      else if (dataType == DataBuffer.TYPE_USHORT)
+      {
+        readElements(pixels, tileShorts, VTGraphicsLinkRecorder.TILE_ELEMENTS, buffer);
+        tileCache.storeTile(slot, tileShorts, 0, VTImageDataTileCache.TILE_SIZE, VTImageDataTileCache.TILE_SIZE, 0, 0);
+      }
+      else
+      {
+        readElements(pixels, tileInts, VTGraphicsLinkRecorder.TILE_ELEMENTS, buffer);
+        tileCache.storeTile(slot, tileInts, 0, VTImageDataTileCache.TILE_SIZE, VTImageDataTileCache.TILE_SIZE, 0, 0);
+      }
+    }
+    return image;
+  }
+  
+  private static void readElements(VTLittleEndianInputStream in, short[] data, int count, byte[] buffer) throws IOException
+  {
+    int position = 0;
+    while (position < count)
+    {
+      final int length = Math.min(count - position, buffer.length >> 1);
+      in.readFully(buffer, 0, length << 1);
+      for (int i = 0, j = 0; i < length; i++, j += 2)
+      {
+        data[position + i] = (short) ((buffer[j] & 0xFF) | (buffer[j + 1] << 8));
+      }
+      position += length;
+    }
+  }
+  
+  private static void readElements(VTLittleEndianInputStream in, int[] data, int count, byte[] buffer) throws IOException
+  {
+    int position = 0;
+    while (position < count)
+    {
+      final int length = Math.min(count - position, buffer.length >> 2);
+      in.readFully(buffer, 0, length << 2);
+      for (int i = 0, j = 0; i < length; i++, j += 4)
+      {
+        data[position + i] = (buffer[j] & 0xFF) | ((buffer[j + 1] & 0xFF) << 8) | ((buffer[j + 2] & 0xFF) << 16) | (buffer[j + 3] << 24);
+      }
+      position += length;
+    }
+  }
+  
+  public byte[] getChannelData(int channel)
+  {
+    return channels[channel];
+  }
+  
+  public int getChannelLength(int channel)
+  {
+    return lengths[channel];
+  }
+  
+  public InputStream createChannelInputStream(int channel)
+  {
+    return new ByteArrayInputStream(channels[channel], 0, lengths[channel]);
+  }
+  
+  public void close() throws IOException
+  {
+    file.close();
+  }
+  
+  private static final class VTRandomAccessFileInputStream extends InputStream
+  {
+    private final RandomAccessFile file;
+    
+    private VTRandomAccessFileInputStream(final RandomAccessFile file)
+    {
+      this.file = file;
+    }
+    
+    public final int read() throws IOException
+    {
+      return file.read();
+    }
+    
+    public final int read(final byte[] b, final int off, final int len) throws IOException
+    {
+      return file.read(b, off, len);
+    }
+  }
+}
@@ -30,13 +30,14 @@ public class VTHelpManager
   ("\n-CH: connection host, default null") + 
   ("\n-CP: connection port, default 6060") + 
   ("\n-CN: connection NAT port, default null") + 
+  ("\n-CL: connection lanes, default disabled(D), enabled(E)") + 
   ("\n-PT: proxy type, default none, DIRECT(D), SOCKS(S), HTTP(H), PLUS(P)") + 
   ("\n-PH: proxy host, default null") + 
   ("\n-PP: proxy port, default 1080 for SOCKS or 8080 for HTTP") + 
   //("\n-PA: proxy authentication, default disabled(D), enabled(E)") + 
   ("\n-PU: proxy user, default null") + 
   ("\n-PK: proxy password, default null") + 
-  ("\n-ET: encryption type, default none/SALSA(S)/HC(H)/GRAIN(G)/ZUC(Z)/LEA(L)") + 
+  ("\n-ET: encryption type, default none/SALSA(S)/HC(H)/GRAIN(G)/ZUC(Z)/LEA(L)/AES(A)") + 
   ("\n-EK: encryption password, default null") + 
   ("\n-PI: ping interval, default " + VTSystem.VT_PING_INTERVAL_MILLISECONDS + " milliseconds") + 
   ("\n-PL: ping limit, default " + VTSystem.VT_PING_LIMIT_MILLISECONDS + " milliseconds") +
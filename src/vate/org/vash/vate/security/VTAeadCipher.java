@@ -0,0 +1,102 @@
+package org.vash.vate.security;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.security.spec.AlgorithmParameterSpec;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.vash.vate.org.bouncycastle.crypto.engines.AESEngine;
+import org.vash.vate.org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.vash.vate.org.bouncycastle.crypto.params.AEADParameters;
+import org.vash.vate.org.bouncycastle.crypto.params.KeyParameter;
+
+public class VTAeadCipher
+{
+  public static final int TAG_SIZE_BYTES = 16;
+  // GCMParameterSpec and Cipher.updateAAD only exist since java 1.7, older runtimes use the bundled cipher
+  private static Constructor<?> gcmParameterSpecConstructor;
+  private static Method updateAADMethod;
+  
+  static
+  {
+    try
+    {
+      gcmParameterSpecConstructor = Class.forName("javax.crypto.spec.GCMParameterSpec").getConstructor(int.class, byte[].class);
+      updateAADMethod = Cipher.class.getMethod("updateAAD", byte[].class, int.class, int.class);
+    }
+    catch (Throwable t)
+    {
+      gcmParameterSpecConstructor = null;
+      updateAADMethod = null;
+    }
+  }
+  
+  private final boolean encryption;
+  private final byte[] key;
+  private final byte[] nonce;
+  private final byte[] frameNonce;
+  private final SecretKeySpec keySpec;
+  private Cipher jceCipher;
+  private GCMBlockCipher bundledCipher;
+  private long counter;
+  
+  public VTAeadCipher(final boolean encryption, final byte[] key, final byte[] nonce)
+  {
+    this.encryption = encryption;
+    this.key = key;
+    this.nonce = nonce;
+    this.frameNonce = new byte[nonce.length];
+    this.keySpec = new SecretKeySpec(key, "AES");
+    try
+    {
+      if (gcmParameterSpecConstructor == null || updateAADMethod == null)
+      {
+        throw new NoSuchMethodException("Incompatible java version < 1.7");
+      }
+      jceCipher = Cipher.getInstance("AES/GCM/NoPadding");
+    }
+    catch (Throwable t)
+    {
+      jceCipher = null;
+      bundledCipher = new GCMBlockCipher(new AESEngine());
+    }
+  }
+  
+  public boolean isNative()
+  {
+    return jceCipher != null;
+  }
+  
+  // the associated data is authenticated with the frame but not encrypted
+  public int process(final byte[] associated, final int associatedOffset, final int associatedLength, final byte[] input, final int inputOffset, final int inputLength, final byte[] output, final int outputOffset) throws IOException
+  {
+    System.arraycopy(nonce, 0, frameNonce, 0, nonce.length);
+    for (int i = 0; i < 8; i++)
+    {
+      frameNonce[nonce.length - 8 + i] ^= (byte) (counter >> (i << 3));
+    }
+    counter++;
+    try
+    {
+      if (jceCipher != null)
+      {
+        // jceCipher.init(mode, keySpec, new GCMParameterSpec(TAG_SIZE_BYTES * 8, frameNonce));
+        jceCipher.init(encryption ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, keySpec, (AlgorithmParameterSpec) gcmParameterSpecConstructor.newInstance(TAG_SIZE_BYTES * 8, frameNonce));
+        // jceCipher.updateAAD(associated, associatedOffset, associatedLength);
+        updateAADMethod.invoke(jceCipher, associated, associatedOffset, associatedLength);
+        return jceCipher.doFinal(input, inputOffset, inputLength, output, outputOffset);
+      }
+      bundledCipher.init(encryption, new AEADParameters(new KeyParameter(key), TAG_SIZE_BYTES * 8, frameNonce));
+      bundledCipher.processAADBytes(associated, associatedOffset, associatedLength);
+      final int processed = bundledCipher.processBytes(input, inputOffset, inputLength, output, outputOffset);
+      return processed + bundledCipher.doFinal(output, outputOffset + processed);
+    }
+    catch (Throwable t)
+    {
+      throw new IOException("Frame authentication failed");
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package org.vash.vate.security;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.vash.vate.VTSystem;
+
+public class VTAeadCipherInputStream extends FilterInputStream
+{
+  private final byte[] header = new byte[4];
+  private final byte[] encrypted = new byte[VTSystem.VT_CONNECTION_ENCRYPTION_FRAME_SIZE_BYTES + VTAeadCipher.TAG_SIZE_BYTES];
+  private final byte[] decrypted = new byte[VTSystem.VT_CONNECTION_ENCRYPTION_FRAME_SIZE_BYTES];
+  private final VTAeadCipher aeadCipher;
+  private int position;
+  private int count;
+  
+  public VTAeadCipherInputStream(InputStream in, VTAeadCipher aeadCipher)
+  {
+    super(in);
+    this.aeadCipher = aeadCipher;
+  }
+  
+  public int read() throws IOException
+  {
+    if (position == count && !readFrame())
+    {
+      return -1;
+    }
+    return decrypted[position++] & 0xFF;
+  }
+  
+  public int read(final byte[] data) throws IOException
+  {
+    return read(data, 0, data.length);
+  }
+  
+  public int read(final byte[] data, final int off, final int len) throws IOException
+  {
+    if (len == 0)
+    {
+      return 0;
+    }
+    if (position == count && !readFrame())
+    {
+      return -1;
+    }
+    final int copied = Math.min(len, count - position);
+    System.arraycopy(decrypted, position, data, off, copied);
+    position += copied;
+    return copied;
+  }
+  
+  public long skip(final long n) throws IOException
+  {
+    if (n <= 0 || (position == count && !readFrame()))
+    {
+      return 0;
+    }
+    final int skipped = (int) Math.min(n, count - position);
+    position += skipped;
+    return skipped;
+  }
+  
+  public int available() throws IOException
+  {
+    return count - position;
+  }
+  
+  public boolean markSupported()
+  {
+    return false;
+  }
+  
+  private boolean readFrame() throws IOException
+  {
+    if (!readFully(header, 4, true))
+    {
+      return false;
+    }
+    final int length = (header[0] & 0xFF) | (header[1] & 0xFF) << 8 | (header[2] & 0xFF) << 16 | (header[3] & 0xFF) << 24;
+    if (length <= 0 || length > decrypted.length)
+    {
+      throw new IOException("Invalid encrypted frame");
+    }
+    readFully(encrypted, length + VTAeadCipher.TAG_SIZE_BYTES, false);
+    count = aeadCipher.process(header, 0, 4, encrypted, 0, length + VTAeadCipher.TAG_SIZE_BYTES, decrypted, 0);
+    position = 0;
+    return true;
+  }
+  
+  private boolean readFully(final byte[] buffer, final int length, final boolean frameStart) throws IOException
+  {
+    int readed = 0;
+    while (readed < length)
+    {
+      final int current = in.read(buffer, readed, length - readed);
+      if (current < 0)
+      {
+        if (frameStart && readed == 0)
+        {
+          return false;
+        }
+        throw new EOFException();
+      }
+      readed += current;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,72 @@
+package org.vash.vate.security;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.vash.vate.VTSystem;
+
+public class VTAeadCipherOutputStream extends FilterOutputStream
+{
+  private final byte[] decrypted = new byte[VTSystem.VT_CONNECTION_ENCRYPTION_FRAME_SIZE_BYTES];
+  private final byte[] encrypted = new byte[4 + VTSystem.VT_CONNECTION_ENCRYPTION_FRAME_SIZE_BYTES + VTAeadCipher.TAG_SIZE_BYTES];
+  private final VTAeadCipher aeadCipher;
+  private int count;
+  
+  public VTAeadCipherOutputStream(OutputStream out, VTAeadCipher aeadCipher)
+  {
+    super(out);
+    this.aeadCipher = aeadCipher;
+  }
+  
+  public void write(final int data) throws IOException
+  {
+    if (count == decrypted.length)
+    {
+      writeFrame();
+    }
+    decrypted[count++] = (byte) data;
+  }
+  
+  public void write(final byte[] data) throws IOException
+  {
+    write(data, 0, data.length);
+  }
+  
+  public void write(final byte[] data, int off, int len) throws IOException
+  {
+    while (len > 0)
+    {
+      if (count == decrypted.length)
+      {
+        writeFrame();
+      }
+      final int copied = Math.min(len, decrypted.length - count);
+      System.arraycopy(data, off, decrypted, count, copied);
+      count += copied;
+      off += copied;
+      len -= copied;
+    }
+  }
+  
+  public void flush() throws IOException
+  {
+    writeFrame();
+    out.flush();
+  }
+  
+  private void writeFrame() throws IOException
+  {
+    if (count == 0)
+    {
+      return;
+    }
+    encrypted[0] = (byte) count;
+    encrypted[1] = (byte) (count >> 8);
+    encrypted[2] = (byte) (count >> 16);
+    encrypted[3] = (byte) (count >> 24);
+    final int length = aeadCipher.process(encrypted, 0, 4, decrypted, 0, count, encrypted, 4);
+    count = 0;
+    out.write(encrypted, 0, 4 + length);
+  }
+}
@@ -20,6 +20,8 @@ public class VTCryptographicEngine
   
   private StreamCipher encryptionStreamCipher;
   private StreamCipher decryptionStreamCipher;
+  private VTAeadCipher encryptionAeadCipher;
+  private VTAeadCipher decryptionAeadCipher;
   
   public VTCryptographicEngine()
   {
@@ -30,6 +32,8 @@ public class VTCryptographicEngine
   {
     encryptionStreamCipher = null;
     decryptionStreamCipher = null;
+    encryptionAeadCipher = null;
+    decryptionAeadCipher = null;
     
     blake3Digest.reset();
     for (byte[] data : encryptionKeys)
@@ -121,6 +125,11 @@ public class VTCryptographicEngine
       encryptionStreamCipher.init(true, encryptionIvParameterSpec);
       decryptionStreamCipher.init(false, decryptionIvParameterSpec);
     }
+    else if (encryptionType == VTSystem.VT_CONNECTION_ENCRYPTION_AES)
+    {
+      decryptionAeadCipher = new VTAeadCipher(false, generateKeyBLAKE3(16, first, second, encryptionKeys), generateIVBLAKE3(12, first, second, encryptionKeys));
+      encryptionAeadCipher = new VTAeadCipher(true, generateKeyBLAKE3(16, second, first, encryptionKeys), generateIVBLAKE3(12, second, first, encryptionKeys));
+    }
     else
     {
       
@@ -131,6 +140,8 @@ public class VTCryptographicEngine
   {
     encryptionStreamCipher = null;
     decryptionStreamCipher = null;
+    encryptionAeadCipher = null;
+    decryptionAeadCipher = null;
     
     blake3Digest.reset();
     for (byte[] data : encryptionKeys)
@@ -222,6 +233,11 @@ public class VTCryptographicEngine
       encryptionStreamCipher.init(true, encryptionIvParameterSpec);
       decryptionStreamCipher.init(false, decryptionIvParameterSpec);
     }
+    else if (encryptionType == VTSystem.VT_CONNECTION_ENCRYPTION_AES)
+    {
+      encryptionAeadCipher = new VTAeadCipher(true, generateKeyBLAKE3(16, first, second, encryptionKeys), generateIVBLAKE3(12, first, second, encryptionKeys));
+      decryptionAeadCipher = new VTAeadCipher(false, generateKeyBLAKE3(16, second, first, encryptionKeys), generateIVBLAKE3(12, second, first, encryptionKeys));
+    }
     else
     {
       
@@ -268,6 +284,10 @@ public class VTCryptographicEngine
     {
       return new VTStreamCipherInputStream(encrypted, decryptionStreamCipher, bufferSize);
     }
+    if (decryptionAeadCipher != null)
+    {
+      return new VTAeadCipherInputStream(encrypted, decryptionAeadCipher);
+    }
     return encrypted;
   }
   
@@ -277,6 +297,10 @@ public class VTCryptographicEngine
     {
       return new VTStreamCipherOutputStream(decrypted, encryptionStreamCipher, bufferSize);
     }
+    if (encryptionAeadCipher != null)
+    {
+      return new VTAeadCipherOutputStream(decrypted, encryptionAeadCipher);
+    }
     return decrypted;
   }
 }
\ No newline at end of file
@@ -33,6 +33,7 @@ import org.vash.vate.server.connection.VTServerConnector;
 import org.vash.vate.server.console.local.VTServerLocalConsoleReader;
 import org.vash.vate.server.console.local.VTServerLocalGraphicalConsoleMenuBar;
 import org.vash.vate.server.dialog.VTServerSettingsDialog;
+import org.vash.vate.server.graphicslink.VTGraphicsLinkServerCaptureHub;
 import org.vash.vate.server.session.VTServerSessionListener;
 
 public class VTServer implements Runnable
@@ -71,6 +72,7 @@ public class VTServer implements Runnable
   private VTServerLocalConsoleReader consoleReader;
   private VTServerLocalGraphicalConsoleMenuBar inputMenuBar;
   private VTAudioSystem[] audioSystem;
+  private VTGraphicsLinkServerCaptureHub graphicsCaptureHub;
   private VTServerSettingsDialog connectionDialog;
   private ExecutorService executorService;
   private VTTrayIconInterface trayIconInterface;
@@ -80,6 +82,7 @@ public class VTServer implements Runnable
   private Collection<VTServerSessionListener> listeners = new ConcurrentLinkedQueue<VTServerSessionListener>();
   private int pingLimit = 0;
   private int pingInterval = 0;
+  private boolean connectionLanes = false;
   private int reconnectTimeout = 0;
   private Future<?> runThread;
   private VTTrafficMonitorService trafficMonitorService;
@@ -87,9 +90,10 @@ public class VTServer implements Runnable
   
   private static final String VT_SERVER_SETTINGS_COMMENTS = 
   "Variable-Terminal server settings file, supports UTF-8\r\n" + 
+  "#vate.server.connection.lanes values: default disabled(D), enabled(E)\r\n" + 
   "#vate.server.connection.mode  values: default passive(P), active(A)\r\n" + 
   "#vate.server.proxy.type       values: DIRECT(D)/SOCKS(S)/HTTP(H)/PLUS(P)\r\n" + 
-  "#vate.server.encryption.type  values: SALSA(S)/HC(H)/GRAIN(G)/ZUC(Z)/LEA(L)\r\n" + 
+  "#vate.server.encryption.type  values: SALSA(S)/HC(H)/GRAIN(G)/ZUC(Z)/LEA(L)/AES(A)\r\n" + 
   "#vate.server.session.accounts format: user1/password1;user2/password2;...\r\n";
   
   static
@@ -116,6 +120,7 @@ public class VTServer implements Runnable
     this.audioSystem[2] = new VTAudioSystem(executorService);
     this.audioSystem[3] = new VTAudioSystem(executorService);
     this.audioSystem[4] = new VTAudioSystem(executorService);
+    this.graphicsCaptureHub = new VTGraphicsLinkServerCaptureHub(executorService);
     loadServerSettingsFile();
   }
   
@@ -139,6 +144,7 @@ public class VTServer implements Runnable
     this.audioSystem[2] = new VTAudioSystem(executorService);
     this.audioSystem[3] = new VTAudioSystem(executorService);
     this.audioSystem[4] = new VTAudioSystem(executorService);
+    this.graphicsCaptureHub = new VTGraphicsLinkServerCaptureHub(executorService);
     loadServerSettingsFile();
   }
   
@@ -190,6 +196,15 @@ public class VTServer implements Runnable
       
     }
     
+    try
+    {
+      graphicsCaptureHub.dispose();
+    }
+    catch (Throwable t)
+    {
+      
+    }
+    
     try
     {
       executorService.shutdownNow();
@@ -236,6 +251,11 @@ public class VTServer implements Runnable
     return null;
   }
   
+  public VTGraphicsLinkServerCaptureHub getGraphicsCaptureHub()
+  {
+    return graphicsCaptureHub;
+  }
+  
   public Runtime getRuntime()
   {
     return runtime;
@@ -555,6 +575,7 @@ public class VTServer implements Runnable
       fileServerSettings.setProperty("vate.server.connection.port", hostPort != null ? String.valueOf(hostPort) : "");
       fileServerSettings.setProperty("vate.server.connection.host", hostAddress);
       fileServerSettings.setProperty("vate.server.connection.nat.port", natPort != null ? String.valueOf(natPort) : "");
+      fileServerSettings.setProperty("vate.server.connection.lanes", connectionLanes ? "Enabled" : "Disabled");
       fileServerSettings.setProperty("vate.server.proxy.type", proxyType);
       fileServerSettings.setProperty("vate.server.proxy.host", proxyAddress);
       fileServerSettings.setProperty("vate.server.proxy.port", proxyPort != null ? String.valueOf(proxyPort) : "");
@@ -814,6 +835,19 @@ public class VTServer implements Runnable
       }
     }
     
+    if (fileServerSettings.getProperty("vate.server.connection.lanes") != null)
+    {
+      found = true;
+      try
+      {
+        connectionLanes = fileServerSettings.getProperty("vate.server.connection.lanes").toUpperCase().startsWith("E");
+      }
+      catch (Throwable e)
+      {
+        
+      }
+    }
+    
     if (fileServerSettings.getProperty("vate.server.ping.limit") != null)
     {
       found = true;
@@ -1065,6 +1099,18 @@ public class VTServer implements Runnable
         }
       }
       
+      if (fileServerSettings.getProperty("vate.server.connection.lanes") != null)
+      {
+        try
+        {
+          connectionLanes = fileServerSettings.getProperty("vate.server.connection.lanes").toUpperCase().startsWith("E");
+        }
+        catch (Throwable e)
+        {
+          
+        }
+      }
+      
       if (fileServerSettings.getProperty("vate.server.ping.limit") != null)
       {
         try
@@ -1295,6 +1341,18 @@ public class VTServer implements Runnable
       }
     }
     
+    if (fileServerSettings.getProperty("vate.server.connection.lanes") != null)
+    {
+      try
+      {
+        connectionLanes = fileServerSettings.getProperty("vate.server.connection.lanes").toUpperCase().startsWith("E");
+      }
+      catch (Throwable e)
+      {
+        
+      }
+    }
+    
     if (fileServerSettings.getProperty("vate.server.ping.limit") != null)
     {
       try
@@ -1816,7 +1874,7 @@ public class VTServer implements Runnable
         }
         if (line.toUpperCase().startsWith("Y"))
         {
-          VTMainConsole.print("VT>Enter encryption type(SALSA(S)/HC(H)/GRAIN(G)/ZUC(Z)/LEA(L)):");
+          VTMainConsole.print("VT>Enter encryption type(SALSA(S)/HC(H)/GRAIN(G)/ZUC(Z)/LEA(L)/AES(A)):");
           line = VTMainConsole.readLine(false);
           if (line == null)
           {
@@ -1847,6 +1905,10 @@ public class VTServer implements Runnable
           {
             encryptionType = "LEA";
           }
+          if (line.toUpperCase().startsWith("A"))
+          {
+            encryptionType = "AES";
+          }
           VTMainConsole.print("VT>Enter encryption password:");
           line = VTMainConsole.readLine(false);
           if (line == null)
@@ -2175,6 +2237,11 @@ public class VTServer implements Runnable
           
         }
       }
+      if (parameterName.contains("-CL"))
+      {
+        parameterValue = parameters[++i];
+        connectionLanes = parameterValue.toUpperCase().startsWith("E");
+      }
       if (parameterName.contains("-PI"))
       {
         parameterValue = parameters[++i];
@@ -2458,6 +2525,16 @@ public class VTServer implements Runnable
     return reconnectTimeout;
   }
   
+  public void setConnectionLanes(boolean connectionLanes)
+  {
+    this.connectionLanes = connectionLanes;
+  }
+  
+  public boolean isConnectionLanes()
+  {
+    return connectionLanes;
+  }
+  
   public int getPingLimitMilliseconds()
   {
     if (pingLimit > 0)
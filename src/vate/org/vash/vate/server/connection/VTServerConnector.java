@@ -389,6 +389,20 @@ public class VTServerConnector implements Runnable
     return false;
   }
   
+  private boolean isDirectConnection()
+  {
+    if (proxy != null)
+    {
+      return false;
+    }
+    if (proxyType == null || proxyAddress == null || proxyPort == null)
+    {
+      return true;
+    }
+    String type = proxyType.toUpperCase();
+    return !(type.startsWith("G") || type.startsWith("D") || type.startsWith("H") || type.startsWith("S") || type.startsWith("P"));
+  }
+  
   public void resetSockets(VTServerConnection connection) throws IOException
   {
     if (proxy != null)
@@ -469,6 +483,7 @@ public class VTServerConnector implements Runnable
       //connection.getConnectionSocket().setSoLinger(true, 0);
       //connection.getConnectionSocket().setKeepAlive(true);
       connection.getConnectionSocket().setSoTimeout(server.getPingLimitMilliseconds());
+      connection.setLanesMode(server.isConnectionLanes() && (natPort == null || natPort <= 0) ? VTSystem.VT_CONNECTION_LANES_ACCEPT : VTSystem.VT_CONNECTION_LANES_NONE);
 //      connecting = false;
       if (encryptionType == null)
       {
@@ -498,6 +513,10 @@ public class VTServerConnector implements Runnable
       {
         connection.setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_LEA);
       }
+      else if (encryptionType.toUpperCase().startsWith("A"))
+      {
+        connection.setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_AES);
+      }
       else
       {
         connection.setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_NONE);
@@ -543,6 +562,7 @@ public class VTServerConnector implements Runnable
       //connection.getConnectionSocket().setSoLinger(true, 0);
       //connection.getConnectionSocket().setKeepAlive(true);
       connection.getConnectionSocket().setSoTimeout(server.getPingLimitMilliseconds());
+      connection.setLanesMode(server.isConnectionLanes() && isDirectConnection() ? VTSystem.VT_CONNECTION_LANES_CONNECT : VTSystem.VT_CONNECTION_LANES_NONE);
 //      connecting = false;
       if (encryptionType == null)
       {
@@ -572,6 +592,10 @@ public class VTServerConnector implements Runnable
       {
         connection.setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_LEA);
       }
+      else if (encryptionType.toUpperCase().startsWith("A"))
+      {
+        connection.setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_AES);
+      }
       else
       {
         connection.setEncryptionType(VTSystem.VT_CONNECTION_ENCRYPTION_NONE);
@@ -121,6 +121,10 @@ public class VTSETTING extends VTServerStandardLocalConsoleCommandProcessor
       {
         message.append("\nVT>Encryption type(ET): [LEA]");
       }
+      else if (encryptionType.toUpperCase().startsWith("A"))
+      {
+        message.append("\nVT>Encryption type(ET): [AES]");
+      }
       else
       {
         message.append("\nVT>Encryption type(ET): []");
@@ -598,6 +602,10 @@ public class VTSETTING extends VTServerStandardLocalConsoleCommandProcessor
           {
             VTMainConsole.print("\rVT>Encryption type(ET): [LEA]\nVT>");
           }
+          else if (encryptionType.toUpperCase().startsWith("A"))
+          {
+            VTMainConsole.print("\rVT>Encryption type(ET): [AES]\nVT>");
+          }
           else
           {
             VTMainConsole.print("\rVT>Encryption type(ET): []\nVT>");
@@ -637,6 +645,10 @@ public class VTSETTING extends VTServerStandardLocalConsoleCommandProcessor
           {
             VTMainConsole.print("\rVT>Encryption type(ET) set to: [LEA]\nVT>");
           }
+          else if (encryptionType.toUpperCase().startsWith("A"))
+          {
+            VTMainConsole.print("\rVT>Encryption type(ET) set to: [AES]\nVT>");
+          }
           else
           {
             VTMainConsole.print("\rVT>Encryption type(ET) set to: []\nVT>");
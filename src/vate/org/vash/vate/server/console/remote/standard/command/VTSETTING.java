@@ -120,6 +120,10 @@ public class VTSETTING extends VTServerStandardRemoteConsoleCommandProcessor
       {
         message.append("\nVT>Encryption type(ET): [LEA]");
       }
+      else if (encryptionType.toUpperCase().startsWith("A"))
+      {
+        message.append("\nVT>Encryption type(ET): [AES]");
+      }
       else
       {
         message.append("\nVT>Encryption type(ET): []");
@@ -638,6 +642,11 @@ public class VTSETTING extends VTServerStandardRemoteConsoleCommandProcessor
             connection.getResultWriter().write("\rVT>Encryption type(ET): [LEA]\nVT>");
             connection.getResultWriter().flush();
           }
+          else if (encryptionType.toUpperCase().startsWith("A"))
+          {
+            connection.getResultWriter().write("\rVT>Encryption type(ET): [AES]\nVT>");
+            connection.getResultWriter().flush();
+          }
           else
           {
             connection.getResultWriter().write("\rVT>Encryption type(ET): []\nVT>");
@@ -684,6 +693,11 @@ public class VTSETTING extends VTServerStandardRemoteConsoleCommandProcessor
             connection.getResultWriter().write("\rVT>Encryption type(ET) set to: [LEA]\nVT>");
             connection.getResultWriter().flush();
           }
+          else if (encryptionType.toUpperCase().startsWith("A"))
+          {
+            connection.getResultWriter().write("\rVT>Encryption type(ET) set to: [AES]\nVT>");
+            connection.getResultWriter().flush();
+          }
           else
           {
             connection.getResultWriter().write("\rVT>Encryption type(ET) set to: []\nVT>");
@@ -420,6 +420,7 @@ public class VTServerSettingsDialog extends Dialog
     //encryptionTypeChoice.add("RABBIT");
     encryptionTypeChoice.add("ZUC");
     encryptionTypeChoice.add("LEA");
+    encryptionTypeChoice.add("AES");
     encryptionTypeChoice.select("NONE");
     encryptionTypeChoice.addItemListener(new ItemListener()
     {
@@ -455,6 +456,10 @@ public class VTServerSettingsDialog extends Dialog
           {
             setEncryptionType("LEA");
           }
+          else if (e.getItem().equals("AES"))
+          {
+            setEncryptionType("AES");
+          }
         }
       }
     });
@@ -1408,6 +1413,10 @@ public class VTServerSettingsDialog extends Dialog
     {
       encryptionType.setParameter("LEA");
     }
+    else if (encryption.toUpperCase().startsWith("A"))
+    {
+      encryptionType.setParameter("AES");
+    }
     else
     {
       encryptionType.setParameter("NONE");
@@ -0,0 +1,119 @@
+package org.vash.vate.server.graphicslink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.vash.vate.graphics.capture.VTAWTScreenCaptureProvider;
+import org.vash.vate.graphics.image.VTRectangle;
+
+public class VTGraphicsLinkServerCaptureHub
+{
+  private final ExecutorService executorService;
+  private final List<VTGraphicsLinkServerCaptureSource> sources = new ArrayList<VTGraphicsLinkServerCaptureSource>();
+  private final List<VTGraphicsLinkServerFrameBroadcast> broadcasts = new ArrayList<VTGraphicsLinkServerFrameBroadcast>();
+  
+  public VTGraphicsLinkServerCaptureHub(ExecutorService executorService)
+  {
+    this.executorService = executorService;
+  }
+  
+  // viewers with the same capture settings share one source, a viewer moves to another source when its settings change
+  synchronized VTGraphicsLinkServerCaptureSource subscribe(VTGraphicsLinkServerCaptureSource current, VTAWTScreenCaptureProvider settings, int padding, boolean drawPointer, VTRectangle captureArea)
+  {
+    if (current != null && current.matches(settings, padding, drawPointer, captureArea))
+    {
+      return current;
+    }
+    unsubscribe(current);
+    for (VTGraphicsLinkServerCaptureSource source : sources)
+    {
+      if (source.matches(settings, padding, drawPointer, captureArea))
+      {
+        source.subscribe();
+        return source;
+      }
+    }
+    return createSource(settings, padding, drawPointer, captureArea);
+  }
+  
+  // a viewer held back by slower viewers of its source continues on a source of its own
+  synchronized VTGraphicsLinkServerCaptureSource detach(VTGraphicsLinkServerCaptureSource current, VTAWTScreenCaptureProvider settings, int padding, boolean drawPointer, VTRectangle captureArea)
+  {
+    unsubscribe(current);
+    return createSource(settings, padding, drawPointer, captureArea);
+  }
+  
+  synchronized void unsubscribe(VTGraphicsLinkServerCaptureSource current)
+  {
+    if (current != null && current.unsubscribe())
+    {
+      sources.remove(current);
+      current.dispose();
+    }
+  }
+  
+  private VTGraphicsLinkServerCaptureSource createSource(VTAWTScreenCaptureProvider settings, int padding, boolean drawPointer, VTRectangle captureArea)
+  {
+    VTGraphicsLinkServerCaptureSource source = new VTGraphicsLinkServerCaptureSource(executorService, settings, padding, drawPointer, captureArea);
+    source.subscribe();
+    sources.add(source);
+    return source;
+  }
+  
+  // viewers with the same encoding settings follow the frames encoded by one of them, a viewer leads a new broadcast when none matches
+  synchronized VTGraphicsLinkServerFrameBroadcast subscribeBroadcast(VTGraphicsLinkServerFrameBroadcast current, VTGraphicsLinkServerWriter viewer, VTAWTScreenCaptureProvider settings, boolean drawPointer, VTRectangle captureArea, int imageCoding, boolean progressiveRefresh, int screenCaptureInterval)
+  {
+    if (current != null && !current.isDissolved() && current.matches(settings, drawPointer, captureArea, imageCoding, progressiveRefresh, screenCaptureInterval))
+    {
+      return current;
+    }
+    unsubscribeBroadcast(current, viewer);
+    for (VTGraphicsLinkServerFrameBroadcast broadcast : broadcasts)
+    {
+      if (broadcast.matches(settings, drawPointer, captureArea, imageCoding, progressiveRefresh, screenCaptureInterval))
+      {
+        broadcast.subscribe();
+        return broadcast;
+      }
+    }
+    return createBroadcast(viewer, settings, drawPointer, captureArea, imageCoding, progressiveRefresh, screenCaptureInterval);
+  }
+  
+  // a follower kept waiting by its leader continues encoding on a broadcast of its own
+  synchronized VTGraphicsLinkServerFrameBroadcast detachBroadcast(VTGraphicsLinkServerFrameBroadcast current, VTGraphicsLinkServerWriter viewer, VTAWTScreenCaptureProvider settings, boolean drawPointer, VTRectangle captureArea, int imageCoding, boolean progressiveRefresh, int screenCaptureInterval)
+  {
+    unsubscribeBroadcast(current, viewer);
+    return createBroadcast(viewer, settings, drawPointer, captureArea, imageCoding, progressiveRefresh, screenCaptureInterval);
+  }
+  
+  synchronized void unsubscribeBroadcast(VTGraphicsLinkServerFrameBroadcast current, VTGraphicsLinkServerWriter viewer)
+  {
+    if (current != null && current.unsubscribe(viewer))
+    {
+      broadcasts.remove(current);
+      current.dispose();
+    }
+  }
+  
+  private VTGraphicsLinkServerFrameBroadcast createBroadcast(VTGraphicsLinkServerWriter viewer, VTAWTScreenCaptureProvider settings, boolean drawPointer, VTRectangle captureArea, int imageCoding, boolean progressiveRefresh, int screenCaptureInterval)
+  {
+    VTGraphicsLinkServerFrameBroadcast broadcast = new VTGraphicsLinkServerFrameBroadcast(viewer, settings, drawPointer, captureArea, imageCoding, progressiveRefresh, screenCaptureInterval);
+    broadcasts.add(broadcast);
+    return broadcast;
+  }
+  
+  public synchronized void dispose()
+  {
+    for (VTGraphicsLinkServerFrameBroadcast broadcast : broadcasts)
+    {
+      broadcast.dispose();
+    }
+    broadcasts.clear();
+    for (VTGraphicsLinkServerCaptureSource source : sources)
+    {
+      source.dispose();
+    }
+    sources.clear();
+  }
+}
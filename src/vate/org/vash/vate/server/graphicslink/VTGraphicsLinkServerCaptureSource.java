@@ -0,0 +1,157 @@
+package org.vash.vate.server.graphicslink;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+
+import org.vash.vate.graphics.capture.VTAWTScreenCaptureProvider;
+import org.vash.vate.graphics.image.VTRectangle;
+
+final class VTGraphicsLinkServerCaptureSource
+{
+  private final VTAWTScreenCaptureProvider settings;
+  private final VTAWTScreenCaptureProvider captureProvider;
+  private final int padding;
+  private final boolean drawPointer;
+  private final VTRectangle captureArea;
+  private int subscribers;
+  private int holders;
+  private boolean capturing;
+  private long sequence;
+  private long captureTime;
+  private BufferedImage image;
+  
+  VTGraphicsLinkServerCaptureSource(final ExecutorService executorService, final VTAWTScreenCaptureProvider settings, final int padding, final boolean drawPointer, final VTRectangle captureArea)
+  {
+    // scaling recalculates the settings of the capturing provider, so the viewers are matched against a copy
+    this.settings = new VTAWTScreenCaptureProvider();
+    this.settings.copySettings(settings);
+    this.captureProvider = new VTAWTScreenCaptureProvider(executorService);
+    this.captureProvider.copySettings(settings);
+    this.padding = padding;
+    this.drawPointer = drawPointer;
+    this.captureArea = captureArea != null ? new VTRectangle(captureArea.x, captureArea.y, captureArea.width, captureArea.height) : null;
+  }
+  
+  final boolean matches(final VTAWTScreenCaptureProvider settings, final int padding, final boolean drawPointer, final VTRectangle captureArea)
+  {
+    if (this.padding != padding || this.drawPointer != drawPointer || !this.settings.hasSameSettings(settings))
+    {
+      return false;
+    }
+    if (this.captureArea == null || captureArea == null)
+    {
+      return this.captureArea == captureArea;
+    }
+    return this.captureArea.x == captureArea.x
+    && this.captureArea.y == captureArea.y
+    && this.captureArea.width == captureArea.width
+    && this.captureArea.height == captureArea.height;
+  }
+  
+  final synchronized void subscribe()
+  {
+    subscribers++;
+  }
+  
+  final synchronized boolean unsubscribe()
+  {
+    return --subscribers <= 0;
+  }
+  
+  // the custom codec rewrites scanlines of the capture while encoding slices, so padded captures are held by one viewer at a time
+  private final boolean isExclusive()
+  {
+    return padding > 0;
+  }
+  
+  // a viewer shares the last capture when it has not seen it yet and it is recent enough for its own capture interval
+  // the capture itself runs outside the lock, the capturing viewer counts as a holder so no other viewer reads the buffers meanwhile
+  // returns false when other viewers kept the last capture for longer than the wait
+  final boolean acquire(final long seenSequence, final long maximumAgeMilliseconds, final long waitMilliseconds) throws InterruptedException
+  {
+    synchronized (this)
+    {
+      final long deadline = System.nanoTime() + (waitMilliseconds * 1000L * 1000L);
+      while (true)
+      {
+        final boolean recent = image != null && sequence != seenSequence && System.nanoTime() - captureTime < maximumAgeMilliseconds * 1000L * 1000L;
+        if (!capturing && (holders == 0 || (recent && !isExclusive())))
+        {
+          holders++;
+          if (recent)
+          {
+            return true;
+          }
+          capturing = true;
+          break;
+        }
+        final long remaining = deadline - System.nanoTime();
+        if (remaining <= 0)
+        {
+          return false;
+        }
+        wait(Math.max(1, remaining / (1000L * 1000L)));
+      }
+    }
+    BufferedImage captured = null;
+    boolean completed = false;
+    try
+    {
+      captured = captureArea != null ? captureProvider.createScreenCapture(padding, drawPointer, captureArea) : captureProvider.createScreenCapture(padding, drawPointer);
+      completed = true;
+    }
+    finally
+    {
+      synchronized (this)
+      {
+        capturing = false;
+        if (!completed)
+        {
+          // the failed capture is not released by the viewer
+          holders--;
+        }
+        image = captured;
+        captureTime = System.nanoTime();
+        sequence++;
+        notifyAll();
+      }
+    }
+    return true;
+  }
+  
+  final synchronized void release()
+  {
+    if (holders > 0)
+    {
+      holders--;
+    }
+    notifyAll();
+  }
+  
+  final synchronized BufferedImage getImage()
+  {
+    return image;
+  }
+  
+  final synchronized long getSequence()
+  {
+    return sequence;
+  }
+  
+  // shared captures keep their buffers, the viewers that still hold them would compare against discarded pixels
+  final synchronized void clearResources()
+  {
+    if (subscribers <= 1 && holders == 0)
+    {
+      captureProvider.clearResources();
+      image = null;
+    }
+  }
+  
+  final synchronized void dispose()
+  {
+    image = null;
+    captureProvider.dispose();
+    settings.dispose();
+  }
+}
@@ -0,0 +1,62 @@
+package org.vash.vate.server.graphicslink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+final class VTGraphicsLinkServerEncodedFrame
+{
+  private final byte[] data;
+  private final int[] operations;
+  private final int operationCount;
+  private final boolean keyframe;
+  private long sequence;
+  
+  // operations hold pairs of stream index and data length, a negative length marks a flush of that stream
+  VTGraphicsLinkServerEncodedFrame(final byte[] data, final int[] operations, final int operationCount, final boolean keyframe)
+  {
+    this.data = data;
+    this.operations = operations;
+    this.operationCount = operationCount;
+    this.keyframe = keyframe;
+  }
+  
+  final boolean isKeyframe()
+  {
+    return keyframe;
+  }
+  
+  final long getSequence()
+  {
+    return sequence;
+  }
+  
+  final void setSequence(final long sequence)
+  {
+    this.sequence = sequence;
+  }
+  
+  final int getSize()
+  {
+    return data.length + (operationCount * 4);
+  }
+  
+  // writes the frame in the same order the encoder wrote it, so the streams of a viewer are flushed at the same points
+  final void replay(final OutputStream[] outputs) throws IOException
+  {
+    int offset = 0;
+    for (int i = 0; i < operationCount; i += 2)
+    {
+      final OutputStream out = outputs[operations[i]];
+      final int length = operations[i + 1];
+      if (length < 0)
+      {
+        out.flush();
+      }
+      else
+      {
+        out.write(data, offset, length);
+        offset += length;
+      }
+    }
+  }
+}
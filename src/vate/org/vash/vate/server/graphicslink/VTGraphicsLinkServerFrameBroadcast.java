@@ -0,0 +1,179 @@
+package org.vash.vate.server.graphicslink;
+
+import java.util.LinkedList;
+
+import org.vash.vate.VTSystem;
+import org.vash.vate.graphics.capture.VTAWTScreenCaptureProvider;
+import org.vash.vate.graphics.image.VTRectangle;
+
+// frames encoded once by the leading viewer and replayed to the viewers that follow it, each follower takes them at the pace of its own refresh credits
+final class VTGraphicsLinkServerFrameBroadcast
+{
+  private final VTAWTScreenCaptureProvider settings;
+  private final boolean drawPointer;
+  private final VTRectangle captureArea;
+  private final int imageCoding;
+  private final boolean progressiveRefresh;
+  private final int screenCaptureInterval;
+  private final LinkedList<VTGraphicsLinkServerEncodedFrame> frames = new LinkedList<VTGraphicsLinkServerEncodedFrame>();
+  private final VTGraphicsLinkServerWriter leader;
+  private int followers;
+  private long sequence;
+  private long backlogBytes;
+  private boolean keyframeRequested;
+  private boolean dissolved;
+  
+  VTGraphicsLinkServerFrameBroadcast(final VTGraphicsLinkServerWriter leader, final VTAWTScreenCaptureProvider settings, final boolean drawPointer, final VTRectangle captureArea, final int imageCoding, final boolean progressiveRefresh, final int screenCaptureInterval)
+  {
+    this.leader = leader;
+    this.settings = new VTAWTScreenCaptureProvider();
+    this.settings.copySettings(settings);
+    this.drawPointer = drawPointer;
+    this.captureArea = captureArea != null ? new VTRectangle(captureArea.x, captureArea.y, captureArea.width, captureArea.height) : null;
+    this.imageCoding = imageCoding;
+    this.progressiveRefresh = progressiveRefresh;
+    this.screenCaptureInterval = screenCaptureInterval;
+  }
+  
+  final boolean matches(final VTAWTScreenCaptureProvider settings, final boolean drawPointer, final VTRectangle captureArea, final int imageCoding, final boolean progressiveRefresh, final int screenCaptureInterval)
+  {
+    if (this.drawPointer != drawPointer
+    || this.imageCoding != imageCoding
+    || this.progressiveRefresh != progressiveRefresh
+    || this.screenCaptureInterval != screenCaptureInterval
+    || !this.settings.hasSameSettings(settings))
+    {
+      return false;
+    }
+    if (this.captureArea == null || captureArea == null)
+    {
+      return this.captureArea == captureArea;
+    }
+    return this.captureArea.x == captureArea.x
+    && this.captureArea.y == captureArea.y
+    && this.captureArea.width == captureArea.width
+    && this.captureArea.height == captureArea.height;
+  }
+  
+  final boolean isLeader(final VTGraphicsLinkServerWriter viewer)
+  {
+    return leader == viewer;
+  }
+  
+  // a follower starts from the next keyframe, the leader is asked to encode one
+  final synchronized void subscribe()
+  {
+    followers++;
+    keyframeRequested = true;
+  }
+  
+  // returns true when the broadcast ends because its leader left
+  final synchronized boolean unsubscribe(final VTGraphicsLinkServerWriter viewer)
+  {
+    if (viewer == leader)
+    {
+      dissolved = true;
+      frames.clear();
+      backlogBytes = 0;
+      notifyAll();
+      return true;
+    }
+    if (followers > 0 && --followers == 0)
+    {
+      frames.clear();
+      backlogBytes = 0;
+    }
+    return false;
+  }
+  
+  final synchronized boolean isDissolved()
+  {
+    return dissolved;
+  }
+  
+  final synchronized boolean hasFollowers()
+  {
+    return followers > 0;
+  }
+  
+  final synchronized long getSequence()
+  {
+    return sequence;
+  }
+  
+  final synchronized void requestKeyframe()
+  {
+    keyframeRequested = true;
+  }
+  
+  final synchronized boolean takeKeyframeRequest()
+  {
+    final boolean requested = keyframeRequested;
+    keyframeRequested = false;
+    return requested;
+  }
+  
+  // the backlog keeps the frames the slowest followers have not taken yet, up to a limit of frames and bytes
+  final synchronized void publish(final VTGraphicsLinkServerEncodedFrame frame)
+  {
+    if (dissolved)
+    {
+      return;
+    }
+    frame.setSequence(++sequence);
+    frames.addLast(frame);
+    backlogBytes += frame.getSize();
+    while (frames.size() > 1 && (frames.size() > VTSystem.VT_GRAPHICS_LINK_BROADCAST_BACKLOG_FRAMES || backlogBytes > VTSystem.VT_GRAPHICS_LINK_BROADCAST_BACKLOG_BYTES))
+    {
+      backlogBytes -= frames.removeFirst().getSize();
+    }
+    notifyAll();
+  }
+  
+  // returns the frame following the ones the viewer already took, or the next keyframe when it has to resynchronize
+  // a follower that fell behind the backlog asks for a keyframe and skips to it
+  // returns null when the broadcast was dissolved or no frame came before the wait ended
+  final synchronized VTGraphicsLinkServerEncodedFrame next(final long nextSequence, final boolean resync, final long waitMilliseconds) throws InterruptedException
+  {
+    final long deadline = System.nanoTime() + (waitMilliseconds * 1000L * 1000L);
+    boolean keyframe = resync;
+    boolean behind = false;
+    while (!dissolved)
+    {
+      if (!keyframe && !frames.isEmpty() && frames.getFirst().getSequence() > nextSequence)
+      {
+        keyframe = true;
+        behind = true;
+      }
+      for (VTGraphicsLinkServerEncodedFrame frame : frames)
+      {
+        if (keyframe ? frame.isKeyframe() && frame.getSequence() >= nextSequence : frame.getSequence() == nextSequence)
+        {
+          return frame;
+        }
+      }
+      if (behind)
+      {
+        // no keyframe left in the backlog to skip to
+        keyframeRequested = true;
+        behind = false;
+      }
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0)
+      {
+        return null;
+      }
+      wait(Math.max(1, remaining / (1000L * 1000L)));
+    }
+    return null;
+  }
+  
+  final synchronized void dispose()
+  {
+    dissolved = true;
+    frames.clear();
+    backlogBytes = 0;
+    notifyAll();
+    settings.dispose();
+  }
+}
@@ -0,0 +1,147 @@
+package org.vash.vate.server.graphicslink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// copies what the encoder writes to the graphics streams of its own viewer, the copy is replayed to the viewers that follow it
+final class VTGraphicsLinkServerFrameRecorder
+{
+  private OutputStream[] outputs = new OutputStream[0];
+  private byte[] data = new byte[1024 * 64];
+  private int dataSize;
+  private int[] operations = new int[256];
+  private int operationCount;
+  private boolean recording;
+  private boolean keyframe;
+  
+  final synchronized OutputStream createOutputStream(final OutputStream out)
+  {
+    final OutputStream[] created = new OutputStream[outputs.length + 1];
+    System.arraycopy(outputs, 0, created, 0, outputs.length);
+    created[outputs.length] = out;
+    outputs = created;
+    return new VTGraphicsLinkServerFrameRecorderOutputStream(this, outputs.length - 1, out);
+  }
+  
+  final synchronized void start()
+  {
+    dataSize = 0;
+    operationCount = 0;
+    keyframe = false;
+    recording = true;
+  }
+  
+  // the frame restarts the image of the viewer, so a viewer can start following from it
+  final synchronized void markKeyframe()
+  {
+    keyframe = true;
+  }
+  
+  final synchronized VTGraphicsLinkServerEncodedFrame finish()
+  {
+    recording = false;
+    final byte[] frameData = new byte[dataSize];
+    System.arraycopy(data, 0, frameData, 0, dataSize);
+    final int[] frameOperations = new int[operationCount];
+    System.arraycopy(operations, 0, frameOperations, 0, operationCount);
+    return new VTGraphicsLinkServerEncodedFrame(frameData, frameOperations, operationCount, keyframe);
+  }
+  
+  final synchronized void cancel()
+  {
+    recording = false;
+  }
+  
+  final void replay(final VTGraphicsLinkServerEncodedFrame frame) throws IOException
+  {
+    frame.replay(outputs);
+  }
+  
+  private final synchronized void record(final int index, final byte[] b, final int off, final int len)
+  {
+    if (!recording || len <= 0)
+    {
+      return;
+    }
+    if (dataSize + len > data.length)
+    {
+      final byte[] grown = new byte[Math.max(data.length * 2, dataSize + len)];
+      System.arraycopy(data, 0, grown, 0, dataSize);
+      data = grown;
+    }
+    System.arraycopy(b, off, data, dataSize, len);
+    dataSize += len;
+    // consecutive writes to the same stream are kept as one operation
+    if (operationCount > 0 && operations[operationCount - 2] == index && operations[operationCount - 1] >= 0)
+    {
+      operations[operationCount - 1] += len;
+      return;
+    }
+    addOperation(index, len);
+  }
+  
+  private final synchronized void recordFlush(final int index)
+  {
+    if (!recording)
+    {
+      return;
+    }
+    addOperation(index, -1);
+  }
+  
+  private final void addOperation(final int index, final int length)
+  {
+    if (operationCount + 2 > operations.length)
+    {
+      final int[] grown = new int[operations.length * 2];
+      System.arraycopy(operations, 0, grown, 0, operationCount);
+      operations = grown;
+    }
+    operations[operationCount++] = index;
+    operations[operationCount++] = length;
+  }
+  
+  private static final class VTGraphicsLinkServerFrameRecorderOutputStream extends OutputStream
+  {
+    private final VTGraphicsLinkServerFrameRecorder recorder;
+    private final int index;
+    private final OutputStream out;
+    private final byte[] single = new byte[1];
+    
+    private VTGraphicsLinkServerFrameRecorderOutputStream(final VTGraphicsLinkServerFrameRecorder recorder, final int index, final OutputStream out)
+    {
+      this.recorder = recorder;
+      this.index = index;
+      this.out = out;
+    }
+    
+    public final void write(final int b) throws IOException
+    {
+      out.write(b);
+      single[0] = (byte) b;
+      recorder.record(index, single, 0, 1);
+    }
+    
+    public final void write(final byte[] b) throws IOException
+    {
+      write(b, 0, b.length);
+    }
+    
+    public final void write(final byte[] b, final int off, final int len) throws IOException
+    {
+      out.write(b, off, len);
+      recorder.record(index, b, off, len);
+    }
+    
+    public final void flush() throws IOException
+    {
+      out.flush();
+      recorder.recordFlush(index);
+    }
+    
+    public final void close() throws IOException
+    {
+      out.close();
+    }
+  }
+}
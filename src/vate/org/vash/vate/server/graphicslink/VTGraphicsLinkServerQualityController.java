@@ -0,0 +1,284 @@
+package org.vash.vate.server.graphicslink;
+
+import org.vash.vate.VTSystem;
+import org.vash.vate.graphics.capture.VTAWTScreenCaptureProvider;
+
+final class VTGraphicsLinkServerQualityController
+{
+  private static final long DEGRADE_PERIOD_NANOSECONDS = 1000L * 1000L * 1000L;
+  private static final long UPGRADE_PERIOD_NANOSECONDS = 4000L * 1000L * 1000L;
+  private static final long BASE_LATENCY_PERIOD_NANOSECONDS = 10000L * 1000L * 1000L;
+  private static final long TARGET_LATENCY_NANOSECONDS = VTSystem.VT_GRAPHICS_LINK_ADAPTIVE_TARGET_LATENCY_MILLISECONDS * 1000L * 1000L;
+  private static final int THROUGHPUT_MINIMUM_FRAME_BYTES = 1024 * 16;
+  private static final int PENDING_FRAMES = 16;
+  private static final int MAXIMUM_JPEG_STEPS = 4;
+  private static final float JPEG_QUALITY_STEP = 0.125f;
+  private static final int MAXIMUM_INTERVAL_STEPS = 3;
+  private static final int MINIMUM_STEPPED_INTERVAL = 30;
+  private static final int MAXIMUM_STEPPED_INTERVAL = 1000;
+  private static final int[] COLOR_QUALITY_STEPS = new int[]
+  {
+    VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_32768,
+    VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_4096,
+    VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_216,
+    VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_64,
+    VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_27
+  };
+  
+  private final long[] pendingTimes = new long[PENDING_FRAMES];
+  private final long[] pendingBytes = new long[PENDING_FRAMES];
+  private int pendingStart;
+  private int pendingCount;
+  private boolean enabled;
+  private int colorQuality = VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_216;
+  private int imageCoding = VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD;
+  private int screenCaptureInterval = 250;
+  private int colorSteps;
+  private int jpegSteps;
+  private int intervalSteps;
+  private boolean codecStep;
+  private long lastTransferredBytes;
+  private long smoothedLatency;
+  private long smoothedFrameBytes;
+  private long throughput;
+  private long baseLatency;
+  private long nextBaseLatency;
+  private long baseLatencyTime;
+  private long lastChangeTime;
+  private long lastCongestionTime;
+  
+  final synchronized void setEnabled(final boolean enabled)
+  {
+    this.enabled = enabled;
+    reset();
+  }
+  
+  final synchronized boolean isEnabled()
+  {
+    return enabled;
+  }
+  
+  final synchronized void setColorQuality(final int colorQuality)
+  {
+    this.colorQuality = colorQuality;
+    colorSteps = 0;
+  }
+  
+  final synchronized void setImageCoding(final int imageCoding)
+  {
+    this.imageCoding = imageCoding;
+    codecStep = false;
+    jpegSteps = 0;
+  }
+  
+  final synchronized void setScreenCaptureInterval(final int screenCaptureInterval)
+  {
+    this.screenCaptureInterval = screenCaptureInterval;
+    intervalSteps = 0;
+  }
+  
+  final synchronized void reset()
+  {
+    colorSteps = 0;
+    jpegSteps = 0;
+    intervalSteps = 0;
+    codecStep = false;
+    smoothedLatency = 0;
+    smoothedFrameBytes = 0;
+    throughput = 0;
+    baseLatency = 0;
+    nextBaseLatency = 0;
+    baseLatencyTime = System.nanoTime();
+    lastChangeTime = baseLatencyTime;
+    lastCongestionTime = baseLatencyTime;
+  }
+  
+  final synchronized int getColorQuality()
+  {
+    if (colorSteps == 0)
+    {
+      return colorQuality;
+    }
+    return COLOR_QUALITY_STEPS[firstColorStep() + colorSteps - 1];
+  }
+  
+  final synchronized int getImageCoding()
+  {
+    return codecStep ? VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG : imageCoding;
+  }
+  
+  // jpeg picked by the controller instead of png, the lossy areas it sends must be refined later
+  final synchronized boolean isCodecStep()
+  {
+    return codecStep;
+  }
+  
+  final synchronized float getJpegQuality()
+  {
+    return VTGraphicsLinkServerTileEncoder.DEFAULT_JPEG_QUALITY - (jpegSteps * JPEG_QUALITY_STEP);
+  }
+  
+  final synchronized int getScreenCaptureInterval()
+  {
+    return steppedInterval(intervalSteps);
+  }
+  
+  // the client returns one refresh credit per frame in the order the frames were sent
+  final synchronized void frameAcknowledged()
+  {
+    if (pendingCount == 0)
+    {
+      return;
+    }
+    final long latency = System.nanoTime() - pendingTimes[pendingStart];
+    final long frameBytes = pendingBytes[pendingStart];
+    pendingStart = (pendingStart + 1) % PENDING_FRAMES;
+    pendingCount--;
+    if (!enabled)
+    {
+      return;
+    }
+    smoothedLatency = smoothedLatency == 0 ? latency : smoothedLatency + ((latency - smoothedLatency) / 4);
+    if (baseLatency == 0 || latency < baseLatency)
+    {
+      baseLatency = latency;
+    }
+    if (nextBaseLatency == 0 || latency < nextBaseLatency)
+    {
+      nextBaseLatency = latency;
+    }
+    // only large frames spend enough time on the wire to tell the link rate apart from its delay
+    if (frameBytes >= THROUGHPUT_MINIMUM_FRAME_BYTES && latency > 0)
+    {
+      final long rate = (frameBytes * 1000L * 1000L * 1000L) / latency;
+      throughput = throughput == 0 ? rate : throughput + ((rate - throughput) / 4);
+    }
+  }
+  
+  // returns true when the effective settings have changed
+  final synchronized boolean frameSent(final long transferredBytes)
+  {
+    final long now = System.nanoTime();
+    final long frameBytes = transferredBytes - lastTransferredBytes;
+    lastTransferredBytes = transferredBytes;
+    if (pendingCount == PENDING_FRAMES)
+    {
+      pendingStart = (pendingStart + 1) % PENDING_FRAMES;
+      pendingCount--;
+    }
+    final int pending = (pendingStart + pendingCount) % PENDING_FRAMES;
+    pendingTimes[pending] = now;
+    pendingBytes[pending] = frameBytes;
+    pendingCount++;
+    if (!enabled)
+    {
+      return false;
+    }
+    smoothedFrameBytes = smoothedFrameBytes + ((frameBytes - smoothedFrameBytes) / 8);
+    if (now - baseLatencyTime >= BASE_LATENCY_PERIOD_NANOSECONDS)
+    {
+      baseLatency = nextBaseLatency;
+      nextBaseLatency = 0;
+      baseLatencyTime = now;
+    }
+    if (smoothedLatency == 0)
+    {
+      return false;
+    }
+    
+    // a long path delay alone is not congestion, queueing on top of it is
+    final long transferTime = throughput > 0 ? (smoothedFrameBytes * 1000L * 1000L * 1000L) / throughput : 0;
+    final boolean congested = (smoothedLatency > TARGET_LATENCY_NANOSECONDS && smoothedLatency > baseLatency * 2)
+    || transferTime > TARGET_LATENCY_NANOSECONDS;
+    if (congested)
+    {
+      lastCongestionTime = now;
+      if (now - lastChangeTime >= DEGRADE_PERIOD_NANOSECONDS && degrade())
+      {
+        lastChangeTime = now;
+        return true;
+      }
+      return false;
+    }
+    if (smoothedLatency < TARGET_LATENCY_NANOSECONDS / 2
+    && transferTime * 2 < TARGET_LATENCY_NANOSECONDS / 2
+    && now - lastChangeTime >= UPGRADE_PERIOD_NANOSECONDS
+    && now - lastCongestionTime >= UPGRADE_PERIOD_NANOSECONDS
+    && upgrade())
+    {
+      lastChangeTime = now;
+      return true;
+    }
+    return false;
+  }
+  
+  private final boolean degrade()
+  {
+    if (getImageCoding() == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG && jpegSteps < MAXIMUM_JPEG_STEPS)
+    {
+      jpegSteps++;
+      return true;
+    }
+    if (firstColorStep() + colorSteps < COLOR_QUALITY_STEPS.length)
+    {
+      colorSteps++;
+      return true;
+    }
+    if (!codecStep && imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_PNG)
+    {
+      codecStep = true;
+      return true;
+    }
+    if (intervalSteps < MAXIMUM_INTERVAL_STEPS && steppedInterval(intervalSteps + 1) > steppedInterval(intervalSteps))
+    {
+      intervalSteps++;
+      return true;
+    }
+    return false;
+  }
+  
+  private final boolean upgrade()
+  {
+    if (intervalSteps > 0)
+    {
+      intervalSteps--;
+      return true;
+    }
+    if (jpegSteps > 0)
+    {
+      jpegSteps--;
+      return true;
+    }
+    if (codecStep)
+    {
+      codecStep = false;
+      return true;
+    }
+    if (colorSteps > 0)
+    {
+      colorSteps--;
+      return true;
+    }
+    return false;
+  }
+  
+  // the color quality picked by the user is the best one the controller may step back to
+  private final int firstColorStep()
+  {
+    int step = 0;
+    while (step < COLOR_QUALITY_STEPS.length && COLOR_QUALITY_STEPS[step] <= colorQuality)
+    {
+      step++;
+    }
+    return step;
+  }
+  
+  private final int steppedInterval(final int steps)
+  {
+    if (steps == 0 || screenCaptureInterval >= MAXIMUM_STEPPED_INTERVAL)
+    {
+      return screenCaptureInterval;
+    }
+    return Math.min(MAXIMUM_STEPPED_INTERVAL, Math.max(screenCaptureInterval, MINIMUM_STEPPED_INTERVAL) << steps);
+  }
+}
@@ -15,6 +15,7 @@ import org.vash.vate.graphics.control.VTAWTControlProvider;
 import org.vash.vate.graphics.device.VTGraphicalDeviceResolver;
 import org.vash.vate.graphics.image.VTRectangle;
 import org.vash.vate.server.connection.VTServerConnection;
+import org.vash.vate.stream.endian.VTLittleEndianInputStream;
 
 public class VTGraphicsLinkServerReader implements Runnable
 {
@@ -28,6 +29,8 @@ public class VTGraphicsLinkServerReader implements Runnable
   private Clipboard systemClipboard;
   private Set<Integer> pressedKeyboardKeys;
   private Set<Integer> pressedMouseKeys;
+  private int batchX;
+  private int batchY;
   
   public VTGraphicsLinkServerReader(VTGraphicsLinkServerSession session)
   {
@@ -88,9 +91,116 @@ public class VTGraphicsLinkServerReader implements Runnable
     pressedMouseKeys.clear();
   }
   
+  private void mouseMove(int x, int y)
+  {
+    lastEvent.x = x;
+    lastEvent.y = y;
+    if (writer.isScaling())
+    {
+      double scaleX = writer.getScaleFactorX();
+      double scaleY = writer.getScaleFactorY();
+      controlProvider.mouseMove((int) Math.round(lastEvent.x / scaleX), (int) Math.round(lastEvent.y / scaleY));
+    }
+    else
+    {
+      controlProvider.mouseMove(lastEvent.x, lastEvent.y);
+    }
+  }
+  
+  private void mousePress(int button)
+  {
+    lastEvent.button = button;
+    controlProvider.mousePress(lastEvent.button);
+    pressedMouseKeys.add(lastEvent.button);
+  }
+  
+  private void mouseRelease(int button)
+  {
+    lastEvent.button = button;
+    controlProvider.mouseRelease(lastEvent.button);
+    pressedMouseKeys.remove(lastEvent.button);
+  }
+  
+  private void mouseWheel(int wheel)
+  {
+    lastEvent.wheel = wheel;
+    controlProvider.mouseWheel(lastEvent.wheel);
+  }
+  
+  private void keyPress(int keyCode, int keyModifiers, int keyLocation, char keyChar)
+  {
+    lastEvent.keyCode = keyCode;
+    lastEvent.keyModifiers = keyModifiers;
+    lastEvent.keyLocation = keyLocation;
+    lastEvent.keyChar = keyChar;
+    controlProvider.keyPress(lastEvent.keyCode, lastEvent.keyModifiers, lastEvent.keyLocation, lastEvent.keyChar);
+    pressedKeyboardKeys.add(lastEvent.keyCode);
+  }
+  
+  private void keyRelease(int keyCode, int keyModifiers, int keyLocation, char keyChar)
+  {
+    lastEvent.keyCode = keyCode;
+    lastEvent.keyModifiers = keyModifiers;
+    lastEvent.keyLocation = keyLocation;
+    lastEvent.keyChar = keyChar;
+    controlProvider.keyRelease(lastEvent.keyCode, lastEvent.keyModifiers, lastEvent.keyLocation, lastEvent.keyChar);
+    pressedKeyboardKeys.remove(lastEvent.keyCode);
+  }
+  
+  // replays the events in the order the client batched them, moves are deltas from the previous batched move
+  private void readInputEventBatch(VTLittleEndianInputStream input) throws IOException
+  {
+    int count = input.readVarInt();
+    for (int i = 0; i < count; i++)
+    {
+      int type = input.read();
+      switch (type)
+      {
+        case VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_MOVE:
+        {
+          batchX += input.readSignedVarInt();
+          batchY += input.readSignedVarInt();
+          mouseMove(batchX, batchY);
+          break;
+        }
+        case VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_KEY_DOWN:
+        {
+          mousePress(input.readVarInt());
+          break;
+        }
+        case VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_KEY_UP:
+        {
+          mouseRelease(input.readVarInt());
+          break;
+        }
+        case VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_WHEEL:
+        {
+          mouseWheel(input.readSignedVarInt());
+          break;
+        }
+        case VTSystem.VT_GRAPHICS_LINK_KEYBOARD_INPUT_KEY_DOWN:
+        {
+          keyPress(input.readVarInt(), input.readVarInt(), input.readVarInt(), (char) input.readVarInt());
+          break;
+        }
+        case VTSystem.VT_GRAPHICS_LINK_KEYBOARD_INPUT_KEY_UP:
+        {
+          keyRelease(input.readVarInt(), input.readVarInt(), input.readVarInt(), (char) input.readVarInt());
+          break;
+        }
+        default:
+        {
+          throw new IOException("Invalid input event batch");
+        }
+      }
+    }
+  }
+  
   public void run()
   {
     lastEvent = new VTAWTControlEvent();
+    batchX = 0;
+    batchY = 0;
     session.getSession().getClipboardTransferTask().setInputStream(connection.getGraphicsClipboardDataInputStream());
     session.getSession().getClipboardTransferTask().setOutputStream(connection.getGraphicsClipboardDataOutputStream());
     while (!stopped)
@@ -101,58 +211,42 @@ public class VTGraphicsLinkServerReader implements Runnable
         {
           case VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_MOVE:
           {
-            lastEvent.x = connection.getGraphicsControlDataInputStream().readInt();
-            lastEvent.y = connection.getGraphicsControlDataInputStream().readInt();
-            if (writer.isScaling())
-            {
-              double scaleX = writer.getScaleFactorX();
-              double scaleY = writer.getScaleFactorY();
-              controlProvider.mouseMove((int) Math.round(lastEvent.x / scaleX), (int) Math.round(lastEvent.y / scaleY));
-            }
-            else
-            {
-              controlProvider.mouseMove(lastEvent.x, lastEvent.y);
-            }
+            VTLittleEndianInputStream input = connection.getGraphicsControlDataInputStream();
+            int x = input.readInt();
+            int y = input.readInt();
+            mouseMove(x, y);
             break;
           }
           case VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_KEY_DOWN:
           {
-            lastEvent.button = connection.getGraphicsControlDataInputStream().readInt();
-            controlProvider.mousePress(lastEvent.button);
-            pressedMouseKeys.add(lastEvent.button);
+            mousePress(connection.getGraphicsControlDataInputStream().readInt());
             break;
           }
           case VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_KEY_UP:
           {
-            lastEvent.button = connection.getGraphicsControlDataInputStream().readInt();
-            controlProvider.mouseRelease(lastEvent.button);
-            pressedMouseKeys.remove(lastEvent.button);
+            mouseRelease(connection.getGraphicsControlDataInputStream().readInt());
             break;
           }
           case VTSystem.VT_GRAPHICS_LINK_MOUSE_INPUT_WHEEL:
           {
-            lastEvent.wheel = connection.getGraphicsControlDataInputStream().readInt();
-            controlProvider.mouseWheel(lastEvent.wheel);
+            mouseWheel(connection.getGraphicsControlDataInputStream().readInt());
             break;
           }
           case VTSystem.VT_GRAPHICS_LINK_KEYBOARD_INPUT_KEY_DOWN:
           {
-            lastEvent.keyCode = connection.getGraphicsControlDataInputStream().readInt();
-            lastEvent.keyModifiers = connection.getGraphicsControlDataInputStream().readInt();
-            lastEvent.keyLocation = connection.getGraphicsControlDataInputStream().readInt();
-            lastEvent.keyChar = connection.getGraphicsControlDataInputStream().readChar();
-            controlProvider.keyPress(lastEvent.keyCode, lastEvent.keyModifiers, lastEvent.keyLocation, lastEvent.keyChar);
-            pressedKeyboardKeys.add(lastEvent.keyCode);
+            VTLittleEndianInputStream input = connection.getGraphicsControlDataInputStream();
+            keyPress(input.readInt(), input.readInt(), input.readInt(), input.readChar());
             break;
           }
           case VTSystem.VT_GRAPHICS_LINK_KEYBOARD_INPUT_KEY_UP:
           {
-            lastEvent.keyCode = connection.getGraphicsControlDataInputStream().readInt();
-            lastEvent.keyModifiers = connection.getGraphicsControlDataInputStream().readInt();
-            lastEvent.keyLocation = connection.getGraphicsControlDataInputStream().readInt();
-            lastEvent.keyChar = connection.getGraphicsControlDataInputStream().readChar();
-            controlProvider.keyRelease(lastEvent.keyCode, lastEvent.keyModifiers, lastEvent.keyLocation, lastEvent.keyChar);
-            pressedKeyboardKeys.remove(lastEvent.keyCode);
+            VTLittleEndianInputStream input = connection.getGraphicsControlDataInputStream();
+            keyRelease(input.readInt(), input.readInt(), input.readInt(), input.readChar());
+            break;
+          }
+          case VTSystem.VT_GRAPHICS_LINK_INPUT_EVENT_BATCH:
+          {
+            readInputEventBatch(connection.getGraphicsControlDataInputStream());
             break;
           }
           case VTSystem.VT_GRAPHICS_LINK_KEYBOARD_LOCK_KEY_STATE_ON:
@@ -249,11 +343,13 @@ public class VTGraphicsLinkServerReader implements Runnable
           }
           case VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_MODE_ASYNCHRONOUS:
           {
+            writer.setProgressiveRefresh(false);
             writer.setRefreshInterrupted(false);
             break;
           }
           case VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_MODE_SYNCHRONOUS:
           {
+            writer.setProgressiveRefresh(true);
             writer.setRefreshInterrupted(false);
             break;
           }
@@ -267,6 +363,16 @@ public class VTGraphicsLinkServerReader implements Runnable
             writer.setDrawPointer(false);
             break;
           }
+          case VTSystem.VT_GRAPHICS_LINK_IMAGE_ADAPTIVE_QUALITY_ON:
+          {
+            writer.setAdaptiveQuality(true);
+            break;
+          }
+          case VTSystem.VT_GRAPHICS_LINK_IMAGE_ADAPTIVE_QUALITY_OFF:
+          {
+            writer.setAdaptiveQuality(false);
+            break;
+          }
           case VTSystem.VT_GRAPHICS_LINK_IMAGE_CAPTURE_INTERVAL_CHANGE:
           {
             writer.setScreenCaptureInterval(connection.getGraphicsControlDataInputStream().readInt());
@@ -0,0 +1,158 @@
+package org.vash.vate.server.graphicslink;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.vash.vate.VTSystem;
+import org.vash.vate.graphics.image.VTImageDataTileCache;
+import org.vash.vate.graphics.image.VTImageDataUtils;
+import org.vash.vate.graphics.image.VTRectangle;
+
+final class VTGraphicsLinkServerRegionClassifier
+{
+  private static final int TILE_SIZE = VTImageDataTileCache.TILE_SIZE;
+  private static final int COLOR_SLOT_BITS = 8;
+  private static final int COLOR_SLOTS = 1 << COLOR_SLOT_BITS;
+  private static final int MOTION_GAP_FRAMES = 2;
+  
+  private final int[] colorValues = new int[COLOR_SLOTS];
+  private final int[] colorStamps = new int[COLOR_SLOTS];
+  private int colorStamp;
+  private long[] changedFrames = new long[0];
+  private int[] changeStreaks = new int[0];
+  private long[] classifiedFrames = new long[0];
+  private boolean[] photoTiles = new boolean[0];
+  private int columns;
+  private int width;
+  private int height;
+  
+  final void reset(final int width, final int height)
+  {
+    this.width = width;
+    this.height = height;
+    columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+    final int tiles = columns * ((height + TILE_SIZE - 1) / TILE_SIZE);
+    if (changedFrames.length < tiles)
+    {
+      changedFrames = new long[tiles];
+      changeStreaks = new int[tiles];
+      classifiedFrames = new long[tiles];
+      photoTiles = new boolean[tiles];
+    }
+    Arrays.fill(changedFrames, 0);
+    Arrays.fill(changeStreaks, 0);
+    Arrays.fill(classifiedFrames, 0);
+    Arrays.fill(photoTiles, false);
+  }
+  
+  // tiles that keep changing with many distinct colors are video or photo content, the other tiles are text or interface
+  final void classify(final Object pixelData, final List<VTRectangle> blockAreas, final long frame, final List<VTRectangle> lossyAreas, final List<VTRectangle> losslessAreas)
+  {
+    for (VTRectangle blockArea : blockAreas)
+    {
+      final int lastTileX = (Math.min(blockArea.x + blockArea.width, width) - 1) / TILE_SIZE;
+      final int lastTileY = (Math.min(blockArea.y + blockArea.height, height) - 1) / TILE_SIZE;
+      for (int tileY = blockArea.y / TILE_SIZE; tileY <= lastTileY; tileY++)
+      {
+        for (int tileX = blockArea.x / TILE_SIZE; tileX <= lastTileX; tileX++)
+        {
+          final int x = Math.max(blockArea.x, tileX * TILE_SIZE);
+          final int y = Math.max(blockArea.y, tileY * TILE_SIZE);
+          final int right = Math.min(blockArea.x + blockArea.width, (tileX + 1) * TILE_SIZE);
+          final int bottom = Math.min(blockArea.y + blockArea.height, (tileY + 1) * TILE_SIZE);
+          final VTRectangle piece = new VTRectangle(x, y, right - x, bottom - y);
+          if (isPhotoTile(pixelData, tileX, tileY, frame))
+          {
+            lossyAreas.add(piece);
+          }
+          else
+          {
+            losslessAreas.add(piece);
+          }
+        }
+      }
+    }
+    VTImageDataUtils.mergeNeighbourAreas(lossyAreas);
+    VTImageDataUtils.mergeNeighbourAreas(losslessAreas);
+  }
+  
+  private final boolean isPhotoTile(final Object pixelData, final int tileX, final int tileY, final long frame)
+  {
+    final int tile = tileX + tileY * columns;
+    if (classifiedFrames[tile] == frame)
+    {
+      return photoTiles[tile];
+    }
+    classifiedFrames[tile] = frame;
+    // frames captured faster than the video plays may miss a change
+    if (changedFrames[tile] != 0 && frame - changedFrames[tile] <= MOTION_GAP_FRAMES)
+    {
+      changeStreaks[tile]++;
+    }
+    else
+    {
+      changeStreaks[tile] = 1;
+    }
+    changedFrames[tile] = frame;
+    photoTiles[tile] = changeStreaks[tile] >= VTSystem.VT_GRAPHICS_LINK_HYBRID_MOTION_FRAMES && countColors(pixelData, tileX * TILE_SIZE, tileY * TILE_SIZE) > VTSystem.VT_GRAPHICS_LINK_HYBRID_PHOTO_COLORS;
+    return photoTiles[tile];
+  }
+  
+  // counts distinct colors until there are more than the photo threshold
+  private final int countColors(final Object pixelData, final int x, final int y)
+  {
+    final int right = Math.min(width, x + TILE_SIZE);
+    final int bottom = Math.min(height, y + TILE_SIZE);
+    if (++colorStamp == 0)
+    {
+      Arrays.fill(colorStamps, 0);
+      colorStamp = 1;
+    }
+    int colors = 0;
+    for (int row = y; row < bottom && colors <= VTSystem.VT_GRAPHICS_LINK_HYBRID_PHOTO_COLORS; row++)
+    {
+      final int offset = row * width;
+      if (pixelData instanceof int[])
+      {
+        final int[] pixels = (int[]) pixelData;
+        for (int column = x; column < right && colors <= VTSystem.VT_GRAPHICS_LINK_HYBRID_PHOTO_COLORS; column++)
+        {
+          colors += addColor(pixels[offset + column]);
+        }
+      }
+      else if (pixelData instanceof short[])
+      {
+        final short[] pixels = (short[]) pixelData;
+        for (int column = x; column < right && colors <= VTSystem.VT_GRAPHICS_LINK_HYBRID_PHOTO_COLORS; column++)
+        {
+          colors += addColor(pixels[offset + column]);
+        }
+      }
+      else
+      {
+        final byte[] pixels = (byte[]) pixelData;
+        for (int column = x; column < right && colors <= VTSystem.VT_GRAPHICS_LINK_HYBRID_PHOTO_COLORS; column++)
+        {
+          colors += addColor(pixels[offset + column]);
+        }
+      }
+    }
+    return colors;
+  }
+  
+  private final int addColor(final int color)
+  {
+    int slot = (color * 0x9E3779B9) >>> (32 - COLOR_SLOT_BITS);
+    while (colorStamps[slot] == colorStamp)
+    {
+      if (colorValues[slot] == color)
+      {
+        return 0;
+      }
+      slot = (slot + 1) & (COLOR_SLOTS - 1);
+    }
+    colorStamps[slot] = colorStamp;
+    colorValues[slot] = color;
+    return 1;
+  }
+}
@@ -0,0 +1,295 @@
+package org.vash.vate.server.graphicslink;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.vash.vate.VTSystem;
+import org.vash.vate.com.pngencoder.PngEncoder;
+import org.vash.vate.graphics.image.VTRectangle;
+import org.vash.vate.stream.array.VTByteArrayOutputStream;
+import org.vash.vate.stream.endian.VTLittleEndianOutputStream;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+final class VTGraphicsLinkServerTileEncoder
+{
+  static final float DEFAULT_JPEG_QUALITY = 0.75f;
+  
+  private final ExecutorService executorService;
+  private final CompletionService<VTGraphicsLinkServerTileEncoderWorker> completionService;
+  private final VTGraphicsLinkServerTileEncoderWorker[] workers;
+  private final VTGraphicsLinkServerTileEncoderWorker[] freeWorkers;
+  private int freeCount;
+  private long frame;
+  private float jpegQuality = DEFAULT_JPEG_QUALITY;
+  
+  VTGraphicsLinkServerTileEncoder(final ExecutorService executorService)
+  {
+    final int count = executorService != null ? Math.max(1, Runtime.getRuntime().availableProcessors()) : 1;
+    this.executorService = count > 1 ? executorService : null;
+    this.completionService = count > 1 ? new ExecutorCompletionService<VTGraphicsLinkServerTileEncoderWorker>(executorService) : null;
+    this.workers = new VTGraphicsLinkServerTileEncoderWorker[count];
+    this.freeWorkers = new VTGraphicsLinkServerTileEncoderWorker[count];
+  }
+  
+  final void dispose()
+  {
+    for (int i = 0; i < workers.length; i++)
+    {
+      if (workers[i] != null)
+      {
+        workers[i].dispose();
+        workers[i] = null;
+      }
+    }
+    freeCount = 0;
+  }
+  
+  final void setJpegQuality(final float jpegQuality)
+  {
+    this.jpegQuality = jpegQuality;
+  }
+  
+  final void encodeTiles(final VTLittleEndianOutputStream out, final BufferedImage image, final List<VTRectangle> tiles, final boolean jpeg, final boolean grayscale) throws IOException
+  {
+    frame++;
+    if (executorService == null || tiles.size() == 1)
+    {
+      final VTGraphicsLinkServerTileEncoderWorker worker = acquireWorker(0);
+      for (VTRectangle tile : tiles)
+      {
+        worker.prepare(image, tile, jpeg, grayscale, jpegQuality, frame);
+        worker.call();
+        worker.writeTo(out);
+      }
+      out.flush();
+      return;
+    }
+    freeCount = 0;
+    for (int i = workers.length - 1; i >= 0; i--)
+    {
+      freeWorkers[freeCount++] = acquireWorker(i);
+    }
+    int next = 0;
+    int pending = 0;
+    IOException failure = null;
+    while (next < tiles.size() && freeCount > 0)
+    {
+      final VTGraphicsLinkServerTileEncoderWorker worker = freeWorkers[--freeCount];
+      worker.prepare(image, tiles.get(next++), jpeg, grayscale, jpegQuality, frame);
+      completionService.submit(worker);
+      pending++;
+    }
+    while (pending > 0)
+    {
+      VTGraphicsLinkServerTileEncoderWorker worker = null;
+      try
+      {
+        worker = completionService.take().get();
+      }
+      catch (ExecutionException e)
+      {
+        failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(String.valueOf(e.getCause()));
+      }
+      catch (InterruptedException e)
+      {
+        failure = new IOException("Tile encoding interrupted");
+      }
+      pending--;
+      if (worker == null || failure != null)
+      {
+        continue;
+      }
+      worker.writeTo(out);
+      if (next < tiles.size())
+      {
+        worker.prepare(image, tiles.get(next++), jpeg, grayscale, jpegQuality, frame);
+        completionService.submit(worker);
+        pending++;
+      }
+    }
+    if (failure != null)
+    {
+      throw failure;
+    }
+    out.flush();
+  }
+  
+  private final VTGraphicsLinkServerTileEncoderWorker acquireWorker(final int index) throws IOException
+  {
+    if (workers[index] == null)
+    {
+      workers[index] = new VTGraphicsLinkServerTileEncoderWorker();
+    }
+    return workers[index];
+  }
+  
+  private static final IIOMetadata setJpegSubsamplingMode444(final IIOMetadata metadata)
+  {
+    // Tweaking the image metadata to override default subsampling(4:2:0) with
+    // 4:4:4.
+    try
+    {
+      Node rootNode = metadata.getAsTree(metadata.getNativeMetadataFormatName());
+      // The top level root node has two children, out of which the second one
+      // will
+      // contain all the information related to image markers.
+      if (rootNode != null && rootNode.getLastChild() != null)
+      {
+        Node markerNode = rootNode.getLastChild();
+        NodeList markers = markerNode.getChildNodes();
+        // Search for 'SOF' marker where subsampling information is stored.
+        for (int i = 0; i < markers.getLength(); i++)
+        {
+          Node node = markers.item(i);
+          // 'SOF' marker can have
+          // 1 child node if the color representation is greyscale,
+          // 3 child nodes if the color representation is YCbCr, and
+          // 4 child nodes if the color representation is YCMK.
+          // This subsampling applies only to YCbCr.
+          if (node.getNodeName().equalsIgnoreCase("sof") && node.hasChildNodes() && node.getChildNodes().getLength() == 3)
+          {
+            // In 'SOF' marker, first child corresponds to the luminance
+            // channel, and setting
+            // the HsamplingFactor and VsamplingFactor to 1, will imply 4:4:4
+            // chroma subsampling.
+            NamedNodeMap attrMap = node.getFirstChild().getAttributes();
+            int samplingMode = 17;
+            // int samplingMode = 33;
+            attrMap.getNamedItem("HsamplingFactor").setNodeValue((samplingMode & 0xf) + "");
+            attrMap.getNamedItem("VsamplingFactor").setNodeValue(((samplingMode >> 4) & 0xf) + "");
+            // attrMap.getNamedItem("HsamplingFactor").setNodeValue(1 + "");
+            // attrMap.getNamedItem("VsamplingFactor").setNodeValue(1 + "");
+            break;
+          }
+        }
+      }
+      if (rootNode != null)
+      {
+        metadata.setFromTree(metadata.getNativeMetadataFormatName(), rootNode);
+      }
+    }
+    catch (Throwable t)
+    {
+      
+    }
+    return metadata;
+  }
+  
+  private static final class VTGraphicsLinkServerTileEncoderWorker implements Callable<VTGraphicsLinkServerTileEncoderWorker>
+  {
+    private final VTByteArrayOutputStream imageOutputBuffer = new VTByteArrayOutputStream(VTSystem.VT_STANDARD_BUFFER_SIZE_BYTES);
+    private final PngEncoder pngEncoder;
+    private final ImageWriter jpgWriter;
+    private final ImageWriteParam jpgWriterParam;
+    private final ImageOutputStream jpgImageOutputStream;
+    private IIOMetadata jpgWriterMetadata;
+    private long metadataFrame;
+    private float compressionQuality;
+    private BufferedImage image;
+    private VTRectangle tile;
+    private boolean jpeg;
+    
+    private VTGraphicsLinkServerTileEncoderWorker() throws IOException
+    {
+      pngEncoder = new PngEncoder().withCompressionLevel(Deflater.BEST_SPEED + 1);
+      jpgImageOutputStream = ImageIO.createImageOutputStream(imageOutputBuffer);
+      jpgWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
+      jpgWriterParam = jpgWriter.getDefaultWriteParam();
+      if (jpgWriterParam.canWriteCompressed())
+      {
+        jpgWriterParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        jpgWriterParam.setCompressionQuality(DEFAULT_JPEG_QUALITY);
+      }
+      compressionQuality = DEFAULT_JPEG_QUALITY;
+      if (jpgWriterParam.canWriteProgressive())
+      {
+        jpgWriterParam.setProgressiveMode(ImageWriteParam.MODE_DISABLED);
+      }
+      if (jpgWriterParam.canWriteTiles())
+      {
+        jpgWriterParam.setTilingMode(ImageWriteParam.MODE_DISABLED);
+      }
+    }
+    
+    private final void prepare(final BufferedImage image, final VTRectangle tile, final boolean jpeg, final boolean grayscale, final float quality, final long frame)
+    {
+      this.image = image;
+      this.tile = tile;
+      this.jpeg = jpeg;
+      if (jpeg && compressionQuality != quality && jpgWriterParam.canWriteCompressed())
+      {
+        compressionQuality = quality;
+        jpgWriterParam.setCompressionQuality(quality);
+      }
+      if (jpeg && metadataFrame != frame)
+      {
+        metadataFrame = frame;
+        if (grayscale)
+        {
+          jpgWriterParam.setDestinationType(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_BYTE_GRAY));
+        }
+        else
+        {
+          jpgWriterParam.setDestinationType(jpgWriter.getDefaultWriteParam().getDestinationType());
+        }
+        jpgWriterMetadata = setJpegSubsamplingMode444(jpgWriter.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), jpgWriterParam));
+      }
+    }
+    
+    public final VTGraphicsLinkServerTileEncoderWorker call() throws IOException
+    {
+      imageOutputBuffer.reset();
+      if (jpeg)
+      {
+        jpgWriter.setOutput(jpgImageOutputStream);
+        jpgWriter.write(jpgWriterMetadata, new IIOImage(image.getSubimage(tile.x, tile.y, tile.width, tile.height), null, jpgWriterMetadata), jpgWriterParam);
+      }
+      else
+      {
+        pngEncoder.encode(image.getSubimage(tile.x, tile.y, tile.width, tile.height), imageOutputBuffer);
+      }
+      return this;
+    }
+    
+    private final void writeTo(final VTLittleEndianOutputStream out) throws IOException
+    {
+      out.writeInt(imageOutputBuffer.size());
+      out.writeInt(tile.x);
+      out.writeInt(tile.y);
+      out.writeInt(tile.width);
+      out.writeInt(tile.height);
+      imageOutputBuffer.writeTo(out);
+      image = null;
+    }
+    
+    private final void dispose()
+    {
+      try
+      {
+        jpgImageOutputStream.close();
+      }
+      catch (Throwable t)
+      {
+        
+      }
+      jpgWriter.dispose();
+    }
+  }
+}
@@ -9,37 +9,29 @@ import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
 import java.awt.image.DataBufferUShort;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.zip.Deflater;
-
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageTypeSpecifier;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.stream.ImageOutputStream;
 
 import org.vash.vate.VTSystem;
-import org.vash.vate.com.pngencoder.PngEncoder;
 import org.vash.vate.graphics.capture.VTAWTScreenCaptureProvider;
 import org.vash.vate.graphics.codec.VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII;
 import static org.vash.vate.graphics.codec.VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII.CUSTOM_CODEC_PADDING_SIZE;
+import org.vash.vate.graphics.image.VTImageDataMoveDetector;
+import org.vash.vate.graphics.image.VTImageDataTileCache;
+import org.vash.vate.graphics.image.VTImageDataTileIndex;
 import org.vash.vate.graphics.image.VTImageDataUtils;
 import org.vash.vate.graphics.image.VTImageIO;
 import org.vash.vate.graphics.image.VTRectangle;
 import org.vash.vate.reflection.VTReflectionUtils;
 import org.vash.vate.server.connection.VTServerConnection;
-import org.vash.vate.stream.array.VTByteArrayOutputStream;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.vash.vate.stream.endian.VTLittleEndianOutputStream;
+import org.vash.vate.stream.pipe.VTOutputPipeline;
 
 public class VTGraphicsLinkServerWriter implements Runnable
 {
-  private static final int IMAGE_OUTPUT_BUFFER_SIZE = VTSystem.VT_STANDARD_BUFFER_SIZE_BYTES;
   private volatile boolean stopped;
-  private boolean needRefresh;
+  private int refreshCredits;
   private boolean clearRequested;
   private boolean refreshInterrupted;
   private boolean drawPointer;
@@ -60,29 +52,64 @@ public class VTGraphicsLinkServerWriter implements Runnable
   private int[] lastImageBufferInt;
   private int[] previousImageBufferInt;
   private VTRectangle captureArea;
+  private volatile VTRectangle requestedArea;
   private VTRectangle resultArea;
+  private VTRectangle dirtyArea;
+  private VTRectangle moveArea;
+  private VTRectangle tileArea;
   private double captureScale;
   private BufferedImage imageDataBuffer;
   private GraphicsDevice nextDevice;
   private GraphicsDevice currentDevice;
-  private VTByteArrayOutputStream imageOutputBuffer = new VTByteArrayOutputStream(IMAGE_OUTPUT_BUFFER_SIZE);
   private VTAWTScreenCaptureProvider viewProvider;
+  private VTGraphicsLinkServerCaptureHub captureHub;
+  private VTGraphicsLinkServerCaptureSource captureSource;
+  private long captureSequence;
+  private boolean captureHeld;
+  private VTGraphicsLinkServerFrameBroadcast frameBroadcast;
+  private VTGraphicsLinkServerFrameRecorder frameRecorder;
+  private long broadcastSequence;
+  private boolean broadcastResync;
+  private boolean following;
   private VTServerConnection connection;
   private VTGraphicsLinkServerSession session;
   private VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII vtCustomCodec;
   private Object screenCaptureIntervalSynchronizer;
-  private ImageWriter jpgWriter;
-  private ImageWriteParam jpgWriterParam;
-  private ImageOutputStream jpgImageOutputStream;
-  private PngEncoder pngEncoder;
+  private VTGraphicsLinkServerTileEncoder tileEncoder;
+  private VTGraphicsLinkServerQualityController qualityController;
+  private VTGraphicsLinkServerRegionClassifier regionClassifier;
+  private VTImageDataTileIndex tileIndex;
+  private VTImageDataMoveDetector moveDetector;
+  private VTImageDataTileCache tileCache;
+  private int[] drawnTiles = new int[0];
+  private int drawnTileCount;
+  private long[] storedSignatures = new long[0];
+  private int[] storedTiles = new int[0];
+  private int storedTileCount;
+  private boolean progressiveRefresh;
+  private long refreshFrame;
+  private long[] lossyTiles = new long[0];
+  private int lossyTileColumns;
+  private int lossyTileCount;
+  // set by jpeg frames that are not tracked as lossy tiles, cleared by the next full refresh that is
+  private boolean untrackedLossy;
+  private VTOutputPipeline outputPipeline;
+  private VTLittleEndianOutputStream controlOutputStream;
+  private VTLittleEndianOutputStream directImageOutputStream;
+  private VTLittleEndianOutputStream heavyImageOutputStream;
+  private VTLittleEndianOutputStream fastImageOutputStream;
   
   public VTGraphicsLinkServerWriter(VTGraphicsLinkServerSession session)
   {
     this.resultArea = new VTRectangle(0, 0, 1, 1);
+    this.dirtyArea = new VTRectangle(0, 0, 1, 1);
+    this.moveArea = new VTRectangle(0, 0, 1, 1);
+    this.tileArea = new VTRectangle(0, 0, VTImageDataTileCache.TILE_SIZE, VTImageDataTileCache.TILE_SIZE);
     this.stopped = true;
     this.session = session;
     this.connection = session.getSession().getConnection();
     this.viewProvider = session.getSession().getViewProvider();
+    this.captureHub = session.getSession().getServer().getGraphicsCaptureHub();
     this.drawPointer = true;
     this.screenCaptureInterval = 250;
     this.captureScale = 1;
@@ -91,6 +118,7 @@ public class VTGraphicsLinkServerWriter implements Runnable
     this.refreshInterrupted = false;
     this.clearRequested = false;
     this.screenCaptureIntervalSynchronizer = new Object();
+    this.qualityController = new VTGraphicsLinkServerQualityController();
     if (VTReflectionUtils.isAWTHeadless())
     {
       return;
@@ -105,12 +133,13 @@ public class VTGraphicsLinkServerWriter implements Runnable
   {
     stopped = true;
     drawPointer = true;
-    needRefresh = false;
+    refreshCredits = 0;
     screenCaptureInterval = 250;
     captureScale = 1;
     imageCoding = VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD;
     viewProvider.setColorQuality(VTAWTScreenCaptureProvider.VT_COLOR_QUALITY_216);
     refreshInterrupted = false;
+    progressiveRefresh = false;
     clearRequested = false;
     lastWidth = 0;
     lastHeight = 0;
@@ -120,6 +149,7 @@ public class VTGraphicsLinkServerWriter implements Runnable
     interruptedLastWidth = 0;
     interruptedLastWidth = 0;
     lastImageCoding = 0;
+    qualityController = new VTGraphicsLinkServerQualityController();
     vtCustomCodec = null;
     
     if (vtCustomCodec != null)
@@ -132,21 +162,16 @@ public class VTGraphicsLinkServerWriter implements Runnable
       viewProvider.dispose();
     }
     
-    if (jpgImageOutputStream != null)
+    if (tileEncoder != null)
     {
-      try
-      {
-        jpgImageOutputStream.close();
-      }
-      catch (IOException e)
-      {
-        
-      }
+      tileEncoder.dispose();
     }
     
-    pngEncoder = null;
-    jpgWriter = null;
-    jpgWriterParam = null;
+    tileEncoder = null;
+    tileIndex = null;
+    moveDetector = null;
+    regionClassifier = null;
+    tileCache = null;
   }
   
   public boolean isStopped()
@@ -207,7 +232,25 @@ public class VTGraphicsLinkServerWriter implements Runnable
   
   public void setColorQuality(int colorQuality)
   {
-    this.viewProvider.setColorQuality(colorQuality);
+    qualityController.setColorQuality(colorQuality);
+    this.viewProvider.setColorQuality(qualityController.getColorQuality());
+  }
+  
+  public void setAdaptiveQuality(boolean adaptiveQuality)
+  {
+    qualityController.setEnabled(adaptiveQuality);
+    applyQuality();
+  }
+  
+  private void applyQuality()
+  {
+    imageCoding = qualityController.getImageCoding();
+    viewProvider.setColorQuality(qualityController.getColorQuality());
+    if (tileEncoder != null)
+    {
+      tileEncoder.setJpegQuality(qualityController.getJpegQuality());
+    }
+    setCurrentScreenCaptureInterval(qualityController.getScreenCaptureInterval());
   }
   
   public void setRefreshInterrupted(boolean refreshInterrupted)
@@ -223,13 +266,38 @@ public class VTGraphicsLinkServerWriter implements Runnable
     }
   }
   
+  public void setProgressiveRefresh(boolean progressiveRefresh)
+  {
+    if (this.progressiveRefresh != progressiveRefresh)
+    {
+      this.progressiveRefresh = progressiveRefresh;
+      // cached tiles may hold lossy pixels from the other mode
+      clearRequested = true;
+    }
+  }
+  
   public void setImageCoding(int imageCoding)
   {
-    this.imageCoding = imageCoding;
+    qualityController.setImageCoding(imageCoding);
+    this.imageCoding = qualityController.getImageCoding();
+    if (tileEncoder != null)
+    {
+      tileEncoder.setJpegQuality(qualityController.getJpegQuality());
+    }
   }
   
   public void setScreenCaptureInterval(int screenCaptureInterval)
   {
+    qualityController.setScreenCaptureInterval(screenCaptureInterval);
+    setCurrentScreenCaptureInterval(qualityController.getScreenCaptureInterval());
+  }
+  
+  private void setCurrentScreenCaptureInterval(int screenCaptureInterval)
+  {
+    if (this.screenCaptureInterval == screenCaptureInterval)
+    {
+      return;
+    }
     this.screenCaptureInterval = screenCaptureInterval;
     synchronized (screenCaptureIntervalSynchronizer)
     {
@@ -245,6 +313,8 @@ public class VTGraphicsLinkServerWriter implements Runnable
   public void setCaptureArea(VTRectangle captureArea, double captureScale)
   {
     this.captureArea = captureArea;
+    // the frame loop pads its own area, captures and broadcasts use a copy of the area the viewer asked for
+    this.requestedArea = new VTRectangle(captureArea.x, captureArea.y, captureArea.width, captureArea.height);
     this.captureScale = captureScale;
   }
   
@@ -255,24 +325,134 @@ public class VTGraphicsLinkServerWriter implements Runnable
   
   public void requestRefresh()
   {
-    needRefresh = true;
+    qualityController.frameAcknowledged();
     synchronized (this)
     {
+      refreshCredits++;
       notify();
     }
   }
   
+  // the session view provider only holds the capture settings, the pixels come from the source shared with the viewers that use the same settings
+  private BufferedImage createScreenCapture(int padding, VTRectangle area) throws InterruptedException
+  {
+    captureSource = captureHub.subscribe(captureSource, viewProvider, padding, drawPointer, area);
+    long maximumAge = Math.max(screenCaptureInterval, VTSystem.VT_GRAPHICS_LINK_SHARED_CAPTURE_MINIMUM_AGE_MILLISECONDS);
+    if (!captureSource.acquire(captureSequence, maximumAge, VTSystem.VT_GRAPHICS_LINK_SHARED_CAPTURE_WAIT_MILLISECONDS))
+    {
+      captureSource = captureHub.detach(captureSource, viewProvider, padding, drawPointer, area);
+      captureSource.acquire(captureSequence, maximumAge, VTSystem.VT_GRAPHICS_LINK_SHARED_CAPTURE_WAIT_MILLISECONDS);
+    }
+    captureHeld = true;
+    captureSequence = captureSource.getSequence();
+    BufferedImage image = captureSource.getImage();
+    if (image != null)
+    {
+      // after moving to another source the pixels sent so far are still compared against the new capture buffers
+      DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+      if (lastImageBufferByte != null && dataBuffer instanceof DataBufferByte)
+      {
+        lastImageBufferByte = ((DataBufferByte) dataBuffer).getData();
+      }
+      else if (lastImageBufferUShort != null && dataBuffer instanceof DataBufferUShort)
+      {
+        lastImageBufferUShort = ((DataBufferUShort) dataBuffer).getData();
+      }
+      else if (lastImageBufferInt != null && dataBuffer instanceof DataBufferInt)
+      {
+        lastImageBufferInt = ((DataBufferInt) dataBuffer).getData();
+      }
+    }
+    return image;
+  }
+  
+  // viewers with fixed settings share the frames encoded by a leading viewer instead of encoding their own
+  // returns true when the frame for this viewer was replayed from its leader
+  private boolean followBroadcast(boolean interrupted) throws IOException, InterruptedException
+  {
+    if (interrupted || qualityController.isEnabled())
+    {
+      captureHub.unsubscribeBroadcast(frameBroadcast, this);
+      frameBroadcast = null;
+    }
+    else
+    {
+      VTGraphicsLinkServerFrameBroadcast current = frameBroadcast;
+      frameBroadcast = captureHub.subscribeBroadcast(frameBroadcast, this, viewProvider, drawPointer, requestedArea, imageCoding, progressiveRefresh, screenCaptureInterval);
+      if (frameBroadcast != current && !frameBroadcast.isLeader(this))
+      {
+        broadcastSequence = frameBroadcast.getSequence() + 1;
+        broadcastResync = true;
+      }
+    }
+    if (frameBroadcast == null || frameBroadcast.isLeader(this))
+    {
+      if (following)
+      {
+        // the encoder state of this viewer is older than the image its client shows
+        following = false;
+        clearRequested = true;
+      }
+      if (frameBroadcast != null && frameBroadcast.takeKeyframeRequest())
+      {
+        clearRequested = true;
+      }
+      return false;
+    }
+    if (!following)
+    {
+      following = true;
+      captureHub.unsubscribe(captureSource);
+      captureSource = null;
+      captureSequence = 0;
+    }
+    if (clearRequested)
+    {
+      clearRequested = false;
+      broadcastResync = true;
+      frameBroadcast.requestKeyframe();
+    }
+    VTGraphicsLinkServerEncodedFrame frame = frameBroadcast.next(broadcastSequence, broadcastResync, screenCaptureInterval + VTSystem.VT_GRAPHICS_LINK_SHARED_CAPTURE_WAIT_MILLISECONDS);
+    if (frame != null)
+    {
+      frameRecorder.replay(frame);
+      broadcastSequence = frame.getSequence() + 1;
+      broadcastResync = false;
+      return true;
+    }
+    if (frameBroadcast.isDissolved())
+    {
+      captureHub.unsubscribeBroadcast(frameBroadcast, this);
+      frameBroadcast = null;
+    }
+    else
+    {
+      frameBroadcast = captureHub.detachBroadcast(frameBroadcast, this, viewProvider, drawPointer, requestedArea, imageCoding, progressiveRefresh, screenCaptureInterval);
+    }
+    following = false;
+    clearRequested = true;
+    return false;
+  }
+  
+  private void releaseScreenCapture()
+  {
+    if (captureHeld)
+    {
+      captureHeld = false;
+      captureSource.release();
+    }
+  }
+  
   public void sendRemoteInterfaceAreaChange(int width, int height) throws IOException
   {
-    connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REMOTE_INTERFACE_AREA_CHANGE);
-    connection.getGraphicsControlDataOutputStream().writeInt(width);
-    connection.getGraphicsControlDataOutputStream().writeInt(height);
-    connection.getGraphicsControlDataOutputStream().flush();
+    controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REMOTE_INTERFACE_AREA_CHANGE);
+    controlOutputStream.writeInt(width);
+    controlOutputStream.writeInt(height);
+    controlOutputStream.flush();
   }
   
   public void sendImageRefresh() throws IOException
   {
-    needRefresh = false;
     List<VTRectangle> blockAreas = VTImageDataUtils.splitBlockArea(imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea, 16, 16);
     blockAreas = VTImageDataUtils.mergeNeighbourAreas(blockAreas);
     VTRectangle blockMaxArea = null;
@@ -285,79 +465,57 @@ public class VTGraphicsLinkServerWriter implements Runnable
         blockMaxAreaSize = blockArea.width * blockArea.height;
       }
     }
-    connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_STANDARD_REFRESH_FRAME);
-    if (imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG)
+    resetLossyTiles();
+    regionClassifier.reset(lastWidth, lastHeight);
+    frameRecorder.markKeyframe();
+    controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_STANDARD_REFRESH_FRAME);
+    if (progressiveRefresh || imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG)
     {
+      controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG);
       if (lastColors == 16 || lastColors == 8 || lastColors == 4)
       {
-        jpgWriterParam.setDestinationType(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_BYTE_GRAY));
+        controlOutputStream.writeInt(BufferedImage.TYPE_BYTE_GRAY);
       }
       else
       {
-        jpgWriterParam.setDestinationType(jpgWriter.getDefaultWriteParam().getDestinationType());
+        controlOutputStream.writeInt(imageDataBuffer.getType());
       }
-      
-      IIOMetadata jpgWriterMetadata = setJpegSubsamplingMode444(jpgWriter.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(imageDataBuffer), jpgWriterParam));
-      
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG);
-      if (lastColors == 16 || lastColors == 8 || lastColors == 4)
+      controlOutputStream.writeInt(lastColors);
+      controlOutputStream.writeInt(imageDataBuffer.getWidth());
+      controlOutputStream.writeInt(imageDataBuffer.getHeight());
+      controlOutputStream.writeInt(blockAreas.size());
+      controlOutputStream.writeInt(blockMaxArea.width);
+      controlOutputStream.writeInt(blockMaxArea.height);
+      controlOutputStream.flush();
+      tileEncoder.encodeTiles(directImageOutputStream, imageDataBuffer, blockAreas, true, lastColors == 16 || lastColors == 8 || lastColors == 4);
+      if (progressiveRefresh || qualityController.isCodecStep())
       {
-        connection.getGraphicsControlDataOutputStream().writeInt(BufferedImage.TYPE_BYTE_GRAY);
+        markLossyArea(resultArea.x, resultArea.y, resultArea.width, resultArea.height, true);
+        untrackedLossy = false;
       }
       else
       {
-        connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getType());
+        untrackedLossy = true;
       }
-      connection.getGraphicsControlDataOutputStream().writeInt(lastColors);
-      connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getWidth());
-      connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getHeight());
-      connection.getGraphicsControlDataOutputStream().writeInt(blockAreas.size());
-      connection.getGraphicsControlDataOutputStream().writeInt(blockMaxArea.width);
-      connection.getGraphicsControlDataOutputStream().writeInt(blockMaxArea.height);
-      connection.getGraphicsControlDataOutputStream().flush();
-      for (VTRectangle blockArea : blockAreas)
-      {
-        imageOutputBuffer.reset();
-        jpgWriter.setOutput(jpgImageOutputStream);
-        jpgWriter.write(jpgWriterMetadata, new IIOImage(imageDataBuffer.getSubimage(blockArea.x, blockArea.y, blockArea.width, blockArea.height), null, jpgWriterMetadata), jpgWriterParam);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(imageOutputBuffer.size());
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.x);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.y);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.width);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.height);
-        imageOutputBuffer.writeTo(connection.getGraphicsDirectImageDataOutputStream());
-      }
-      connection.getGraphicsDirectImageDataOutputStream().flush();
     }
     else
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_PNG);
-      connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getType());
-      connection.getGraphicsControlDataOutputStream().writeInt(lastColors);
-      connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getWidth());
-      connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getHeight());
-      connection.getGraphicsControlDataOutputStream().writeInt(blockAreas.size());
-      connection.getGraphicsControlDataOutputStream().writeInt(blockMaxArea.width);
-      connection.getGraphicsControlDataOutputStream().writeInt(blockMaxArea.height);
-      connection.getGraphicsControlDataOutputStream().flush();
-      for (VTRectangle blockArea : blockAreas)
-      {
-        imageOutputBuffer.reset();
-        pngEncoder.encode(imageDataBuffer.getSubimage(blockArea.x, blockArea.y, blockArea.width, blockArea.height), imageOutputBuffer);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(imageOutputBuffer.size());
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.x);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.y);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.width);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.height);
-        imageOutputBuffer.writeTo(connection.getGraphicsDirectImageDataOutputStream());
-      }
-      connection.getGraphicsDirectImageDataOutputStream().flush();
+      controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_PNG);
+      controlOutputStream.writeInt(imageDataBuffer.getType());
+      controlOutputStream.writeInt(lastColors);
+      controlOutputStream.writeInt(imageDataBuffer.getWidth());
+      controlOutputStream.writeInt(imageDataBuffer.getHeight());
+      controlOutputStream.writeInt(blockAreas.size());
+      controlOutputStream.writeInt(blockMaxArea.width);
+      controlOutputStream.writeInt(blockMaxArea.height);
+      controlOutputStream.flush();
+      tileEncoder.encodeTiles(directImageOutputStream, imageDataBuffer, blockAreas, false, false);
+      untrackedLossy = false;
     }
   }
   
   public void sendImageDifference() throws IOException
   {
-    needRefresh = false;
     List<VTRectangle> blockAreas = null;
     if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE)
     {
@@ -372,8 +530,114 @@ public class VTGraphicsLinkServerWriter implements Runnable
       blockAreas = VTImageDataUtils.compareBlockArea(lastImageBufferInt, previousImageBufferInt, 0, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea, 16, 16);
     }
     blockAreas = VTImageDataUtils.mergeNeighbourAreas(blockAreas);
-    VTRectangle blockMaxArea = null;
-    int blockMaxAreaSize = 0;
+    if (!progressiveRefresh && imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_PNG && lastColors > VTSystem.VT_GRAPHICS_LINK_HYBRID_PHOTO_COLORS)
+    {
+      sendHybridImageBlocks(blockAreas);
+      return;
+    }
+    if (!progressiveRefresh)
+    {
+      final boolean jpeg = imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG;
+      if (jpeg && qualityController.isCodecStep())
+      {
+        // jpeg chosen by the quality controller stands in for png, its areas are refined once they settle
+        for (VTRectangle blockArea : blockAreas)
+        {
+          markLossyArea(blockArea.x, blockArea.y, blockArea.width, blockArea.height, true);
+        }
+      }
+      else if (jpeg)
+      {
+        // plain jpeg frames are never refined, so the client mirror may hold lossy pixels anywhere until a full refresh
+        untrackedLossy = true;
+      }
+      sendImageBlocks(blockAreas, jpeg);
+      return;
+    }
+    // progressive refresh sends moving areas lossy and refines them lossless once they settle
+    long changedPixels = 0;
+    for (VTRectangle blockArea : blockAreas)
+    {
+      changedPixels += blockArea.width * blockArea.height;
+    }
+    final boolean motion = changedPixels > (lastWidth * lastHeight) / VTSystem.VT_GRAPHICS_LINK_PROGRESSIVE_MOTION_AREA_DIVISOR;
+    for (VTRectangle blockArea : blockAreas)
+    {
+      markLossyArea(blockArea.x, blockArea.y, blockArea.width, blockArea.height, motion);
+    }
+    if (!motion)
+    {
+      blockAreas = addRefinedTiles(blockAreas);
+    }
+    sendImageBlocks(blockAreas, motion);
+  }
+  
+  public boolean sendImageRefinement() throws IOException
+  {
+    if (lossyTileCount == 0)
+    {
+      return false;
+    }
+    final List<VTRectangle> blockAreas = addRefinedTiles(new LinkedList<VTRectangle>());
+    if (blockAreas.isEmpty())
+    {
+      return false;
+    }
+    sendImageBlocks(blockAreas, false);
+    return true;
+  }
+  
+  // video and photo areas go lossy in the same frame as the lossless text and interface areas, and are refined once they settle
+  private void sendHybridImageBlocks(List<VTRectangle> blockAreas) throws IOException
+  {
+    Object pixelData = lastImageBufferInt;
+    if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE)
+    {
+      pixelData = lastImageBufferByte;
+    }
+    else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_USHORT)
+    {
+      pixelData = lastImageBufferUShort;
+    }
+    List<VTRectangle> lossyAreas = new LinkedList<VTRectangle>();
+    List<VTRectangle> losslessAreas = new LinkedList<VTRectangle>();
+    regionClassifier.classify(pixelData, blockAreas, refreshFrame, lossyAreas, losslessAreas);
+    for (VTRectangle lossyArea : lossyAreas)
+    {
+      markLossyArea(lossyArea.x, lossyArea.y, lossyArea.width, lossyArea.height, true);
+    }
+    for (VTRectangle losslessArea : losslessAreas)
+    {
+      markLossyArea(losslessArea.x, losslessArea.y, losslessArea.width, losslessArea.height, false);
+    }
+    losslessAreas = addRefinedTiles(losslessAreas);
+    if (lossyAreas.isEmpty())
+    {
+      sendImageBlocks(losslessAreas, false);
+      return;
+    }
+    if (losslessAreas.isEmpty())
+    {
+      sendImageBlocks(lossyAreas, true);
+      return;
+    }
+    VTRectangle blockMaxArea = findMaximumArea(lossyAreas, findMaximumArea(losslessAreas, null));
+    controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_STANDARD_DIFFERENTIAL_FRAME);
+    controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_HYBRID);
+    controlOutputStream.writeInt(imageDataBuffer.getType());
+    controlOutputStream.writeInt(lastColors);
+    controlOutputStream.writeInt(lossyAreas.size());
+    controlOutputStream.writeInt(losslessAreas.size());
+    controlOutputStream.writeInt(blockMaxArea.width);
+    controlOutputStream.writeInt(blockMaxArea.height);
+    controlOutputStream.flush();
+    tileEncoder.encodeTiles(directImageOutputStream, imageDataBuffer, lossyAreas, true, false);
+    tileEncoder.encodeTiles(directImageOutputStream, imageDataBuffer, losslessAreas, false, false);
+  }
+  
+  private static VTRectangle findMaximumArea(List<VTRectangle> blockAreas, VTRectangle blockMaxArea)
+  {
+    int blockMaxAreaSize = blockMaxArea != null ? blockMaxArea.width * blockMaxArea.height : 0;
     for (VTRectangle blockArea : blockAreas)
     {
       if (blockArea.width * blockArea.height > blockMaxAreaSize)
@@ -382,176 +646,426 @@ public class VTGraphicsLinkServerWriter implements Runnable
         blockMaxAreaSize = blockArea.width * blockArea.height;
       }
     }
-    connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_STANDARD_DIFFERENTIAL_FRAME);
-    if (imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG)
+    return blockMaxArea;
+  }
+  
+  private void sendImageBlocks(List<VTRectangle> blockAreas, boolean jpeg) throws IOException
+  {
+    VTRectangle blockMaxArea = findMaximumArea(blockAreas, null);
+    controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_STANDARD_DIFFERENTIAL_FRAME);
+    if (jpeg)
     {
+      controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG);
       if (lastColors == 16 || lastColors == 8 || lastColors == 4)
       {
-        jpgWriterParam.setDestinationType(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_BYTE_GRAY));
-      }
-      else
-      {
-        jpgWriterParam.setDestinationType(jpgWriter.getDefaultWriteParam().getDestinationType());
-      }
-      
-      IIOMetadata jpgWriterMetadata = setJpegSubsamplingMode444(jpgWriter.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(imageDataBuffer), jpgWriterParam));
-      
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_JPG);
-      if (lastColors == 16 || lastColors == 8 || lastColors == 4)
-      {
-        connection.getGraphicsControlDataOutputStream().writeInt(BufferedImage.TYPE_BYTE_GRAY);
+        controlOutputStream.writeInt(BufferedImage.TYPE_BYTE_GRAY);
       }
       else
       {
-        connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getType());
+        controlOutputStream.writeInt(imageDataBuffer.getType());
       }
-      connection.getGraphicsControlDataOutputStream().writeInt(lastColors);
-      connection.getGraphicsControlDataOutputStream().writeInt(blockAreas.size());
-      connection.getGraphicsControlDataOutputStream().writeInt(blockMaxArea.width);
-      connection.getGraphicsControlDataOutputStream().writeInt(blockMaxArea.height);
-      connection.getGraphicsControlDataOutputStream().flush();
-      for (VTRectangle blockArea : blockAreas)
+      controlOutputStream.writeInt(lastColors);
+      controlOutputStream.writeInt(blockAreas.size());
+      controlOutputStream.writeInt(blockMaxArea.width);
+      controlOutputStream.writeInt(blockMaxArea.height);
+      controlOutputStream.flush();
+      tileEncoder.encodeTiles(directImageOutputStream, imageDataBuffer, blockAreas, true, lastColors == 16 || lastColors == 8 || lastColors == 4);
+    }
+    else
+    {
+      controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_PNG);
+      controlOutputStream.writeInt(imageDataBuffer.getType());
+      controlOutputStream.writeInt(lastColors);
+      controlOutputStream.writeInt(blockAreas.size());
+      controlOutputStream.writeInt(blockMaxArea.width);
+      controlOutputStream.writeInt(blockMaxArea.height);
+      controlOutputStream.flush();
+      tileEncoder.encodeTiles(directImageOutputStream, imageDataBuffer, blockAreas, false, false);
+    }
+  }
+  
+  private void resetLossyTiles()
+  {
+    final int tileSize = VTImageDataTileCache.TILE_SIZE;
+    lossyTileColumns = (lastWidth + tileSize - 1) / tileSize;
+    final int tiles = lossyTileColumns * ((lastHeight + tileSize - 1) / tileSize);
+    if (lossyTiles.length < tiles)
+    {
+      lossyTiles = new long[tiles];
+    }
+    Arrays.fill(lossyTiles, 0);
+    lossyTileCount = 0;
+    if (storedSignatures.length < tiles)
+    {
+      drawnTiles = new int[tiles * 3];
+      storedSignatures = new long[tiles];
+      storedTiles = new int[tiles * 2];
+    }
+  }
+  
+  // lossy tiles remember the frame they last changed in, changes to lossless tiles are already exact
+  private void markLossyArea(int x, int y, int width, int height, boolean lossy)
+  {
+    final int tileSize = VTImageDataTileCache.TILE_SIZE;
+    if (width <= 0 || height <= 0 || (!lossy && lossyTileCount == 0))
+    {
+      return;
+    }
+    final int lastTileX = (Math.min(x + width, lastWidth) - 1) / tileSize;
+    final int lastTileY = (Math.min(y + height, lastHeight) - 1) / tileSize;
+    for (int tileY = Math.max(0, y) / tileSize; tileY <= lastTileY; tileY++)
+    {
+      for (int tileX = Math.max(0, x) / tileSize; tileX <= lastTileX; tileX++)
       {
-        imageOutputBuffer.reset();
-        jpgWriter.setOutput(jpgImageOutputStream);
-        jpgWriter.write(jpgWriterMetadata, new IIOImage(imageDataBuffer.getSubimage(blockArea.x, blockArea.y, blockArea.width, blockArea.height), null, jpgWriterMetadata), jpgWriterParam);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(imageOutputBuffer.size());
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.x);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.y);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.width);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.height);
-        imageOutputBuffer.writeTo(connection.getGraphicsDirectImageDataOutputStream());
+        final int tile = tileX + tileY * lossyTileColumns;
+        if (lossyTiles[tile] != 0)
+        {
+          lossyTiles[tile] = refreshFrame;
+        }
+        else if (lossy)
+        {
+          lossyTiles[tile] = refreshFrame;
+          lossyTileCount++;
+        }
       }
-      connection.getGraphicsDirectImageDataOutputStream().flush();
     }
-    else
+  }
+  
+  private void clearLossyTile(int tileX, int tileY)
+  {
+    final int tile = tileX + tileY * lossyTileColumns;
+    if (lossyTiles[tile] != 0)
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_PNG);
-      connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getType());
-      connection.getGraphicsControlDataOutputStream().writeInt(lastColors);
-      connection.getGraphicsControlDataOutputStream().writeInt(blockAreas.size());
-      connection.getGraphicsControlDataOutputStream().writeInt(blockMaxArea.width);
-      connection.getGraphicsControlDataOutputStream().writeInt(blockMaxArea.height);
-      connection.getGraphicsControlDataOutputStream().flush();
-      for (VTRectangle blockArea : blockAreas)
+      lossyTiles[tile] = 0;
+      lossyTileCount--;
+    }
+  }
+  
+  // lossy tiles that stayed unchanged for a few frames are resent lossless in small batches
+  private List<VTRectangle> addRefinedTiles(List<VTRectangle> blockAreas)
+  {
+    final int tileSize = VTImageDataTileCache.TILE_SIZE;
+    final int tiles = lossyTileColumns * ((lastHeight + tileSize - 1) / tileSize);
+    int refinedTiles = 0;
+    for (int tile = 0; tile < tiles && lossyTileCount > 0 && refinedTiles < VTSystem.VT_GRAPHICS_LINK_PROGRESSIVE_REFINEMENT_TILES; tile++)
+    {
+      if (lossyTiles[tile] == 0 || refreshFrame - lossyTiles[tile] < VTSystem.VT_GRAPHICS_LINK_PROGRESSIVE_REFINEMENT_IDLE_FRAMES)
+      {
+        continue;
+      }
+      final int tileX = tile % lossyTileColumns;
+      final int tileY = tile / lossyTileColumns;
+      final int x = tileX * tileSize;
+      final int y = tileY * tileSize;
+      blockAreas.add(new VTRectangle(x, y, Math.min(tileSize, lastWidth - x), Math.min(tileSize, lastHeight - y)));
+      clearLossyTile(tileX, tileY);
+      refinedTiles++;
+      if (tileIndex.isWholeTile(tileX, tileY) && storedTileCount < storedSignatures.length)
       {
-        imageOutputBuffer.reset();
-        pngEncoder.encode(imageDataBuffer.getSubimage(blockArea.x, blockArea.y, blockArea.width, blockArea.height), imageOutputBuffer);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(imageOutputBuffer.size());
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.x);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.y);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.width);
-        connection.getGraphicsDirectImageDataOutputStream().writeInt(blockArea.height);
-        imageOutputBuffer.writeTo(connection.getGraphicsDirectImageDataOutputStream());
+        storedSignatures[storedTileCount] = tileIndex.getSignature(tileX, tileY);
+        storedTiles[storedTileCount * 2] = x;
+        storedTiles[storedTileCount * 2 + 1] = y;
+        storedTileCount++;
       }
-      connection.getGraphicsDirectImageDataOutputStream().flush();
     }
+    return VTImageDataUtils.mergeNeighbourAreas(blockAreas);
   }
   
   public void sendCustomDifference() throws IOException
   {
-    needRefresh = false;
-    connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_CUSTOM_DIFFERENTIAL_FRAME);
+    controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_CUSTOM_DIFFERENTIAL_FRAME);
     if (imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD)
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD);
-      connection.getGraphicsControlDataOutputStream().flush();
+      controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD);
+      controlOutputStream.flush();
       if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE)
       {
-        vtCustomCodec.encodeFrame8(connection.getGraphicsHeavyImageDataOutputStream(), previousImageBufferByte, lastImageBufferByte, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
+        vtCustomCodec.encodeFrame8(heavyImageOutputStream, previousImageBufferByte, lastImageBufferByte, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
       }
       else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_USHORT)
       {
-        vtCustomCodec.encodeFrame15(connection.getGraphicsHeavyImageDataOutputStream(), previousImageBufferUShort, lastImageBufferUShort, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
+        vtCustomCodec.encodeFrame15(heavyImageOutputStream, previousImageBufferUShort, lastImageBufferUShort, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
       }
       else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_INT)
       {
-        vtCustomCodec.encodeFrame24(connection.getGraphicsHeavyImageDataOutputStream(), previousImageBufferInt, lastImageBufferInt, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
+        vtCustomCodec.encodeFrame24(heavyImageOutputStream, previousImageBufferInt, lastImageBufferInt, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
       }
-      connection.getGraphicsHeavyImageDataOutputStream().flush();
+      heavyImageOutputStream.flush();
     }
     else
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD);
-      connection.getGraphicsControlDataOutputStream().flush();
+      controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD);
+      controlOutputStream.flush();
       if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE)
       {
-        vtCustomCodec.encodeFrame8(connection.getGraphicsFastImageDataOutputStream(), previousImageBufferByte, lastImageBufferByte, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
+        vtCustomCodec.encodeFrame8(fastImageOutputStream, previousImageBufferByte, lastImageBufferByte, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
       }
       else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_USHORT)
       {
-        vtCustomCodec.encodeFrame15(connection.getGraphicsFastImageDataOutputStream(), previousImageBufferUShort, lastImageBufferUShort, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
+        vtCustomCodec.encodeFrame15(fastImageOutputStream, previousImageBufferUShort, lastImageBufferUShort, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
       }
       else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_INT)
       {
-        vtCustomCodec.encodeFrame24(connection.getGraphicsFastImageDataOutputStream(), previousImageBufferInt, lastImageBufferInt, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
+        vtCustomCodec.encodeFrame24(fastImageOutputStream, previousImageBufferInt, lastImageBufferInt, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
       }
-      connection.getGraphicsFastImageDataOutputStream().flush();
+      fastImageOutputStream.flush();
+    }
+  }
+  
+  public boolean sendAreaMove() throws IOException
+  {
+    boolean moved = false;
+    if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE)
+    {
+      moved = moveDetector.detectArea(lastImageBufferByte, previousImageBufferByte, 0, lastWidth, lastHeight, resultArea, moveArea)
+      && VTImageDataUtils.moveArea(previousImageBufferByte, 0, lastWidth, lastHeight, moveArea, moveDetector.getMoveX(), moveDetector.getMoveY());
+    }
+    else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_USHORT)
+    {
+      moved = moveDetector.detectArea(lastImageBufferUShort, previousImageBufferUShort, 0, lastWidth, lastHeight, resultArea, moveArea)
+      && VTImageDataUtils.moveArea(previousImageBufferUShort, 0, lastWidth, lastHeight, moveArea, moveDetector.getMoveX(), moveDetector.getMoveY());
+    }
+    else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_INT)
+    {
+      moved = moveDetector.detectArea(lastImageBufferInt, previousImageBufferInt, 0, lastWidth, lastHeight, resultArea, moveArea)
+      && VTImageDataUtils.moveArea(previousImageBufferInt, 0, lastWidth, lastHeight, moveArea, moveDetector.getMoveX(), moveDetector.getMoveY());
+    }
+    if (!moved)
+    {
+      return true;
+    }
+    controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_MOVE_AREA);
+    controlOutputStream.writeInt(moveArea.x);
+    controlOutputStream.writeInt(moveArea.y);
+    controlOutputStream.writeInt(moveArea.width);
+    controlOutputStream.writeInt(moveArea.height);
+    controlOutputStream.writeInt(moveDetector.getMoveX());
+    controlOutputStream.writeInt(moveDetector.getMoveY());
+    if (lossyTileCount > 0)
+    {
+      // the moved pixels may come from lossy tiles
+      markLossyArea(moveArea.x + moveDetector.getMoveX(), moveArea.y + moveDetector.getMoveY(), moveArea.width, moveArea.height, true);
+    }
+    dirtyArea.x = resultArea.x;
+    dirtyArea.y = resultArea.y;
+    dirtyArea.width = resultArea.width;
+    dirtyArea.height = resultArea.height;
+    if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE)
+    {
+      return VTImageDataUtils.compareArea(lastImageBufferByte, previousImageBufferByte, 0, lastWidth, lastHeight, dirtyArea, resultArea);
     }
+    else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_USHORT)
+    {
+      return VTImageDataUtils.compareArea(lastImageBufferUShort, previousImageBufferUShort, 0, lastWidth, lastHeight, dirtyArea, resultArea);
+    }
+    return VTImageDataUtils.compareArea(lastImageBufferInt, previousImageBufferInt, 0, lastWidth, lastHeight, dirtyArea, resultArea);
+  }
+  
+  public boolean sendCachedTiles() throws IOException
+  {
+    final int dataType = imageDataBuffer.getRaster().getDataBuffer().getDataType();
+    final int tileSize = VTImageDataTileCache.TILE_SIZE;
+    final int firstTileX = resultArea.x / tileSize;
+    final int firstTileY = resultArea.y / tileSize;
+    final int lastTileX = (resultArea.x + resultArea.width - 1) / tileSize;
+    final int lastTileY = (resultArea.y + resultArea.height - 1) / tileSize;
+    final int tiles = (lastTileX - firstTileX + 1) * (lastTileY - firstTileY + 1);
+    if (storedSignatures.length < tiles)
+    {
+      drawnTiles = new int[tiles * 3];
+      storedSignatures = new long[tiles];
+      storedTiles = new int[tiles * 2];
+    }
+    drawnTileCount = 0;
+    storedTileCount = 0;
+    for (int tileY = firstTileY; tileY <= lastTileY; tileY++)
+    {
+      for (int tileX = firstTileX; tileX <= lastTileX; tileX++)
+      {
+        if (!tileIndex.isWholeTile(tileX, tileY))
+        {
+          continue;
+        }
+        tileArea.x = tileX * tileSize;
+        tileArea.y = tileY * tileSize;
+        boolean different = false;
+        if (dataType == DataBuffer.TYPE_BYTE)
+        {
+          different = VTImageDataUtils.compareArea(lastImageBufferByte, previousImageBufferByte, 0, lastWidth, lastHeight, tileArea);
+        }
+        else if (dataType == DataBuffer.TYPE_USHORT)
+        {
+          different = VTImageDataUtils.compareArea(lastImageBufferUShort, previousImageBufferUShort, 0, lastWidth, lastHeight, tileArea);
+        }
+        else if (dataType == DataBuffer.TYPE_INT)
+        {
+          different = VTImageDataUtils.compareArea(lastImageBufferInt, previousImageBufferInt, 0, lastWidth, lastHeight, tileArea);
+        }
+        if (!different)
+        {
+          continue;
+        }
+        final long signature = tileIndex.getSignature(tileX, tileY);
+        final int slot = tileCache.findTile(signature);
+        if (slot < 0)
+        {
+          storedSignatures[storedTileCount] = signature;
+          storedTiles[storedTileCount * 2] = tileArea.x;
+          storedTiles[storedTileCount * 2 + 1] = tileArea.y;
+          storedTileCount++;
+          continue;
+        }
+        drawnTiles[drawnTileCount * 3] = slot;
+        drawnTiles[drawnTileCount * 3 + 1] = tileArea.x;
+        drawnTiles[drawnTileCount * 3 + 2] = tileArea.y;
+        drawnTileCount++;
+        if (lossyTileCount > 0)
+        {
+          clearLossyTile(tileX, tileY);
+        }
+        if (dataType == DataBuffer.TYPE_BYTE)
+        {
+          VTImageDataUtils.copyArea(lastImageBufferByte, previousImageBufferByte, 0, lastWidth, lastHeight, tileArea);
+        }
+        else if (dataType == DataBuffer.TYPE_USHORT)
+        {
+          VTImageDataUtils.copyArea(lastImageBufferUShort, previousImageBufferUShort, 0, lastWidth, lastHeight, tileArea);
+        }
+        else if (dataType == DataBuffer.TYPE_INT)
+        {
+          VTImageDataUtils.copyArea(lastImageBufferInt, previousImageBufferInt, 0, lastWidth, lastHeight, tileArea);
+        }
+      }
+    }
+    if (drawnTileCount == 0)
+    {
+      return true;
+    }
+    controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_DRAW_TILES);
+    controlOutputStream.writeInt(drawnTileCount);
+    for (int i = 0; i < drawnTileCount * 3; i++)
+    {
+      controlOutputStream.writeInt(drawnTiles[i]);
+    }
+    dirtyArea.x = resultArea.x;
+    dirtyArea.y = resultArea.y;
+    dirtyArea.width = resultArea.width;
+    dirtyArea.height = resultArea.height;
+    if (dataType == DataBuffer.TYPE_BYTE)
+    {
+      return VTImageDataUtils.compareArea(lastImageBufferByte, previousImageBufferByte, 0, lastWidth, lastHeight, dirtyArea, resultArea);
+    }
+    else if (dataType == DataBuffer.TYPE_USHORT)
+    {
+      return VTImageDataUtils.compareArea(lastImageBufferUShort, previousImageBufferUShort, 0, lastWidth, lastHeight, dirtyArea, resultArea);
+    }
+    return VTImageDataUtils.compareArea(lastImageBufferInt, previousImageBufferInt, 0, lastWidth, lastHeight, dirtyArea, resultArea);
+  }
+  
+  public void sendStoredTiles() throws IOException
+  {
+    if (untrackedLossy)
+    {
+      // stored tiles are copied whole from the client mirror, which may still hold untracked jpeg pixels
+      storedTileCount = 0;
+      return;
+    }
+    if (lossyTileCount > 0)
+    {
+      // lossy pixels must not be cached under the signature of the exact tile
+      final int tileSize = VTImageDataTileCache.TILE_SIZE;
+      int count = 0;
+      for (int i = 0; i < storedTileCount; i++)
+      {
+        if (lossyTiles[(storedTiles[i * 2] / tileSize) + (storedTiles[i * 2 + 1] / tileSize) * lossyTileColumns] == 0)
+        {
+          storedSignatures[count] = storedSignatures[i];
+          storedTiles[count * 2] = storedTiles[i * 2];
+          storedTiles[count * 2 + 1] = storedTiles[i * 2 + 1];
+          count++;
+        }
+      }
+      storedTileCount = count;
+    }
+    if (storedTileCount == 0)
+    {
+      return;
+    }
+    controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_STORE_TILES);
+    controlOutputStream.writeInt(storedTileCount);
+    for (int i = 0; i < storedTileCount; i++)
+    {
+      controlOutputStream.writeInt(tileCache.assignTile(storedSignatures[i]));
+      controlOutputStream.writeInt(storedTiles[i * 2]);
+      controlOutputStream.writeInt(storedTiles[i * 2 + 1]);
+    }
+    storedTileCount = 0;
   }
   
   public void sendCustomRefresh() throws IOException
   {
-    needRefresh = false;
-    connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_CUSTOM_REFRESH_FRAME);
+    // padded frames have their own size, tile state from earlier frames no longer lines up
+    resetLossyTiles();
+    regionClassifier.reset(lastWidth, lastHeight);
+    untrackedLossy = false;
+    frameRecorder.markKeyframe();
+    controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_CUSTOM_REFRESH_FRAME);
     if (imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD)
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD);
-      connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getType());
-      connection.getGraphicsControlDataOutputStream().writeInt(lastColors);
-      connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getWidth());
-      connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getHeight());
-      connection.getGraphicsControlDataOutputStream().flush();
+      controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD);
+      controlOutputStream.writeInt(imageDataBuffer.getType());
+      controlOutputStream.writeInt(lastColors);
+      controlOutputStream.writeInt(imageDataBuffer.getWidth());
+      controlOutputStream.writeInt(imageDataBuffer.getHeight());
+      controlOutputStream.flush();
       if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE)
       {
-        vtCustomCodec.encodeFrame8(connection.getGraphicsHeavyImageDataOutputStream(), previousImageBufferByte, lastImageBufferByte, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
+        vtCustomCodec.encodeFrame8(heavyImageOutputStream, previousImageBufferByte, lastImageBufferByte, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
       }
       else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_USHORT)
       {
-        vtCustomCodec.encodeFrame15(connection.getGraphicsHeavyImageDataOutputStream(), previousImageBufferUShort, lastImageBufferUShort, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
+        vtCustomCodec.encodeFrame15(heavyImageOutputStream, previousImageBufferUShort, lastImageBufferUShort, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
       }
       else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_INT)
       {
-        vtCustomCodec.encodeFrame24(connection.getGraphicsHeavyImageDataOutputStream(), previousImageBufferInt, lastImageBufferInt, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
+        vtCustomCodec.encodeFrame24(heavyImageOutputStream, previousImageBufferInt, lastImageBufferInt, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
       }
-      connection.getGraphicsHeavyImageDataOutputStream().flush();
+      heavyImageOutputStream.flush();
     }
     else
     {
-      connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD);
-      connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getType());
-      connection.getGraphicsControlDataOutputStream().writeInt(lastColors);
-      connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getWidth());
-      connection.getGraphicsControlDataOutputStream().writeInt(imageDataBuffer.getHeight());
-      connection.getGraphicsControlDataOutputStream().flush();
+      controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD);
+      controlOutputStream.writeInt(imageDataBuffer.getType());
+      controlOutputStream.writeInt(lastColors);
+      controlOutputStream.writeInt(imageDataBuffer.getWidth());
+      controlOutputStream.writeInt(imageDataBuffer.getHeight());
+      controlOutputStream.flush();
       if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE)
       {
-        vtCustomCodec.encodeFrame8(connection.getGraphicsFastImageDataOutputStream(), previousImageBufferByte, lastImageBufferByte, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
+        vtCustomCodec.encodeFrame8(fastImageOutputStream, previousImageBufferByte, lastImageBufferByte, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
       }
       else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_USHORT)
       {
-        vtCustomCodec.encodeFrame15(connection.getGraphicsFastImageDataOutputStream(), previousImageBufferUShort, lastImageBufferUShort, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
+        vtCustomCodec.encodeFrame15(fastImageOutputStream, previousImageBufferUShort, lastImageBufferUShort, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
       }
       else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_INT)
       {
-        vtCustomCodec.encodeFrame24(connection.getGraphicsFastImageDataOutputStream(), previousImageBufferInt, lastImageBufferInt, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
+        vtCustomCodec.encodeFrame24(fastImageOutputStream, previousImageBufferInt, lastImageBufferInt, imageDataBuffer.getWidth(), imageDataBuffer.getHeight(), resultArea.x, resultArea.y, resultArea.width, resultArea.height);
       }
-      connection.getGraphicsFastImageDataOutputStream().flush();
+      fastImageOutputStream.flush();
     }
   }
   
   public void sendRefreshNotNeeded() throws IOException
   {
-    needRefresh = false;
-    connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_NOT_NEEDED);
-    connection.getGraphicsControlDataOutputStream().flush();
+    controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_NOT_NEEDED);
+    controlOutputStream.flush();
   }
   
   public void sendRefreshInterrupted() throws IOException
   {
-    needRefresh = false;
-    connection.getGraphicsControlDataOutputStream().write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_MODE_INTERRUPTED);
-    connection.getGraphicsControlDataOutputStream().flush();
+    controlOutputStream.write(VTSystem.VT_GRAPHICS_LINK_IMAGE_REFRESH_MODE_INTERRUPTED);
+    controlOutputStream.flush();
   }
   
   public void finishClipboardContentsTransfer()
@@ -601,99 +1115,36 @@ public class VTGraphicsLinkServerWriter implements Runnable
 //    return metadata;
 //  }
   
-  private IIOMetadata setJpegSubsamplingMode444(IIOMetadata metadata)
-  {
-    // Tweaking the image metadata to override default subsampling(4:2:0) with
-    // 4:4:4.
-    try
-    {
-      Node rootNode = metadata.getAsTree(metadata.getNativeMetadataFormatName());
-      // The top level root node has two children, out of which the second one
-      // will
-      // contain all the information related to image markers.
-      if (rootNode != null && rootNode.getLastChild() != null)
-      {
-        Node markerNode = rootNode.getLastChild();
-        NodeList markers = markerNode.getChildNodes();
-        // Search for 'SOF' marker where subsampling information is stored.
-        for (int i = 0; i < markers.getLength(); i++)
-        {
-          Node node = markers.item(i);
-          // 'SOF' marker can have
-          // 1 child node if the color representation is greyscale,
-          // 3 child nodes if the color representation is YCbCr, and
-          // 4 child nodes if the color representation is YCMK.
-          // This subsampling applies only to YCbCr.
-          if (node.getNodeName().equalsIgnoreCase("sof") && node.hasChildNodes() && node.getChildNodes().getLength() == 3)
-          {
-            // In 'SOF' marker, first child corresponds to the luminance
-            // channel, and setting
-            // the HsamplingFactor and VsamplingFactor to 1, will imply 4:4:4
-            // chroma subsampling.
-            NamedNodeMap attrMap = node.getFirstChild().getAttributes();
-            int samplingMode = 17;
-            // int samplingMode = 33;
-            attrMap.getNamedItem("HsamplingFactor").setNodeValue((samplingMode & 0xf) + "");
-            attrMap.getNamedItem("VsamplingFactor").setNodeValue(((samplingMode >> 4) & 0xf) + "");
-            // attrMap.getNamedItem("HsamplingFactor").setNodeValue(1 + "");
-            // attrMap.getNamedItem("VsamplingFactor").setNodeValue(1 + "");
-            break;
-          }
-        }
-      }
-      if (rootNode != null)
-      {
-        metadata.setFromTree(metadata.getNativeMetadataFormatName(), rootNode);
-      }
-    }
-    catch (Throwable t)
-    {
-      
-    }
-    return metadata;
-  }
-  
   public void run()
   {
-    vtCustomCodec = new VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII();
+    vtCustomCodec = new VTQuadrupleOctalTreeBlockFrameDeltaCodecMKII(session.getSession().getExecutorService());
+    outputPipeline = new VTOutputPipeline(VTSystem.VT_GRAPHICS_LINK_PIPELINE_SEGMENTS, VTSystem.VT_GRAPHICS_LINK_PIPELINE_SEGMENT_SIZE_BYTES);
+    frameRecorder = new VTGraphicsLinkServerFrameRecorder();
+    controlOutputStream = new VTLittleEndianOutputStream(frameRecorder.createOutputStream(outputPipeline.createOutputStream(connection.getGraphicsControlDataOutputStream())));
+    directImageOutputStream = new VTLittleEndianOutputStream(frameRecorder.createOutputStream(outputPipeline.createOutputStream(connection.getGraphicsDirectImageDataOutputStream())));
+    heavyImageOutputStream = new VTLittleEndianOutputStream(frameRecorder.createOutputStream(outputPipeline.createOutputStream(connection.getGraphicsHeavyImageDataOutputStream())));
+    fastImageOutputStream = new VTLittleEndianOutputStream(frameRecorder.createOutputStream(outputPipeline.createOutputStream(connection.getGraphicsFastImageDataOutputStream())));
+    session.getSession().getExecutorService().execute(outputPipeline);
     
-    try
-    {
-      pngEncoder = new PngEncoder().withCompressionLevel(Deflater.BEST_SPEED + 1);
-      //pngEncoder = new PngEncoder(PngEncoder.COLOR_INDEXED, PngEncoder.BEST_SPEED);
-      //pngEncoder.setIndexedColorMode(PngEncoder.INDEXED_COLORS_ORIGINAL);
-      jpgImageOutputStream = ImageIO.createImageOutputStream(imageOutputBuffer);
-      jpgWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
-      jpgWriterParam = jpgWriter.getDefaultWriteParam();
-      if (jpgWriterParam.canWriteCompressed())
-      {
-        jpgWriterParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-        jpgWriterParam.setCompressionQuality(0.75f);
-      }
-      if (jpgWriterParam.canWriteProgressive())
-      {
-        jpgWriterParam.setProgressiveMode(ImageWriteParam.MODE_DISABLED);
-      }
-      if (jpgWriterParam.canWriteTiles())
-      {
-        jpgWriterParam.setTilingMode(ImageWriteParam.MODE_DISABLED);
-      }
-    }
-    catch (Throwable e1)
-    {
-      //e1.printStackTrace();
-    }
+    tileEncoder = new VTGraphicsLinkServerTileEncoder(session.getSession().getExecutorService());
+    tileEncoder.setJpegQuality(qualityController.getJpegQuality());
+    tileIndex = new VTImageDataTileIndex(session.getSession().getExecutorService());
+    moveDetector = new VTImageDataMoveDetector();
+    regionClassifier = new VTGraphicsLinkServerRegionClassifier();
+    tileCache = new VTImageDataTileCache(VTSystem.VT_GRAPHICS_LINK_TILE_CACHE_SLOTS);
     while (!stopped)
     {
       try
       {
         synchronized (this)
         {
-          while (!stopped && (!needRefresh))
+          while (!stopped && refreshCredits <= 0)
           {
             wait();
           }
+          refreshCredits--;
         }
+        refreshFrame++;
         if (!stopped)
         {
           if (currentDevice != nextDevice)
@@ -742,9 +1193,22 @@ public class VTGraphicsLinkServerWriter implements Runnable
           {
             viewProvider.setScaledDimensions(0, 0, true);
           }
+          boolean interrupted = refreshInterrupted;
+          if (followBroadcast(interrupted))
+          {
+            continue;
+          }
+          boolean recording = frameBroadcast != null && frameBroadcast.hasFollowers();
+          if (recording)
+          {
+            frameRecorder.start();
+          }
           if (clearRequested)
           {
-            viewProvider.clearResources();
+            if (captureSource != null)
+            {
+              captureSource.clearResources();
+            }
             lastWidth = -1;
             lastHeight = -1;
             interruptedLastWidth = -1;
@@ -754,7 +1218,7 @@ public class VTGraphicsLinkServerWriter implements Runnable
             lastDataType = -1;
             clearRequested = false;
           }
-          if (!refreshInterrupted)
+          if (!interrupted)
           {
             if (captureArea.width <= 0 || captureArea.height <= 0)
             {
@@ -765,7 +1229,7 @@ public class VTGraphicsLinkServerWriter implements Runnable
             {
               try
               {
-                imageDataBuffer = viewProvider.createScreenCapture(imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD || imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD ? CUSTOM_CODEC_PADDING_SIZE : 0, drawPointer, captureArea);
+                imageDataBuffer = createScreenCapture(imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD || imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD ? CUSTOM_CODEC_PADDING_SIZE : 0, requestedArea);
               }
               catch (Throwable t)
               {
@@ -777,7 +1241,7 @@ public class VTGraphicsLinkServerWriter implements Runnable
             {
               try
               {
-                imageDataBuffer = viewProvider.createScreenCapture(imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD || imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD ? CUSTOM_CODEC_PADDING_SIZE : 0, drawPointer);
+                imageDataBuffer = createScreenCapture(imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_ZSD || imageCoding == VTSystem.VT_GRAPHICS_LINK_IMAGE_ENCODING_FORMAT_GZD ? CUSTOM_CODEC_PADDING_SIZE : 0, null);
               }
               catch (Throwable t)
               {
@@ -800,15 +1264,23 @@ public class VTGraphicsLinkServerWriter implements Runnable
                   boolean different = false;
                   if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE)
                   {
-                    different = VTImageDataUtils.compareArea(lastImageBufferByte, previousImageBufferByte, 0, lastWidth, lastHeight, captureArea, resultArea);
+                    different = tileIndex.compareArea(lastImageBufferByte, 0, lastWidth, lastHeight, captureArea, dirtyArea) && VTImageDataUtils.compareArea(lastImageBufferByte, previousImageBufferByte, 0, lastWidth, lastHeight, dirtyArea, resultArea);
                   }
                   else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_USHORT)
                   {
-                    different = VTImageDataUtils.compareArea(lastImageBufferUShort, previousImageBufferUShort, 0, lastWidth, lastHeight, captureArea, resultArea);
+                    different = tileIndex.compareArea(lastImageBufferUShort, 0, lastWidth, lastHeight, captureArea, dirtyArea) && VTImageDataUtils.compareArea(lastImageBufferUShort, previousImageBufferUShort, 0, lastWidth, lastHeight, dirtyArea, resultArea);
                   }
                   else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_INT)
                   {
-                    different = VTImageDataUtils.compareArea(lastImageBufferInt, previousImageBufferInt, 0, lastWidth, lastHeight, captureArea, resultArea);
+                    different = tileIndex.compareArea(lastImageBufferInt, 0, lastWidth, lastHeight, captureArea, dirtyArea) && VTImageDataUtils.compareArea(lastImageBufferInt, previousImageBufferInt, 0, lastWidth, lastHeight, dirtyArea, resultArea);
+                  }
+                  if (different)
+                  {
+                    different = sendAreaMove();
+                  }
+                  if (different)
+                  {
+                    different = sendCachedTiles();
                   }
                   if (different)
                   {
@@ -825,6 +1297,11 @@ public class VTGraphicsLinkServerWriter implements Runnable
                     {
                       VTImageDataUtils.copyArea(lastImageBufferInt, previousImageBufferInt, 0, lastWidth, lastHeight, resultArea);
                     }
+                    sendStoredTiles();
+                  }
+                  else if ((progressiveRefresh || lossyTileCount > 0) && sendImageRefinement())
+                  {
+                    sendStoredTiles();
                   }
                   else
                   {
@@ -841,6 +1318,8 @@ public class VTGraphicsLinkServerWriter implements Runnable
                   lastColors = viewProvider.getColorCount();
                   lastDataType = imageDataBuffer.getRaster().getDataBuffer().getDataType();
                   lastImageCoding = imageCoding;
+                  tileIndex.reset();
+                  tileCache.clear();
                   if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE)
                   {
                     lastImageBufferByte = ((DataBufferByte) imageDataBuffer.getRaster().getDataBuffer()).getData();
@@ -853,6 +1332,7 @@ public class VTGraphicsLinkServerWriter implements Runnable
                     lastImageBufferInt = null;
                     previousImageBufferInt = null;
                     VTImageIO.clearBuffer(previousImageBufferByte, BufferedImage.TYPE_BYTE_INDEXED, lastColors, 0);
+                    tileIndex.compareArea(lastImageBufferByte, 0, lastWidth, lastHeight, captureArea, resultArea);
                     VTImageDataUtils.compareArea(lastImageBufferByte, previousImageBufferByte, 0, lastWidth, lastHeight, captureArea, resultArea);
                   }
                   else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_USHORT)
@@ -867,6 +1347,7 @@ public class VTGraphicsLinkServerWriter implements Runnable
                     lastImageBufferInt = null;
                     previousImageBufferInt = null;
                     VTImageIO.clearBuffer(previousImageBufferUShort, BufferedImage.TYPE_USHORT_555_RGB, lastColors, 0);
+                    tileIndex.compareArea(lastImageBufferUShort, 0, lastWidth, lastHeight, captureArea, resultArea);
                     VTImageDataUtils.compareArea(lastImageBufferUShort, previousImageBufferUShort, 0, lastWidth, lastHeight, captureArea, resultArea);
                   }
                   else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_INT)
@@ -881,6 +1362,7 @@ public class VTGraphicsLinkServerWriter implements Runnable
                       previousImageBufferInt = new int[lastWidth * lastHeight];
                     }
                     VTImageIO.clearBuffer(previousImageBufferInt, BufferedImage.TYPE_INT_RGB, lastColors, 0);
+                    tileIndex.compareArea(lastImageBufferInt, 0, lastWidth, lastHeight, captureArea, resultArea);
                     VTImageDataUtils.compareArea(lastImageBufferInt, previousImageBufferInt, 0, lastWidth, lastHeight, captureArea, resultArea);
                   }
                   sendImageRefresh();
@@ -915,19 +1397,28 @@ public class VTGraphicsLinkServerWriter implements Runnable
                   boolean different = false;
                   if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE)
                   {
-                    different = VTImageDataUtils.compareArea(previousImageBufferByte, lastImageBufferByte, 0, lastWidth, lastHeight, captureArea, resultArea);
+                    different = tileIndex.compareArea(lastImageBufferByte, 0, lastWidth, lastHeight, captureArea, dirtyArea) && VTImageDataUtils.compareArea(previousImageBufferByte, lastImageBufferByte, 0, lastWidth, lastHeight, dirtyArea, resultArea);
                   }
                   else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_USHORT)
                   {
-                    different = VTImageDataUtils.compareArea(previousImageBufferUShort, lastImageBufferUShort, 0, lastWidth, lastHeight, captureArea, resultArea);
+                    different = tileIndex.compareArea(lastImageBufferUShort, 0, lastWidth, lastHeight, captureArea, dirtyArea) && VTImageDataUtils.compareArea(previousImageBufferUShort, lastImageBufferUShort, 0, lastWidth, lastHeight, dirtyArea, resultArea);
                   }
                   else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_INT)
                   {
-                    different = VTImageDataUtils.compareArea(previousImageBufferInt, lastImageBufferInt, 0, lastWidth, lastHeight, captureArea, resultArea);
+                    different = tileIndex.compareArea(lastImageBufferInt, 0, lastWidth, lastHeight, captureArea, dirtyArea) && VTImageDataUtils.compareArea(previousImageBufferInt, lastImageBufferInt, 0, lastWidth, lastHeight, dirtyArea, resultArea);
+                  }
+                  if (different)
+                  {
+                    different = sendAreaMove();
+                  }
+                  if (different)
+                  {
+                    different = sendCachedTiles();
                   }
                   if (different)
                   {
                     sendCustomDifference();
+                    sendStoredTiles();
                   }
                   else
                   {
@@ -944,6 +1435,8 @@ public class VTGraphicsLinkServerWriter implements Runnable
                   lastColors = viewProvider.getColorCount();
                   lastDataType = imageDataBuffer.getRaster().getDataBuffer().getDataType();
                   lastImageCoding = imageCoding;
+                  tileIndex.reset();
+                  tileCache.clear();
                   captureArea.width = Math.min(lastWidth, captureArea.width + CUSTOM_CODEC_PADDING_SIZE);
                   captureArea.height = Math.min(lastHeight, captureArea.width + CUSTOM_CODEC_PADDING_SIZE);
                   if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE)
@@ -958,6 +1451,7 @@ public class VTGraphicsLinkServerWriter implements Runnable
                     lastImageBufferInt = null;
                     previousImageBufferInt = null;
                     VTImageIO.clearBuffer(previousImageBufferByte, BufferedImage.TYPE_BYTE_INDEXED, lastColors, 0);
+                    tileIndex.compareArea(lastImageBufferByte, 0, lastWidth, lastHeight, captureArea, resultArea);
                     VTImageDataUtils.compareArea(lastImageBufferByte, previousImageBufferByte, 0, lastWidth, lastHeight, captureArea, resultArea);
                   }
                   else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_USHORT)
@@ -972,6 +1466,7 @@ public class VTGraphicsLinkServerWriter implements Runnable
                     lastImageBufferInt = null;
                     previousImageBufferInt = null;
                     VTImageIO.clearBuffer(previousImageBufferUShort, BufferedImage.TYPE_USHORT_555_RGB, lastColors, 0);
+                    tileIndex.compareArea(lastImageBufferUShort, 0, lastWidth, lastHeight, captureArea, resultArea);
                     VTImageDataUtils.compareArea(lastImageBufferUShort, previousImageBufferUShort, 0, lastWidth, lastHeight, captureArea, resultArea);
                   }
                   else if (imageDataBuffer.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_INT)
@@ -986,6 +1481,7 @@ public class VTGraphicsLinkServerWriter implements Runnable
                       previousImageBufferInt = new int[lastWidth * lastHeight];
                     }
                     VTImageIO.clearBuffer(previousImageBufferInt, BufferedImage.TYPE_INT_RGB, lastColors, 0);
+                    tileIndex.compareArea(lastImageBufferInt, 0, lastWidth, lastHeight, captureArea, resultArea);
                     VTImageDataUtils.compareArea(lastImageBufferInt, previousImageBufferInt, 0, lastWidth, lastHeight, captureArea, resultArea);
                   }
                   sendCustomRefresh();
@@ -1010,6 +1506,15 @@ public class VTGraphicsLinkServerWriter implements Runnable
             }
             sendRefreshInterrupted();
           }
+          releaseScreenCapture();
+          if (recording)
+          {
+            frameBroadcast.publish(frameRecorder.finish());
+          }
+          if (qualityController.frameSent(outputPipeline.getTransferredBytes()))
+          {
+            applyQuality();
+          }
           // Manually control the CPU throttle!
           if (screenCaptureInterval > 0)
           {
@@ -1031,6 +1536,15 @@ public class VTGraphicsLinkServerWriter implements Runnable
         break;
       }
     }
+    releaseScreenCapture();
+    frameRecorder.cancel();
+    captureHub.unsubscribeBroadcast(frameBroadcast, this);
+    frameBroadcast = null;
+    following = false;
+    captureHub.unsubscribe(captureSource);
+    captureSource = null;
+    captureSequence = 0;
+    outputPipeline.close();
     synchronized (session)
     {
       session.notify();
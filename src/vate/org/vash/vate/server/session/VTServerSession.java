@@ -102,7 +102,7 @@ public class VTServerSession
     this.shellOutputWriter = new VTServerShellOutputWriter(this);
     this.shellExitListener = new VTServerShellExitListener(this);
     this.controlProvider = new VTAWTControlProvider();
-    this.viewProvider = new VTAWTScreenCaptureProvider();
+    this.viewProvider = new VTAWTScreenCaptureProvider(executorService);
     this.screenshotProvider = new VTAWTScreenCaptureProvider();
     this.fileTransferServer = new VTFileTransferServer(this);
     this.screenshotTask = new VTServerScreenshotTask(this);
@@ -0,0 +1,216 @@
+package org.vash.vate.socket.lane;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.vash.vate.VTSystem;
+import org.vash.vate.security.VTArrayComparator;
+import org.vash.vate.security.VTBlake3MessageDigest;
+import org.vash.vate.stream.endian.VTLittleEndianInputStream;
+import org.vash.vate.stream.endian.VTLittleEndianOutputStream;
+
+public class VTConnectionLanes
+{
+  private static final String VT_LANE_CHECK_STRING = "/VARIABLE-TERMINAL/LANE/" + VTSystem.VT_MAJOR_VERSION + "/" + VTSystem.VT_MINOR_VERSION + "/";
+  
+  private final byte[][] laneTokens = new byte[VTSystem.VT_CONNECTION_BULK_LANES][];
+  private Socket[] laneSockets = new Socket[0];
+  
+  // client nonce comes first so both sides derive the same lane tokens
+  public VTConnectionLanes(byte[] clientNonce, byte[] serverNonce, byte[] encryptionKey, byte[] firstAuthenticatedCredential, byte[] secondAuthenticatedCredential)
+  {
+    VTBlake3MessageDigest blake3Digest = new VTBlake3MessageDigest();
+    for (int i = 0; i < laneTokens.length; i++)
+    {
+      blake3Digest.reset();
+      blake3Digest.update(clientNonce);
+      blake3Digest.update(serverNonce);
+      blake3Digest.update(encryptionKey);
+      blake3Digest.update(firstAuthenticatedCredential);
+      blake3Digest.update(secondAuthenticatedCredential);
+      laneTokens[i] = blake3Digest.digest(VTSystem.VT_SECURITY_DIGEST_SIZE_BYTES, (VT_LANE_CHECK_STRING + i).getBytes());
+    }
+  }
+  
+  public byte[] getLaneToken(int lane)
+  {
+    return laneTokens[lane];
+  }
+  
+  public Socket[] getLaneSockets()
+  {
+    return laneSockets;
+  }
+  
+  public boolean exchangeConnectionLanes(Socket connectionSocket, int lanesMode, InputStream connectionInputStream, OutputStream connectionOutputStream) throws IOException
+  {
+    VTLittleEndianOutputStream lanesWriter = new VTLittleEndianOutputStream(connectionOutputStream);
+    VTLittleEndianInputStream lanesReader = new VTLittleEndianInputStream(connectionInputStream);
+    lanesWriter.writeInt(lanesMode);
+    lanesWriter.flush();
+    int remoteLanesMode = lanesReader.readInt();
+    if (lanesMode == VTSystem.VT_CONNECTION_LANES_ACCEPT && remoteLanesMode == VTSystem.VT_CONNECTION_LANES_CONNECT)
+    {
+      return acceptConnectionLanes(connectionSocket, lanesReader, lanesWriter);
+    }
+    if (lanesMode == VTSystem.VT_CONNECTION_LANES_CONNECT && remoteLanesMode == VTSystem.VT_CONNECTION_LANES_ACCEPT)
+    {
+      return connectConnectionLanes(connectionSocket, lanesReader, lanesWriter);
+    }
+    return false;
+  }
+  
+  private boolean acceptConnectionLanes(Socket connectionSocket, VTLittleEndianInputStream lanesReader, VTLittleEndianOutputStream lanesWriter) throws IOException
+  {
+    Socket[] sockets = new Socket[laneTokens.length];
+    ServerSocket laneServerSocket = null;
+    boolean accepted = false;
+    try
+    {
+      try
+      {
+        laneServerSocket = new ServerSocket();
+        laneServerSocket.bind(new InetSocketAddress(connectionSocket.getLocalAddress(), 0), sockets.length);
+        laneServerSocket.setSoTimeout(VTSystem.VT_CONNECTION_LANE_TIMEOUT_MILLISECONDS);
+      }
+      catch (Throwable t)
+      {
+        if (laneServerSocket != null)
+        {
+          laneServerSocket.close();
+        }
+        laneServerSocket = null;
+      }
+      lanesWriter.writeInt(laneServerSocket != null ? laneServerSocket.getLocalPort() : 0);
+      lanesWriter.flush();
+      if (laneServerSocket != null && lanesReader.readInt() == sockets.length)
+      {
+        accepted = true;
+        byte[] laneToken = new byte[VTSystem.VT_SECURITY_DIGEST_SIZE_BYTES];
+        try
+        {
+          for (int i = 0; i < sockets.length && accepted; i++)
+          {
+            Socket socket = laneServerSocket.accept();
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(VTSystem.VT_CONNECTION_LANE_TIMEOUT_MILLISECONDS);
+            new VTLittleEndianInputStream(socket.getInputStream()).readFully(laneToken);
+            socket.setSoTimeout(0);
+            int lane = 0;
+            while (lane < sockets.length && (sockets[lane] != null || !VTArrayComparator.arrayEquals(laneToken, laneTokens[lane])))
+            {
+              lane++;
+            }
+            if (lane < sockets.length)
+            {
+              sockets[lane] = socket;
+            }
+            else
+            {
+              socket.close();
+              accepted = false;
+            }
+          }
+        }
+        catch (Throwable t)
+        {
+          accepted = false;
+        }
+        lanesWriter.writeInt(accepted ? 1 : 0);
+        lanesWriter.flush();
+      }
+    }
+    finally
+    {
+      if (laneServerSocket != null)
+      {
+        try
+        {
+          laneServerSocket.close();
+        }
+        catch (Throwable t)
+        {
+          
+        }
+      }
+      if (!accepted)
+      {
+        closeLaneSockets(sockets);
+      }
+    }
+    if (accepted)
+    {
+      laneSockets = sockets;
+    }
+    return accepted;
+  }
+  
+  private boolean connectConnectionLanes(Socket connectionSocket, VTLittleEndianInputStream lanesReader, VTLittleEndianOutputStream lanesWriter) throws IOException
+  {
+    Socket[] sockets = new Socket[laneTokens.length];
+    boolean accepted = false;
+    try
+    {
+      int lanePort = lanesReader.readInt();
+      if (lanePort <= 0)
+      {
+        return false;
+      }
+      int connected = 0;
+      try
+      {
+        while (connected < sockets.length)
+        {
+          Socket socket = new Socket();
+          sockets[connected] = socket;
+          socket.connect(new InetSocketAddress(connectionSocket.getInetAddress(), lanePort), VTSystem.VT_CONNECTION_LANE_TIMEOUT_MILLISECONDS);
+          socket.setTcpNoDelay(true);
+          socket.getOutputStream().write(laneTokens[connected]);
+          socket.getOutputStream().flush();
+          connected++;
+        }
+      }
+      catch (Throwable t)
+      {
+        
+      }
+      lanesWriter.writeInt(connected);
+      lanesWriter.flush();
+      accepted = connected == sockets.length && lanesReader.readInt() == 1;
+    }
+    finally
+    {
+      if (!accepted)
+      {
+        closeLaneSockets(sockets);
+      }
+    }
+    if (accepted)
+    {
+      laneSockets = sockets;
+    }
+    return accepted;
+  }
+  
+  private static void closeLaneSockets(Socket[] sockets)
+  {
+    for (Socket socket : sockets)
+    {
+      if (socket != null)
+      {
+        try
+        {
+          socket.close();
+        }
+        catch (Throwable t)
+        {
+          
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package org.vash.vate.stream.array;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class VTByteArrayPool
+{
+  private static final int MINIMUM_CLASS_BITS = 6;
+  private static final int MAXIMUM_CLASS_BITS = 20;
+  
+  // every size class has its own lock so channels of different packet sizes never contend
+  private final Object[] classLocks;
+  private final byte[][][] freeArrays;
+  private final int[] freeCounts;
+  private final long retainedLimit;
+  private final AtomicLong retainedBytes = new AtomicLong();
+  
+  public VTByteArrayPool(final long retainedLimit)
+  {
+    this.classLocks = new Object[MAXIMUM_CLASS_BITS - MINIMUM_CLASS_BITS + 1];
+    this.freeArrays = new byte[MAXIMUM_CLASS_BITS - MINIMUM_CLASS_BITS + 1][][];
+    this.freeCounts = new int[MAXIMUM_CLASS_BITS - MINIMUM_CLASS_BITS + 1];
+    this.retainedLimit = retainedLimit;
+    for (int i = 0; i < freeArrays.length; i++)
+    {
+      classLocks[i] = new Object();
+      freeArrays[i] = new byte[4][];
+    }
+  }
+  
+  public final byte[] acquire(final int length)
+  {
+    return acquire(length, null);
+  }
+  
+  // a channel past its outstanding limit gets plain arrays so it cannot drain the retained arrays of the others
+  public final byte[] acquire(final int length, final VTByteArrayPoolAccount account)
+  {
+    if (length > (1 << MAXIMUM_CLASS_BITS))
+    {
+      if (account != null)
+      {
+        synchronized (account)
+        {
+          account.outstandingBytes += length;
+        }
+      }
+      return new byte[length];
+    }
+    final int sizeClass = sizeClass(length);
+    if (account != null)
+    {
+      synchronized (account)
+      {
+        if (account.outstandingBytes + (1 << (sizeClass + MINIMUM_CLASS_BITS)) > account.outstandingLimit)
+        {
+          account.outstandingBytes += length;
+          return new byte[length];
+        }
+        account.outstandingBytes += 1 << (sizeClass + MINIMUM_CLASS_BITS);
+      }
+    }
+    synchronized (classLocks[sizeClass])
+    {
+      if (freeCounts[sizeClass] > 0)
+      {
+        final byte[] array = freeArrays[sizeClass][--freeCounts[sizeClass]];
+        freeArrays[sizeClass][freeCounts[sizeClass]] = null;
+        retainedBytes.addAndGet(-array.length);
+        return array;
+      }
+    }
+    return new byte[1 << (sizeClass + MINIMUM_CLASS_BITS)];
+  }
+  
+  public final void release(final byte[] array)
+  {
+    release(array, null);
+  }
+  
+  public final void release(final byte[] array, final VTByteArrayPoolAccount account)
+  {
+    if (array == null)
+    {
+      return;
+    }
+    if (account != null)
+    {
+      synchronized (account)
+      {
+        account.outstandingBytes = Math.max(0, account.outstandingBytes - array.length);
+      }
+    }
+    if (array.length < (1 << MINIMUM_CLASS_BITS) || array.length > (1 << MAXIMUM_CLASS_BITS) || (array.length & (array.length - 1)) != 0)
+    {
+      return;
+    }
+    if (retainedBytes.addAndGet(array.length) > retainedLimit)
+    {
+      retainedBytes.addAndGet(-array.length);
+      return;
+    }
+    final int sizeClass = sizeClass(array.length);
+    synchronized (classLocks[sizeClass])
+    {
+      if (freeCounts[sizeClass] == freeArrays[sizeClass].length)
+      {
+        final byte[][] arrays = new byte[freeArrays[sizeClass].length * 2][];
+        System.arraycopy(freeArrays[sizeClass], 0, arrays, 0, freeCounts[sizeClass]);
+        freeArrays[sizeClass] = arrays;
+      }
+      freeArrays[sizeClass][freeCounts[sizeClass]++] = array;
+    }
+  }
+  
+  public final long retained()
+  {
+    return retainedBytes.get();
+  }
+  
+  private static final int sizeClass(final int length)
+  {
+    if (length <= (1 << MINIMUM_CLASS_BITS))
+    {
+      return 0;
+    }
+    return 32 - Integer.numberOfLeadingZeros(length - 1) - MINIMUM_CLASS_BITS;
+  }
+}
\ No newline at end of file
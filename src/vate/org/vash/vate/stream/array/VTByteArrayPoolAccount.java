@@ -0,0 +1,17 @@
+package org.vash.vate.stream.array;
+
+public final class VTByteArrayPoolAccount
+{
+  final long outstandingLimit;
+  long outstandingBytes;
+  
+  public VTByteArrayPoolAccount(final long outstandingLimit)
+  {
+    this.outstandingLimit = outstandingLimit;
+  }
+  
+  public final synchronized long outstanding()
+  {
+    return outstandingBytes;
+  }
+}
@@ -0,0 +1,187 @@
+package org.vash.vate.stream.compress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.vash.vate.stream.array.VTByteArrayOutputStream;
+
+public final class VTAdaptivePacketCompressor
+{
+  public static final int PACKET_RAW = 0;
+  public static final int PACKET_LZ4 = 1;
+  public static final int PACKET_ZSTD = 2;
+  
+  private static final int PROBE_SAMPLES = 512;
+  private static final int PROBE_MINIMUM_LENGTH = 1024;
+  private static final int BACKOFF_MINIMUM_PACKETS = 4;
+  private static final int BACKOFF_MAXIMUM_PACKETS = 64;
+  private static final int EXPLORE_PACKETS = 32;
+  private static final int ESTIMATE_SCALE = 4096;
+  // assumed nanoseconds to send one byte, channels that asked for stronger compression expect slower links
+  private static final int LINK_COST_UNCOMPRESSED = 4;
+  private static final int LINK_COST_LIGHT = 32;
+  private static final int LINK_COST_HEAVY = 256;
+  
+  private final VTByteArrayOutputStream packetOutputStream;
+  private final int linkCost;
+  private final int lastCodec;
+  private final int defaultCodec;
+  private final int[] histogram = new int[256];
+  // moving averages per codec of compressed bytes and nanoseconds spent for each ESTIMATE_SCALE input bytes
+  private final long[] sizeEstimates = new long[PACKET_ZSTD + 1];
+  private final long[] timeEstimates = new long[PACKET_ZSTD + 1];
+  private final boolean[] estimated = new boolean[PACKET_ZSTD + 1];
+  private OutputStream lz4OutputStream;
+  private OutputStream zstdOutputStream;
+  private int skippedPackets;
+  private int backoffPackets = BACKOFF_MINIMUM_PACKETS;
+  private int selectedPackets;
+  private int exploredCodec = PACKET_RAW;
+  
+  // uncompressed channels only choose between raw and lz4 so they never hold a zstd context
+  public VTAdaptivePacketCompressor(final VTByteArrayOutputStream packetOutputStream, final boolean compressed, final boolean heavy)
+  {
+    this.packetOutputStream = packetOutputStream;
+    this.linkCost = !compressed ? LINK_COST_UNCOMPRESSED : heavy ? LINK_COST_HEAVY : LINK_COST_LIGHT;
+    this.lastCodec = compressed ? PACKET_ZSTD : PACKET_LZ4;
+    this.defaultCodec = !compressed ? PACKET_RAW : heavy ? PACKET_ZSTD : PACKET_LZ4;
+  }
+  
+  public final void write(final byte[] data, final int offset, final int length) throws IOException
+  {
+    final int codec = selectCodec(data, offset, length);
+    packetOutputStream.write(codec);
+    if (codec == PACKET_RAW)
+    {
+      packetOutputStream.write(data, offset, length);
+      return;
+    }
+    final int start = packetOutputStream.count();
+    final OutputStream compressedOutputStream = codec == PACKET_ZSTD ? getZstdOutputStream() : getLz4OutputStream();
+    final long time = System.nanoTime();
+    compressedOutputStream.write(data, offset, length);
+    compressedOutputStream.flush();
+    final int compressed = packetOutputStream.count() - start;
+    if (length >= PROBE_MINIMUM_LENGTH)
+    {
+      estimate(codec, length, compressed, System.nanoTime() - time);
+    }
+    if (compressed >= length - (length >> 5))
+    {
+      skippedPackets = backoffPackets;
+      backoffPackets = Math.min(backoffPackets << 1, BACKOFF_MAXIMUM_PACKETS);
+    }
+    else
+    {
+      backoffPackets = BACKOFF_MINIMUM_PACKETS;
+    }
+  }
+  
+  private final int selectCodec(final byte[] data, final int offset, final int length)
+  {
+    if (skippedPackets > 0)
+    {
+      skippedPackets--;
+      return PACKET_RAW;
+    }
+    // small packets are not measured, they follow the estimates taken from larger ones
+    if (length < PROBE_MINIMUM_LENGTH)
+    {
+      return selectCheapestCodec();
+    }
+    if (!isCompressible(data, offset, length))
+    {
+      skippedPackets = BACKOFF_MINIMUM_PACKETS;
+      return PACKET_RAW;
+    }
+    // every codec is measured once and then one is measured again every EXPLORE_PACKETS packets
+    for (int codec = PACKET_LZ4; codec <= lastCodec; codec++)
+    {
+      if (!estimated[codec])
+      {
+        return codec;
+      }
+    }
+    if (++selectedPackets >= EXPLORE_PACKETS)
+    {
+      selectedPackets = 0;
+      exploredCodec = exploredCodec >= lastCodec ? PACKET_LZ4 : exploredCodec + 1;
+      return exploredCodec;
+    }
+    return selectCheapestCodec();
+  }
+  
+  // weighs the bytes each codec would send against the time it takes to compress them
+  private final int selectCheapestCodec()
+  {
+    int selected = PACKET_RAW;
+    long lowest = (long) ESTIMATE_SCALE * linkCost;
+    boolean found = false;
+    for (int codec = PACKET_LZ4; codec <= lastCodec; codec++)
+    {
+      if (estimated[codec])
+      {
+        found = true;
+        final long cost = sizeEstimates[codec] * linkCost + timeEstimates[codec];
+        if (cost < lowest)
+        {
+          lowest = cost;
+          selected = codec;
+        }
+      }
+    }
+    return found ? selected : defaultCodec;
+  }
+  
+  private final void estimate(final int codec, final int length, final int compressed, final long time)
+  {
+    final long size = ((long) compressed * ESTIMATE_SCALE) / length;
+    final long elapsed = (Math.max(0, time) * ESTIMATE_SCALE) / length;
+    // the first packet also pays for setting up the codec so its time is not trusted
+    if (!estimated[codec])
+    {
+      estimated[codec] = true;
+      sizeEstimates[codec] = size;
+      timeEstimates[codec] = 0;
+      return;
+    }
+    sizeEstimates[codec] += (size - sizeEstimates[codec]) >> 3;
+    // pauses only make a packet slower so faster samples are followed more closely
+    timeEstimates[codec] += (elapsed - timeEstimates[codec]) >> (elapsed < timeEstimates[codec] ? 1 : 3);
+  }
+  
+  // counts byte collisions in a strided sample, uniform data gives about samples^2 / 512 of them
+  private final boolean isCompressible(final byte[] data, final int offset, final int length)
+  {
+    final int samples = Math.min(PROBE_SAMPLES, length);
+    final int stride = length / samples;
+    int collisions = 0;
+    for (int i = 0, position = offset; i < samples; i++, position += stride)
+    {
+      collisions += histogram[data[position] & 0xFF]++;
+    }
+    for (int i = 0; i < 256; i++)
+    {
+      histogram[i] = 0;
+    }
+    return collisions > (samples * (samples - 1)) >> 8;
+  }
+  
+  private final OutputStream getLz4OutputStream()
+  {
+    if (lz4OutputStream == null)
+    {
+      lz4OutputStream = VTCompressorSelector.createDirectLz4OutputStream(packetOutputStream);
+    }
+    return lz4OutputStream;
+  }
+  
+  private final OutputStream getZstdOutputStream()
+  {
+    if (zstdOutputStream == null)
+    {
+      zstdOutputStream = VTCompressorSelector.createDirectZstdOutputStream(packetOutputStream);
+    }
+    return zstdOutputStream;
+  }
+}
\ No newline at end of file
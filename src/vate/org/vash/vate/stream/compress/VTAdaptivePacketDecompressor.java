@@ -0,0 +1,82 @@
+package org.vash.vate.stream.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.vash.vate.stream.array.VTByteArrayInputStream;
+
+public final class VTAdaptivePacketDecompressor
+{
+  private final byte[] buffer;
+  private VTByteArrayInputStream lz4InputPipe;
+  private VTByteArrayInputStream zstdInputPipe;
+  private InputStream lz4InputStream;
+  private InputStream zstdInputStream;
+  
+  public VTAdaptivePacketDecompressor(final int bufferSize)
+  {
+    this.buffer = new byte[bufferSize];
+  }
+  
+  public final byte[] buf()
+  {
+    return buffer;
+  }
+  
+  public final int read(final byte[] data, final int offset, final int length) throws IOException
+  {
+    if (length <= 0)
+    {
+      throw new IOException("Invalid adaptive packet");
+    }
+    final int codec = data[offset];
+    if (codec == VTAdaptivePacketCompressor.PACKET_RAW)
+    {
+      System.arraycopy(data, offset + 1, buffer, 0, length - 1);
+      return length - 1;
+    }
+    final VTByteArrayInputStream packetInputPipe;
+    final InputStream compressedInputStream;
+    if (codec == VTAdaptivePacketCompressor.PACKET_LZ4)
+    {
+      if (lz4InputStream == null)
+      {
+        lz4InputPipe = new VTByteArrayInputStream(new byte[0]);
+        lz4InputStream = VTCompressorSelector.createDirectLz4InputStream(lz4InputPipe);
+      }
+      packetInputPipe = lz4InputPipe;
+      compressedInputStream = lz4InputStream;
+    }
+    else if (codec == VTAdaptivePacketCompressor.PACKET_ZSTD)
+    {
+      if (zstdInputStream == null)
+      {
+        zstdInputPipe = new VTByteArrayInputStream(new byte[0]);
+        zstdInputStream = VTCompressorSelector.createDirectZstdInputStream(zstdInputPipe);
+      }
+      packetInputPipe = zstdInputPipe;
+      compressedInputStream = zstdInputStream;
+    }
+    else
+    {
+      throw new IOException("Invalid adaptive packet");
+    }
+    packetInputPipe.buf(data, offset + 1, offset + length);
+    int decompressed = 0;
+    int readed = 0;
+    while (decompressed < buffer.length && (packetInputPipe.available() > 0 || compressedInputStream.available() > 0))
+    {
+      readed = compressedInputStream.read(buffer, decompressed, buffer.length - decompressed);
+      if (readed < 0)
+      {
+        throw new IOException("Invalid adaptive packet");
+      }
+      if (readed == 0 && packetInputPipe.available() == 0)
+      {
+        break;
+      }
+      decompressed += readed;
+    }
+    return decompressed;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+package org.vash.vate.stream.compress;
+
+import java.io.InputStream;
+
+import org.vash.vate.org.infinispan.server.resp.commands.string.XXH3;
+import org.vash.vate.stream.array.VTByteArrayOutputStream;
+
+public final class VTCompressionDictionary
+{
+  public static final byte[] TERMINAL = load("/org/vash/vate/stream/compress/resource/terminal.dict");
+  public static final byte[] TUNNEL = load("/org/vash/vate/stream/compress/resource/tunnel.dict");
+  private static final long CHECKSUM = XXH3.hash64(TUNNEL, TUNNEL.length, XXH3.hash64(TERMINAL, TERMINAL.length));
+  
+  public static final boolean isAvailable()
+  {
+    return TERMINAL.length > 0 && TUNNEL.length > 0 && VTSyncFlushDeflaterOutputStream.isAvailable();
+  }
+  
+  public static final long checksum()
+  {
+    return CHECKSUM;
+  }
+  
+  private static final byte[] load(final String name)
+  {
+    InputStream dictionaryStream = null;
+    try
+    {
+      dictionaryStream = VTCompressionDictionary.class.getResourceAsStream(name);
+      if (dictionaryStream == null)
+      {
+        return new byte[0];
+      }
+      final VTByteArrayOutputStream dictionaryData = new VTByteArrayOutputStream();
+      final byte[] buffer = new byte[4096];
+      int readed = 0;
+      while ((readed = dictionaryStream.read(buffer)) > 0)
+      {
+        dictionaryData.write(buffer, 0, readed);
+      }
+      return dictionaryData.toByteArray();
+    }
+    catch (Throwable t)
+    {
+      return new byte[0];
+    }
+    finally
+    {
+      if (dictionaryStream != null)
+      {
+        try
+        {
+          dictionaryStream.close();
+        }
+        catch (Throwable t)
+        {
+          
+        }
+      }
+    }
+  }
+}
\ No newline at end of file
@@ -37,28 +37,23 @@ public class VTCompressorSelector
 {
   public static OutputStream createDirectZlibOutputStream(OutputStream out, int strategy)
   {
+    // only dictionary primed streams use the java deflater, plain sync flush streams stay on jzlib
     try
     {
-      Deflater javaDeflater = new Deflater(Deflater.BEST_SPEED + 1, true);
-      javaDeflater.setStrategy(strategy);
-      javaDeflater.setLevel(Deflater.BEST_SPEED + 1);
-      VTSyncFlushDeflaterOutputStream javaDeflaterOutputStream = new VTSyncFlushDeflaterOutputStream(out, javaDeflater, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
+      //Deflater javaDeflater = new Deflater(Deflater.BEST_SPEED + 1, true);
+      //javaDeflater.setStrategy(strategy);
+      //javaDeflater.setLevel(Deflater.BEST_SPEED + 1);
+      //VTSyncFlushDeflaterOutputStream javaDeflaterOutputStream = new VTSyncFlushDeflaterOutputStream(out, javaDeflater, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
       //VTNoFlushDeflaterOutputStream javaDeflaterOutputStream = new VTNoFlushDeflaterOutputStream(out, javaDeflater, VT.VT_COMPRESSION_BUFFER_SIZE_BYTES);
-      return javaDeflaterOutputStream;
+      //return javaDeflaterOutputStream;
+      ZOutputStream jzlibDeflater = new ZOutputStream(out, JZlib.Z_BEST_SPEED + 1, true, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
+      jzlibDeflater.setFlushMode(JZlib.Z_SYNC_FLUSH);
+      jzlibDeflater.getZStream().deflateParams(JZlib.Z_BEST_SPEED + 1, strategy);
+      return jzlibDeflater;
     }
     catch (Throwable t)
     {
-      try
-      {
-        ZOutputStream jzlibDeflater = new ZOutputStream(out, JZlib.Z_BEST_SPEED + 1, true, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
-        jzlibDeflater.setFlushMode(JZlib.Z_SYNC_FLUSH);
-        jzlibDeflater.getZStream().deflateParams(JZlib.Z_BEST_SPEED + 1, strategy);
-        return jzlibDeflater;
-      }
-      catch (Throwable e)
-      {
-        
-      }
+      
     }
     finally
     {
@@ -94,7 +89,7 @@ public class VTCompressorSelector
   public static InputStream createDirectZstdInputStream(InputStream in)
   {
     //return new VTHadoopInputStream(new ZstdHadoopInputStream(in));
-    return new ZstdInputStream(in);
+    return new VTZstdInputStream(in);
     //return new VTAirliftInputStream(in, new ZstdDecompressor());
   }
   
@@ -118,6 +113,38 @@ public class VTCompressorSelector
     return createFlushBufferedNoFlushInflaterInputStream(in);
   }
   
+  public static OutputStream createBufferedDictionaryZlibOutputStream(OutputStream out, byte[] dictionary)
+  {
+    try
+    {
+      Deflater javaDeflater = new Deflater(Deflater.BEST_SPEED + 1, true);
+      javaDeflater.setDictionary(dictionary);
+      VTSyncFlushDeflaterOutputStream javaDeflaterOutputStream = new VTSyncFlushDeflaterOutputStream(out, javaDeflater, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
+      return new BufferedOutputStream(javaDeflaterOutputStream, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
+    }
+    catch (Throwable t)
+    {
+      
+    }
+    return null;
+  }
+  
+  public static InputStream createBufferedDictionaryZlibInputStream(InputStream in, byte[] dictionary)
+  {
+    try
+    {
+      Inflater javaInflater = new Inflater(true);
+      javaInflater.setDictionary(dictionary);
+      VTNoFlushInflaterInputStream javaInflaterInputStream = new VTNoFlushInflaterInputStream(in, javaInflater, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
+      return new BufferedInputStream(javaInflaterInputStream, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
+    }
+    catch (Throwable t)
+    {
+      
+    }
+    return null;
+  }
+  
   public static OutputStream createBufferedZstdOutputStream(OutputStream out)
   {
     //return new VTFlushBufferedOutputStream(new VTHadoopOutputStream(new ZstdHadoopOutputStream(out, false)), new VTByteArrayOutputStream(VT.VT_COMPRESSION_BUFFER_SIZE_BYTES));
@@ -129,7 +156,7 @@ public class VTCompressorSelector
   public static InputStream createBufferedZstdInputStream(InputStream in)
   {
     //return new BufferedInputStream(new VTHadoopInputStream(new ZstdHadoopInputStream(in)), VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
-    return new BufferedInputStream(new ZstdInputStream(in), VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
+    return new BufferedInputStream(new VTZstdInputStream(in), VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
     //return new BufferedInputStream(new VTAirliftInputStream(in, new ZstdDecompressor()), VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
   }
   
@@ -137,27 +164,21 @@ public class VTCompressorSelector
   {
     try
     {
-      Deflater javaDeflater = new Deflater(Deflater.BEST_SPEED + 1, true);
-      javaDeflater.setStrategy(strategy);
-      javaDeflater.setLevel(Deflater.BEST_SPEED + 1);
-      VTSyncFlushDeflaterOutputStream javaDeflaterOutputStream = new VTSyncFlushDeflaterOutputStream(out, javaDeflater, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
+      //Deflater javaDeflater = new Deflater(Deflater.BEST_SPEED + 1, true);
+      //javaDeflater.setStrategy(strategy);
+      //javaDeflater.setLevel(Deflater.BEST_SPEED + 1);
+      //VTSyncFlushDeflaterOutputStream javaDeflaterOutputStream = new VTSyncFlushDeflaterOutputStream(out, javaDeflater, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
       //return new VTFlushBufferedOutputStream(javaDeflaterOutputStream, new VTByteArrayOutputStream(VT.VT_COMPRESSION_BUFFER_SIZE_BYTES));
-      return new BufferedOutputStream(javaDeflaterOutputStream, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
+      //return new BufferedOutputStream(javaDeflaterOutputStream, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
+      ZOutputStream jzlibDeflater = new ZOutputStream(out, JZlib.Z_BEST_SPEED + 1, true, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
+      jzlibDeflater.setFlushMode(JZlib.Z_SYNC_FLUSH);
+      jzlibDeflater.getZStream().deflateParams(JZlib.Z_BEST_SPEED + 1, strategy);
+      //return new VTFlushBufferedOutputStream(jzlibDeflater, new VTByteArrayOutputStream(VT.VT_COMPRESSION_BUFFER_SIZE_BYTES));
+      return new BufferedOutputStream(jzlibDeflater, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
     }
     catch (Throwable t)
     {
-      try
-      {
-        ZOutputStream jzlibDeflater = new ZOutputStream(out, JZlib.Z_BEST_SPEED + 1, true, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
-        jzlibDeflater.setFlushMode(JZlib.Z_SYNC_FLUSH);
-        jzlibDeflater.getZStream().deflateParams(JZlib.Z_BEST_SPEED + 1, strategy);
-        //return new VTFlushBufferedOutputStream(jzlibDeflater, new VTByteArrayOutputStream(VT.VT_COMPRESSION_BUFFER_SIZE_BYTES));
-        return new BufferedOutputStream(jzlibDeflater, VTSystem.VT_COMPRESSION_BUFFER_SIZE_BYTES);
-      }
-      catch (Throwable e)
-      {
-        
-      }
+      
     }
     finally
     {
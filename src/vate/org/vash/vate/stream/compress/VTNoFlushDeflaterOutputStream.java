@@ -31,7 +31,14 @@ public class VTNoFlushDeflaterOutputStream extends DeflaterOutputStream
   
   public void close() throws IOException
   {
-    flush();
-    out.close();
+    try
+    {
+      flush();
+      out.close();
+    }
+    finally
+    {
+      def.end();
+    }
   }
 }
\ No newline at end of file
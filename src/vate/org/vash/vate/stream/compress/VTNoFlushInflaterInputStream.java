@@ -11,6 +11,7 @@ import java.util.zip.ZipException;
 public class VTNoFlushInflaterInputStream extends InflaterInputStream
 {
   private int end = 0;
+  private volatile boolean closed;
   
   public VTNoFlushInflaterInputStream(InputStream in, Inflater inflater, int size)
   {
@@ -80,10 +81,31 @@ public class VTNoFlushInflaterInputStream extends InflaterInputStream
       String s = e.getMessage();
       throw new ZipException(s != null ? s : "Invalid ZLIB data format");
     }
+    catch (RuntimeException e)
+    {
+      // the inflater was ended by a concurrent close
+      if (closed)
+      {
+        throw new IOException("Stream closed");
+      }
+      throw e;
+    }
   }
   
   public void close() throws IOException
   {
-    in.close();
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+    try
+    {
+      in.close();
+    }
+    finally
+    {
+      inf.end();
+    }
   }
 }
\ No newline at end of file
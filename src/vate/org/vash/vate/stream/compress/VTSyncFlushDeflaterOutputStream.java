@@ -10,13 +10,14 @@ public final class VTSyncFlushDeflaterOutputStream extends DeflaterOutputStream
 {
   private static final int SYNC_FLUSH = 2;
   private static Method deflateMethod;
+  private volatile boolean closed;
   
   static
   {
     try
     {
-      deflateMethod = DeflaterOutputStream.class.getMethod("deflate", new Class[]
-      { byte[].class, Integer.class, Integer.class, Integer.class });
+      deflateMethod = Deflater.class.getMethod("deflate", new Class[]
+      { byte[].class, int.class, int.class, int.class });
       // deflateMethod.setAccessible(true);
     }
     catch (Throwable t)
@@ -39,6 +40,20 @@ public final class VTSyncFlushDeflaterOutputStream extends DeflaterOutputStream
     }
   }
   
+  public static final boolean isAvailable()
+  {
+    return deflateMethod != null;
+  }
+  
+  public final void write(final byte[] b, final int off, final int len) throws IOException
+  {
+    if (closed)
+    {
+      throw new IOException("Stream closed");
+    }
+    super.write(b, off, len);
+  }
+  
   protected final void deflate() throws IOException
   {
     int len = 0;
@@ -59,6 +74,10 @@ public final class VTSyncFlushDeflaterOutputStream extends DeflaterOutputStream
   
   public final void flush() throws IOException
   {
+    if (closed)
+    {
+      throw new IOException("Stream closed");
+    }
     if (!def.finished())
     {
       int len = 0;
@@ -81,4 +100,22 @@ public final class VTSyncFlushDeflaterOutputStream extends DeflaterOutputStream
     }
     out.flush();
   }
+  
+  // the deflater belongs to this stream, sync flushed streams are never finished so the remaining output is discarded
+  public final void close() throws IOException
+  {
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+    try
+    {
+      out.close();
+    }
+    finally
+    {
+      def.end();
+    }
+  }
 }
\ No newline at end of file
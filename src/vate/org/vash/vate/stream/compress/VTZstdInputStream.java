@@ -0,0 +1,120 @@
+package org.vash.vate.stream.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.vash.vate.io.airlift.compress.zstd.ZstdIncrementalFrameDecompressor;
+
+public class VTZstdInputStream extends InputStream
+{
+  private static final int MIN_BUFFER_SIZE = 16384;
+  // the decoder reads whole words and may touch bytes past the input limit
+  private static final int BUFFER_PADDING = 8;
+  
+  private final InputStream in;
+  private final ZstdIncrementalFrameDecompressor decompressor = new ZstdIncrementalFrameDecompressor();
+  private byte[] input;
+  private int inputOffset;
+  private int inputLimit;
+  private final byte[] single = new byte[1];
+  private boolean closed = false;
+  
+  public VTZstdInputStream(InputStream in)
+  {
+    this.in = in;
+    this.input = new byte[Math.max(decompressor.getInputRequired(), MIN_BUFFER_SIZE) + BUFFER_PADDING];
+  }
+  
+  public synchronized int available() throws IOException
+  {
+    if (closed)
+    {
+      return 0;
+    }
+    return decompressor.getRequestedOutputSize();
+  }
+  
+  public synchronized int read() throws IOException
+  {
+    int read = read(single, 0, 1);
+    if (read <= 0)
+    {
+      return -1;
+    }
+    return single[0] & 0xFF;
+  }
+  
+  public synchronized int read(byte[] data, int off, int len) throws IOException
+  {
+    if (closed)
+    {
+      throw new IOException("Stream is closed");
+    }
+    if (len == 0)
+    {
+      return 0;
+    }
+    int limit = off + len;
+    int produced = 0;
+    while (produced < len)
+    {
+      if (!fillInput(decompressor.getInputRequired()))
+      {
+        if (decompressor.isAtStoppingPoint())
+        {
+          return produced > 0 ? produced : -1;
+        }
+        throw new IOException("Not enough input bytes");
+      }
+      decompressor.partialDecompress(input, inputOffset, inputLimit, data, off + produced, limit);
+      inputOffset += decompressor.getInputConsumed();
+      produced += decompressor.getOutputBufferUsed();
+      if (decompressor.isAtStoppingPoint())
+      {
+        return produced > 0 ? produced : -1;
+      }
+    }
+    return produced;
+  }
+  
+  private boolean fillInput(int required) throws IOException
+  {
+    if (inputLimit - inputOffset >= required)
+    {
+      return true;
+    }
+    if (inputOffset > 0)
+    {
+      int remaining = inputLimit - inputOffset;
+      System.arraycopy(input, inputOffset, input, 0, remaining);
+      inputOffset = 0;
+      inputLimit = remaining;
+    }
+    if (input.length - BUFFER_PADDING < required)
+    {
+      byte[] grown = new byte[Math.max(required, MIN_BUFFER_SIZE) + BUFFER_PADDING];
+      System.arraycopy(input, 0, grown, 0, inputLimit);
+      input = grown;
+    }
+    // never fill the padding so the decoder always has readable bytes past the limit
+    while (inputLimit < required)
+    {
+      int read = in.read(input, inputLimit, input.length - BUFFER_PADDING - inputLimit);
+      if (read < 0)
+      {
+        break;
+      }
+      inputLimit += read;
+    }
+    return inputLimit >= required;
+  }
+  
+  public synchronized void close() throws IOException
+  {
+    if (!closed)
+    {
+      closed = true;
+      in.close();
+    }
+  }
+}
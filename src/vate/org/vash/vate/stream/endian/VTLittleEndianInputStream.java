@@ -111,6 +111,27 @@ public final class VTLittleEndianInputStream extends InputStream implements Data
     return ((intBuffer[0] & 0xFF) | (intBuffer[1] & 0xFF) << 8 | (intBuffer[2] & 0xFF) << 16 | (intBuffer[3] & 0xFF) << 24);
   }
   
+  public final int readVarInt() throws IOException
+  {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7)
+    {
+      final int b = readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+      {
+        return value;
+      }
+    }
+    throw new IOException("Invalid variable length integer");
+  }
+  
+  public final int readSignedVarInt() throws IOException
+  {
+    final int value = readVarInt();
+    return (value >>> 1) ^ -(value & 1);
+  }
+  
   public final long readUnsignedInt() throws IOException
   {
     readFully(intBuffer);
@@ -103,6 +103,24 @@ public final class VTLittleEndianOutputStream extends OutputStream implements Da
     out.write(intBuffer);
   }
   
+  // seven bits per byte, least significant group first
+  public final void writeVarInt(final int i) throws IOException
+  {
+    int value = i;
+    while ((value & ~0x7F) != 0)
+    {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+  
+  // zigzag mapping keeps small negative values short
+  public final void writeSignedVarInt(final int i) throws IOException
+  {
+    writeVarInt((i << 1) ^ (i >> 31));
+  }
+  
   public final void writeUnsignedInt(final long l) throws IOException
   {
     intBuffer[0] = (byte) l;
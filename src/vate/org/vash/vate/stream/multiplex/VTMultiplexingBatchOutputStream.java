@@ -0,0 +1,95 @@
+package org.vash.vate.stream.multiplex;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.vash.vate.VTSystem;
+import org.vash.vate.org.infinispan.server.resp.commands.string.XXH3;
+import org.vash.vate.security.VTSplitMix64Random;
+
+final class VTMultiplexingBatchOutputStream extends OutputStream
+{
+  static final int BATCH_TAG_LENGTH = -5;
+  static final int BATCH_SIZE_BYTES = VTSystem.VT_CONNECTION_OUTPUT_BUFFER_SIZE_BYTES;
+  
+  private final OutputStream out;
+  private final byte[] batch = new byte[BATCH_SIZE_BYTES];
+  private final byte[] tag = new byte[VTSystem.VT_PACKET_HEADER_SIZE_BYTES];
+  private final Random firstSequencer;
+  private final Random secondSequencer;
+  private int count;
+  
+  VTMultiplexingBatchOutputStream(final OutputStream out, final int lane, final long firstSeed, final long secondSeed)
+  {
+    this.out = out;
+    this.firstSequencer = new VTSplitMix64Random(laneSeed(lane, firstSeed));
+    this.secondSequencer = new VTSplitMix64Random(laneSeed(lane, secondSeed));
+  }
+  
+  static final long laneSeed(final int lane, final long seed)
+  {
+    return XXH3.hash64(new byte[] {(byte)(lane >> 24), (byte)(lane >> 16), (byte)(lane >> 8), (byte)(lane), (byte) BATCH_TAG_LENGTH}, 5, seed);
+  }
+  
+  public final synchronized void write(final int data) throws IOException
+  {
+    write(new byte[] {(byte) data}, 0, 1);
+  }
+  
+  public final synchronized void write(final byte[] data, final int offset, final int length) throws IOException
+  {
+    if (count + length > BATCH_SIZE_BYTES - VTSystem.VT_PACKET_HEADER_SIZE_BYTES)
+    {
+      writeBatch();
+      if (length > BATCH_SIZE_BYTES - VTSystem.VT_PACKET_HEADER_SIZE_BYTES)
+      {
+        throw new IOException("Packet exceeds batch size");
+      }
+    }
+    System.arraycopy(data, offset, batch, count, length);
+    count += length;
+  }
+  
+  public final synchronized void flush() throws IOException
+  {
+    writeBatch();
+    out.flush();
+  }
+  
+  public final void close() throws IOException
+  {
+    out.close();
+  }
+  
+  private final void writeBatch() throws IOException
+  {
+    if (count == 0)
+    {
+      return;
+    }
+    final long start = XXH3.hash64(batch, count, firstSequencer.nextLong());
+    final long end = secondSequencer.nextLong();
+    tag[0] = 0;
+    tag[1] = 0;
+    tag[2] = 0;
+    tag[3] = 0;
+    tag[4] = (byte) BATCH_TAG_LENGTH;
+    tag[5] = (byte) (BATCH_TAG_LENGTH >> 8);
+    tag[6] = (byte) (BATCH_TAG_LENGTH >> 16);
+    tag[7] = (byte) (BATCH_TAG_LENGTH >> 24);
+    writeLong(tag, 8, start);
+    writeLong(tag, 16, end);
+    out.write(batch, 0, count);
+    out.write(tag, 0, tag.length);
+    count = 0;
+  }
+  
+  private static final void writeLong(final byte[] buffer, final int offset, final long value)
+  {
+    for (int i = 0; i < 8; i++)
+    {
+      buffer[offset + i] = (byte) (value >> (i << 3));
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package org.vash.vate.stream.multiplex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+final class VTMultiplexingChannelTable<T>
+{
+  private static final int CHANNEL_LIMIT = 16777216;
+  private static final int PAGE_BITS = 12;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+  private static final int PAGE_COUNT = CHANNEL_LIMIT >> PAGE_BITS;
+  
+  private final AtomicReferenceArray<AtomicReferenceArray<T>> pages;
+  private final int firstNumber;
+  private int nextNumber;
+  private int[] releasedNumbers;
+  private int releasedCount;
+  
+  VTMultiplexingChannelTable(final int firstNumber)
+  {
+    this.pages = new AtomicReferenceArray<AtomicReferenceArray<T>>(PAGE_COUNT);
+    this.firstNumber = firstNumber;
+    this.nextNumber = firstNumber;
+    this.releasedNumbers = new int[16];
+  }
+  
+  final T get(final int number)
+  {
+    final AtomicReferenceArray<T> page = pages.get((number >>> PAGE_BITS) & (PAGE_COUNT - 1));
+    if (page == null)
+    {
+      return null;
+    }
+    return page.get(number & PAGE_MASK);
+  }
+  
+  final synchronized void put(final int number, final T channel)
+  {
+    final int index = (number >>> PAGE_BITS) & (PAGE_COUNT - 1);
+    AtomicReferenceArray<T> page = pages.get(index);
+    if (page == null)
+    {
+      page = new AtomicReferenceArray<T>(PAGE_SIZE);
+      pages.set(index, page);
+    }
+    page.set(number & PAGE_MASK, channel);
+  }
+  
+  final synchronized List<T> values()
+  {
+    final List<T> values = new ArrayList<T>();
+    for (int i = 0; i < PAGE_COUNT; i++)
+    {
+      final AtomicReferenceArray<T> page = pages.get(i);
+      if (page != null)
+      {
+        for (int j = 0; j < PAGE_SIZE; j++)
+        {
+          final T channel = page.get(j);
+          if (channel != null)
+          {
+            values.add(channel);
+          }
+        }
+      }
+    }
+    return values;
+  }
+  
+  final synchronized void clear()
+  {
+    for (int i = 0; i < PAGE_COUNT; i++)
+    {
+      pages.set(i, null);
+    }
+    nextNumber = firstNumber;
+    releasedCount = 0;
+  }
+  
+  final synchronized void releaseNumber(final int number)
+  {
+    if ((number & 1) != (firstNumber & 1) || number >= nextNumber)
+    {
+      return;
+    }
+    if (releasedCount == releasedNumbers.length)
+    {
+      final int[] numbers = new int[releasedNumbers.length * 2];
+      System.arraycopy(releasedNumbers, 0, numbers, 0, releasedCount);
+      releasedNumbers = numbers;
+    }
+    releasedNumbers[releasedCount++] = number;
+  }
+  
+  final synchronized int pollReleasedNumber()
+  {
+    if (releasedCount == 0)
+    {
+      return -1;
+    }
+    return releasedNumbers[--releasedCount];
+  }
+  
+  final synchronized int pollNextNumber()
+  {
+    if (nextNumber >= CHANNEL_LIMIT)
+    {
+      return -1;
+    }
+    final int number = nextNumber;
+    nextNumber += 2;
+    return number;
+  }
+}
@@ -5,9 +5,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Collection;
-import java.util.Map;
+import java.util.LinkedList;
 import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -18,6 +17,8 @@ import org.vash.vate.VTSystem;
 import org.vash.vate.org.infinispan.server.resp.commands.string.XXH3;
 import org.vash.vate.security.VTSplitMix64Random;
 import org.vash.vate.stream.array.VTByteArrayInputStream;
+import org.vash.vate.stream.array.VTByteArrayPool;
+import org.vash.vate.stream.compress.VTAdaptivePacketDecompressor;
 import org.vash.vate.stream.compress.VTCompressorSelector;
 import org.vash.vate.stream.compress.VTPacketDecompressor;
 import org.vash.vate.stream.endian.VTLittleEndianInputStream;
@@ -28,33 +29,61 @@ public final class VTMultiplexingInputStream
 {
   private volatile boolean closed = false;
   private final int bufferSize;
-  private final byte[] packetContentBuffer;
-  private Future<?> packetReaderThread;
-  private final VTLittleEndianInputStream input;
-  private final VTMultiplexingInputStreamPacketReader packetReader;
-  private final Map<Integer, VTMultiplexedInputStream> bufferedChannels;
-  private final Map<Integer, VTMultiplexedInputStream> directChannels;
+  private final int packetBufferSize;
+  private final Future<?>[] packetReaderThreads;
+  private final VTLittleEndianInputStream[] inputs;
+  private final VTMultiplexingInputStreamPacketReader[] packetReaders;
+  private final VTMultiplexingChannelTable<VTMultiplexedInputStream> bufferedChannels;
+  private final VTMultiplexingChannelTable<VTMultiplexedInputStream> directChannels;
   private final long firstSeed;
   private final long secondSeed;
   private final ExecutorService executorService;
+  private final VTMultiplexingOutputStream output;
   private final boolean server;
+  private final boolean flowControl;
+  private final boolean adaptiveCompression;
+  private final boolean batchedIntegrity;
+  private final boolean packetIntegrity;
+  private final int packetHeaderSize;
+  private final VTByteArrayPool bufferPool;
   private AtomicLong transferredBytes = new AtomicLong(0);
   
-  public VTMultiplexingInputStream(final InputStream input, final boolean server, final int packetSize, final int bufferSize, final long firstSeed, final long secondSeed, final ExecutorService executorService, final boolean startPacketReader)
+  public VTMultiplexingInputStream(final InputStream input, final VTMultiplexingOutputStream output, final boolean server, final int packetSize, final int bufferSize, final long firstSeed, final long secondSeed, final int features, final ExecutorService executorService, final boolean startPacketReader)
   {
-    this.input = new VTLittleEndianInputStream(input);
+    this(new InputStream[] {input}, output, server, packetSize, bufferSize, firstSeed, secondSeed, features, executorService, startPacketReader);
+  }
+  
+  public VTMultiplexingInputStream(final InputStream[] inputs, final VTMultiplexingOutputStream output, final boolean server, final int packetSize, final int bufferSize, final long firstSeed, final long secondSeed, final int features, final ExecutorService executorService, final boolean startPacketReader)
+  {
+    this.inputs = new VTLittleEndianInputStream[inputs.length];
+    for (int i = 0; i < inputs.length; i++)
+    {
+      this.inputs[i] = new VTLittleEndianInputStream(inputs[i]);
+    }
+    this.output = output;
     this.server = server;
-    this.packetContentBuffer = new byte[packetSize * 2];
+    this.flowControl = output != null && (features & VTSystem.VT_CONNECTION_FEATURE_FLOW_CONTROL) != 0;
+    this.adaptiveCompression = (features & VTSystem.VT_CONNECTION_FEATURE_ADAPTIVE_COMPRESSION) != 0;
+    this.batchedIntegrity = (features & VTSystem.VT_CONNECTION_FEATURE_AUTHENTICATED_FRAMES) == 0 && (features & VTSystem.VT_CONNECTION_FEATURE_BATCHED_INTEGRITY) != 0;
+    this.packetIntegrity = (features & VTSystem.VT_CONNECTION_FEATURE_AUTHENTICATED_FRAMES) == 0 && !batchedIntegrity;
+    this.packetHeaderSize = packetIntegrity ? VTSystem.VT_PACKET_HEADER_SIZE_BYTES : VTSystem.VT_PACKET_BATCHED_HEADER_SIZE_BYTES;
+    this.bufferPool = new VTByteArrayPool(VTSystem.VT_BUFFER_POOL_RETAINED_SIZE_BYTES);
+    this.packetBufferSize = packetSize * 2;
     this.bufferSize = bufferSize;
     this.firstSeed = firstSeed;
     this.secondSeed = secondSeed;
     this.executorService = executorService;
-    this.bufferedChannels = new ConcurrentHashMap<Integer, VTMultiplexedInputStream>();
-    this.directChannels = new ConcurrentHashMap<Integer, VTMultiplexedInputStream>();
-    this.packetReader = new VTMultiplexingInputStreamPacketReader(this);
+    this.bufferedChannels = new VTMultiplexingChannelTable<VTMultiplexedInputStream>(server ? 1 : 0);
+    this.directChannels = new VTMultiplexingChannelTable<VTMultiplexedInputStream>(server ? 1 : 0);
+    this.packetReaders = new VTMultiplexingInputStreamPacketReader[inputs.length];
+    this.packetReaderThreads = new Future<?>[inputs.length];
+    for (int i = 0; i < inputs.length; i++)
+    {
+      packetReaders[i] = new VTMultiplexingInputStreamPacketReader(this, this.inputs[i], i);
+    }
     if (startPacketReader)
     {
-      packetReaderThread = executorService.submit(packetReader);
+      startPacketReader();
     }
   }
   
@@ -113,56 +142,61 @@ public final class VTMultiplexingInputStream
     if (stream != null)
     {
       stream.setLink(null);
+      getChannelTable(stream.type()).releaseNumber(stream.number());
     }
   }
   
-  private synchronized final VTMultiplexedInputStream getInputStream(final int type, final int number)
+  private final VTMultiplexingChannelTable<VTMultiplexedInputStream> getChannelTable(final int type)
   {
-    VTMultiplexedInputStream stream = null;
-    Map<Integer, VTMultiplexedInputStream> channelMap;
     if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_DIRECT) == VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED)
     {
-      channelMap = bufferedChannels;
+      return bufferedChannels;
     }
-    else
+    return directChannels;
+  }
+  
+  private final VTMultiplexedInputStream getInputStream(final int type, final int number)
+  {
+    VTMultiplexedInputStream stream = getChannelTable(type).get(number);
+    if (stream != null)
     {
-      channelMap = directChannels;
+      stream.type(type);
+      return stream;
     }
-    stream = channelMap.get(number);
+    return createInputStream(type, number);
+  }
+  
+  private synchronized final VTMultiplexedInputStream createInputStream(final int type, final int number)
+  {
+    VTMultiplexingChannelTable<VTMultiplexedInputStream> channelTable = getChannelTable(type);
+    VTMultiplexedInputStream stream = channelTable.get(number);
     if (stream != null)
     {
       stream.type(type);
       return stream;
     }
     stream = new VTMultiplexedInputStream(type, number, bufferSize, firstSeed, secondSeed);
-    channelMap.put(number, stream);
+    channelTable.put(number, stream);
     return stream;
   }
   
   private synchronized final VTMultiplexedInputStream searchInputStream(final int type)
   {
     VTMultiplexedInputStream stream = null;
-    Map<Integer, VTMultiplexedInputStream> channelMap;
-    if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_DIRECT) == VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED)
-    {
-      channelMap = bufferedChannels;
-    }
-    else
-    {
-      channelMap = directChannels;
-    }
-    int start;
-    if (server)
-    {
-      start = 1;
-    }
-    else
+    VTMultiplexingChannelTable<VTMultiplexedInputStream> channelTable = getChannelTable(type);
+    int number;
+    while ((number = channelTable.pollReleasedNumber()) >= 0)
     {
-      start = 0;
+      stream = channelTable.get(number);
+      if (stream != null && stream.getLink() == null)
+      {
+        stream.type(type);
+        return stream;
+      }
     }
-    for (int number = start; number < 16777216; number += 2)
+    while ((number = channelTable.pollNextNumber()) >= 0)
     {
-      stream = channelMap.get(number);
+      stream = channelTable.get(number);
       if (stream != null && stream.getLink() == null)
       {
         stream.type(type);
@@ -171,26 +205,32 @@ public final class VTMultiplexingInputStream
       else if (stream == null)
       {
         stream = new VTMultiplexedInputStream(type, number, bufferSize, firstSeed, secondSeed);
-        channelMap.put(number, stream); 
+        channelTable.put(number, stream);
         return stream;
       }
     }
-    return stream;
+    return null;
   }
   
   public final void startPacketReader()
   {
-    if (packetReaderThread == null || packetReaderThread.isDone())
+    for (int i = 0; i < packetReaders.length; i++)
     {
-      packetReaderThread = executorService.submit(packetReader);
+      if (packetReaderThreads[i] == null || packetReaderThreads[i].isDone())
+      {
+        packetReaderThreads[i] = executorService.submit(packetReaders[i]);
+      }
     }
   }
   
   public final boolean isPacketReaderStarted()
   {
-    if (packetReaderThread != null)
+    for (Future<?> packetReaderThread : packetReaderThreads)
     {
-      return !packetReaderThread.isDone();
+      if (packetReaderThread != null && !packetReaderThread.isDone())
+      {
+        return true;
+      }
     }
     return false;
   }
@@ -198,7 +238,18 @@ public final class VTMultiplexingInputStream
   public final void stopPacketReader() throws IOException, InterruptedException, ExecutionException
   {
     close();
-    packetReaderThread.get();
+    for (Future<?> packetReaderThread : packetReaderThreads)
+    {
+      if (packetReaderThread != null)
+      {
+        packetReaderThread.get();
+      }
+    }
+  }
+  
+  public final int getLaneCount()
+  {
+    return inputs.length;
   }
   
   private final void open(final int type, final int number) throws IOException
@@ -218,7 +269,17 @@ public final class VTMultiplexingInputStream
       return;
     }
     closed = true;
-    input.close();
+    for (VTLittleEndianInputStream input : inputs)
+    {
+      try
+      {
+        input.close();
+      }
+      catch (Throwable t)
+      {
+        
+      }
+    }
     for (VTMultiplexedInputStream stream : bufferedChannels.values())
     {
       try
@@ -246,8 +307,19 @@ public final class VTMultiplexingInputStream
   }
   
   // critical method, handle with care
-  private final void readPackets() throws IOException
+  private final void readPackets(final VTLittleEndianInputStream input, final int lane) throws IOException
   {
+    if (batchedIntegrity)
+    {
+      readPacketBatches(input, lane);
+      return;
+    }
+    if (!packetIntegrity)
+    {
+      readAuthenticatedPackets(input);
+      return;
+    }
+    final byte[] packetContentBuffer = new byte[packetBufferSize];
     VTMultiplexedInputStream stream;
     long hash;
     long start;
@@ -262,53 +334,195 @@ public final class VTMultiplexingInputStream
       type = input.readByte();
       number = input.readSubInt();
       length = input.readInt();
-      input.readFully(packetContentBuffer, 0, length);
+      if (length == -4 && flowControl)
+      {
+        input.readFully(packetContentBuffer, 0, 4);
+        hash = XXH3.hash64(packetContentBuffer, 4, -4L);
+      }
+      else
+      {
+        input.readFully(packetContentBuffer, 0, length);
+        hash = XXH3.hash64(packetContentBuffer, length);
+      }
       end = input.readLong();
-      hash = XXH3.hash64(packetContentBuffer, length);
       stream = getInputStream(type, number);
       if (stream == null
       || ((stream.getFirstSequencer().nextLong() ^ stream.getSecondSequencer().nextLong() ^ hash) != start)
-      || ((stream.getThirdSequencer().nextLong() ^ stream.getFourthSequencer().nextLong() ^ hash) != end))
+      || ((stream.getThirdSequencer().nextLong() ^ stream.getFourthSequencer().nextLong() ^ hash) != end)
+      || !processPacket(stream, type, number, length, packetContentBuffer))
+      {
+        close();
+        return;
+      }
+    }
+  }
+  
+  // the connection cipher authenticates every frame, packets are processed as they arrive
+  private final void readAuthenticatedPackets(final VTLittleEndianInputStream input) throws IOException
+  {
+    final byte[] packetContentBuffer = new byte[packetBufferSize];
+    VTMultiplexedInputStream stream;
+    int contentLength;
+    int type;
+    int number;
+    int length;
+    
+    while (!closed)
+    {
+      type = input.readByte();
+      number = input.readSubInt();
+      length = input.readInt();
+      contentLength = length >= 0 ? length : (length == -4 && flowControl ? 4 : 0);
+      if (length < -4 || contentLength > packetBufferSize)
+      {
+        close();
+        return;
+      }
+      input.readFully(packetContentBuffer, 0, contentLength);
+      stream = getInputStream(type, number);
+      if (stream == null || !processPacket(stream, type, number, length, packetContentBuffer))
+      {
+        close();
+        return;
+      }
+    }
+  }
+  
+  // packets are held back until the tag closing their batch is verified
+  private final void readPacketBatches(final VTLittleEndianInputStream input, final int lane) throws IOException
+  {
+    final byte[] packetContentBuffer = new byte[packetBufferSize];
+    final byte[] batchBuffer = new byte[VTMultiplexingBatchOutputStream.BATCH_SIZE_BYTES];
+    final Random firstSequencer = new VTSplitMix64Random(VTMultiplexingBatchOutputStream.laneSeed(lane, firstSeed));
+    final Random secondSequencer = new VTSplitMix64Random(VTMultiplexingBatchOutputStream.laneSeed(lane, secondSeed));
+    VTMultiplexedInputStream stream;
+    int batchLength = 0;
+    int position;
+    int contentLength;
+    int type;
+    int number;
+    int length;
+    
+    while (!closed)
+    {
+      if (batchLength + VTSystem.VT_PACKET_BATCHED_HEADER_SIZE_BYTES > batchBuffer.length)
       {
         close();
         return;
       }
-      if (length >= 0)
+      input.readFully(batchBuffer, batchLength, VTSystem.VT_PACKET_BATCHED_HEADER_SIZE_BYTES);
+      length = readInt(batchBuffer, batchLength + 4);
+      if (length == VTMultiplexingBatchOutputStream.BATCH_TAG_LENGTH)
+      {
+        if (XXH3.hash64(batchBuffer, batchLength, firstSequencer.nextLong()) != input.readLong()
+        || secondSequencer.nextLong() != input.readLong())
+        {
+          close();
+          return;
+        }
+        transferredBytes.addAndGet(VTSystem.VT_PACKET_HEADER_SIZE_BYTES);
+        position = 0;
+        while (position < batchLength)
+        {
+          type = batchBuffer[position];
+          number = (batchBuffer[position + 1] & 0xFF) | (batchBuffer[position + 2] & 0xFF) << 8 | (batchBuffer[position + 3] & 0xFF) << 16;
+          length = readInt(batchBuffer, position + 4);
+          contentLength = length >= 0 ? length : (length == -4 && flowControl ? 4 : 0);
+          System.arraycopy(batchBuffer, position + VTSystem.VT_PACKET_BATCHED_HEADER_SIZE_BYTES, packetContentBuffer, 0, contentLength);
+          stream = getInputStream(type, number);
+          if (stream == null || !processPacket(stream, type, number, length, packetContentBuffer))
+          {
+            close();
+            return;
+          }
+          position += VTSystem.VT_PACKET_BATCHED_HEADER_SIZE_BYTES + contentLength;
+        }
+        batchLength = 0;
+        continue;
+      }
+      contentLength = length >= 0 ? length : (length == -4 && flowControl ? 4 : 0);
+      if (length < -4 || contentLength > packetBufferSize || batchLength + VTSystem.VT_PACKET_BATCHED_HEADER_SIZE_BYTES + contentLength > batchBuffer.length)
+      {
+        close();
+        return;
+      }
+      input.readFully(batchBuffer, batchLength + VTSystem.VT_PACKET_BATCHED_HEADER_SIZE_BYTES, contentLength);
+      batchLength += VTSystem.VT_PACKET_BATCHED_HEADER_SIZE_BYTES + contentLength;
+    }
+  }
+  
+  private final boolean processPacket(final VTMultiplexedInputStream stream, final int type, final int number, final int length, final byte[] packetContentBuffer) throws IOException
+  {
+    if (length >= 0)
+    {
+      byte[] content = packetContentBuffer;
+      int contentLength = length;
+      if (adaptiveCompression)
+      {
+        final VTAdaptivePacketDecompressor decompressor = stream.getAdaptiveDecompressor();
+        contentLength = decompressor.read(packetContentBuffer, 0, length);
+        content = decompressor.buf();
+      }
+      if (flowControl)
+      {
+        stream.deliver(content, contentLength);
+      }
+      else
       {
         OutputStream out = stream.getOutputStream();
         try
         {
-          out.write(packetContentBuffer, 0, length);
+          out.write(content, 0, contentLength);
           out.flush();
         }
         catch (Throwable e)
         {
           //e.printStackTrace();
         }
-        transferredBytes.addAndGet(VTSystem.VT_PACKET_HEADER_SIZE_BYTES + length);
       }
-      else
+      transferredBytes.addAndGet(packetHeaderSize + length);
+    }
+    else if (length == -4 && flowControl)
+    {
+      output.grantCredit(type, number, (packetContentBuffer[0] & 0xFF) | (packetContentBuffer[1] & 0xFF) << 8 | (packetContentBuffer[2] & 0xFF) << 16 | (packetContentBuffer[3] & 0xFF) << 24);
+      transferredBytes.addAndGet(packetHeaderSize + 4);
+    }
+    else
+    {
+      if (length == -2)
       {
-        if (length == -2)
+        if (flowControl)
         {
-          close(type, number);
-        }
-        else if (length == -3)
-        {
-          open(type, number);
+          stream.closeDelivered();
         }
         else
         {
-          close();
-          return;
+          close(type, number);
         }
-        transferredBytes.addAndGet(VTSystem.VT_PACKET_HEADER_SIZE_BYTES);
       }
+      else if (length == -3)
+      {
+        open(type, number);
+      }
+      else
+      {
+        return false;
+      }
+      transferredBytes.addAndGet(packetHeaderSize);
     }
+    return true;
+  }
+  
+  private static final int readInt(final byte[] buffer, final int offset)
+  {
+    return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8 | (buffer[offset + 2] & 0xFF) << 16 | (buffer[offset + 3] & 0xFF) << 24;
   }
   
   public final class VTMultiplexedInputStream extends InputStream
   {
+    // direct channels queue the remote open and close behind their pending packets, so the packet reader never waits for a pump
+    private final VTMultiplexedInputStreamPendingPacket openMarker = new VTMultiplexedInputStreamPendingPacket(null, 0);
+    private final VTMultiplexedInputStreamPendingPacket closeMarker = new VTMultiplexedInputStreamPendingPacket(null, 0);
     private volatile boolean closed;
     private volatile Object link = null;
     private final int number;
@@ -319,17 +533,24 @@ public final class VTMultiplexingInputStream
     private volatile int type;
     private final VTPipedInputStream bufferedInputStream;
     private final VTPipedOutputStream bufferedOutputStream;
+    private final InputStream creditedInputStream;
     private InputStream input;
     private OutputStream directOutputStream;
     private Closeable directCloseable;
     //private VTByteArrayOutputStream compressedPacketOutputPipe;
     private VTByteArrayInputStream compressedInputPipe;
     private InputStream compressedInputStream;
+    private VTAdaptivePacketDecompressor adaptiveDecompressor;
     private final Collection<Closeable> propagated;
     private final Random firstSequencer;
     private final Random secondSequencer;
     private final Random thirdSequencer;
     private final Random fourthSequencer;
+    private final LinkedList<VTMultiplexedInputStreamPendingPacket> pendingPackets;
+    private final VTMultiplexedInputStreamPacketPump packetPump;
+    private boolean pumping;
+    private boolean closePending;
+    private int unacknowledged;
     
     private VTMultiplexedInputStream(final int type, final int number, final int bufferSize, final long firstSeed, final long secondSeed)
     {
@@ -344,10 +565,12 @@ public final class VTMultiplexingInputStream
       this.thirdSequencer = new VTSplitMix64Random(thirdSequencerSeed);
       this.fourthSequencer = new VTSplitMix64Random(fourthSequencerSeed);
       this.propagated = new ConcurrentLinkedQueue<Closeable>();
+      this.pendingPackets = new LinkedList<VTMultiplexedInputStreamPendingPacket>();
+      this.packetPump = new VTMultiplexedInputStreamPacketPump();
       
       if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_DIRECT) == VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED)
       {
-        this.bufferedInputStream = new VTPipedInputStream(bufferSize);
+        this.bufferedInputStream = new VTPipedInputStream(bufferSize, bufferPool);
         this.bufferedOutputStream = new VTPipedOutputStream();
         try
         {
@@ -357,20 +580,28 @@ public final class VTMultiplexingInputStream
         {
           
         }
-        if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) == 0)
+        if (flowControl)
         {
-          this.input = bufferedInputStream;
+          this.creditedInputStream = new VTMultiplexedInputStreamCreditCounter();
+        }
+        else
+        {
+          this.creditedInputStream = bufferedInputStream;
+        }
+        if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) == 0 || adaptiveCompression)
+        {
+          this.input = creditedInputStream;
         }
         else
         {
           if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_HEAVY) != 0)
           {
             //this.compressedInputStream = VTCompressorSelector.createDirectZlibInputStream(bufferedInputStream);
-            this.compressedInputStream = VTCompressorSelector.createDirectZstdInputStream(bufferedInputStream);
+            this.compressedInputStream = VTCompressorSelector.createDirectZstdInputStream(creditedInputStream);
           }
           else
           {
-            this.compressedInputStream = VTCompressorSelector.createDirectLz4InputStream(bufferedInputStream);
+            this.compressedInputStream = VTCompressorSelector.createDirectLz4InputStream(creditedInputStream);
           }
           this.input = compressedInputStream;
         }
@@ -379,6 +610,7 @@ public final class VTMultiplexingInputStream
       {
         this.bufferedInputStream = null;
         this.bufferedOutputStream = null;
+        this.creditedInputStream = null;
       }
     }
     
@@ -446,7 +678,7 @@ public final class VTMultiplexingInputStream
     public final void setOutputStream(final OutputStream outputStream, final Closeable closeable)
     {
       directCloseable = closeable;
-      if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) == 0)
+      if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) == 0 || adaptiveCompression)
       {
         directOutputStream = outputStream;
       }
@@ -454,7 +686,7 @@ public final class VTMultiplexingInputStream
       {
         if (compressedInputPipe == null)
         {
-          compressedInputPipe = new VTByteArrayInputStream(new byte[packetContentBuffer.length]);
+          compressedInputPipe = new VTByteArrayInputStream(new byte[packetBufferSize]);
         }
         if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_HEAVY) != 0)
         {
@@ -480,22 +712,47 @@ public final class VTMultiplexingInputStream
     
     private final void open() throws IOException
     {
+      // packet integrity and decompression state belong to the packet reader and restart at once
       firstSequencer.setSeed(firstSequencerSeed);
       secondSequencer.setSeed(secondSequencerSeed);
       thirdSequencer.setSeed(thirdSequencerSeed);
       fourthSequencer.setSeed(fourthSequencerSeed);
+      adaptiveDecompressor = null;
+      if (flowControl)
+      {
+        synchronized (pendingPackets)
+        {
+          if (pumping)
+          {
+            pendingPackets.add(openMarker);
+            return;
+          }
+          releasePendingPackets(null);
+          closePending = false;
+          unacknowledged = 0;
+        }
+      }
+      reopen();
+    }
+    
+    private final void reopen() throws IOException
+    {
       if (bufferedInputStream != null)
       {
         bufferedInputStream.open();
-        if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) != 0)
+        if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) != 0 && adaptiveCompression)
+        {
+          input = creditedInputStream;
+        }
+        else if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) != 0)
         {
           if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_HEAVY) != 0)
           {
-            compressedInputStream = VTCompressorSelector.createDirectZstdInputStream(bufferedInputStream);
+            compressedInputStream = VTCompressorSelector.createDirectZstdInputStream(creditedInputStream);
           }
           else
           {
-            compressedInputStream = VTCompressorSelector.createDirectLz4InputStream(bufferedInputStream);
+            compressedInputStream = VTCompressorSelector.createDirectLz4InputStream(creditedInputStream);
           }
           input = compressedInputStream;
         }
@@ -538,13 +795,45 @@ public final class VTMultiplexingInputStream
       }
       if (bufferedOutputStream != null)
       {
-        try
+        if (flowControl)
         {
-          bufferedOutputStream.close();
+          synchronized (pendingPackets)
+          {
+            if (pendingPackets.size() > 0)
+            {
+              closePending = true;
+            }
+            else
+            {
+              try
+              {
+                bufferedOutputStream.close();
+              }
+              catch (Throwable t)
+              {
+                
+              }
+            }
+          }
         }
-        catch (Throwable t)
+        else
         {
-          
+          try
+          {
+            bufferedOutputStream.close();
+          }
+          catch (Throwable t)
+          {
+            
+          }
+        }
+      }
+      else if (flowControl)
+      {
+        synchronized (pendingPackets)
+        {
+          // packets queued after a remote open already belong to the next link
+          releasePendingPackets(openMarker);
         }
       }
       if (propagated.size() > 0)
@@ -593,6 +882,180 @@ public final class VTMultiplexingInputStream
       return input.skip(count);
     }
     
+    private final VTAdaptivePacketDecompressor getAdaptiveDecompressor()
+    {
+      if (adaptiveDecompressor == null)
+      {
+        adaptiveDecompressor = new VTAdaptivePacketDecompressor(packetBufferSize);
+      }
+      return adaptiveDecompressor;
+    }
+    
+    private final void deliver(final byte[] data, final int length)
+    {
+      if (!enqueue(data, length))
+      {
+        acknowledge(length, true);
+      }
+    }
+    
+    private final boolean enqueue(final byte[] data, final int length)
+    {
+      synchronized (pendingPackets)
+      {
+        if (bufferedOutputStream != null)
+        {
+          if (pendingPackets.size() == 0 && bufferedInputStream.free() >= length)
+          {
+            try
+            {
+              bufferedOutputStream.write(data, 0, length);
+              return true;
+            }
+            catch (Throwable t)
+            {
+              
+            }
+            return false;
+          }
+          if (bufferedInputStream.isClosed() || bufferedInputStream.isEof())
+          {
+            return false;
+          }
+        }
+        final byte[] packet = bufferPool.acquire(length);
+        System.arraycopy(data, 0, packet, 0, length);
+        pendingPackets.add(new VTMultiplexedInputStreamPendingPacket(packet, length));
+        if (bufferedOutputStream == null && !pumping)
+        {
+          pumping = true;
+          try
+          {
+            executorService.execute(packetPump);
+          }
+          catch (Throwable t)
+          {
+            pumping = false;
+          }
+        }
+        return true;
+      }
+    }
+    
+    private final void closeDelivered() throws IOException
+    {
+      if (bufferedOutputStream == null)
+      {
+        synchronized (pendingPackets)
+        {
+          if (pumping)
+          {
+            pendingPackets.add(closeMarker);
+            return;
+          }
+        }
+      }
+      close();
+    }
+    
+    private final int drainPendingPackets()
+    {
+      int dropped = 0;
+      synchronized (pendingPackets)
+      {
+        VTMultiplexedInputStreamPendingPacket packet = pendingPackets.peek();
+        while (packet != null && bufferedInputStream.free() >= packet.length)
+        {
+          pendingPackets.poll();
+          try
+          {
+            bufferedOutputStream.write(packet.data, 0, packet.length);
+          }
+          catch (Throwable t)
+          {
+            dropped += packet.length;
+          }
+          bufferPool.release(packet.data);
+          packet = pendingPackets.peek();
+        }
+        if (packet == null && closePending)
+        {
+          closePending = false;
+          try
+          {
+            bufferedOutputStream.close();
+          }
+          catch (Throwable t)
+          {
+            
+          }
+        }
+      }
+      return dropped;
+    }
+    
+    // drops queued packets up to the given marker, the pooled arrays go back to the pool
+    private final void releasePendingPackets(final VTMultiplexedInputStreamPendingPacket marker)
+    {
+      synchronized (pendingPackets)
+      {
+        while (pendingPackets.size() > 0 && pendingPackets.peek() != marker)
+        {
+          bufferPool.release(pendingPackets.poll().data);
+        }
+      }
+    }
+    
+    private final void acknowledge(final int count, final boolean deferred)
+    {
+      final int granted;
+      synchronized (pendingPackets)
+      {
+        unacknowledged += count;
+        if (unacknowledged < VTSystem.VT_CHANNEL_WINDOW_SIZE_BYTES / 4)
+        {
+          return;
+        }
+        granted = unacknowledged;
+        unacknowledged = 0;
+      }
+      if (deferred)
+      {
+        try
+        {
+          executorService.execute(new Runnable()
+          {
+            public final void run()
+            {
+              try
+              {
+                output.writeWindowPacket(type, number, granted);
+              }
+              catch (Throwable t)
+              {
+                
+              }
+            }
+          });
+        }
+        catch (Throwable t)
+        {
+          
+        }
+      }
+      else
+      {
+        try
+        {
+          output.writeWindowPacket(type, number, granted);
+        }
+        catch (Throwable t)
+        {
+          
+        }
+      }
+    }
+    
     private final Random getFirstSequencer()
     {
       return firstSequencer;
@@ -612,22 +1075,133 @@ public final class VTMultiplexingInputStream
     {
       return fourthSequencer;
     }
+    
+    private final class VTMultiplexedInputStreamCreditCounter extends InputStream
+    {
+      public final int available() throws IOException
+      {
+        return bufferedInputStream.available();
+      }
+      
+      public final int read() throws IOException
+      {
+        int data = bufferedInputStream.read();
+        if (data >= 0)
+        {
+          acknowledge(1 + drainPendingPackets(), false);
+        }
+        return data;
+      }
+      
+      public final int read(final byte[] data, final int offset, final int length) throws IOException
+      {
+        int readed = bufferedInputStream.read(data, offset, length);
+        if (readed > 0)
+        {
+          acknowledge(readed + drainPendingPackets(), false);
+        }
+        return readed;
+      }
+      
+      public final void close() throws IOException
+      {
+        bufferedInputStream.close();
+      }
+    }
+    
+    private final class VTMultiplexedInputStreamPacketPump implements Runnable
+    {
+      public final void run()
+      {
+        VTMultiplexedInputStreamPendingPacket packet;
+        boolean last = false;
+        OutputStream out;
+        while (true)
+        {
+          synchronized (pendingPackets)
+          {
+            packet = pendingPackets.poll();
+            if (packet == null)
+            {
+              pumping = false;
+              return;
+            }
+            if (packet == openMarker)
+            {
+              unacknowledged = 0;
+            }
+            final VTMultiplexedInputStreamPendingPacket next = pendingPackets.peek();
+            last = next == null || next == openMarker || next == closeMarker;
+          }
+          if (packet == closeMarker || packet == openMarker)
+          {
+            try
+            {
+              if (packet == closeMarker)
+              {
+                close();
+              }
+              else
+              {
+                reopen();
+              }
+            }
+            catch (Throwable t)
+            {
+              
+            }
+            continue;
+          }
+          out = directOutputStream;
+          try
+          {
+            out.write(packet.data, 0, packet.length);
+            if (last)
+            {
+              out.flush();
+            }
+          }
+          catch (Throwable t)
+          {
+            
+          }
+          bufferPool.release(packet.data);
+          acknowledge(packet.length, false);
+        }
+      }
+    }
+    
+    private final class VTMultiplexedInputStreamPendingPacket
+    {
+      private final byte[] data;
+      private final int length;
+      
+      private VTMultiplexedInputStreamPendingPacket(final byte[] data, final int length)
+      {
+        this.data = data;
+        this.length = length;
+      }
+    }
   }
   
   private final class VTMultiplexingInputStreamPacketReader implements Runnable
   {
     private final VTMultiplexingInputStream multiplexingInputStream;
+    private final VTLittleEndianInputStream input;
+    private final int lane;
     
-    private VTMultiplexingInputStreamPacketReader(VTMultiplexingInputStream multiplexingInputStream)
+    private VTMultiplexingInputStreamPacketReader(VTMultiplexingInputStream multiplexingInputStream, VTLittleEndianInputStream input, int lane)
     {
       this.multiplexingInputStream = multiplexingInputStream;
+      this.input = input;
+      this.lane = lane;
     }
     
     public final void run()
     {
       try
       {
-        multiplexingInputStream.readPackets();
+        multiplexingInputStream.readPackets(input, lane);
       }
       catch (Throwable e)
       {
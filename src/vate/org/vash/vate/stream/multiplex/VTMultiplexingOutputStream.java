@@ -4,49 +4,82 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
-import java.util.Map;
+import java.util.LinkedList;
 import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.vash.vate.VTSystem;
 import org.vash.vate.engineering.clientside.throttle.NanoThrottle;
 import org.vash.vate.org.infinispan.server.resp.commands.string.XXH3;
 import org.vash.vate.security.VTSplitMix64Random;
 import org.vash.vate.stream.array.VTByteArrayOutputStream;
+import org.vash.vate.stream.array.VTByteArrayPool;
+import org.vash.vate.stream.array.VTByteArrayPoolAccount;
+import org.vash.vate.stream.compress.VTAdaptivePacketCompressor;
 import org.vash.vate.stream.compress.VTCompressorSelector;
 import org.vash.vate.stream.endian.VTLittleEndianOutputStream;
-import org.vash.vate.stream.limit.VTThrottledOutputStream;
 
 public final class VTMultiplexingOutputStream
 {
+  private static final byte[] EMPTY_BUFFER = new byte[0];
+  
   private final int packetSize;
-  private final OutputStream original;
-  private final OutputStream throttled;
   private final NanoThrottle throttler;
-  private final Map<Integer, VTMultiplexedOutputStream> bufferedChannels;
-  private final Map<Integer, VTMultiplexedOutputStream> directChannels;
+  private final VTMultiplexingOutputLane[] lanes;
+  private final VTMultiplexingChannelTable<VTMultiplexedOutputStream> bufferedChannels;
+  private final VTMultiplexingChannelTable<VTMultiplexedOutputStream> directChannels;
   private final long firstSeed;
   private final long secondSeed;
-  @SuppressWarnings("unused")
   private final ExecutorService executorService;
   private final boolean server;
+  private final boolean flowControl;
+  private final boolean adaptiveCompression;
+  private final boolean batchedIntegrity;
+  private final boolean packetIntegrity;
+  private final int packetHeaderSize;
+  private final int queueSize;
+  private final int quantumSize;
+  private final VTByteArrayPool bufferPool;
+  private volatile boolean closed;
   private AtomicLong transferredBytes = new AtomicLong(0);
   
-  public VTMultiplexingOutputStream(final OutputStream output, final boolean server, final int packetSize, final int bufferSize, final long firstSeed, final long secondSeed, final ExecutorService executorService)
+  public VTMultiplexingOutputStream(final OutputStream output, final boolean server, final int packetSize, final int bufferSize, final long firstSeed, final long secondSeed, final int features, final ExecutorService executorService)
+  {
+    this(new OutputStream[] {output}, server, packetSize, bufferSize, firstSeed, secondSeed, features, executorService);
+  }
+  
+  public VTMultiplexingOutputStream(final OutputStream[] outputs, final boolean server, final int packetSize, final int bufferSize, final long firstSeed, final long secondSeed, final int features, final ExecutorService executorService)
   {
-    this.original = output;
     this.server = server;
+    this.flowControl = (features & VTSystem.VT_CONNECTION_FEATURE_FLOW_CONTROL) != 0;
+    this.adaptiveCompression = (features & VTSystem.VT_CONNECTION_FEATURE_ADAPTIVE_COMPRESSION) != 0;
+    // authenticated frames already cover every packet, so they need neither batch tags nor per-packet integrity fields
+    this.batchedIntegrity = (features & VTSystem.VT_CONNECTION_FEATURE_AUTHENTICATED_FRAMES) == 0 && (features & VTSystem.VT_CONNECTION_FEATURE_BATCHED_INTEGRITY) != 0;
+    this.packetIntegrity = (features & VTSystem.VT_CONNECTION_FEATURE_AUTHENTICATED_FRAMES) == 0 && !batchedIntegrity;
+    this.packetHeaderSize = packetIntegrity ? VTSystem.VT_PACKET_HEADER_SIZE_BYTES : VTSystem.VT_PACKET_BATCHED_HEADER_SIZE_BYTES;
     this.packetSize = packetSize;
+    this.queueSize = bufferSize;
+    this.quantumSize = Math.max(VTSystem.VT_PACKET_TOTAL_SIZE_BYTES, VTSystem.VT_PACKET_HEADER_SIZE_BYTES + packetSize);
     this.firstSeed = firstSeed;
     this.secondSeed = secondSeed;
     this.executorService = executorService;
     this.throttler = new NanoThrottle(Long.MAX_VALUE, (1d / 8d), true);
-    this.throttled = new VTThrottledOutputStream(original, throttler);
-    this.bufferedChannels = new ConcurrentHashMap<Integer, VTMultiplexedOutputStream>();
-    this.directChannels = new ConcurrentHashMap<Integer, VTMultiplexedOutputStream>();
+    this.bufferPool = new VTByteArrayPool(VTSystem.VT_BUFFER_POOL_RETAINED_SIZE_BYTES);
+    this.bufferedChannels = new VTMultiplexingChannelTable<VTMultiplexedOutputStream>(server ? 1 : 0);
+    this.directChannels = new VTMultiplexingChannelTable<VTMultiplexedOutputStream>(server ? 1 : 0);
+    this.lanes = new VTMultiplexingOutputLane[outputs.length];
+    for (int i = 0; i < outputs.length; i++)
+    {
+      lanes[i] = new VTMultiplexingOutputLane(batchedIntegrity ? new VTMultiplexingBatchOutputStream(outputs[i], i, firstSeed, secondSeed) : outputs[i]);
+    }
+    for (VTMultiplexingOutputLane lane : lanes)
+    {
+      this.executorService.execute(new VTMultiplexingOutputStreamScheduler(lane));
+      this.executorService.execute(new VTMultiplexingOutputStreamFlusher(lane));
+    }
   }
   
   public long getTransferredBytes()
@@ -104,93 +137,104 @@ public final class VTMultiplexingOutputStream
     if (stream != null)
     {
       stream.setLink(null);
+      getChannelTable(stream.type()).releaseNumber(stream.number());
     }
   }
   
-  private synchronized final VTMultiplexedOutputStream getOutputStream(final int type, final int number)
+  private final VTMultiplexingChannelTable<VTMultiplexedOutputStream> getChannelTable(final int type)
   {
-    VTMultiplexedOutputStream stream = null;
-    Map<Integer, VTMultiplexedOutputStream> channelMap;
-    OutputStream output = null;
-    boolean unlimited = ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED) != 0);
-    if (unlimited)
-    {
-      output = original;
-    }
-    else
-    {
-      output = throttled;
-    }
     if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_DIRECT) == VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED)
     {
-      channelMap = bufferedChannels;
+      return bufferedChannels;
     }
-    else
-    {
-      channelMap = directChannels;
-    }
-    stream = channelMap.get(number);
+    return directChannels;
+  }
+  
+  private synchronized final VTMultiplexedOutputStream getOutputStream(final int type, final int number)
+  {
+    VTMultiplexingChannelTable<VTMultiplexedOutputStream> channelTable = getChannelTable(type);
+    VTMultiplexedOutputStream stream = channelTable.get(number);
     if (stream != null)
     {
       stream.type(type);
-      stream.setDataOutputStream(output);
-      stream.setControlOutputStream(original);
       return stream;
     }
-    stream = new VTMultiplexedOutputStream(output, original, type, number, packetSize, firstSeed, secondSeed);
-    channelMap.put(number, stream);
+    stream = new VTMultiplexedOutputStream(type, number, packetSize, firstSeed, secondSeed);
+    channelTable.put(number, stream);
     return stream;
   }
   
-  private synchronized final VTMultiplexedOutputStream searchOutputStream(final int type)
+  private final VTMultiplexedOutputStream findOutputStream(final int type, final int number)
   {
-    VTMultiplexedOutputStream stream = null;
-    Map<Integer, VTMultiplexedOutputStream> channelMap;
-    OutputStream output = null;
-    boolean unlimited = ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED) != 0);
-    if (unlimited)
-    {
-      output = original;
-    }
-    else
-    {
-      output = throttled;
-    }
-    if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_DIRECT) == VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_BUFFERED)
-    {
-      channelMap = bufferedChannels;
-    }
-    else
+    VTMultiplexedOutputStream stream = getChannelTable(type).get(number);
+    if (stream != null)
     {
-      channelMap = directChannels;
+      return stream;
     }
-    int start;
-    if (server)
+    return createOutputStream(type, number);
+  }
+  
+  private synchronized final VTMultiplexedOutputStream createOutputStream(final int type, final int number)
+  {
+    VTMultiplexingChannelTable<VTMultiplexedOutputStream> channelTable = getChannelTable(type);
+    VTMultiplexedOutputStream stream = channelTable.get(number);
+    if (stream != null)
     {
-      start = 1;
+      return stream;
     }
-    else
+    stream = new VTMultiplexedOutputStream(type, number, packetSize, firstSeed, secondSeed);
+    channelTable.put(number, stream);
+    return stream;
+  }
+  
+  private synchronized final VTMultiplexedOutputStream searchOutputStream(final int type)
+  {
+    VTMultiplexedOutputStream stream = null;
+    VTMultiplexingChannelTable<VTMultiplexedOutputStream> channelTable = getChannelTable(type);
+    int number;
+    while ((number = channelTable.pollReleasedNumber()) >= 0)
     {
-      start = 0;
+      stream = channelTable.get(number);
+      if (stream != null && stream.getLink() == null)
+      {
+        stream.type(type);
+        return stream;
+      }
     }
-    for (int number = start; number < 16777216; number += 2)
+    while ((number = channelTable.pollNextNumber()) >= 0)
     {
-      stream = channelMap.get(number);
+      stream = channelTable.get(number);
       if (stream != null && stream.getLink() == null)
       {
         stream.type(type);
-        stream.setDataOutputStream(output);
-        stream.setControlOutputStream(original);
         return stream;
       }
       else if (stream == null)
       {
-        stream = new VTMultiplexedOutputStream(output, original, type, number, packetSize, firstSeed, secondSeed);
-        channelMap.put(number, stream);
+        stream = new VTMultiplexedOutputStream(type, number, packetSize, firstSeed, secondSeed);
+        channelTable.put(number, stream);
         return stream;
       }
     }
-    return stream;
+    return null;
+  }
+  
+  public final int getLaneCount()
+  {
+    return lanes.length;
+  }
+  
+  private final VTMultiplexingOutputLane selectLane(final int type, final int number)
+  {
+    if (lanes.length == 1 || (type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE) != 0)
+    {
+      return lanes[0];
+    }
+    if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_BULK) != 0 || (type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PIPE_DIRECT) != 0)
+    {
+      return lanes[1 + ((number >>> 1) % (lanes.length - 1))];
+    }
+    return lanes[0];
   }
   
   public final int getPacketSize()
@@ -222,7 +266,11 @@ public final class VTMultiplexingOutputStream
   
   public final void close() throws IOException
   {
-    throttled.close();
+    closed = true;
+    for (VTMultiplexingOutputLane lane : lanes)
+    {
+      lane.close();
+    }
     for (VTMultiplexedOutputStream stream : bufferedChannels.values())
     {
       try
@@ -259,6 +307,21 @@ public final class VTMultiplexingOutputStream
     getOutputStream(type, number).close();
   }
   
+  public final boolean isFlowControlEnabled()
+  {
+    return flowControl;
+  }
+  
+  final void grantCredit(final int type, final int number, final int credit)
+  {
+    findOutputStream(type, number).grantCredit(credit);
+  }
+  
+  final void writeWindowPacket(final int type, final int number, final int credit) throws IOException
+  {
+    findOutputStream(type, number).writeWindowPacket(type, credit);
+  }
+  
   public final class VTMultiplexedOutputStream extends OutputStream
   {
     private volatile boolean closed;
@@ -271,27 +334,39 @@ public final class VTMultiplexingOutputStream
     private volatile int type;
     private final int packetSize;
     private final byte[] single = new byte[1];
+    private final byte[] windowContent = new byte[4];
+    private final Object creditMonitor = new Object();
+    private long credit;
     private final VTByteArrayOutputStream dataContentBuffer;
     private final VTByteArrayOutputStream dataPacketBuffer;
     private final VTLittleEndianOutputStream dataPacketStream;
     private final VTByteArrayOutputStream controlPacketBuffer;
     private final VTLittleEndianOutputStream controlPacketStream;
-    private OutputStream dataOutputStream;
-    private OutputStream controlOutputStream;
     private OutputStream contentOutputStream;
+    private VTAdaptivePacketCompressor adaptiveCompressor;
+    private final VTMultiplexingOutputLane lane;
+    private final VTMultiplexingPacketQueue sendQueue = new VTMultiplexingPacketQueue();
+    private final VTByteArrayPoolAccount bufferAccount = new VTByteArrayPoolAccount(VTSystem.VT_BUFFER_POOL_CHANNEL_SIZE_BYTES);
+    private int queuedBytes;
+    private long queuedPackets;
+    private long sentPackets;
+    private int deficit;
+    private boolean scheduled;
+    private boolean served;
+    private boolean reserved;
+    private long releaseTime;
     private final Collection<Closeable> propagated;
     private final Random firstSequencer;
     private final Random secondSequencer;
     private final Random thirdSequencer;
     private final Random fourthSequencer;
     
-    private VTMultiplexedOutputStream(final OutputStream dataOutputStream, final OutputStream controlOutputStream, final int type, final int number, final int packetSize, final long firstSeed, final long secondSeed)
+    private VTMultiplexedOutputStream(final int type, final int number, final int packetSize, final long firstSeed, final long secondSeed)
     {
-      this.dataOutputStream = dataOutputStream;
-      this.controlOutputStream = controlOutputStream;
       this.type = type;
       this.number = number;
       this.packetSize = packetSize;
+      this.lane = selectLane(type, number);
       this.firstSequencerSeed = XXH3.hash64(new byte[] {(byte)(number >> 24), (byte)(number >> 16), (byte)(number >> 8), (byte)(number)}, 4, firstSeed);
       this.secondSequencerSeed = XXH3.hash64(new byte[] {(byte)(number >> 24), (byte)(number >> 16), (byte)(number >> 8), (byte)(number)}, 4, secondSeed);
       this.thirdSequencerSeed = XXH3.hash64(new byte[] {(byte)(number), (byte)(number >> 8), (byte)(number >> 16), (byte)(number >> 24)}, 4, firstSeed);
@@ -300,15 +375,21 @@ public final class VTMultiplexingOutputStream
       this.secondSequencer = new VTSplitMix64Random(secondSequencerSeed);
       this.thirdSequencer = new VTSplitMix64Random(thirdSequencerSeed);
       this.fourthSequencer = new VTSplitMix64Random(fourthSequencerSeed);
-      this.dataContentBuffer = new VTByteArrayOutputStream(VTSystem.VT_STANDARD_BUFFER_SIZE_BYTES);
-      this.dataPacketBuffer = new VTByteArrayOutputStream(VTSystem.VT_PACKET_HEADER_SIZE_BYTES + packetSize);
+      this.dataContentBuffer = new VTByteArrayOutputStream(EMPTY_BUFFER);
+      this.dataPacketBuffer = new VTByteArrayOutputStream(EMPTY_BUFFER);
       this.dataPacketStream = new VTLittleEndianOutputStream(dataPacketBuffer);
-      this.controlPacketBuffer = new VTByteArrayOutputStream(VTSystem.VT_PACKET_HEADER_SIZE_BYTES);
+      this.controlPacketBuffer = new VTByteArrayOutputStream(EMPTY_BUFFER);
       this.controlPacketStream = new VTLittleEndianOutputStream(controlPacketBuffer);
       this.closed = false;
+      this.credit = VTSystem.VT_CHANNEL_WINDOW_SIZE_BYTES;
       this.propagated = new ConcurrentLinkedQueue<Closeable>();
       
-      if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) == 0)
+      if (adaptiveCompression)
+      {
+        contentOutputStream = dataContentBuffer;
+        adaptiveCompressor = new VTAdaptivePacketCompressor(dataContentBuffer, (type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) != 0, (type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_HEAVY) != 0);
+      }
+      else if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) == 0)
       {
         contentOutputStream = dataContentBuffer;
       }
@@ -340,16 +421,6 @@ public final class VTMultiplexingOutputStream
       this.type = type;
     }
     
-    private final void setDataOutputStream(final OutputStream dataOutputStream)
-    {
-      this.dataOutputStream = dataOutputStream;
-    }
-    
-    private final void setControlOutputStream(final OutputStream controlOutputStream)
-    {
-      this.controlOutputStream = controlOutputStream;
-    }
-    
     public final Object getLink()
     {
       return link;
@@ -377,6 +448,10 @@ public final class VTMultiplexingOutputStream
       while (remaining > 0 && !closed)
       {
         written = Math.min(remaining, packetSize);
+        if (!acquireCredit(written))
+        {
+          break;
+        }
         writeDataPacket(type, number, data, position, written);
         position += written;
         remaining -= written;
@@ -402,6 +477,10 @@ public final class VTMultiplexingOutputStream
     public final void close() throws IOException
     {
       closed = true;
+      synchronized (creditMonitor)
+      {
+        creditMonitor.notifyAll();
+      }
       //throttled.bypass();
       writeClosePacket(type, number);
       //throttled.restore();
@@ -427,11 +506,18 @@ public final class VTMultiplexingOutputStream
       //throttled.bypass();
       writeOpenPacket(type, number);
       //throttled.restore();
-      firstSequencer.setSeed(firstSequencerSeed);
-      secondSequencer.setSeed(secondSequencerSeed);
-      thirdSequencer.setSeed(thirdSequencerSeed);
-      fourthSequencer.setSeed(fourthSequencerSeed);
-      if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) != 0)
+      synchronized (creditMonitor)
+      {
+        credit = VTSystem.VT_CHANNEL_WINDOW_SIZE_BYTES;
+        creditMonitor.notifyAll();
+      }
+      adaptiveCompressor = null;
+      if (adaptiveCompression)
+      {
+        contentOutputStream = dataContentBuffer;
+        adaptiveCompressor = new VTAdaptivePacketCompressor(dataContentBuffer, (type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) != 0, (type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_HEAVY) != 0);
+      }
+      else if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_ENABLED) != 0)
       {
         if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_COMPRESSION_HEAVY) != 0)
         {
@@ -462,60 +548,589 @@ public final class VTMultiplexingOutputStream
     {
       synchronized (dataPacketBuffer)
       {
-        dataPacketBuffer.reset();
-        dataContentBuffer.reset();
-        contentOutputStream.write(buffer, offset, length);
-        contentOutputStream.flush();
-        long hash = XXH3.hash64(dataContentBuffer.buf(), dataContentBuffer.count());
-        long start = firstSequencer.nextLong() ^ secondSequencer.nextLong() ^ hash;
-        long end = thirdSequencer.nextLong() ^ fourthSequencer.nextLong() ^ hash;
-        dataPacketStream.writeLong(start);
+        dataContentBuffer.buf(bufferPool.acquire(VTSystem.VT_PACKET_TOTAL_SIZE_BYTES, bufferAccount), 0);
+        if (adaptiveCompressor != null)
+        {
+          adaptiveCompressor.write(buffer, offset, length);
+        }
+        else
+        {
+          contentOutputStream.write(buffer, offset, length);
+          contentOutputStream.flush();
+          if (flowControl && dataContentBuffer.count() != length)
+          {
+            synchronized (creditMonitor)
+            {
+              credit += length - dataContentBuffer.count();
+            }
+          }
+        }
+        final int contentLength = dataContentBuffer.count();
+        long start = 0;
+        long end = 0;
+        if (packetIntegrity)
+        {
+          long hash = XXH3.hash64(dataContentBuffer.buf(), contentLength);
+          start = firstSequencer.nextLong() ^ secondSequencer.nextLong() ^ hash;
+          end = thirdSequencer.nextLong() ^ fourthSequencer.nextLong() ^ hash;
+        }
+        dataPacketBuffer.buf(bufferPool.acquire(packetHeaderSize + contentLength, bufferAccount), 0);
+        if (packetIntegrity)
+        {
+          dataPacketStream.writeLong(start);
+        }
         dataPacketStream.writeByte(type);
         dataPacketStream.writeSubInt(number);
-        dataPacketStream.writeInt(dataContentBuffer.count());
-        dataPacketStream.write(dataContentBuffer.buf(), 0, dataContentBuffer.count());
-        dataPacketStream.writeLong(end);
-        dataOutputStream.write(dataPacketBuffer.buf(), 0, dataPacketBuffer.count());
-        dataOutputStream.flush();
-        transferredBytes.addAndGet(VTSystem.VT_PACKET_HEADER_SIZE_BYTES + dataContentBuffer.count());
+        dataPacketStream.writeInt(contentLength);
+        dataPacketStream.write(dataContentBuffer.buf(), 0, contentLength);
+        if (packetIntegrity)
+        {
+          dataPacketStream.writeLong(end);
+        }
+        bufferPool.release(dataContentBuffer.buf(), bufferAccount);
+        dataContentBuffer.buf(EMPTY_BUFFER, 0);
+        if (!queuePacket(dataPacketBuffer, false))
+        {
+          throw new IOException("OutputStream closed");
+        }
+        transferredBytes.addAndGet(packetHeaderSize + contentLength);
+      }
+    }
+    
+    private final boolean queuePacket(final VTByteArrayOutputStream packetBuffer, final boolean wait) throws IOException
+    {
+      final byte[] packet = packetBuffer.buf();
+      final int length = packetBuffer.count();
+      packetBuffer.buf(EMPTY_BUFFER, 0);
+      final long ticket;
+      synchronized (lane.scheduleMonitor)
+      {
+        while (queuedBytes > 0 && queuedBytes + length > queueSize && !VTMultiplexingOutputStream.this.closed)
+        {
+          try
+          {
+            lane.scheduleMonitor.wait();
+          }
+          catch (InterruptedException e)
+          {
+            
+          }
+        }
+        if (VTMultiplexingOutputStream.this.closed)
+        {
+          bufferPool.release(packet, bufferAccount);
+          return false;
+        }
+        sendQueue.addLast(packet, length);
+        queuedBytes += length;
+        queuedPackets++;
+        lane.pendingPackets++;
+        ticket = queuedPackets;
+        if (!scheduled)
+        {
+          scheduled = true;
+          if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_INTERACTIVE) != 0)
+          {
+            lane.interactiveChannels.addLast(this);
+          }
+          else
+          {
+            lane.sharedChannels.addLast(this);
+          }
+        }
+        lane.scheduleMonitor.notifyAll();
+      }
+      lane.sendPackets(this, ticket);
+      if (wait)
+      {
+        synchronized (lane.scheduleMonitor)
+        {
+          while (sentPackets < ticket && !VTMultiplexingOutputStream.this.closed)
+          {
+            try
+            {
+              lane.scheduleMonitor.wait();
+            }
+            catch (InterruptedException e)
+            {
+              
+            }
+          }
+        }
+      }
+      return true;
+    }
+    
+    private final boolean acquireCredit(final int required)
+    {
+      if (!flowControl)
+      {
+        return true;
+      }
+      synchronized (creditMonitor)
+      {
+        while (credit < required && !closed)
+        {
+          try
+          {
+            creditMonitor.wait();
+          }
+          catch (InterruptedException e)
+          {
+            
+          }
+        }
+        if (closed)
+        {
+          return false;
+        }
+        credit -= required;
+        return true;
+      }
+    }
+    
+    private final void grantCredit(final int granted)
+    {
+      synchronized (creditMonitor)
+      {
+        credit = Math.min(credit + granted, VTSystem.VT_CHANNEL_WINDOW_SIZE_BYTES);
+        creditMonitor.notifyAll();
+      }
+    }
+    
+    private final void writeWindowPacket(final int type, final int granted) throws IOException
+    {
+      synchronized (dataPacketBuffer)
+      {
+        controlPacketBuffer.buf(bufferPool.acquire(packetHeaderSize + 4, bufferAccount), 0);
+        windowContent[0] = (byte) granted;
+        windowContent[1] = (byte) (granted >> 8);
+        windowContent[2] = (byte) (granted >> 16);
+        windowContent[3] = (byte) (granted >> 24);
+        long start = 0;
+        long end = 0;
+        if (packetIntegrity)
+        {
+          long hash = XXH3.hash64(windowContent, 4, -4L);
+          start = firstSequencer.nextLong() ^ secondSequencer.nextLong() ^ hash;
+          end = thirdSequencer.nextLong() ^ fourthSequencer.nextLong() ^ hash;
+        }
+        if (packetIntegrity)
+        {
+          controlPacketStream.writeLong(start);
+        }
+        controlPacketStream.writeByte(type);
+        controlPacketStream.writeSubInt(number);
+        controlPacketStream.writeInt(-4);
+        controlPacketStream.write(windowContent, 0, 4);
+        if (packetIntegrity)
+        {
+          controlPacketStream.writeLong(end);
+        }
+        queuePacket(controlPacketBuffer, false);
+        transferredBytes.addAndGet(packetHeaderSize + 4);
       }
     }
     
     private final void writeClosePacket(final int type, final int number) throws IOException
     {
-      synchronized (controlPacketBuffer)
+      synchronized (dataPacketBuffer)
       {
-        controlPacketBuffer.reset();
-        long hash = -2L;
-        long start = firstSequencer.nextLong() ^ secondSequencer.nextLong() ^ hash;
-        long end = thirdSequencer.nextLong() ^ fourthSequencer.nextLong() ^ hash;
-        controlPacketStream.writeLong(start);
+        controlPacketBuffer.buf(bufferPool.acquire(packetHeaderSize, bufferAccount), 0);
+        long start = 0;
+        long end = 0;
+        if (packetIntegrity)
+        {
+          long hash = -2L;
+          start = firstSequencer.nextLong() ^ secondSequencer.nextLong() ^ hash;
+          end = thirdSequencer.nextLong() ^ fourthSequencer.nextLong() ^ hash;
+        }
+        if (packetIntegrity)
+        {
+          controlPacketStream.writeLong(start);
+        }
         controlPacketStream.writeByte(type);
         controlPacketStream.writeSubInt(number);
         controlPacketStream.writeInt(-2);
-        controlPacketStream.writeLong(end);
-        controlOutputStream.write(controlPacketBuffer.buf(), 0, controlPacketBuffer.count());
-        controlOutputStream.flush();
-        transferredBytes.addAndGet(VTSystem.VT_PACKET_HEADER_SIZE_BYTES);
+        if (packetIntegrity)
+        {
+          controlPacketStream.writeLong(end);
+        }
+        queuePacket(controlPacketBuffer, true);
+        transferredBytes.addAndGet(packetHeaderSize);
       }
     }
     
     private final void writeOpenPacket(final int type, final int number) throws IOException
     {
-      synchronized (controlPacketBuffer)
+      synchronized (dataPacketBuffer)
       {
-        controlPacketBuffer.reset();
-        long hash = -3L;
-        long start = firstSequencer.nextLong() ^ secondSequencer.nextLong() ^ hash;
-        long end = thirdSequencer.nextLong() ^ fourthSequencer.nextLong() ^ hash;
-        controlPacketStream.writeLong(start);
+        controlPacketBuffer.buf(bufferPool.acquire(packetHeaderSize, bufferAccount), 0);
+        long start = 0;
+        long end = 0;
+        if (packetIntegrity)
+        {
+          long hash = -3L;
+          start = firstSequencer.nextLong() ^ secondSequencer.nextLong() ^ hash;
+          end = thirdSequencer.nextLong() ^ fourthSequencer.nextLong() ^ hash;
+        }
+        if (packetIntegrity)
+        {
+          controlPacketStream.writeLong(start);
+        }
         controlPacketStream.writeByte(type);
         controlPacketStream.writeSubInt(number);
         controlPacketStream.writeInt(-3);
-        controlPacketStream.writeLong(end);
-        controlOutputStream.write(controlPacketBuffer.buf(), 0, controlPacketBuffer.count());
-        controlOutputStream.flush();
-        transferredBytes.addAndGet(VTSystem.VT_PACKET_HEADER_SIZE_BYTES);
+        if (packetIntegrity)
+        {
+          controlPacketStream.writeLong(end);
+        }
+        queuePacket(controlPacketBuffer, true);
+        transferredBytes.addAndGet(packetHeaderSize);
+        firstSequencer.setSeed(firstSequencerSeed);
+        secondSequencer.setSeed(secondSequencerSeed);
+        thirdSequencer.setSeed(thirdSequencerSeed);
+        fourthSequencer.setSeed(fourthSequencerSeed);
+      }
+    }
+  }
+  
+  private final class VTMultiplexingOutputLane
+  {
+    private final OutputStream original;
+    private final Object scheduleMonitor = new Object();
+    private final LinkedList<VTMultiplexedOutputStream> interactiveChannels = new LinkedList<VTMultiplexedOutputStream>();
+    private final LinkedList<VTMultiplexedOutputStream> sharedChannels = new LinkedList<VTMultiplexedOutputStream>();
+    private VTMultiplexedOutputStream selected;
+    private int selectedLength;
+    private int pendingPackets;
+    private int interactiveBytes;
+    private boolean sending;
+    private boolean throttling;
+    private long throttlingTime;
+    private final Object flushMonitor = new Object();
+    private int pendingFlushBytes;
+    private boolean flushScheduled;
+    
+    private VTMultiplexingOutputLane(final OutputStream output)
+    {
+      this.original = output;
+    }
+    
+    private final void close()
+    {
+      synchronized (scheduleMonitor)
+      {
+        scheduleMonitor.notifyAll();
+      }
+      synchronized (flushMonitor)
+      {
+        flushMonitor.notifyAll();
+      }
+      try
+      {
+        original.close();
+      }
+      catch (Throwable t)
+      {
+        
+      }
+    }
+    
+    private final void flushPacket(final int type, final int length) throws IOException
+    {
+      if ((type & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_FLUSH_IMMEDIATE) != 0)
+      {
+        original.flush();
+        return;
+      }
+      synchronized (flushMonitor)
+      {
+        pendingFlushBytes += length;
+        if (pendingFlushBytes < VTSystem.VT_CONNECTION_FLUSH_THRESHOLD_BYTES)
+        {
+          if (!flushScheduled)
+          {
+            flushScheduled = true;
+            flushMonitor.notifyAll();
+          }
+          return;
+        }
+        pendingFlushBytes = 0;
+      }
+      original.flush();
+    }
+    
+    private final boolean sendPackets(final VTMultiplexedOutputStream owner, final long ticket) throws IOException
+    {
+      VTMultiplexedOutputStream stream = null;
+      byte[] packet = null;
+      int length = 0;
+      synchronized (scheduleMonitor)
+      {
+        if (sending || closed)
+        {
+          return false;
+        }
+        packet = selectPacket();
+        if (packet == null)
+        {
+          return false;
+        }
+        stream = selected;
+        length = selectedLength;
+        sending = true;
+      }
+      try
+      {
+        while (true)
+        {
+          original.write(packet, 0, length);
+          flushPacket(stream.type(), length);
+          bufferPool.release(packet, stream.bufferAccount);
+          synchronized (scheduleMonitor)
+          {
+            stream.sentPackets++;
+            packet = null;
+            if (!closed && (owner == null || owner.sentPackets < ticket))
+            {
+              packet = selectPacket();
+            }
+            if (packet == null)
+            {
+              sending = false;
+              scheduleMonitor.notifyAll();
+              return true;
+            }
+            stream = selected;
+            length = selectedLength;
+            scheduleMonitor.notifyAll();
+          }
+        }
+      }
+      catch (IOException e)
+      {
+        closed = true;
+        synchronized (scheduleMonitor)
+        {
+          sending = false;
+        }
+        for (VTMultiplexingOutputLane lane : lanes)
+        {
+          lane.close();
+        }
+        throw e;
+      }
+    }
+    
+    // interactive channels go first but only for a bounded number of quanta while other channels are waiting
+    private final byte[] selectPacket()
+    {
+      throttling = false;
+      final boolean capped = !sharedChannels.isEmpty() && interactiveBytes >= quantumSize * VTSystem.VT_CHANNEL_SCHEDULER_INTERACTIVE_WEIGHT;
+      byte[] packet = capped ? null : selectPacket(interactiveChannels);
+      if (packet != null)
+      {
+        interactiveBytes += selectedLength;
+        return packet;
+      }
+      packet = selectPacket(sharedChannels);
+      if (packet != null)
+      {
+        interactiveBytes = 0;
+        return packet;
+      }
+      if (capped)
+      {
+        packet = selectPacket(interactiveChannels);
+        if (packet != null)
+        {
+          interactiveBytes += selectedLength;
+        }
+      }
+      return packet;
+    }
+    
+    private final byte[] selectPacket(final LinkedList<VTMultiplexedOutputStream> channels)
+    {
+      VTMultiplexedOutputStream stream;
+      byte[] packet;
+      int length;
+      int skipped = 0;
+      while (!channels.isEmpty() && skipped < channels.size())
+      {
+        stream = channels.getFirst();
+        if (stream.sendQueue.isEmpty())
+        {
+          channels.removeFirst();
+          stream.scheduled = false;
+          stream.served = false;
+          stream.deficit = 0;
+          continue;
+        }
+        packet = stream.sendQueue.getFirst();
+        length = stream.sendQueue.getFirstLength();
+        if (!stream.served)
+        {
+          stream.served = true;
+          if ((stream.type() & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_PRIORITY_BULK) != 0)
+          {
+            stream.deficit += quantumSize * VTSystem.VT_CHANNEL_SCHEDULER_BULK_WEIGHT;
+          }
+          else
+          {
+            stream.deficit += quantumSize * VTSystem.VT_CHANNEL_SCHEDULER_NORMAL_WEIGHT;
+          }
+        }
+        if (stream.deficit < length)
+        {
+          stream.served = false;
+          channels.addLast(channels.removeFirst());
+          continue;
+        }
+        if ((stream.type() & VTSystem.VT_MULTIPLEXED_CHANNEL_TYPE_RATE_UNLIMITED) == 0)
+        {
+          final long time = System.nanoTime();
+          if (!stream.reserved)
+          {
+            final long delay = throttler.acquireDelayDuration(length);
+            if (delay > 0)
+            {
+              stream.reserved = true;
+              stream.releaseTime = time + delay;
+            }
+          }
+          if (stream.reserved && stream.releaseTime - time > 0)
+          {
+            if (!throttling || stream.releaseTime - throttlingTime < 0)
+            {
+              throttlingTime = stream.releaseTime;
+            }
+            throttling = true;
+            skipped++;
+            channels.addLast(channels.removeFirst());
+            continue;
+          }
+          stream.reserved = false;
+        }
+        stream.deficit -= length;
+        stream.sendQueue.removeFirst();
+        stream.queuedBytes -= length;
+        pendingPackets--;
+        if (stream.sendQueue.isEmpty())
+        {
+          channels.removeFirst();
+          stream.scheduled = false;
+          stream.served = false;
+          stream.deficit = 0;
+        }
+        selected = stream;
+        selectedLength = length;
+        return packet;
+      }
+      return null;
+    }
+  }
+  
+  private final class VTMultiplexingOutputStreamScheduler implements Runnable
+  {
+    private final VTMultiplexingOutputLane lane;
+    
+    private VTMultiplexingOutputStreamScheduler(final VTMultiplexingOutputLane lane)
+    {
+      this.lane = lane;
+    }
+    
+    public final void run()
+    {
+      while (!closed)
+      {
+        synchronized (lane.scheduleMonitor)
+        {
+          while ((lane.sending || lane.pendingPackets == 0) && !closed)
+          {
+            try
+            {
+              lane.scheduleMonitor.wait();
+            }
+            catch (InterruptedException e)
+            {
+              
+            }
+          }
+        }
+        try
+        {
+          if (!lane.sendPackets(null, 0))
+          {
+            long delay = 0;
+            synchronized (lane.scheduleMonitor)
+            {
+              if (lane.throttling && !lane.sending && lane.pendingPackets > 0 && !closed)
+              {
+                delay = lane.throttlingTime - System.nanoTime();
+              }
+              if (delay >= 1000000)
+              {
+                lane.scheduleMonitor.wait(delay / 1000000);
+                delay = 0;
+              }
+            }
+            if (delay > 0)
+            {
+              LockSupport.parkNanos(delay);
+            }
+          }
+        }
+        catch (Throwable t)
+        {
+          return;
+        }
+      }
+    }
+  }
+  
+  private final class VTMultiplexingOutputStreamFlusher implements Runnable
+  {
+    private final VTMultiplexingOutputLane lane;
+    
+    private VTMultiplexingOutputStreamFlusher(final VTMultiplexingOutputLane lane)
+    {
+      this.lane = lane;
+    }
+    
+    public final void run()
+    {
+      while (!closed)
+      {
+        synchronized (lane.flushMonitor)
+        {
+          while (!lane.flushScheduled && !closed)
+          {
+            try
+            {
+              lane.flushMonitor.wait();
+            }
+            catch (InterruptedException e)
+            {
+              
+            }
+          }
+        }
+        LockSupport.parkNanos(VTSystem.VT_CONNECTION_FLUSH_DELAY_NANOSECONDS);
+        synchronized (lane.flushMonitor)
+        {
+          lane.flushScheduled = false;
+          lane.pendingFlushBytes = 0;
+        }
+        try
+        {
+          lane.original.flush();
+        }
+        catch (Throwable t)
+        {
+          return;
+        }
       }
     }
   }
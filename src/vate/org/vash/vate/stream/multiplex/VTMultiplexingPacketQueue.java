@@ -0,0 +1,58 @@
+package org.vash.vate.stream.multiplex;
+
+final class VTMultiplexingPacketQueue
+{
+  private byte[][] packets;
+  private int[] lengths;
+  private int head;
+  private int size;
+  
+  VTMultiplexingPacketQueue()
+  {
+    this.packets = new byte[8][];
+    this.lengths = new int[8];
+  }
+  
+  final boolean isEmpty()
+  {
+    return size == 0;
+  }
+  
+  final void addLast(final byte[] packet, final int length)
+  {
+    if (size == packets.length)
+    {
+      final byte[][] expandedPackets = new byte[packets.length * 2][];
+      final int[] expandedLengths = new int[lengths.length * 2];
+      for (int i = 0; i < size; i++)
+      {
+        expandedPackets[i] = packets[(head + i) % packets.length];
+        expandedLengths[i] = lengths[(head + i) % lengths.length];
+      }
+      packets = expandedPackets;
+      lengths = expandedLengths;
+      head = 0;
+    }
+    final int tail = (head + size) % packets.length;
+    packets[tail] = packet;
+    lengths[tail] = length;
+    size++;
+  }
+  
+  final byte[] getFirst()
+  {
+    return packets[head];
+  }
+  
+  final int getFirstLength()
+  {
+    return lengths[head];
+  }
+  
+  final void removeFirst()
+  {
+    packets[head] = null;
+    head = (head + 1) % packets.length;
+    size--;
+  }
+}
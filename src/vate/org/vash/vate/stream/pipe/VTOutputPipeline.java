@@ -0,0 +1,135 @@
+package org.vash.vate.stream.pipe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class VTOutputPipeline implements Runnable
+{
+  private final BlockingQueue<VTOutputPipelineSegment> freeSegments;
+  private final BlockingQueue<VTOutputPipelineSegment> pendingSegments;
+  private final int segmentSize;
+  private final AtomicLong transferredBytes = new AtomicLong();
+  private volatile IOException failure;
+  private volatile boolean closed;
+  
+  public VTOutputPipeline(final int segmentCount, final int segmentSize)
+  {
+    this.segmentSize = segmentSize;
+    this.freeSegments = new LinkedBlockingQueue<VTOutputPipelineSegment>();
+    this.pendingSegments = new LinkedBlockingQueue<VTOutputPipelineSegment>();
+    for (int i = 0; i < segmentCount; i++)
+    {
+      freeSegments.add(new VTOutputPipelineSegment(segmentSize));
+    }
+  }
+  
+  public final VTPipelinedOutputStream createOutputStream(final OutputStream out)
+  {
+    return new VTPipelinedOutputStream(this, out, new VTOutputPipelineSegment(segmentSize));
+  }
+  
+  public final long getTransferredBytes()
+  {
+    return transferredBytes.get();
+  }
+  
+  final VTOutputPipelineSegment transfer(final VTOutputPipelineSegment segment) throws IOException
+  {
+    checkFailure();
+    try
+    {
+      transferredBytes.addAndGet(segment.count);
+      pendingSegments.put(segment);
+      final VTOutputPipelineSegment next = freeSegments.take();
+      next.target = null;
+      next.count = 0;
+      next.flush = false;
+      return next;
+    }
+    catch (InterruptedException e)
+    {
+      throw new IOException("Output pipeline interrupted");
+    }
+  }
+  
+  final void checkFailure() throws IOException
+  {
+    if (failure != null)
+    {
+      throw failure;
+    }
+    if (closed)
+    {
+      throw new IOException("Output pipeline closed");
+    }
+  }
+  
+  public final void close()
+  {
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+    pendingSegments.offer(new VTOutputPipelineSegment(0));
+  }
+  
+  public final void run()
+  {
+    try
+    {
+      while (true)
+      {
+        final VTOutputPipelineSegment segment = pendingSegments.take();
+        if (segment.data.length == 0)
+        {
+          break;
+        }
+        if (failure == null)
+        {
+          try
+          {
+            if (segment.count > 0)
+            {
+              segment.target.write(segment.data, 0, segment.count);
+            }
+            if (segment.flush)
+            {
+              segment.target.flush();
+            }
+          }
+          catch (IOException e)
+          {
+            failure = e;
+          }
+          catch (Throwable t)
+          {
+            failure = new IOException(t.toString());
+          }
+        }
+        segment.target = null;
+        freeSegments.put(segment);
+      }
+    }
+    catch (InterruptedException e)
+    {
+      
+    }
+  }
+  
+  static final class VTOutputPipelineSegment
+  {
+    final byte[] data;
+    OutputStream target;
+    int count;
+    boolean flush;
+    
+    VTOutputPipelineSegment(final int size)
+    {
+      this.data = new byte[size];
+    }
+  }
+}
\ No newline at end of file
@@ -4,12 +4,16 @@ package org.vash.vate.stream.pipe;
 import java.io.InputStream;
 import java.io.IOException;
 
+import org.vash.vate.stream.array.VTByteArrayPool;
+
 public final class VTPipedInputStream extends InputStream
 {
   //private static final int DEFAULT_BUFFER_SIZE = 8192;
   
   private VTPipedOutputStream source;
-  private final byte[] circBuf;
+  private final VTByteArrayPool bufferPool;
+  private final int capacity;
+  private byte[] circBuf;
   private int rOffset;
   private int wOffset;
   private boolean isWaitGet;
@@ -19,7 +23,14 @@ public final class VTPipedInputStream extends InputStream
   
   public VTPipedInputStream(final int bufferSize)
   {
-    this.circBuf = new byte[bufferSize];
+    this(bufferSize, null);
+  }
+  
+  public VTPipedInputStream(final int bufferSize, final VTByteArrayPool bufferPool)
+  {
+    this.bufferPool = bufferPool;
+    this.capacity = bufferSize;
+    this.circBuf = bufferPool == null ? new byte[bufferSize] : null;
     this.isWaitGet = false;
     this.isWaitPut = false;
     this.rOffset = 0;
@@ -78,9 +89,11 @@ public final class VTPipedInputStream extends InputStream
     
     int b = (circBuf[rOffset++] & 0xff);
     
-    if (rOffset == circBuf.length)
+    if (rOffset == capacity)
       rOffset = 0;
     
+    releaseBuffer();
+    
     if (isWaitPut)
     {
       isWaitPut = false;
@@ -125,7 +138,7 @@ public final class VTPipedInputStream extends InputStream
     }
     else
     {
-      int rest = circBuf.length - rOffset;
+      int rest = capacity - rOffset;
       if (rest < n)
       {
         System.arraycopy(circBuf, rOffset, buf, off, rest);
@@ -138,8 +151,10 @@ public final class VTPipedInputStream extends InputStream
     }
     
     rOffset += n;
-    if (rOffset >= circBuf.length)
-      rOffset -= circBuf.length;
+    if (rOffset >= capacity)
+      rOffset -= capacity;
+    
+    releaseBuffer();
     
     if (isWaitPut)
     {
@@ -157,12 +172,19 @@ public final class VTPipedInputStream extends InputStream
     {
       return -1;
     }
-    return circBuf.length - freeSpace() - 1;
+    return capacity - freeSpace() - 1;
+  }
+  
+  public final synchronized int free()
+  {
+    return freeSpace();
   }
   
   public final synchronized void close() throws IOException
   {
     closed = true;
+    rOffset = wOffset;
+    releaseBuffer();
     this.notifyAll();
   }
   
@@ -201,8 +223,9 @@ public final class VTPipedInputStream extends InputStream
         // !
       }
     }
+    acquireBuffer();
     circBuf[wOffset++] = (byte) b;
-    if (wOffset == circBuf.length)
+    if (wOffset == capacity)
       wOffset = 0;
     if (isWaitGet)
       this.notify();
@@ -243,13 +266,14 @@ public final class VTPipedInputStream extends InputStream
       int n = freeSpace();
       n = (n > len ? len : n);
       
+      acquireBuffer();
       if (wOffset < rOffset)
       {
         System.arraycopy(buf, off, circBuf, wOffset, n);
       }
       else
       {
-        int rest = circBuf.length - wOffset;
+        int rest = capacity - wOffset;
         if (rest < n)
         {
           System.arraycopy(buf, off, circBuf, wOffset, rest);
@@ -262,9 +286,9 @@ public final class VTPipedInputStream extends InputStream
       }
       
       wOffset += n;
-      if (wOffset >= circBuf.length)
+      if (wOffset >= capacity)
       {
-        wOffset -= circBuf.length;
+        wOffset -= capacity;
       }
       len -= n;
       off += n;
@@ -285,12 +309,31 @@ public final class VTPipedInputStream extends InputStream
     int fSpc = rOffset - wOffset;
     if (fSpc <= 0)
     {
-      fSpc += circBuf.length;
+      fSpc += capacity;
     }
     fSpc--;
     return fSpc;
   }
   
+  private final void acquireBuffer()
+  {
+    if (circBuf == null)
+    {
+      circBuf = bufferPool.acquire(capacity);
+    }
+  }
+  
+  private final void releaseBuffer()
+  {
+    if (bufferPool != null && circBuf != null && rOffset == wOffset)
+    {
+      bufferPool.release(circBuf);
+      circBuf = null;
+      rOffset = 0;
+      wOffset = 0;
+    }
+  }
+  
   private final synchronized boolean isEmpty()
   {
     return (rOffset == wOffset) || closed;
@@ -311,6 +354,7 @@ public final class VTPipedInputStream extends InputStream
     isWaitPut = false;
     rOffset = 0;
     wOffset = 0;
+    releaseBuffer();
     notifyAll();
   }
   
@@ -0,0 +1,67 @@
+package org.vash.vate.stream.pipe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.vash.vate.stream.pipe.VTOutputPipeline.VTOutputPipelineSegment;
+
+public final class VTPipelinedOutputStream extends OutputStream
+{
+  private final VTOutputPipeline pipeline;
+  private final OutputStream out;
+  private VTOutputPipelineSegment segment;
+  
+  VTPipelinedOutputStream(final VTOutputPipeline pipeline, final OutputStream out, final VTOutputPipelineSegment segment)
+  {
+    this.pipeline = pipeline;
+    this.out = out;
+    this.segment = segment;
+  }
+  
+  public final synchronized void write(final int b) throws IOException
+  {
+    if (segment.count == segment.data.length)
+    {
+      transfer(false);
+    }
+    segment.data[segment.count++] = (byte) b;
+  }
+  
+  public final void write(final byte[] b) throws IOException
+  {
+    write(b, 0, b.length);
+  }
+  
+  public final synchronized void write(final byte[] b, int off, int len) throws IOException
+  {
+    while (len > 0)
+    {
+      if (segment.count == segment.data.length)
+      {
+        transfer(false);
+      }
+      final int copied = Math.min(len, segment.data.length - segment.count);
+      System.arraycopy(b, off, segment.data, segment.count, copied);
+      segment.count += copied;
+      off += copied;
+      len -= copied;
+    }
+  }
+  
+  public final synchronized void flush() throws IOException
+  {
+    transfer(true);
+  }
+  
+  public final void close() throws IOException
+  {
+    pipeline.close();
+  }
+  
+  private final void transfer(final boolean flush) throws IOException
+  {
+    segment.target = out;
+    segment.flush = flush;
+    segment = pipeline.transfer(segment);
+  }
+}
\ No newline at end of file